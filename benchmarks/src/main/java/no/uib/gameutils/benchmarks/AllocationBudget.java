@@ -0,0 +1,196 @@
+package no.uib.gameutils.benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+
+import no.uib.gameutils.entity.type.Paintable;
+import no.uib.gameutils.entity.type.Tickable;
+
+/**
+ * AllocationBudget runs frames of a game without a window and measures how many bytes each frame allocates.
+ * 
+ * The point is to keep the tick and render paths free of garbage, and keep them that way. Put a check in your build:
+ * <pre>
+ * AllocationBudget.build().frames(1000).maxBytesPerFrame(0).create().check(AllocationBudget.frame(world, scene, 800, 600));
+ * </pre>
+ * and it throws the day someone sneaks an allocation into the loop. {@link AllocationCheck} does this for the library itself.
+ * 
+ * The frames are first run a number of times to warm up, so class loading, lazy initialisation and the JIT don't count.
+ * The measurement uses the per-thread allocation counter in {@code com.sun.management.ThreadMXBean},
+ * so it only sees what the calling thread allocates, and needs a JVM that has that counter (HotSpot and OpenJ9 both do).
+ * Frames are run on the calling thread.
+ * 
+ * Java2D isn't garbage-free itself: drawing an image into a software surface allocates a little on some JVMs,
+ * so a budget for a frame that paints may need to allow a few bytes per drawImage. Measure once, and set the budget just above.
+ */
+public class AllocationBudget {
+	private final int WARMUP_FRAMES;
+	private final int FRAMES;
+	private final long MAX_BYTES_PER_FRAME;
+	
+	private AllocationBudget(int warmupFrames, int frames, long maxBytesPerFrame){
+		this.WARMUP_FRAMES = warmupFrames;
+		this.FRAMES = frames;
+		this.MAX_BYTES_PER_FRAME = maxBytesPerFrame;
+	}
+	
+	/**
+	 * Runs the warmup frames, then the measured frames.
+	 * @param frame one frame of work. May not be null.
+	 * @return the average number of bytes allocated per measured frame.
+	 * @throws UnsupportedOperationException if the JVM can't count allocated bytes per thread.
+	 */
+	public double measure(Runnable frame){
+		if(null == frame){
+			throw new IllegalArgumentException("Argument \"frame\" may not be null.");
+		}
+		com.sun.management.ThreadMXBean threads = threadBean();
+		long thread = Thread.currentThread().getId();
+		for(int i = 0; i < WARMUP_FRAMES; i++){
+			frame.run();
+		}
+		// The counter itself may cost a few bytes to read, so find out how much and take it away again.
+		long overhead = threads.getThreadAllocatedBytes(thread);
+		overhead = threads.getThreadAllocatedBytes(thread) - overhead;
+		
+		long before = threads.getThreadAllocatedBytes(thread);
+		for(int i = 0; i < FRAMES; i++){
+			frame.run();
+		}
+		long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+		return Math.max(0, allocated) / (double) FRAMES;
+	}
+	
+	/**
+	 * Measures the frames, and complains if they allocate more than the budget.
+	 * @param frame one frame of work. May not be null.
+	 * @return the average number of bytes allocated per measured frame.
+	 * @throws IllegalStateException if the frames allocate more than the budget on average.
+	 * @throws UnsupportedOperationException if the JVM can't count allocated bytes per thread.
+	 */
+	public double check(Runnable frame){
+		double perFrame = measure(frame);
+		if(perFrame > MAX_BYTES_PER_FRAME){
+			throw new IllegalStateException(String.format("Allocated %.1f bytes per frame over %d frames, the budget is %d", perFrame, FRAMES, MAX_BYTES_PER_FRAME));
+		}
+		return perFrame;
+	}
+	
+	/**
+	 * Makes a frame that ticks a game once and paints it into an image, the way the game loop would but without a window.
+	 * The image and its Graphics are made here, once, so they don't count against the frames.
+	 * @param tickable what to tick, may be null if there is nothing to tick.
+	 * @param paintable what to paint, may be null if there is nothing to paint.
+	 * @param width the width of the image to paint into, in pixels.
+	 * @param height the height of the image to paint into, in pixels.
+	 * @return a frame you can hand to {@link #measure(Runnable)} or {@link #check(Runnable)}.
+	 */
+	public static Runnable frame(final Tickable tickable, final Paintable paintable, int width, int height){
+		if(width < 1 || height < 1){
+			throw new IllegalArgumentException(String.format("Illegal size specified, width and height must be positive (yours was %d, %d)", width, height));
+		}
+		final BufferedImage canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		final Graphics2D gfx = canvas.createGraphics();
+		gfx.setBackground(Color.BLACK);
+		return new Runnable(){
+			@Override
+			public void run() {
+				if(null != tickable){
+					tickable.tick();
+				}
+				if(null != paintable){
+					gfx.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+					paintable.paint(gfx);
+				}
+			}
+		};
+	}
+	
+	/**
+	 * @param thread a live thread, may not be null.
+	 * @return how many bytes the thread has allocated since it started. Only differences between two calls mean anything.
+	 * @throws UnsupportedOperationException if the JVM can't count allocated bytes per thread.
+	 */
+	public static long allocatedBytes(Thread thread){
+		if(null == thread){
+			throw new IllegalArgumentException("Argument \"thread\" may not be null.");
+		}
+		return threadBean().getThreadAllocatedBytes(thread.getId());
+	}
+	
+	private static com.sun.management.ThreadMXBean threadBean(){
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(!(bean instanceof com.sun.management.ThreadMXBean)){
+			throw new UnsupportedOperationException("This JVM can't count the bytes allocated by a thread");
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		if(!threads.isThreadAllocatedMemorySupported()){
+			throw new UnsupportedOperationException("This JVM can't count the bytes allocated by a thread");
+		}
+		if(!threads.isThreadAllocatedMemoryEnabled()){
+			threads.setThreadAllocatedMemoryEnabled(true);
+		}
+		return threads;
+	}
+	
+	public static AllocationBudgetBuilder build(){
+		return new AllocationBudgetBuilder();
+	}
+	
+	public static class AllocationBudgetBuilder {
+		private int warmupFrames;
+		private int frames;
+		private long maxBytesPerFrame;
+		
+		public AllocationBudgetBuilder(){
+			warmupFrames = 500;
+			frames = 1000;
+			maxBytesPerFrame = 0;
+		}
+		
+		/**
+		 * Sets how many frames to run before measuring. Default is 500.
+		 * @param warmupFrames the number of frames, may not be negative.
+		 * @return this {@link AllocationBudgetBuilder} so you can chain calls.
+		 */
+		public AllocationBudgetBuilder warmupFrames(int warmupFrames){
+			if(warmupFrames < 0){
+				throw new IllegalArgumentException(String.format("warmupFrames may not be negative! (was %d)", warmupFrames));
+			}
+			this.warmupFrames = warmupFrames;
+			return this;
+		}
+		
+		/**
+		 * Sets how many frames to measure. Default is 1000.
+		 * @param frames the number of frames, must be positive.
+		 * @return this {@link AllocationBudgetBuilder} so you can chain calls.
+		 */
+		public AllocationBudgetBuilder frames(int frames){
+			if(frames < 1){
+				throw new IllegalArgumentException(String.format("frames must be a positive number! (was %d)", frames));
+			}
+			this.frames = frames;
+			return this;
+		}
+		
+		/**
+		 * Sets how many bytes a frame may allocate on average. Default is 0.
+		 * @param maxBytesPerFrame the budget in bytes, may not be negative.
+		 * @return this {@link AllocationBudgetBuilder} so you can chain calls.
+		 */
+		public AllocationBudgetBuilder maxBytesPerFrame(long maxBytesPerFrame){
+			if(maxBytesPerFrame < 0){
+				throw new IllegalArgumentException(String.format("maxBytesPerFrame may not be negative! (was %d)", maxBytesPerFrame));
+			}
+			this.maxBytesPerFrame = maxBytesPerFrame;
+			return this;
+		}
+		
+		public AllocationBudget create(){
+			return new AllocationBudget(warmupFrames, frames, maxBytesPerFrame);
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package no.uib.gameutils.benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import no.uib.gameutils.entity.type.Tickable;
+import no.uib.gameutils.entity.type.TopLevelPaintable;
+import no.uib.gameutils.render.RenderCommands;
+import no.uib.gameutils.render.RenderQueue;
+import no.uib.gameutils.sprite.SpriteLoader;
+import no.uib.gameutils.threads.GameLoop;
+
+/**
+ * Runs the hot paths of the library through an {@link AllocationBudget}, and fails if they allocate more than they should.
+ * 
+ * Two things are checked: recording, publishing and painting a frame of a {@link RenderQueue} on one thread,
+ * and a running {@link GameLoop} ticking and painting that same queue on its own thread.
+ * Build with {@code mvn package}, then run:
+ * <pre>
+ * java -Djava.awt.headless=true -cp benchmarks/target/benchmarks.jar no.uib.gameutils.benchmarks.AllocationCheck
+ * </pre>
+ * It prints what each one allocated, and exits with status 1 if either is over its budget, so it can go in a build script.
+ */
+public final class AllocationCheck {
+	private static final int WIDTH = 1280, HEIGHT = 720;
+	private static final int SPRITES = 2000;
+	/** Bytes a RenderQueue frame of {@link #SPRITES} sprites may allocate. */
+	private static final long QUEUE_BUDGET = 0;
+	/** Bytes a GameLoop frame (its ticks and one paint) may allocate. */
+	private static final long LOOP_BUDGET = 0;
+	private static final long LOOP_WARMUP_MILLIS = 3000, LOOP_MILLIS = 5000;
+	
+	private AllocationCheck(){}
+	
+	public static void main(String[] args) throws IOException, InterruptedException {
+		SpriteLoader ldr = Sheets.loader("cached");
+		final RenderQueue queue = new RenderQueue(SPRITES);
+		final int sheet = queue.registerSheet(ldr);
+		Tickable game = new Tickable(){
+			private int tick;
+			
+			@Override
+			public void tick() {
+				tick++;
+				RenderCommands commands = queue.begin();
+				for(int i = 0; i < SPRITES; i++){
+					int x = (i * 37 + tick) % WIDTH, y = (i * 53) % HEIGHT;
+					commands.draw(sheet, i % Sheets.COLUMNS, (i / Sheets.COLUMNS) % Sheets.ROWS, x, y, i % 4, 0);
+				}
+				queue.publish();
+			}
+		};
+		
+		boolean ok = true;
+		AllocationBudget budget = AllocationBudget.build().maxBytesPerFrame(QUEUE_BUDGET).create();
+		try{
+			double perFrame = budget.check(AllocationBudget.frame(game, queue, WIDTH, HEIGHT));
+			System.out.printf("RenderQueue: %.1f bytes per frame (budget %d)%n", perFrame, QUEUE_BUDGET);
+		}
+		catch(IllegalStateException ise){
+			System.out.println("RenderQueue: " + ise.getMessage());
+			ok = false;
+		}
+		
+		ok &= checkLoop(game, queue);
+		System.exit(ok ? 0 : 1);
+	}
+	
+	/**
+	 * Runs a real {@link GameLoop} for a while, and counts what its thread allocates per painted frame once it has warmed up.
+	 */
+	private static boolean checkLoop(Tickable game, final RenderQueue queue) throws InterruptedException {
+		final BufferedImage canvas = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+		final Graphics2D gfx = canvas.createGraphics();
+		gfx.setBackground(Color.BLACK);
+		final AtomicReference<Thread> loopThread = new AtomicReference<>();
+		TopLevelPaintable paintable = new TopLevelPaintable(){
+			@Override
+			public void paint() {
+				loopThread.lazySet(Thread.currentThread());
+				gfx.clearRect(0, 0, WIDTH, HEIGHT);
+				queue.paint(gfx);
+			}
+		};
+		GameLoop loop = GameLoop.build().tickable(game).canvas(paintable).ticksPerSecond(60).framesPerSecond(60).create();
+		loop.start();
+		try{
+			Thread.sleep(LOOP_WARMUP_MILLIS);
+			Thread thread = loopThread.get();
+			if(null == thread){
+				System.out.println("GameLoop: no frames were painted");
+				return false;
+			}
+			long frames = loop.frames();
+			long before = AllocationBudget.allocatedBytes(thread);
+			Thread.sleep(LOOP_MILLIS);
+			long allocated = AllocationBudget.allocatedBytes(thread) - before;
+			frames = loop.frames() - frames;
+			double perFrame = allocated / (double) Math.max(1, frames);
+			System.out.printf("GameLoop: %.1f bytes per frame over %d frames (budget %d)%n", perFrame, frames, LOOP_BUDGET);
+			return perFrame <= LOOP_BUDGET;
+		}
+		finally{
+			loop.stop();
+			gfx.dispose();
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package no.uib.gameutils.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.uib.gameutils.path.PassabilityGrid;
+import no.uib.gameutils.path.Path;
+import no.uib.gameutils.path.Pathfinder;
+import no.uib.gameutils.position.Coordinate;
+
+/**
+ * Finds paths across large square maps of scattered walls, with each of the {@link Pathfinder.Algorithm}s.
+ * 
+ * The queries are picked ahead of time, with both ends reachable from each other and at least a quarter of the map apart,
+ * and the cache is off so every query is searched. {@code findPath} runs one query at a time,
+ * {@code findPaths} runs a batch of them in parallel on the common pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class PathfindingBenchmark {
+	private static final int QUERIES = 256;
+	private static final int BATCH = 64;
+	
+	@Param({"256", "1024"})
+	public int mapSize;
+	
+	@Param({"ASTAR", "JPS", "HIERARCHICAL"})
+	public String algorithm;
+	
+	private Pathfinder pathfinder;
+	private long[] from, to;
+	private long[] batchFrom, batchTo;
+	private int next;
+	
+	@Setup
+	public void setUp(){
+		Random random = new Random(2014);
+		PassabilityGrid grid = new PassabilityGrid(0, 0, mapSize, mapSize);
+		// Short walls, eight cells long, covering up to a fifth of the map.
+		for(int walls = mapSize * mapSize / 40; walls > 0; walls--){
+			int x = random.nextInt(mapSize), y = random.nextInt(mapSize);
+			boolean horizontal = random.nextBoolean();
+			for(int i = 0; i < 8; i++){
+				if(grid.contains(x, y)){
+					grid.setPassable(x, y, false);
+				}
+				x += horizontal ? 1 : 0;
+				y += horizontal ? 0 : 1;
+			}
+		}
+		Pathfinder check = Pathfinder.build().grid(grid).algorithm(Pathfinder.Algorithm.HIERARCHICAL).cacheSize(0).create();
+		from = new long[QUERIES];
+		to = new long[QUERIES];
+		for(int i = 0; i < QUERIES; ){
+			int sx = random.nextInt(mapSize), sy = random.nextInt(mapSize);
+			int tx = random.nextInt(mapSize), ty = random.nextInt(mapSize);
+			if(Math.max(Math.abs(sx - tx), Math.abs(sy - ty)) < mapSize / 4 || null == check.findPath(sx, sy, tx, ty)){
+				continue;
+			}
+			from[i] = Coordinate.pack(sx, sy);
+			to[i] = Coordinate.pack(tx, ty);
+			i++;
+		}
+		check.dispose();
+		batchFrom = new long[BATCH];
+		batchTo = new long[BATCH];
+		System.arraycopy(from, 0, batchFrom, 0, BATCH);
+		System.arraycopy(to, 0, batchTo, 0, BATCH);
+		pathfinder = Pathfinder.build().grid(grid).algorithm(Pathfinder.Algorithm.valueOf(algorithm)).cacheSize(0).create();
+		// Builds the clusters for the hierarchical search, so that isn't measured.
+		pathfinder.findPath(Coordinate.x(from[0]), Coordinate.y(from[0]), Coordinate.x(to[0]), Coordinate.y(to[0]));
+	}
+	
+	@Benchmark
+	public Path findPath(){
+		int i = next++ & (QUERIES - 1);
+		return pathfinder.findPath(Coordinate.x(from[i]), Coordinate.y(from[i]), Coordinate.x(to[i]), Coordinate.y(to[i]));
+	}
+	
+	@Benchmark
+	public Path[] findPaths(){
+		return pathfinder.findPaths(batchFrom, batchTo);
+	}
+}
@@ -0,0 +1,112 @@
+package no.uib.gameutils.benchmarks;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.uib.gameutils.entity.StaticImage;
+import no.uib.gameutils.entity.type.Paintable;
+import no.uib.gameutils.map.ChunkCache;
+import no.uib.gameutils.map.TileMap;
+import no.uib.gameutils.sprite.SpriteLoader;
+
+/**
+ * Renders a whole 1280x720 frame of a square map, the way a {@link no.uib.gameutils.window.GameCanvas GameCanvas} would,
+ * but into an offscreen image so it runs headless.
+ * 
+ * The scene is one of: every tile as a {@link StaticImage} painted one by one, a {@link TileMap}, or a {@link ChunkCache}.
+ * Run with {@code -prof gc} to see how much is allocated per frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx2g"})
+public class SceneRenderBenchmark {
+	private static final int WIDTH = 1280, HEIGHT = 720;
+	
+	@Param({"64", "256", "1024"})
+	public int mapSize;
+	
+	@Param({"staticImages", "tileMap", "chunkCache"})
+	public String scene;
+	
+	private Paintable root;
+	private BufferedImage frame;
+	
+	@Setup
+	public void setUp() throws IOException {
+		SpriteLoader ldr = Sheets.loader("cached");
+		frame = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		switch(scene){
+		case "staticImages":
+			final List<StaticImage> tiles = new ArrayList<>(mapSize * mapSize);
+			for(int y = 0; y < mapSize; y++){
+				for(int x = 0; x < mapSize; x++){
+					tiles.add(new StaticImage(ldr, (x + y) % Sheets.COLUMNS, y % Sheets.ROWS, x, y));
+				}
+			}
+			root = new Paintable(){
+				@Override
+				public void paint(Graphics gfx) {
+					for(int i = 0; i < tiles.size(); i++){
+						tiles.get(i).paint(gfx);
+					}
+				}
+			};
+			break;
+		case "tileMap":
+			TileMap map = new TileMap(ldr, 1, 0, 0, mapSize, mapSize);
+			for(int y = 0; y < mapSize; y++){
+				for(int x = 0; x < mapSize; x++){
+					map.setTile(0, x, y, map.idOf((x + y) % Sheets.COLUMNS, y % Sheets.ROWS));
+				}
+			}
+			root = map;
+			break;
+		case "chunkCache":
+			ChunkCache cache = new ChunkCache(Sheets.TILE_SIZE, Sheets.TILE_SIZE, 16, 64);
+			for(int y = 0; y < mapSize; y++){
+				for(int x = 0; x < mapSize; x++){
+					cache.add(new StaticImage(ldr, (x + y) % Sheets.COLUMNS, y % Sheets.ROWS, x, y));
+				}
+			}
+			root = cache;
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown scene: " + scene);
+		}
+	}
+	
+	@TearDown
+	public void tearDown(){
+		frame.flush();
+	}
+	
+	@Benchmark
+	public BufferedImage renderFrame(){
+		Graphics2D g = frame.createGraphics();
+		g.setClip(0, 0, WIDTH, HEIGHT);
+		root.paint(g);
+		g.dispose();
+		return frame;
+	}
+}
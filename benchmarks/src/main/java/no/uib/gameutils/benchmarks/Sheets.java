@@ -0,0 +1,78 @@
+package no.uib.gameutils.benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import no.uib.gameutils.sprite.CachedSpriteLoader;
+import no.uib.gameutils.sprite.GenericSpriteLoader;
+import no.uib.gameutils.sprite.SpriteLoader;
+
+/**
+ * Makes the sprite sheets the benchmarks use, so they don't depend on any files on disk.
+ */
+final class Sheets {
+	static final int TILE_SIZE = 32;
+	static final int COLUMNS = 16;
+	static final int ROWS = 16;
+	
+	private Sheets(){}
+	
+	/**
+	 * Writes a COLUMNS by ROWS sheet of TILE_SIZE tiles, each with its own colour and a transparent corner, to a temporary PNG.
+	 */
+	static File writeSheet() throws IOException {
+		BufferedImage sheet = new BufferedImage(COLUMNS * TILE_SIZE, ROWS * TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = sheet.createGraphics();
+		for(int row = 0; row < ROWS; row++){
+			for(int col = 0; col < COLUMNS; col++){
+				g.setColor(new Color(col * 16, row * 16, (col + row) * 8));
+				g.fillRect(col * TILE_SIZE + 4, row * TILE_SIZE + 4, TILE_SIZE - 4, TILE_SIZE - 4);
+			}
+		}
+		g.dispose();
+		File file = File.createTempFile("gameutils-bench", ".png");
+		file.deleteOnExit();
+		ImageIO.write(sheet, "png", file);
+		return file;
+	}
+	
+	/**
+	 * @param kind "generic" for a plain {@link GenericSpriteLoader}, "cached" for one wrapped in a {@link CachedSpriteLoader}.
+	 */
+	static SpriteLoader loader(String kind) throws IOException {
+		SpriteLoader generic = GenericSpriteLoader.create(writeSheet(), TILE_SIZE);
+		switch(kind){
+		case "generic":
+			return generic;
+		case "cached":
+			return CachedSpriteLoader.create(generic);
+		default:
+			throw new IllegalArgumentException("Unknown loader kind: " + kind);
+		}
+	}
+	
+	/**
+	 * @param type the name of a BufferedImage.TYPE_ constant, without the prefix.
+	 */
+	static int imageType(String type){
+		switch(type){
+		case "INT_RGB":
+			return BufferedImage.TYPE_INT_RGB;
+		case "INT_ARGB":
+			return BufferedImage.TYPE_INT_ARGB;
+		case "INT_ARGB_PRE":
+			return BufferedImage.TYPE_INT_ARGB_PRE;
+		case "3BYTE_BGR":
+			return BufferedImage.TYPE_3BYTE_BGR;
+		case "USHORT_565_RGB":
+			return BufferedImage.TYPE_USHORT_565_RGB;
+		default:
+			throw new IllegalArgumentException("Unknown image type: " + type);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package no.uib.gameutils.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.uib.gameutils.sprite.SpriteLoader;
+
+/**
+ * How fast {@link SpriteLoader#getImage(int, int)} is, walking over every tile of the sheet.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SpriteLoaderBenchmark {
+	@Param({"generic", "cached"})
+	public String loader;
+	
+	private SpriteLoader ldr;
+	private int next;
+	
+	@Setup
+	public void setUp() throws IOException {
+		ldr = Sheets.loader(loader);
+	}
+	
+	@Benchmark
+	public BufferedImage getImage(){
+		int tile = next++ & (Sheets.COLUMNS * Sheets.ROWS - 1);
+		return ldr.getImage(tile % Sheets.COLUMNS, tile / Sheets.COLUMNS);
+	}
+}
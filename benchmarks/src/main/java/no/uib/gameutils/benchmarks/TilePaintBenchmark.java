@@ -0,0 +1,67 @@
+package no.uib.gameutils.benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.uib.gameutils.entity.StaticImage;
+import no.uib.gameutils.sprite.SpriteLoader;
+
+/**
+ * The cost of painting a single {@link StaticImage} into offscreen images of different pixel formats.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class TilePaintBenchmark {
+	@Param({"INT_RGB", "INT_ARGB", "INT_ARGB_PRE", "3BYTE_BGR", "USHORT_565_RGB"})
+	public String imageType;
+	
+	@Param({"generic", "cached"})
+	public String loader;
+	
+	private Graphics2D gfx;
+	private StaticImage[] tiles;
+	private int next;
+	
+	@Setup
+	public void setUp() throws IOException {
+		SpriteLoader ldr = Sheets.loader(loader);
+		BufferedImage target = new BufferedImage(640, 480, Sheets.imageType(imageType));
+		gfx = target.createGraphics();
+		tiles = new StaticImage[Sheets.COLUMNS * Sheets.ROWS];
+		for(int i = 0; i < tiles.length; i++){
+			tiles[i] = StaticImage.build().loader(ldr)
+					.imgCol(i % Sheets.COLUMNS).imgRow(i / Sheets.COLUMNS)
+					.xPos(i % 20).yPos((i / 20) % 15)
+					.create();
+		}
+	}
+	
+	@TearDown
+	public void tearDown(){
+		gfx.dispose();
+	}
+	
+	@Benchmark
+	public void paintTile(){
+		tiles[next++ & (tiles.length - 1)].paint(gfx);
+	}
+}
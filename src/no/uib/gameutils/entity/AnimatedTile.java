@@ -0,0 +1,157 @@
+package no.uib.gameutils.entity;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import no.uib.gameutils.entity.type.MoveListener;
+import no.uib.gameutils.entity.type.Tile;
+import no.uib.gameutils.position.Position2D;
+
+/**
+ * A {@link Tile} that shows an {@link Animation}.
+ * 
+ * The tile doesn't tick. The animation's {@link AnimationClock} has already worked out the frame,
+ * so painting is an array lookup and a drawImage, just like {@link StaticImage}.
+ * Each tile can be some number of frames ahead of the animation, so tiles showing the same animation don't all move in step.
+ * Frames that aren't the size of a tile are painted centred on the tile's cell, as {@link StaticImage} does.
+ * 
+ * Like {@link StaticImage}, AnimatedTile supports {@link MoveListener}s, which are told every time it is moved with
+ * {@link #setX(int)}, {@link #setY(int)} or {@link #setPosition(Position2D)}.
+ * Caches that bake tiles keep track of the frames they baked with a {@link FrameSnapshot}.
+ */
+public class AnimatedTile implements Tile {
+	private static final MoveListener[] NO_LISTENERS = new MoveListener[0];
+	
+	private final Animation ANIMATION;
+	private final int PHASE;
+	private final int tileWidth, tileHeight;
+	private int xPos, yPos;
+	private MoveListener[] listeners = NO_LISTENERS;
+	
+	/**
+	 * @param animation the animation to show, may not be null.
+	 * @param phase how many frames ahead of the animation this tile is. May be negative.
+	 * @param tileWidth the width of a tile in pixels.
+	 * @param tileHeight the height of a tile in pixels.
+	 * @param xPos the column of the tile.
+	 * @param yPos the row of the tile.
+	 */
+	public AnimatedTile(Animation animation, int phase, int tileWidth, int tileHeight, int xPos, int yPos){
+		if(null == animation){
+			throw new IllegalArgumentException("Argument \"animation\" may not be null.");
+		}
+		this.ANIMATION = animation;
+		this.PHASE = phase;
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		this.xPos = xPos;
+		this.yPos = yPos;
+	}
+	
+	public Animation getAnimation(){
+		return ANIMATION;
+	}
+	
+	/**
+	 * @return the width of a tile in pixels.
+	 */
+	public int tileWidth(){
+		return tileWidth;
+	}
+	
+	/**
+	 * @return the height of a tile in pixels.
+	 */
+	public int tileHeight(){
+		return tileHeight;
+	}
+	
+	/**
+	 * @return true if this tile shows a new frame since the last tick of the clock.
+	 */
+	public boolean changed(){
+		return ANIMATION.changed();
+	}
+
+	@Override
+	public void paint(Graphics gfx) {
+		BufferedImage image = PHASE == 0 ? ANIMATION.image() : ANIMATION.image(PHASE);
+		gfx.drawImage(image, xPos * tileWidth + (tileWidth - image.getWidth()) / 2, yPos * tileHeight + (tileHeight - image.getHeight()) / 2, null);
+	}
+
+	@Override
+	public int xPos() {
+		return xPos;
+	}
+
+	@Override
+	public int yPos() {
+		return yPos;
+	}
+
+	@Override
+	public Position2D position() {
+		return new Position2D(xPos, yPos);
+	}
+
+	@Override
+	public void setX(int x) {
+		int oldX = xPos;
+		this.xPos = x;
+		fireMoved(oldX, yPos);
+	}
+
+	@Override
+	public void setY(int y) {
+		int oldY = yPos;
+		this.yPos = y;
+		fireMoved(xPos, oldY);
+	}
+
+	@Override
+	public void setPosition(Position2D position) {
+		int oldX = xPos, oldY = yPos;
+		this.xPos = position.getX();
+		this.yPos = position.getY();
+		fireMoved(oldX, oldY);
+	}
+	
+	/**
+	 * Adds a {@link MoveListener} that will be told every time this AnimatedTile moves.
+	 * @param listener the listener, may not be null.
+	 */
+	public void addMoveListener(MoveListener listener){
+		if(null == listener){
+			throw new IllegalArgumentException("Argument \"listener\" may not be null.");
+		}
+		MoveListener[] grown = Arrays.copyOf(listeners, listeners.length + 1);
+		grown[listeners.length] = listener;
+		listeners = grown;
+	}
+	
+	/**
+	 * Removes a {@link MoveListener}. Does nothing if it was never added.
+	 * @param listener the listener to remove.
+	 */
+	public void removeMoveListener(MoveListener listener){
+		for(int i = 0; i < listeners.length; i++){
+			if(listeners[i] == listener){
+				MoveListener[] shrunk = new MoveListener[listeners.length - 1];
+				System.arraycopy(listeners, 0, shrunk, 0, i);
+				System.arraycopy(listeners, i + 1, shrunk, i, listeners.length - i - 1);
+				listeners = shrunk.length == 0 ? NO_LISTENERS : shrunk;
+				return;
+			}
+		}
+	}
+	
+	private void fireMoved(int oldX, int oldY){
+		if(oldX == xPos && oldY == yPos){
+			return;
+		}
+		for(MoveListener listener : listeners){
+			listener.moved(this, oldX, oldY);
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package no.uib.gameutils.entity;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import no.uib.gameutils.sprite.SpriteHandle;
+import no.uib.gameutils.sprite.SpriteLoader;
+
+/**
+ * An Animation is a sequence of tiles from a {@link SpriteLoader}, each shown for the same amount of time.
+ * 
+ * An animation doesn't keep time on its own. It's added to an {@link AnimationClock}, which works out the current frame
+ * of every animation once per tick. Every {@link AnimatedTile} showing the animation reads that frame,
+ * so a thousand torches cost one frame calculation, not a thousand.
+ * 
+ * Tiles can be shifted some number of frames ahead with a phase offset, so neighbouring torches don't flicker in lockstep.
+ * 
+ * The frames are looked up when the animation is created. If the {@link SpriteLoader} is a {@link SpriteHandle} that is still loading,
+ * they are placeholders until the sheet arrives, and then they are looked up again.
+ */
+public class Animation {
+	private volatile BufferedImage[] frames;
+	private final long FRAME_MILLIS;
+	private final boolean LOOPS;
+	int current;
+	boolean changed;
+	
+	private Animation(BufferedImage[] frames, long frameMillis, boolean loops){
+		this.frames = frames;
+		this.FRAME_MILLIS = frameMillis;
+		this.LOOPS = loops;
+	}
+	
+	/**
+	 * Works out the frame at a point in time, and remembers if it changed.
+	 * @param millis the time since the clock started.
+	 * @return true if the frame changed.
+	 */
+	boolean update(long millis){
+		long frame = millis / FRAME_MILLIS;
+		int n = frames.length;
+		int next = LOOPS ? (int) (frame % n) : (int) Math.min(frame, n - 1);
+		changed = next != current;
+		current = next;
+		return changed;
+	}
+	
+	/**
+	 * @return the current frame.
+	 */
+	public BufferedImage image(){
+		return frames[current];
+	}
+	
+	/**
+	 * @param phase how many frames ahead of the animation to be. May be negative.
+	 * @return the frame phase frames ahead of the current one. A looping animation wraps around,
+	 * one that doesn't loop stops at its first and last frames.
+	 */
+	public BufferedImage image(int phase){
+		BufferedImage[] frames = this.frames;
+		int n = frames.length;
+		if(!LOOPS){
+			return frames[(int) Math.max(0, Math.min(n - 1, (long) current + phase))];
+		}
+		return frames[((current + phase) % n + n) % n];
+	}
+	
+	/**
+	 * @return the index of the current frame.
+	 */
+	public int currentFrame(){
+		return current;
+	}
+	
+	/**
+	 * @return true if the frame changed in the last tick of the clock.
+	 */
+	public boolean changed(){
+		return changed;
+	}
+	
+	public int numFrames(){
+		return frames.length;
+	}
+	
+	public long frameMillis(){
+		return FRAME_MILLIS;
+	}
+	
+	public static AnimationBuilder build(){
+		return new AnimationBuilder();
+	}
+	
+	public static class AnimationBuilder {
+		private SpriteLoader ldr;
+		private final List<int[]> frames = new ArrayList<>();
+		private long frameMillis;
+		private boolean loops;
+		
+		public AnimationBuilder(){
+			ldr = null;
+			frameMillis = 100;
+			loops = true;
+		}
+		
+		/**
+		 * Sets the {@link SpriteLoader} the frames come from.
+		 * @param loader the {@link SpriteLoader}, may not be null
+		 * @return this {@link AnimationBuilder} so you can chain calls.
+		 */
+		public AnimationBuilder loader(SpriteLoader loader){
+			if(null == loader){
+				throw new IllegalArgumentException("Argument \"loader\" may not be null.");
+			}
+			this.ldr = loader;
+			return this;
+		}
+		
+		/**
+		 * Adds one frame to the end of the animation.
+		 * @param imgCol the column of the frame in the {@link SpriteLoader}.
+		 * @param imgRow the row of the frame in the {@link SpriteLoader}.
+		 * @return this {@link AnimationBuilder} so you can chain calls.
+		 */
+		public AnimationBuilder frame(int imgCol, int imgRow){
+			if(imgCol < 0 || imgRow < 0){
+				throw new IllegalArgumentException(String.format("Illegal frame specified, column and row must be non-negative (yours was %d, %d)", imgCol, imgRow));
+			}
+			frames.add(new int[]{imgCol, imgRow});
+			return this;
+		}
+		
+		/**
+		 * Adds a run of frames that lie next to each other on a row.
+		 * @param imgRow the row of the frames.
+		 * @param firstCol the column of the first frame.
+		 * @param count the number of frames.
+		 * @return this {@link AnimationBuilder} so you can chain calls.
+		 */
+		public AnimationBuilder frames(int imgRow, int firstCol, int count){
+			for(int i = 0; i < count; i++){
+				frame(firstCol + i, imgRow);
+			}
+			return this;
+		}
+		
+		/**
+		 * Sets how long each frame is shown. Default is 100 milliseconds.
+		 * @param frameMillis the time in milliseconds, must be positive.
+		 * @return this {@link AnimationBuilder} so you can chain calls.
+		 */
+		public AnimationBuilder frameMillis(long frameMillis){
+			if(frameMillis < 1){
+				throw new IllegalArgumentException(String.format("frameMillis must be a positive number! (was %d)", frameMillis));
+			}
+			this.frameMillis = frameMillis;
+			return this;
+		}
+		
+		/**
+		 * Sets whether the animation starts over after the last frame, or stays on it. Default is to loop.
+		 * @param loops true to loop.
+		 * @return this {@link AnimationBuilder} so you can chain calls.
+		 */
+		public AnimationBuilder loops(boolean loops){
+			this.loops = loops;
+			return this;
+		}
+		
+		/**
+		 * Creates the animation and adds it to a clock.
+		 * @param clock the clock that drives the animation, may not be null.
+		 * @return a new instance of {@link Animation}
+		 * @throws IllegalStateException if no {@link SpriteLoader} is set, or there are no frames.
+		 */
+		public Animation create(AnimationClock clock){
+			if(null == clock){
+				throw new IllegalArgumentException("Argument \"clock\" may not be null.");
+			}
+			if(null == ldr){
+				throw new IllegalStateException("No SpriteLoader set");
+			}
+			if(frames.isEmpty()){
+				throw new IllegalStateException("No frames added");
+			}
+			final SpriteLoader loader = ldr;
+			final int[][] cells = frames.toArray(new int[frames.size()][]);
+			/* Checked before the frames are looked up: a sheet that arrives in the meantime still gets them looked up again. */
+			boolean loading = SpriteHandle.isLoading(loader);
+			final Animation animation = new Animation(imagesOf(loader, cells), frameMillis, loops);
+			if(loading){
+				((SpriteHandle) loader).future().thenRun(new Runnable(){
+					@Override
+					public void run() {
+						animation.frames = imagesOf(loader, cells);
+					}
+				});
+			}
+			clock.add(animation);
+			return animation;
+		}
+		
+		private static BufferedImage[] imagesOf(SpriteLoader loader, int[][] cells){
+			BufferedImage[] images = new BufferedImage[cells.length];
+			for(int i = 0; i < images.length; i++){
+				images[i] = loader.getImage(cells[i][0], cells[i][1]);
+			}
+			return images;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package no.uib.gameutils.entity;
+
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import no.uib.gameutils.entity.type.Tickable;
+
+/**
+ * An AnimationClock keeps the time for a set of {@link Animation}s, and works out their current frames once per tick.
+ * 
+ * Tick it from the game loop, and every {@link AnimatedTile} is up to date without ticking any of them.
+ * Each tick moves the clock ahead by a fixed number of milliseconds, so animations stay in step with the simulation.
+ * 
+ * {@link no.uib.gameutils.map.ChunkCache ChunkCache} and static {@link no.uib.gameutils.scene.Layer Layer}s bake again
+ * only the images that show an animation that has changed frame, on their own, with a {@link FrameSnapshot} per image.
+ * Other code can ask {@link #changedAnimations()} or register a {@link Listener} to find out which animations changed frame.
+ */
+public class AnimationClock implements Tickable {
+	
+	/**
+	 * Told whenever an animation shows a new frame.
+	 */
+	public interface Listener {
+		public void frameChanged(Animation animation);
+	}
+	
+	private final long MILLIS_PER_TICK;
+	private Animation[] animations = new Animation[16];
+	private Animation[] changed = new Animation[16];
+	private int size, changedCount;
+	private long millis;
+	private final CopyOnWriteArrayList<Listener> LISTENERS = new CopyOnWriteArrayList<>();
+	
+	/**
+	 * @param millisPerTick how far each tick moves the clock, in milliseconds. Must be positive. At 60 ticks per second, that's 16 or 17.
+	 */
+	public AnimationClock(long millisPerTick){
+		if(millisPerTick < 1){
+			throw new IllegalArgumentException(String.format("millisPerTick must be a positive number! (was %d)", millisPerTick));
+		}
+		this.MILLIS_PER_TICK = millisPerTick;
+	}
+	
+	void add(Animation animation){
+		if(size == animations.length){
+			animations = Arrays.copyOf(animations, size * 2);
+			changed = Arrays.copyOf(changed, size * 2);
+		}
+		animations[size++] = animation;
+		animation.update(millis);
+	}
+	
+	/**
+	 * Stops driving an animation. Tiles showing it will be stuck on its current frame.
+	 * @return true if the animation was driven by this clock.
+	 */
+	public boolean remove(Animation animation){
+		for(int i = 0; i < size; i++){
+			if(animations[i] == animation){
+				animations[i] = animations[--size];
+				animations[size] = null;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Moves the clock ahead one tick.
+	 */
+	@Override
+	public void tick() {
+		advance(MILLIS_PER_TICK);
+	}
+	
+	/**
+	 * Moves the clock ahead, and updates every animation.
+	 * @param millis how far to move the clock, in milliseconds. May not be negative.
+	 */
+	public void advance(long millis){
+		if(millis < 0){
+			throw new IllegalArgumentException(String.format("millis may not be negative! (was %d)", millis));
+		}
+		this.millis += millis;
+		changedCount = 0;
+		for(int i = 0; i < size; i++){
+			Animation animation = animations[i];
+			if(animation.update(this.millis)){
+				changed[changedCount++] = animation;
+			}
+		}
+		if(!LISTENERS.isEmpty()){
+			for(int i = 0; i < changedCount; i++){
+				for(Listener listener : LISTENERS){
+					listener.frameChanged(changed[i]);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return the time on the clock, in milliseconds.
+	 */
+	public long millis(){
+		return millis;
+	}
+	
+	/**
+	 * @return how many animations changed frame in the last tick.
+	 */
+	public int changedCount(){
+		return changedCount;
+	}
+	
+	/**
+	 * @param i from 0 to {@link #changedCount()} - 1.
+	 * @return one of the animations that changed frame in the last tick.
+	 */
+	public Animation changedAnimation(int i){
+		return changed[i];
+	}
+	
+	/**
+	 * @return a copy of the animations that changed frame in the last tick.
+	 */
+	public Animation[] changedAnimations(){
+		return Arrays.copyOf(changed, changedCount);
+	}
+	
+	public void addListener(Listener listener){
+		if(null == listener){
+			throw new IllegalArgumentException("Argument \"listener\" may not be null.");
+		}
+		LISTENERS.add(listener);
+	}
+	
+	public void removeListener(Listener listener){
+		LISTENERS.remove(listener);
+	}
+}
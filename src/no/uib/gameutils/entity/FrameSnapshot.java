@@ -0,0 +1,72 @@
+package no.uib.gameutils.entity;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * A FrameSnapshot remembers which frame some {@link Animation}s were on, so a cache that baked {@link AnimatedTile}s
+ * into an image can tell when the image is out of date, and bake only that image again.
+ * 
+ * {@link no.uib.gameutils.map.ChunkCache ChunkCache} and static {@link no.uib.gameutils.scene.Layer Layer}s keep one per baked image:
+ * it's cleared before baking, every animated tile painted is recorded, and {@link #changed()} is asked before the image is drawn.
+ * The image of the frame is remembered along with its number, so an animation whose frames are looked up again
+ * once its sheet has loaded counts as changed too.
+ * There are usually only a few animations in one image, so they're kept in a plain array.
+ */
+public class FrameSnapshot {
+	private Animation[] animations = new Animation[4];
+	private int[] frames = new int[4];
+	private BufferedImage[] images = new BufferedImage[4];
+	private int size;
+	
+	/**
+	 * Forgets every animation.
+	 */
+	public void clear(){
+		Arrays.fill(animations, 0, size, null);
+		Arrays.fill(images, 0, size, null);
+		size = 0;
+	}
+	
+	/**
+	 * Remembers the frame an animation is on now. Recording the same animation twice keeps one entry.
+	 * @param animation the animation, may not be null.
+	 */
+	public void record(Animation animation){
+		for(int i = 0; i < size; i++){
+			if(animations[i] == animation){
+				frames[i] = animation.currentFrame();
+				images[i] = animation.image();
+				return;
+			}
+		}
+		if(size == animations.length){
+			animations = Arrays.copyOf(animations, size * 2);
+			frames = Arrays.copyOf(frames, size * 2);
+			images = Arrays.copyOf(images, size * 2);
+		}
+		animations[size] = animation;
+		frames[size] = animation.currentFrame();
+		images[size] = animation.image();
+		size++;
+	}
+	
+	/**
+	 * @return true if any of the animations is on another frame than when it was recorded.
+	 */
+	public boolean changed(){
+		for(int i = 0; i < size; i++){
+			if(animations[i].currentFrame() != frames[i] || animations[i].image() != images[i]){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return how many animations are remembered.
+	 */
+	public int size(){
+		return size;
+	}
+}
@@ -2,20 +2,42 @@ package no.uib.gameutils.entity;
 
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
 
+import no.uib.gameutils.entity.type.MoveListener;
 import no.uib.gameutils.entity.type.Tile;
 import no.uib.gameutils.position.Position2D;
+import no.uib.gameutils.sprite.SpriteHandle;
 import no.uib.gameutils.sprite.SpriteLoader;
 
+/**
+ * A {@link Tile} that always paints the same image from a {@link SpriteLoader}.
+ * 
+ * If the {@link SpriteLoader} is a {@link SpriteHandle} that is still loading, the placeholder is painted until the sheet is ready.
+ * An image that isn't the size of a tile is painted centred on the tile's cell.
+ * 
+ * StaticImage supports {@link MoveListener}s, which are told every time it is moved with
+ * {@link #setX(int)}, {@link #setY(int)} or {@link #setPosition(Position2D)}.
+ */
 public class StaticImage implements Tile {
-	private final BufferedImage IMAGE;
+	private static final MoveListener[] NO_LISTENERS = new MoveListener[0];
+	
+	private BufferedImage image;
+	private SpriteHandle pending;
+	private final int IMG_COL, IMG_ROW;
 	private int xPos, yPos;
 	private int tileWidth, tileHeight;
-
+	private MoveListener[] listeners = NO_LISTENERS;
 
 
 	public StaticImage(SpriteLoader ldr, int imgCol, int imgRow, int xPos, int yPos){
-		this.IMAGE = ldr.getImage(imgCol, imgRow);
+		this.IMG_COL = imgCol;
+		this.IMG_ROW = imgRow;
+		/* Checked before the image is fetched, so a sheet that arrives in between still replaces the placeholder. */
+		if(ldr instanceof SpriteHandle && !((SpriteHandle) ldr).isReady()){
+			this.pending = (SpriteHandle) ldr;
+		}
+		this.image = ldr.getImage(imgCol, imgRow);
 		this.xPos = xPos;
 		this.yPos = yPos;
 		this.tileHeight = ldr.tileHeight();
@@ -24,7 +46,12 @@ public class StaticImage implements Tile {
 
 	@Override
 	public void paint(Graphics gfx) {
-		gfx.drawImage(IMAGE, xPos * tileWidth, yPos * tileWidth, null);
+		if(null != pending && pending.isReady()){
+			image = pending.getImage(IMG_COL, IMG_ROW);
+			pending = null;
+		}
+		// An image of another size than the cell, like a scaled tile from a TransformCache view, is centred on the cell.
+		gfx.drawImage(image, xPos * tileWidth + (tileWidth - image.getWidth()) / 2, yPos * tileHeight + (tileHeight - image.getHeight()) / 2, null);
 	}
 
 	@Override
@@ -34,7 +61,7 @@ public class StaticImage implements Tile {
 
 	@Override
 	public int yPos() {
-		return yPos();
+		return yPos;
 	}
 
 	@Override
@@ -44,18 +71,70 @@ public class StaticImage implements Tile {
 
 	@Override
 	public void setX(int x) {
+		int oldX = xPos;
 		this.xPos = x;
+		fireMoved(oldX, yPos);
 	}
 
 	@Override
 	public void setY(int y) {
+		int oldY = yPos;
 		this.yPos = y;
+		fireMoved(xPos, oldY);
 	}
 
 	@Override
 	public void setPosition(Position2D position) {
+		int oldX = xPos, oldY = yPos;
 		this.xPos = position.getX();
 		this.yPos = position.getY();
+		fireMoved(oldX, oldY);
+	}
+	
+	/**
+	 * @return true if this StaticImage paints a placeholder because its sheet is still loading.
+	 * Once this turns false, the next paint is the real tile (or the placeholder for good, if loading failed).
+	 */
+	public boolean isPending(){
+		return null != pending && !pending.isDone();
+	}
+	
+	/**
+	 * Adds a {@link MoveListener} that will be told every time this StaticImage moves.
+	 * @param listener the listener, may not be null.
+	 */
+	public void addMoveListener(MoveListener listener){
+		if(null == listener){
+			throw new IllegalArgumentException("Argument \"listener\" may not be null.");
+		}
+		MoveListener[] grown = Arrays.copyOf(listeners, listeners.length + 1);
+		grown[listeners.length] = listener;
+		listeners = grown;
+	}
+	
+	/**
+	 * Removes a {@link MoveListener}. Does nothing if it was never added.
+	 * @param listener the listener to remove.
+	 */
+	public void removeMoveListener(MoveListener listener){
+		for(int i = 0; i < listeners.length; i++){
+			if(listeners[i] == listener){
+				MoveListener[] shrunk = new MoveListener[listeners.length - 1];
+				System.arraycopy(listeners, 0, shrunk, 0, i);
+				System.arraycopy(listeners, i + 1, shrunk, i, listeners.length - i - 1);
+				listeners = shrunk.length == 0 ? NO_LISTENERS : shrunk;
+				return;
+			}
+		}
+	}
+	
+	private void fireMoved(int oldX, int oldY){
+		if(oldX == xPos && oldY == yPos){
+			return;
+		}
+		for(MoveListener listener : listeners){
+			listener.moved(this, oldX, oldY);
+		}
 	}
 
 	public static StaticImageBuilder build(){
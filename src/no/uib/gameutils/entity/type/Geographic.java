@@ -1,5 +1,6 @@
 package no.uib.gameutils.entity.type;
 
+import no.uib.gameutils.position.Coordinate;
 import no.uib.gameutils.position.Position2D;
 
 /**
@@ -41,6 +42,27 @@ public interface Geographic {
 	 */
 	public Position2D position();
 	
+	/**
+	 * Like {@link #position()}, but writes the coordinates into a position you already have instead of making a new one.
+	 * Use this in code that runs every frame or every tick, where {@link #position()} would leave garbage behind.
+	 * @param into the position to write to, may not be null.
+	 * @return into, so you can chain calls.
+	 */
+	public default Position2D position(Position2D into){
+		into.x = xPos();
+		into.y = yPos();
+		return into;
+	}
+	
+	/**
+	 * The position packed into a single long, without allocating anything.
+	 * Unpack it with {@link Coordinate#x(long)} and {@link Coordinate#y(long)}, or use it directly as a key.
+	 * @return the coordinates of the Geographic entity, packed with {@link Coordinate#pack(int, int)}.
+	 */
+	public default long packedPosition(){
+		return Coordinate.pack(xPos(), yPos());
+	}
+	
 	/**
 	 * Sets the horizontal position to a tile on the map.
 	 * Negative numbers may or may not be allowed, this depends on the implementing classes view of the world,
@@ -0,0 +1,20 @@
+package no.uib.gameutils.entity.type;
+
+/**
+ * An InterpolatedPaintable is a {@link TopLevelPaintable} that wants to know how far along we are
+ * between the last simulation tick and the next one.
+ * 
+ * A game loop that runs its simulation at a fixed rate will usually paint at some other rate,
+ * so a frame will most often land somewhere between two ticks.
+ * Painting the entities at their last ticked positions makes movement look jerky,
+ * but if you know how far between two ticks you are, you can blend the previous and the current state. 
+ */
+public interface InterpolatedPaintable extends TopLevelPaintable {
+	
+	/**
+	 * Renders an entire frame, just like {@link TopLevelPaintable#paint()}.
+	 * @param alpha how far we are between the last tick and the next one. Always in the range [0, 1).
+	 * 0 means we're exactly at the last tick, 0.5 means we're halfway to the next one.
+	 */
+	public void paint(double alpha);
+}
@@ -0,0 +1,19 @@
+package no.uib.gameutils.entity.type;
+
+/**
+ * A MoveListener is told when a {@link Geographic} entity has changed its position.
+ * 
+ * This is how caches and indexes that sort entities by where they are keep up when the entities move.
+ * Entities that support listeners say so in their documentation. Listeners are called on the thread that moved the entity,
+ * after the position has been changed.
+ */
+public interface MoveListener {
+	
+	/**
+	 * Called after an entity has moved.
+	 * @param entity the entity that moved. {@link Geographic#xPos()} and {@link Geographic#yPos()} give the new position.
+	 * @param oldX the column the entity was in before it moved.
+	 * @param oldY the row the entity was in before it moved.
+	 */
+	public void moved(Geographic entity, int oldX, int oldY);
+}
@@ -0,0 +1,102 @@
+package no.uib.gameutils.input;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed-size ring of input events, written by one thread and read by another, without locks.
+ * 
+ * Events are five ints each, stored one after the other in a single int array, so writing one allocates nothing.
+ * The writer publishes an event by moving the head with a lazySet after the event is written,
+ * the reader frees it by moving the tail the same way once it's read.
+ * The writer keeps a plain copy of the tail, and only reads the real one when the copy says the ring is full.
+ * 
+ * When the ring is full new events are dropped and counted. Blocking the writer would block the event dispatch thread.
+ */
+class EventRing {
+	private static final int STRIDE = 5;
+	
+	private final int[] EVENTS;
+	private final int MASK;
+	private final AtomicLong HEAD = new AtomicLong();
+	private final AtomicLong TAIL = new AtomicLong();
+	private final AtomicLong DROPPED = new AtomicLong();
+	// Only touched by the writer.
+	private long cachedTail;
+	
+	/**
+	 * @param capacity how many events the ring holds. Rounded up to a power of two.
+	 */
+	EventRing(int capacity){
+		if(capacity < 1){
+			throw new IllegalArgumentException(String.format("capacity must be a positive number! (was %d)", capacity));
+		}
+		int size = Integer.highestOneBit(capacity);
+		if(size < capacity){
+			size <<= 1;
+		}
+		this.EVENTS = new int[size * STRIDE];
+		this.MASK = size - 1;
+	}
+	
+	/**
+	 * Writes an event. Only call this from the writing thread.
+	 * @return false if the ring was full and the event was dropped.
+	 */
+	boolean offer(int type, int code, int x, int y, int modifiers){
+		long head = HEAD.get();
+		if(head - cachedTail > MASK){
+			cachedTail = TAIL.get();
+			if(head - cachedTail > MASK){
+				DROPPED.incrementAndGet();
+				return false;
+			}
+		}
+		int i = (int) (head & MASK) * STRIDE;
+		EVENTS[i] = type;
+		EVENTS[i + 1] = code;
+		EVENTS[i + 2] = x;
+		EVENTS[i + 3] = y;
+		EVENTS[i + 4] = modifiers;
+		HEAD.lazySet(head + 1);
+		return true;
+	}
+	
+	/**
+	 * The sequence number of the next event the writer will write. Every event before it, and from {@link #tail()}, can be read.
+	 * Only call this from the reading thread.
+	 */
+	long head(){
+		return HEAD.get();
+	}
+	
+	/**
+	 * The sequence number of the oldest event not yet released.
+	 */
+	long tail(){
+		return TAIL.get();
+	}
+	
+	/**
+	 * Reads one field of an event. Only call this from the reading thread, and only for events between {@link #tail()} and {@link #head()}.
+	 * @param sequence the sequence number of the event.
+	 * @param field 0 for the type, then code, x, y and modifiers.
+	 */
+	int get(long sequence, int field){
+		return EVENTS[(int) (sequence & MASK) * STRIDE + field];
+	}
+	
+	/**
+	 * Gives every event before the sequence number back to the writer.
+	 */
+	void release(long sequence){
+		TAIL.lazySet(sequence);
+	}
+	
+	int capacity(){
+		return MASK + 1;
+	}
+	
+	long dropped(){
+		return DROPPED.get();
+	}
+}
@@ -0,0 +1,332 @@
+package no.uib.gameutils.input;
+
+import java.awt.Component;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.util.Arrays;
+
+import no.uib.gameutils.entity.type.Tickable;
+
+/**
+ * Input carries keyboard and mouse events from the event dispatch thread to the game loop.
+ * 
+ * The listeners only write the event into a preallocated ring and return, so the event dispatch thread never touches
+ * the game, and the game never needs a lock. Nothing is allocated per event, apart from the event AWT already made.
+ * 
+ * Tick the Input first thing in every tick. It drains every event that has arrived, in order,
+ * updates the key and button state, and hands the events to the {@link InputVisitor} if there is one.
+ * After that the rest of the tick can poll {@link #isKeyDown(int)}, {@link #wasKeyPressed(int)} and friends,
+ * and all of them agree with each other for the whole tick. An event is seen in the first tick that starts after it happened.
+ * 
+ * If more events arrive in one tick than the ring holds, the newest are dropped and counted in {@link #droppedEvents()}.
+ */
+public class Input implements Tickable, KeyListener, MouseListener, MouseMotionListener, MouseWheelListener {
+	public static final int KEY_PRESSED = 1;
+	public static final int KEY_RELEASED = 2;
+	public static final int KEY_TYPED = 3;
+	public static final int MOUSE_PRESSED = 4;
+	public static final int MOUSE_RELEASED = 5;
+	public static final int MOUSE_MOVED = 6;
+	public static final int MOUSE_WHEEL = 7;
+	
+	public static final int DEFAULT_CAPACITY = 1024;
+	
+	private static final int KEY_CODES = 1 << 16;
+	private static final int BUTTONS = 64;
+	
+	private final EventRing RING;
+	private final long[] KEYS_DOWN = new long[KEY_CODES / 64];
+	private final long[] KEYS_PRESSED = new long[KEY_CODES / 64];
+	private final long[] KEYS_RELEASED = new long[KEY_CODES / 64];
+	private long buttonsDown, buttonsPressed, buttonsReleased;
+	private int mouseX, mouseY, wheel, eventsLastTick;
+	private boolean keyEdges;
+	private InputVisitor visitor;
+	
+	public Input(){
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * @param capacity how many events can wait between two ticks. Rounded up to a power of two.
+	 */
+	public Input(int capacity){
+		this.RING = new EventRing(capacity);
+	}
+	
+	/**
+	 * Listens to the keyboard and mouse on a component, typically the {@link no.uib.gameutils.window.GameCanvas GameCanvas}.
+	 * Makes the component focusable and lets it keep the tab key, so every key reaches the game.
+	 * Only attach to components on the same event dispatch thread.
+	 * @param component the component, may not be null.
+	 */
+	public void attach(Component component){
+		if(null == component){
+			throw new IllegalArgumentException("Argument \"component\" may not be null.");
+		}
+		component.setFocusable(true);
+		component.setFocusTraversalKeysEnabled(false);
+		component.addKeyListener(this);
+		component.addMouseListener(this);
+		component.addMouseMotionListener(this);
+		component.addMouseWheelListener(this);
+	}
+	
+	/**
+	 * Stops listening to a component.
+	 * @param component the component, may not be null.
+	 */
+	public void detach(Component component){
+		if(null == component){
+			throw new IllegalArgumentException("Argument \"component\" may not be null.");
+		}
+		component.removeKeyListener(this);
+		component.removeMouseListener(this);
+		component.removeMouseMotionListener(this);
+		component.removeMouseWheelListener(this);
+	}
+	
+	/**
+	 * Sets who is shown the events as they are drained.
+	 * @param visitor the visitor, or null for none.
+	 */
+	public void setVisitor(InputVisitor visitor){
+		this.visitor = visitor;
+	}
+	
+	/**
+	 * Drains the events that arrived since the last tick, and updates the state.
+	 * Call this from the game loop, before anything that reads input.
+	 */
+	@Override
+	public void tick() {
+		if(keyEdges){
+			Arrays.fill(KEYS_PRESSED, 0);
+			Arrays.fill(KEYS_RELEASED, 0);
+			keyEdges = false;
+		}
+		buttonsPressed = buttonsReleased = 0;
+		wheel = 0;
+		
+		long tail = RING.tail();
+		long head = RING.head();
+		InputVisitor visitor = this.visitor;
+		for(long seq = tail; seq < head; seq++){
+			int type = RING.get(seq, 0);
+			int code = RING.get(seq, 1);
+			int x = RING.get(seq, 2);
+			int y = RING.get(seq, 3);
+			int modifiers = RING.get(seq, 4);
+			apply(type, code, x, y);
+			if(null != visitor){
+				visitor.event(type, code, x, y, modifiers);
+			}
+		}
+		RING.release(head);
+		eventsLastTick = (int) (head - tail);
+	}
+	
+	private void apply(int type, int code, int x, int y){
+		switch(type){
+		case KEY_PRESSED:
+			if(code >= 0 && code < KEY_CODES){
+				long bit = 1L << code;
+				if((KEYS_DOWN[code >>> 6] & bit) == 0){
+					KEYS_PRESSED[code >>> 6] |= bit;
+					keyEdges = true;
+				}
+				KEYS_DOWN[code >>> 6] |= bit;
+			}
+			break;
+		case KEY_RELEASED:
+			if(code >= 0 && code < KEY_CODES){
+				long bit = 1L << code;
+				KEYS_RELEASED[code >>> 6] |= bit;
+				keyEdges = true;
+				KEYS_DOWN[code >>> 6] &= ~bit;
+			}
+			break;
+		case MOUSE_PRESSED:
+			mouseX = x;
+			mouseY = y;
+			if(code >= 0 && code < BUTTONS){
+				buttonsPressed |= 1L << code;
+				buttonsDown |= 1L << code;
+			}
+			break;
+		case MOUSE_RELEASED:
+			mouseX = x;
+			mouseY = y;
+			if(code >= 0 && code < BUTTONS){
+				buttonsReleased |= 1L << code;
+				buttonsDown &= ~(1L << code);
+			}
+			break;
+		case MOUSE_MOVED:
+			mouseX = x;
+			mouseY = y;
+			break;
+		case MOUSE_WHEEL:
+			mouseX = x;
+			mouseY = y;
+			wheel += code;
+			break;
+		default:
+			break;
+		}
+	}
+	
+	/**
+	 * @param keyCode a key code, like {@link KeyEvent#VK_SPACE}.
+	 * @return true if the key is held down.
+	 */
+	public boolean isKeyDown(int keyCode){
+		return test(KEYS_DOWN, keyCode);
+	}
+	
+	/**
+	 * @param keyCode a key code, like {@link KeyEvent#VK_SPACE}.
+	 * @return true if the key went down since the last tick. Key repeat doesn't count.
+	 */
+	public boolean wasKeyPressed(int keyCode){
+		return test(KEYS_PRESSED, keyCode);
+	}
+	
+	/**
+	 * @param keyCode a key code, like {@link KeyEvent#VK_SPACE}.
+	 * @return true if the key was let go since the last tick.
+	 */
+	public boolean wasKeyReleased(int keyCode){
+		return test(KEYS_RELEASED, keyCode);
+	}
+	
+	private static boolean test(long[] bits, int code){
+		return code >= 0 && code < KEY_CODES && (bits[code >>> 6] & (1L << code)) != 0;
+	}
+	
+	/**
+	 * @param button a mouse button, like {@link MouseEvent#BUTTON1}.
+	 * @return true if the button is held down.
+	 */
+	public boolean isButtonDown(int button){
+		return button >= 0 && button < BUTTONS && (buttonsDown & (1L << button)) != 0;
+	}
+	
+	/**
+	 * @param button a mouse button, like {@link MouseEvent#BUTTON1}.
+	 * @return true if the button went down since the last tick.
+	 */
+	public boolean wasButtonPressed(int button){
+		return button >= 0 && button < BUTTONS && (buttonsPressed & (1L << button)) != 0;
+	}
+	
+	/**
+	 * @param button a mouse button, like {@link MouseEvent#BUTTON1}.
+	 * @return true if the button was let go since the last tick.
+	 */
+	public boolean wasButtonReleased(int button){
+		return button >= 0 && button < BUTTONS && (buttonsReleased & (1L << button)) != 0;
+	}
+	
+	/**
+	 * @return the horizontal position of the mouse in pixels, as of the last event.
+	 */
+	public int mouseX(){
+		return mouseX;
+	}
+	
+	/**
+	 * @return the vertical position of the mouse in pixels, as of the last event.
+	 */
+	public int mouseY(){
+		return mouseY;
+	}
+	
+	/**
+	 * @return how many clicks the mouse wheel turned since the last tick. Negative is up, or away from the user.
+	 */
+	public int wheelRotation(){
+		return wheel;
+	}
+	
+	/**
+	 * @return how many events the last tick drained.
+	 */
+	public int eventsLastTick(){
+		return eventsLastTick;
+	}
+	
+	/**
+	 * @return how many events have been dropped because the ring was full.
+	 */
+	public long droppedEvents(){
+		return RING.dropped();
+	}
+	
+	/**
+	 * @return how many events can wait between two ticks.
+	 */
+	public int capacity(){
+		return RING.capacity();
+	}
+	
+	// Everything below runs on the event dispatch thread, and only writes to the ring.
+
+	@Override
+	public void keyPressed(KeyEvent e) {
+		RING.offer(KEY_PRESSED, e.getKeyCode(), 0, 0, e.getModifiersEx());
+	}
+
+	@Override
+	public void keyReleased(KeyEvent e) {
+		RING.offer(KEY_RELEASED, e.getKeyCode(), 0, 0, e.getModifiersEx());
+	}
+
+	@Override
+	public void keyTyped(KeyEvent e) {
+		RING.offer(KEY_TYPED, e.getKeyChar(), 0, 0, e.getModifiersEx());
+	}
+
+	@Override
+	public void mousePressed(MouseEvent e) {
+		RING.offer(MOUSE_PRESSED, e.getButton(), e.getX(), e.getY(), e.getModifiersEx());
+	}
+
+	@Override
+	public void mouseReleased(MouseEvent e) {
+		RING.offer(MOUSE_RELEASED, e.getButton(), e.getX(), e.getY(), e.getModifiersEx());
+	}
+
+	@Override
+	public void mouseMoved(MouseEvent e) {
+		RING.offer(MOUSE_MOVED, 0, e.getX(), e.getY(), e.getModifiersEx());
+	}
+
+	@Override
+	public void mouseDragged(MouseEvent e) {
+		RING.offer(MOUSE_MOVED, 0, e.getX(), e.getY(), e.getModifiersEx());
+	}
+
+	@Override
+	public void mouseWheelMoved(MouseWheelEvent e) {
+		RING.offer(MOUSE_WHEEL, e.getWheelRotation(), e.getX(), e.getY(), e.getModifiersEx());
+	}
+
+	@Override
+	public void mouseClicked(MouseEvent e) {
+		// Presses and releases are enough, clicks can be worked out from those.
+	}
+
+	@Override
+	public void mouseEntered(MouseEvent e) {
+	}
+
+	@Override
+	public void mouseExited(MouseEvent e) {
+	}
+}
@@ -0,0 +1,19 @@
+package no.uib.gameutils.input;
+
+/**
+ * An InputVisitor is shown every input event as {@link Input} drains them at the start of a tick,
+ * on the game loop's thread and in the order they happened.
+ * 
+ * Use it for things the polled state can't tell you, like text typed or the order of clicks.
+ */
+public interface InputVisitor {
+	/**
+	 * @param type one of the event types in {@link Input}, like {@link Input#KEY_PRESSED}.
+	 * @param code the key code for key presses and releases, the character for {@link Input#KEY_TYPED},
+	 * the button for mouse buttons, the clicks the wheel turned for {@link Input#MOUSE_WHEEL}, and 0 for mouse moves.
+	 * @param x the horizontal position of the mouse in pixels, for mouse events.
+	 * @param y the vertical position of the mouse in pixels, for mouse events.
+	 * @param modifiers the modifiers, as in {@link java.awt.event.InputEvent#getModifiersEx()}.
+	 */
+	public void event(int type, int code, int x, int y, int modifiers);
+}
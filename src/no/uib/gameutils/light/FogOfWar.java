@@ -0,0 +1,139 @@
+package no.uib.gameutils.light;
+
+/**
+ * FogOfWar remembers, for every tile in a rectangle of the map, whether the player has never seen it, has seen it before, or sees it now.
+ * 
+ * Hand it to a {@link LightLayer}, which paints unseen tiles black and seen ones dimmed.
+ * The layer only repaints the tiles that changed since the last {@link LightLayer#update()}, so revealing a little at a time is cheap.
+ * Like the rest of the map, the rectangle has an origin, so coordinates can be negative. Tiles outside it count as unseen.
+ */
+public class FogOfWar {
+	public static final byte UNSEEN = 0;
+	public static final byte SEEN = 1;
+	public static final byte VISIBLE = 2;
+	
+	private final int ORIGIN_X, ORIGIN_Y, WIDTH, HEIGHT;
+	private final byte[] STATES;
+	// The tiles changed since the layer last looked, inclusive, or minX > maxX if none.
+	private int minX, minY, maxX, maxY;
+	
+	/**
+	 * Creates fog where nothing has been seen.
+	 * @param originX the column of the leftmost tile.
+	 * @param originY the row of the topmost tile.
+	 * @param width the number of columns, must be positive.
+	 * @param height the number of rows, must be positive.
+	 */
+	public FogOfWar(int originX, int originY, int width, int height){
+		if(width < 1 || height < 1){
+			throw new IllegalArgumentException(String.format("Illegal size specified, width and height must be positive (yours was %d, %d)", width, height));
+		}
+		this.ORIGIN_X = originX;
+		this.ORIGIN_Y = originY;
+		this.WIDTH = width;
+		this.HEIGHT = height;
+		this.STATES = new byte[width * height];
+		clearChanges();
+	}
+	
+	/**
+	 * @return {@link #UNSEEN}, {@link #SEEN} or {@link #VISIBLE}. Tiles outside the fog are unseen.
+	 */
+	public byte get(int x, int y){
+		int lx = x - ORIGIN_X, ly = y - ORIGIN_Y;
+		if(lx < 0 || ly < 0 || lx >= WIDTH || ly >= HEIGHT){
+			return UNSEEN;
+		}
+		return STATES[ly * WIDTH + lx];
+	}
+	
+	/**
+	 * Sets the state of a tile. Tiles outside the fog are ignored.
+	 * @param state {@link #UNSEEN}, {@link #SEEN} or {@link #VISIBLE}.
+	 */
+	public void set(int x, int y, byte state){
+		int lx = x - ORIGIN_X, ly = y - ORIGIN_Y;
+		if(lx < 0 || ly < 0 || lx >= WIDTH || ly >= HEIGHT || STATES[ly * WIDTH + lx] == state){
+			return;
+		}
+		STATES[ly * WIDTH + lx] = state;
+		changed(x, y, x, y);
+	}
+	
+	/**
+	 * Makes every tile within a radius of a tile visible.
+	 * @param x the column of the centre.
+	 * @param y the row of the centre.
+	 * @param radius the radius, in tiles.
+	 */
+	public void reveal(int x, int y, int radius){
+		int r2 = radius * radius;
+		for(int dy = -radius; dy <= radius; dy++){
+			for(int dx = -radius; dx <= radius; dx++){
+				if(dx * dx + dy * dy <= r2){
+					set(x + dx, y + dy, VISIBLE);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Turns every visible tile into a seen one. Call this before revealing what's visible this turn.
+	 */
+	public void hideAll(){
+		for(int i = 0; i < STATES.length; i++){
+			if(STATES[i] == VISIBLE){
+				STATES[i] = SEEN;
+				changed(ORIGIN_X + i % WIDTH, ORIGIN_Y + i / WIDTH, ORIGIN_X + i % WIDTH, ORIGIN_Y + i / WIDTH);
+			}
+		}
+	}
+	
+	private void changed(int x0, int y0, int x1, int y1){
+		minX = Math.min(minX, x0);
+		minY = Math.min(minY, y0);
+		maxX = Math.max(maxX, x1);
+		maxY = Math.max(maxY, y1);
+	}
+	
+	boolean hasChanges(){
+		return minX <= maxX;
+	}
+	
+	int changedMinX(){
+		return minX;
+	}
+	
+	int changedMinY(){
+		return minY;
+	}
+	
+	int changedMaxX(){
+		return maxX;
+	}
+	
+	int changedMaxY(){
+		return maxY;
+	}
+	
+	void clearChanges(){
+		minX = minY = Integer.MAX_VALUE;
+		maxX = maxY = Integer.MIN_VALUE;
+	}
+	
+	public int getOriginX(){
+		return ORIGIN_X;
+	}
+	
+	public int getOriginY(){
+		return ORIGIN_Y;
+	}
+	
+	public int getWidth(){
+		return WIDTH;
+	}
+	
+	public int getHeight(){
+		return HEIGHT;
+	}
+}
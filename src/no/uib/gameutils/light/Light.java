@@ -0,0 +1,79 @@
+package no.uib.gameutils.light;
+
+/**
+ * A round light on a {@link LightLayer}, brightest in the middle and fading to nothing at its radius.
+ * 
+ * Positions and radii are in pixels, in the same coordinates the map is painted in.
+ * Changing a light only marks it; the layer works out the difference in the next {@link LightLayer#update()}.
+ * Make lights with {@link LightLayer#addLight(int, int, int, int)}.
+ */
+public class Light {
+	private final LightLayer LAYER;
+	int x, y, radius, intensity;
+	// What the layer's light map has added for this light, so it can be taken away again.
+	int appliedX, appliedY, appliedRadius, appliedIntensity;
+	boolean applied, removed, changed;
+	
+	Light(LightLayer layer, int x, int y, int radius, int intensity){
+		this.LAYER = layer;
+		this.x = x;
+		this.y = y;
+		this.radius = radius;
+		this.intensity = intensity;
+	}
+	
+	/**
+	 * Moves the light.
+	 * @param x the horizontal position of the centre, in pixels.
+	 * @param y the vertical position of the centre, in pixels.
+	 */
+	public void setPosition(int x, int y){
+		if(x != this.x || y != this.y){
+			this.x = x;
+			this.y = y;
+			LAYER.changed(this);
+		}
+	}
+	
+	/**
+	 * @param radius how far the light reaches, in pixels. May not be negative.
+	 */
+	public void setRadius(int radius){
+		if(radius < 0){
+			throw new IllegalArgumentException(String.format("radius may not be negative! (was %d)", radius));
+		}
+		if(radius != this.radius){
+			this.radius = radius;
+			LAYER.changed(this);
+		}
+	}
+	
+	/**
+	 * @param intensity how bright the light is in the middle, from 0 (off) to 255 (full daylight).
+	 */
+	public void setIntensity(int intensity){
+		if(intensity < 0 || intensity > 255){
+			throw new IllegalArgumentException(String.format("intensity must be between 0 and 255! (was %d)", intensity));
+		}
+		if(intensity != this.intensity){
+			this.intensity = intensity;
+			LAYER.changed(this);
+		}
+	}
+	
+	public int getX(){
+		return x;
+	}
+	
+	public int getY(){
+		return y;
+	}
+	
+	public int getRadius(){
+		return radius;
+	}
+	
+	public int getIntensity(){
+		return intensity;
+	}
+}
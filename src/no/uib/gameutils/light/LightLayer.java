@@ -0,0 +1,407 @@
+package no.uib.gameutils.light;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import no.uib.gameutils.entity.type.Paintable;
+
+/**
+ * A LightLayer darkens a rectangle of the map, except where {@link Light}s shine, and hides what the player hasn't seen ({@link FogOfWar}).
+ * 
+ * The darkness is worked out in software, straight into the int array behind a TYPE_INT_ARGB image, and painted over the frame
+ * with one drawImage. Each cell of that image covers a square of pixels; a cell size of 1 lights every pixel, a cell size of a tile
+ * lights whole tiles, and anything in between trades sharpness for speed. With {@link #setSmooth(boolean)} the cells are blended when painted.
+ * 
+ * How much light each cell gets is kept in a separate array, as the sum of what every light adds. When a light moves,
+ * {@link #update()} takes away what it added where it was, adds what it adds where it is, and works out the colour again only
+ * for the cells around it. Everything else is left alone. The work is split into bands of rows and run on a {@link ForkJoinPool}.
+ * Moving the layer, changing the ambient light or the fog settings makes the next update work out every cell.
+ * 
+ * Positions are in pixels, in the coordinates the map is painted in, so the layer can be painted as the foreground of a
+ * {@link no.uib.gameutils.window.Camera Camera} or right after the map in a scene.
+ * Call {@link #update()} and {@link #paint(Graphics)} from the same thread, the one that moves the lights.
+ */
+public class LightLayer implements Paintable {
+	public static final int DEFAULT_SEEN_DARKNESS = 160;
+	private static final int BAND_ROWS = 16;
+	
+	private final int CELL, COLS, ROWS;
+	private final BufferedImage IMAGE;
+	private final int[] PIXELS;
+	private final int[] LIGHT;
+	private final ForkJoinPool POOL;
+	private final List<Light> LIGHTS = new ArrayList<>();
+	private final List<Light> CHANGED = new ArrayList<>();
+	private final AtomicLong UPDATED = new AtomicLong();
+	
+	private Light[] lights = new Light[16];
+	private int lightCount;
+	private int originX, originY;
+	private int ambient;
+	private FogOfWar fog;
+	private int fogTileWidth, fogTileHeight;
+	private int seenDarkness = DEFAULT_SEEN_DARKNESS;
+	private boolean full = true, smooth;
+	// The cells the fog changed since the last update, or fogMinX > fogMaxX for none.
+	private int fogMinX, fogMinY, fogMaxX, fogMaxY;
+	private long lastUpdated;
+	
+	/**
+	 * Creates a layer that runs on the common {@link ForkJoinPool}.
+	 * @param width the width of the area lit, in pixels.
+	 * @param height the height of the area lit, in pixels.
+	 * @param cellSize the width and height of each cell of the light map, in pixels.
+	 */
+	public LightLayer(int width, int height, int cellSize){
+		this(width, height, cellSize, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * @param width the width of the area lit, in pixels.
+	 * @param height the height of the area lit, in pixels.
+	 * @param cellSize the width and height of each cell of the light map, in pixels.
+	 * @param pool the pool the bands are worked out on, may not be null.
+	 */
+	public LightLayer(int width, int height, int cellSize, ForkJoinPool pool){
+		if(width < 1 || height < 1){
+			throw new IllegalArgumentException(String.format("Illegal size specified, width and height must be positive (yours was %d, %d)", width, height));
+		}
+		if(cellSize < 1){
+			throw new IllegalArgumentException(String.format("cellSize must be a positive number! (was %d)", cellSize));
+		}
+		if(null == pool){
+			throw new IllegalArgumentException("Argument \"pool\" may not be null.");
+		}
+		this.CELL = cellSize;
+		this.COLS = (width + cellSize - 1) / cellSize;
+		this.ROWS = (height + cellSize - 1) / cellSize;
+		this.IMAGE = new BufferedImage(COLS, ROWS, BufferedImage.TYPE_INT_ARGB);
+		this.PIXELS = ((DataBufferInt) IMAGE.getRaster().getDataBuffer()).getData();
+		this.LIGHT = new int[COLS * ROWS];
+		this.POOL = pool;
+	}
+	
+	/**
+	 * Adds a light.
+	 * @param x the horizontal position of the centre, in pixels.
+	 * @param y the vertical position of the centre, in pixels.
+	 * @param radius how far the light reaches, in pixels. May not be negative.
+	 * @param intensity how bright the light is in the middle, from 0 (off) to 255 (full daylight).
+	 * @return the light, so you can move it.
+	 */
+	public Light addLight(int x, int y, int radius, int intensity){
+		if(radius < 0){
+			throw new IllegalArgumentException(String.format("radius may not be negative! (was %d)", radius));
+		}
+		if(intensity < 0 || intensity > 255){
+			throw new IllegalArgumentException(String.format("intensity must be between 0 and 255! (was %d)", intensity));
+		}
+		Light light = new Light(this, x, y, radius, intensity);
+		LIGHTS.add(light);
+		changed(light);
+		return light;
+	}
+	
+	/**
+	 * Removes a light. Its light is taken away in the next update.
+	 * @return true if the light was on this layer.
+	 */
+	public boolean removeLight(Light light){
+		if(!LIGHTS.remove(light)){
+			return false;
+		}
+		light.removed = true;
+		changed(light);
+		return true;
+	}
+	
+	void changed(Light light){
+		if(!light.changed){
+			light.changed = true;
+			CHANGED.add(light);
+		}
+	}
+	
+	/**
+	 * Moves the layer.
+	 * @param x the horizontal position of the top left corner, in pixels.
+	 * @param y the vertical position of the top left corner, in pixels.
+	 */
+	public void setOrigin(int x, int y){
+		if(x != originX || y != originY){
+			originX = x;
+			originY = y;
+			full = true;
+		}
+	}
+	
+	/**
+	 * @param ambient how bright it is where no light shines, from 0 (pitch black) to 255 (no darkness at all).
+	 */
+	public void setAmbient(int ambient){
+		if(ambient < 0 || ambient > 255){
+			throw new IllegalArgumentException(String.format("ambient must be between 0 and 255! (was %d)", ambient));
+		}
+		if(ambient != this.ambient){
+			this.ambient = ambient;
+			full = true;
+		}
+	}
+	
+	/**
+	 * Hides what the player hasn't seen.
+	 * @param fog the fog, or null for none.
+	 * @param tileWidth the width of the fog's tiles, in pixels.
+	 * @param tileHeight the height of the fog's tiles, in pixels.
+	 */
+	public void setFog(FogOfWar fog, int tileWidth, int tileHeight){
+		if(null != fog && (tileWidth < 1 || tileHeight < 1)){
+			throw new IllegalArgumentException(String.format("Illegal tile size specified, width and height must be positive (yours was %d, %d)", tileWidth, tileHeight));
+		}
+		this.fog = fog;
+		this.fogTileWidth = tileWidth;
+		this.fogTileHeight = tileHeight;
+		full = true;
+	}
+	
+	/**
+	 * @param darkness how dark tiles that have been seen but aren't visible are, from 0 to 255. Default is {@link #DEFAULT_SEEN_DARKNESS}.
+	 */
+	public void setSeenDarkness(int darkness){
+		if(darkness < 0 || darkness > 255){
+			throw new IllegalArgumentException(String.format("darkness must be between 0 and 255! (was %d)", darkness));
+		}
+		if(darkness != seenDarkness){
+			seenDarkness = darkness;
+			full = true;
+		}
+	}
+	
+	/**
+	 * @param smooth true to blend the cells when painting, which hides the cells when they are large but costs more to paint.
+	 */
+	public void setSmooth(boolean smooth){
+		this.smooth = smooth;
+	}
+	
+	/**
+	 * Works out the cells that changed since the last update. Call this once per frame, before painting.
+	 */
+	public void update(){
+		fogMinX = fogMinY = Integer.MAX_VALUE;
+		fogMaxX = fogMaxY = Integer.MIN_VALUE;
+		if(null != fog && fog.hasChanges()){
+			fogMinX = Math.max(0, Math.floorDiv(fog.changedMinX() * fogTileWidth - originX, CELL));
+			fogMinY = Math.max(0, Math.floorDiv(fog.changedMinY() * fogTileHeight - originY, CELL));
+			fogMaxX = Math.min(COLS - 1, Math.floorDiv((fog.changedMaxX() + 1) * fogTileWidth - 1 - originX, CELL));
+			fogMaxY = Math.min(ROWS - 1, Math.floorDiv((fog.changedMaxY() + 1) * fogTileHeight - 1 - originY, CELL));
+			fog.clearChanges();
+		}
+		if(!full && CHANGED.isEmpty() && fogMinX > fogMaxX){
+			lastUpdated = 0;
+			return;
+		}
+		// Taking away and adding a light costs twice what adding it costs, so when most lights changed, starting over is cheaper.
+		if(CHANGED.size() * 2 > LIGHTS.size()){
+			full = true;
+		}
+		List<Light> source = full ? LIGHTS : CHANGED;
+		lightCount = source.size();
+		if(lights.length < lightCount){
+			lights = new Light[Math.max(lightCount, lights.length * 2)];
+		}
+		lights = source.toArray(lights);
+		UPDATED.set(0);
+		POOL.invoke(new Band(0, ROWS));
+		lastUpdated = UPDATED.get();
+		
+		for(int i = 0; i < CHANGED.size(); i++){
+			Light light = CHANGED.get(i);
+			light.changed = false;
+		}
+		for(int i = 0; i < LIGHTS.size(); i++){
+			Light light = LIGHTS.get(i);
+			light.applied = true;
+			light.appliedX = light.x;
+			light.appliedY = light.y;
+			light.appliedRadius = light.radius;
+			light.appliedIntensity = light.intensity;
+		}
+		for(int i = 0; i < CHANGED.size(); i++){
+			if(CHANGED.get(i).removed){
+				CHANGED.get(i).applied = false;
+			}
+		}
+		CHANGED.clear();
+		Arrays.fill(lights, 0, lightCount, null);
+		full = false;
+	}
+	
+	/**
+	 * @return the number of cells the last update worked out the colour of.
+	 */
+	public long lastUpdatedCells(){
+		return lastUpdated;
+	}
+	
+	/**
+	 * Paints the darkness over the area, in one drawImage.
+	 */
+	@Override
+	public void paint(Graphics gfx) {
+		if(CELL == 1){
+			gfx.drawImage(IMAGE, originX, originY, null);
+			return;
+		}
+		Object oldHint = null;
+		Graphics2D g2 = gfx instanceof Graphics2D ? (Graphics2D) gfx : null;
+		if(smooth && null != g2){
+			oldHint = g2.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+			g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		}
+		gfx.drawImage(IMAGE, originX, originY, originX + COLS * CELL, originY + ROWS * CELL, 0, 0, COLS, ROWS, null);
+		if(smooth && null != g2){
+			g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, null == oldHint ? RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR : oldHint);
+		}
+	}
+	
+	public int getOriginX(){
+		return originX;
+	}
+	
+	public int getOriginY(){
+		return originY;
+	}
+	
+	public int getCellSize(){
+		return CELL;
+	}
+	
+	/**
+	 * A band of rows of the light map, split in two until it's small enough to do on its own.
+	 */
+	private class Band extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int first, last;
+		private int minX, minY, maxX, maxY;
+		
+		private Band(int first, int last){
+			this.first = first;
+			this.last = last;
+		}
+		
+		@Override
+		protected void compute() {
+			if(last - first > BAND_ROWS){
+				int middle = (first + last) >>> 1;
+				invokeAll(new Band(first, middle), new Band(middle, last));
+				return;
+			}
+			if(full){
+				Arrays.fill(LIGHT, first * COLS, last * COLS, 0);
+				for(int i = 0; i < lightCount; i++){
+					Light light = lights[i];
+					add(light.x, light.y, light.radius, light.intensity, 1);
+				}
+				shade(0, first, COLS - 1, last - 1);
+				return;
+			}
+			minX = minY = Integer.MAX_VALUE;
+			maxX = maxY = Integer.MIN_VALUE;
+			for(int i = 0; i < lightCount; i++){
+				Light light = lights[i];
+				if(light.applied){
+					add(light.appliedX, light.appliedY, light.appliedRadius, light.appliedIntensity, -1);
+				}
+				if(!light.removed){
+					add(light.x, light.y, light.radius, light.intensity, 1);
+				}
+			}
+			if(fogMinX <= fogMaxX){
+				dirty(fogMinX, Math.max(first, fogMinY), fogMaxX, Math.min(last - 1, fogMaxY));
+			}
+			if(minX <= maxX && minY <= maxY){
+				shade(minX, minY, maxX, maxY);
+			}
+		}
+		
+		/**
+		 * Adds (or with sign -1 takes away) what a light adds to the cells of this band.
+		 */
+		private void add(int x, int y, int radius, int intensity, int sign){
+			if(radius <= 0 || intensity <= 0){
+				return;
+			}
+			int x0 = Math.max(0, Math.floorDiv(x - radius - originX, CELL));
+			int x1 = Math.min(COLS - 1, Math.floorDiv(x + radius - originX, CELL));
+			int y0 = Math.max(first, Math.floorDiv(y - radius - originY, CELL));
+			int y1 = Math.min(last - 1, Math.floorDiv(y + radius - originY, CELL));
+			if(x0 > x1 || y0 > y1){
+				return;
+			}
+			long r2 = (long) radius * radius;
+			// intensity * (r2 - d2) / r2, in 24 bit fixed point so the loop has no division in it.
+			long scale = ((long) intensity << 24) / r2;
+			int half = CELL / 2;
+			for(int row = y0; row <= y1; row++){
+				long dy = originY + (long) row * CELL + half - y;
+				long dy2 = dy * dy;
+				if(dy2 >= r2){
+					continue;
+				}
+				int i = row * COLS + x0;
+				for(int col = x0; col <= x1; col++, i++){
+					long dx = originX + (long) col * CELL + half - x;
+					long d2 = dx * dx + dy2;
+					if(d2 < r2){
+						LIGHT[i] += sign * (int) (((r2 - d2) * scale) >>> 24);
+					}
+				}
+			}
+			dirty(x0, y0, x1, y1);
+		}
+		
+		private void dirty(int x0, int y0, int x1, int y1){
+			minX = Math.min(minX, x0);
+			minY = Math.min(minY, y0);
+			maxX = Math.max(maxX, x1);
+			maxY = Math.max(maxY, y1);
+		}
+		
+		/**
+		 * Works out the colour of a rectangle of cells from their light and the fog.
+		 */
+		private void shade(int x0, int y0, int x1, int y1){
+			FogOfWar fog = LightLayer.this.fog;
+			int half = CELL / 2;
+			for(int row = y0; row <= y1; row++){
+				int i = row * COLS + x0;
+				int tileY = null == fog ? 0 : Math.floorDiv(originY + row * CELL + half, fogTileHeight);
+				for(int col = x0; col <= x1; col++, i++){
+					int lit = ambient + LIGHT[i];
+					int alpha = lit >= 255 ? 0 : 255 - lit;
+					if(null != fog){
+						byte state = fog.get(Math.floorDiv(originX + col * CELL + half, fogTileWidth), tileY);
+						if(state == FogOfWar.UNSEEN){
+							alpha = 255;
+						}
+						else if(state == FogOfWar.SEEN && alpha < seenDarkness){
+							alpha = seenDarkness;
+						}
+					}
+					PIXELS[i] = alpha << 24;
+				}
+			}
+			UPDATED.addAndGet((long) (x1 - x0 + 1) * (y1 - y0 + 1));
+		}
+	}
+}
@@ -0,0 +1,387 @@
+package no.uib.gameutils.map;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import no.uib.gameutils.entity.AnimatedTile;
+import no.uib.gameutils.entity.FrameSnapshot;
+import no.uib.gameutils.entity.StaticImage;
+import no.uib.gameutils.entity.type.Geographic;
+import no.uib.gameutils.entity.type.MoveListener;
+import no.uib.gameutils.entity.type.Paintable;
+import no.uib.gameutils.entity.type.Tile;
+import no.uib.gameutils.position.Coordinate;
+import no.uib.gameutils.position.LongMap;
+
+/**
+ * A ChunkCache paints a large number of {@link Tile}s that rarely change by baking them into images, one per chunk.
+ * 
+ * The map is split into square chunks of chunkSize by chunkSize tiles. The first time a chunk is painted,
+ * every tile in it is painted into an offscreen image, and from then on only that image is drawn.
+ * This turns thousands of drawImage calls per frame into a handful.
+ * 
+ * When a tile moves, the chunks it left and entered are marked dirty, and are baked again the next time they're painted.
+ * {@link StaticImage}s and {@link AnimatedTile}s are tracked automatically through their {@link MoveListener}s. Any other {@link Tile}
+ * that changes must be reported with {@link #invalidate(Geographic)} or {@link #invalidate(Geographic, int, int)}.
+ * A chunk with {@link AnimatedTile}s in it is baked again when one of their animations moves on to another frame,
+ * so chunks without animations, or with animations that are done, stay as they are.
+ * 
+ * A chunk baked while one of its {@link StaticImage}s was waiting for a sheet from an
+ * {@link no.uib.gameutils.sprite.AsyncSpriteLoader AsyncSpriteLoader} is baked again once none of them are.
+ * 
+ * At most maxBakedChunks baked images are kept. When there are more, the least recently painted ones are thrown away
+ * and will be baked again if they come back into view. Chunks are found by their packed coordinates in a {@link LongMap},
+ * and the baked ones are kept in a list threaded through the chunks themselves, so painting allocates nothing.
+ * 
+ * Tiles are expected to paint inside their own cell, anything they paint outside their chunk is cut off.
+ * This class is not thread safe, use it from the thread that paints.
+ */
+public class ChunkCache implements Paintable, MoveListener {
+	private final int TILE_WIDTH, TILE_HEIGHT, CHUNK_SIZE, MAX_BAKED;
+	private final LongMap<Chunk> CHUNKS = new LongMap<>();
+	/* The chunks holding a baked image, least recently painted first. */
+	private Chunk eldest, newest;
+	private int baked;
+	private long bakes;
+	
+	/**
+	 * Creates a new, empty ChunkCache.
+	 * @param tileWidth the width of a tile in pixels, must be positive.
+	 * @param tileHeight the height of a tile in pixels, must be positive.
+	 * @param chunkSize how many tiles wide and tall a chunk is, must be positive. 16 is a good start.
+	 * @param maxBakedChunks how many baked chunk images to keep in memory, must be positive.
+	 * Make it at least as many chunks as fit on the screen at once, or chunks will be baked every frame.
+	 */
+	public ChunkCache(int tileWidth, int tileHeight, int chunkSize, int maxBakedChunks){
+		if(tileWidth < 1 || tileHeight < 1){
+			throw new IllegalArgumentException(String.format("tileWidth and tileHeight must be positive numbers! (was %dx%d)", tileWidth, tileHeight));
+		}
+		if(chunkSize < 1){
+			throw new IllegalArgumentException(String.format("chunkSize must be a positive number! (was %d)", chunkSize));
+		}
+		if(maxBakedChunks < 1){
+			throw new IllegalArgumentException(String.format("maxBakedChunks must be a positive number! (was %d)", maxBakedChunks));
+		}
+		this.TILE_WIDTH = tileWidth;
+		this.TILE_HEIGHT = tileHeight;
+		this.CHUNK_SIZE = chunkSize;
+		this.MAX_BAKED = maxBakedChunks;
+	}
+	
+	private static long key(int chunkX, int chunkY){
+		return Coordinate.pack(chunkX, chunkY);
+	}
+	
+	private Chunk chunkOf(int tileX, int tileY, boolean create){
+		int cx = Math.floorDiv(tileX, CHUNK_SIZE);
+		int cy = Math.floorDiv(tileY, CHUNK_SIZE);
+		long key = key(cx, cy);
+		Chunk chunk = CHUNKS.get(key);
+		if(null == chunk && create){
+			chunk = new Chunk(cx, cy);
+			CHUNKS.put(key, chunk);
+		}
+		return chunk;
+	}
+	
+	/**
+	 * Adds a tile to the cache. If it is a {@link StaticImage} or an {@link AnimatedTile}, the cache starts listening for it moving.
+	 * @param tile the tile to add, may not be null.
+	 */
+	public void add(Tile tile){
+		if(null == tile){
+			throw new IllegalArgumentException("Argument \"tile\" may not be null.");
+		}
+		chunkOf(tile.xPos(), tile.yPos(), true).add(tile);
+		if(tile instanceof StaticImage){
+			((StaticImage) tile).addMoveListener(this);
+		}
+		else if(tile instanceof AnimatedTile){
+			((AnimatedTile) tile).addMoveListener(this);
+		}
+	}
+	
+	/**
+	 * Removes a tile from the cache.
+	 * @param tile the tile to remove.
+	 * @return true if the tile was in the cache.
+	 */
+	public boolean remove(Tile tile){
+		Chunk chunk = chunkOf(tile.xPos(), tile.yPos(), false);
+		if(null == chunk || !chunk.remove(tile)){
+			return false;
+		}
+		dropIfEmpty(chunk);
+		if(tile instanceof StaticImage){
+			((StaticImage) tile).removeMoveListener(this);
+		}
+		else if(tile instanceof AnimatedTile){
+			((AnimatedTile) tile).removeMoveListener(this);
+		}
+		return true;
+	}
+	
+	/**
+	 * Moves a tile from the chunk of its old position to the chunk of its current one, and marks both as dirty.
+	 * This is called by {@link StaticImage}s and {@link AnimatedTile}s on their own. Call it yourself for other tiles after you move them.
+	 */
+	@Override
+	public void moved(Geographic entity, int oldX, int oldY) {
+		Chunk from = chunkOf(oldX, oldY, false);
+		if(null == from || !from.remove(entity)){
+			return;
+		}
+		chunkOf(entity.xPos(), entity.yPos(), true).add((Tile) entity);
+		dropIfEmpty(from);
+	}
+	
+	/**
+	 * Forgets a chunk that has no tiles left, along with its baked image, so the cache doesn't grow with every area ever touched.
+	 */
+	private void dropIfEmpty(Chunk chunk){
+		if(chunk.tiles.isEmpty()){
+			CHUNKS.remove(chunk.key);
+			unlink(chunk);
+			chunk.discard();
+		}
+	}
+	
+	/**
+	 * Marks the chunk a tile is in as dirty, so it gets baked again. Use this when a tile changes how it looks.
+	 * @param entity the entity that changed.
+	 */
+	public void invalidate(Geographic entity){
+		Chunk chunk = chunkOf(entity.xPos(), entity.yPos(), false);
+		if(null != chunk){
+			chunk.dirty = true;
+		}
+	}
+	
+	/**
+	 * Same as {@link #moved(Geographic, int, int)}, for tiles that don't tell the cache themselves.
+	 * @param entity the entity that moved.
+	 * @param oldX the column it was in.
+	 * @param oldY the row it was in.
+	 */
+	public void invalidate(Geographic entity, int oldX, int oldY){
+		moved(entity, oldX, oldY);
+	}
+	
+	/**
+	 * Marks every chunk as dirty.
+	 */
+	public void invalidateAll(){
+		for(int i = 0; i < CHUNKS.capacity(); i++){
+			Chunk chunk = CHUNKS.valueAt(i);
+			if(null != chunk){
+				chunk.dirty = true;
+			}
+		}
+	}
+	
+	@Override
+	public void paint(Graphics gfx) {
+		int chunkWidth = CHUNK_SIZE * TILE_WIDTH;
+		int chunkHeight = CHUNK_SIZE * TILE_HEIGHT;
+		Rectangle clip = gfx.getClipBounds();
+		if(null == clip){
+			/* No clip, so everything could be visible. */
+			for(int i = 0; i < CHUNKS.capacity(); i++){
+				Chunk chunk = CHUNKS.valueAt(i);
+				if(null != chunk){
+					paintChunk(gfx, chunk, chunkWidth, chunkHeight);
+				}
+			}
+			return;
+		}
+		
+		int firstX = Math.floorDiv(clip.x, chunkWidth);
+		int firstY = Math.floorDiv(clip.y, chunkHeight);
+		int lastX = Math.floorDiv(clip.x + clip.width - 1, chunkWidth);
+		int lastY = Math.floorDiv(clip.y + clip.height - 1, chunkHeight);
+		for(int cy = firstY; cy <= lastY; cy++){
+			for(int cx = firstX; cx <= lastX; cx++){
+				Chunk chunk = CHUNKS.get(key(cx, cy));
+				if(null != chunk){
+					paintChunk(gfx, chunk, chunkWidth, chunkHeight);
+				}
+			}
+		}
+	}
+	
+	private void paintChunk(Graphics gfx, Chunk chunk, int chunkWidth, int chunkHeight){
+		if(chunk.tiles.isEmpty()){
+			return;
+		}
+		if(chunk.provisional && !chunk.hasPending()){
+			chunk.dirty = true;
+		}
+		if(!chunk.dirty && chunk.frames.changed()){
+			chunk.dirty = true;
+		}
+		if(null == chunk.image || chunk.dirty){
+			chunk.bake(chunkWidth, chunkHeight);
+		}
+		touch(chunk);
+		gfx.drawImage(chunk.image, chunk.x * chunkWidth, chunk.y * chunkHeight, null);
+	}
+	
+	/**
+	 * Moves a chunk to the newest end of the baked list, and throws out the eldest baked images while there are too many.
+	 */
+	private void touch(Chunk chunk){
+		if(chunk == newest){
+			return;
+		}
+		unlink(chunk);
+		chunk.older = newest;
+		if(null != newest){
+			newest.newer = chunk;
+		}
+		newest = chunk;
+		if(null == eldest){
+			eldest = chunk;
+		}
+		chunk.linked = true;
+		baked++;
+		while(baked > MAX_BAKED){
+			Chunk drop = eldest;
+			unlink(drop);
+			drop.discard();
+		}
+	}
+	
+	private void unlink(Chunk chunk){
+		if(!chunk.linked){
+			return;
+		}
+		if(null != chunk.older){
+			chunk.older.newer = chunk.newer;
+		}
+		else{
+			eldest = chunk.newer;
+		}
+		if(null != chunk.newer){
+			chunk.newer.older = chunk.older;
+		}
+		else{
+			newest = chunk.older;
+		}
+		chunk.older = chunk.newer = null;
+		chunk.linked = false;
+		baked--;
+	}
+	
+	/**
+	 * @return how many chunks have tiles in them right now.
+	 */
+	public int chunks(){
+		return CHUNKS.size();
+	}
+	
+	/**
+	 * @return how many baked chunk images are held right now.
+	 */
+	public int bakedChunks(){
+		return baked;
+	}
+	
+	/**
+	 * @return how many times a chunk has been baked since this cache was created.
+	 */
+	public long bakes(){
+		return bakes;
+	}
+	
+	private class Chunk {
+		private final int x, y;
+		private final long key;
+		private final List<Tile> tiles = new ArrayList<>();
+		private BufferedImage image;
+		private boolean dirty;
+		/** True if some tile was still waiting for its sheet when the chunk was baked. */
+		private boolean provisional;
+		/** The frames of the animations the chunk was baked with. */
+		private final FrameSnapshot frames = new FrameSnapshot();
+		/** The neighbours in the baked list, and whether the chunk is in it. */
+		private Chunk older, newer;
+		private boolean linked;
+		
+		private Chunk(int x, int y){
+			this.x = x;
+			this.y = y;
+			this.key = key(x, y);
+		}
+		
+		private void add(Tile tile){
+			tiles.add(tile);
+			dirty = true;
+		}
+		
+		private boolean remove(Object tile){
+			for(int i = 0; i < tiles.size(); i++){
+				if(tiles.get(i) == tile){
+					/* Order matters for overlapping tiles, so no swap-remove here. */
+					tiles.remove(i);
+					dirty = true;
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		private void bake(int chunkWidth, int chunkHeight){
+			if(null == image){
+				if(GraphicsEnvironment.isHeadless()){
+					image = new BufferedImage(chunkWidth, chunkHeight, BufferedImage.TYPE_INT_ARGB);
+				}
+				else{
+					GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+					image = gc.createCompatibleImage(chunkWidth, chunkHeight, Transparency.TRANSLUCENT);
+				}
+			}
+			Graphics2D g = image.createGraphics();
+			g.setComposite(AlphaComposite.Clear);
+			g.fillRect(0, 0, chunkWidth, chunkHeight);
+			g.setComposite(AlphaComposite.SrcOver);
+			g.translate(-x * chunkWidth, -y * chunkHeight);
+			provisional = false;
+			frames.clear();
+			for(Tile tile : tiles){
+				provisional |= tile instanceof StaticImage && ((StaticImage) tile).isPending();
+				if(tile instanceof AnimatedTile){
+					frames.record(((AnimatedTile) tile).getAnimation());
+				}
+				tile.paint(g);
+			}
+			g.dispose();
+			dirty = false;
+			bakes++;
+		}
+		
+		private boolean hasPending(){
+			for(int i = 0; i < tiles.size(); i++){
+				Tile tile = tiles.get(i);
+				if(tile instanceof StaticImage && ((StaticImage) tile).isPending()){
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		private void discard(){
+			if(null != image){
+				image.flush();
+				image = null;
+			}
+		}
+	}
+}
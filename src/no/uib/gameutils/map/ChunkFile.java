@@ -0,0 +1,346 @@
+package no.uib.gameutils.map;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A ChunkFile is a map stored on disk as square chunks of tile IDs, so parts of it can be read without reading all of it.
+ * See {@link ChunkStreamer} for painting a ChunkFile that is too large to keep in memory.
+ * 
+ * Tile IDs mean the same as in a {@link TileMap}: 0 is an empty cell, and ID n is tile n - 1 in the {@link no.uib.gameutils.sprite.SpriteLoader SpriteLoader}.
+ * Chunk (cx, cy) holds the tiles from (cx * chunkSize, cy * chunkSize) and chunkSize tiles out, for every layer.
+ * Chunks where every cell is empty take no space at all.
+ * 
+ * The format is, in little-endian order: the magic number {@link #MAGIC}, a version, flags ({@link #COMPRESSED} or 0),
+ * the chunk size, the number of layers, the first chunk column and row, and the number of chunk columns and rows.
+ * Then comes the index, with the offset (a long) and length (an int) of every chunk, row by row. An offset of 0 means the chunk is empty.
+ * Each chunk is layers * chunkSize * chunkSize shorts, layer by layer and row by row, compressed with {@link Deflater} if the file is compressed.
+ * 
+ * The index is read into memory when the file is opened, which costs 12 bytes per chunk. The chunks are only read when asked for.
+ * {@link #readChunk(int, int)} may be called from several threads at once.
+ */
+public class ChunkFile implements Closeable {
+	public static final int MAGIC = 0x4755324D; /* "GU2M" */
+	public static final int VERSION = 1;
+	public static final int COMPRESSED = 1;
+	private static final int HEADER_BYTES = 4 * 9;
+	private static final int INDEX_ENTRY_BYTES = 8 + 4;
+	
+	private final File FILE;
+	private final RandomAccessFile RAF;
+	private final FileChannel CHANNEL;
+	private final int FLAGS, CHUNK_SIZE, LAYERS, MIN_CHUNK_X, MIN_CHUNK_Y, CHUNKS_WIDE, CHUNKS_HIGH;
+	private final long[] OFFSETS;
+	private final int[] LENGTHS;
+	
+	private ChunkFile(File file, RandomAccessFile raf, int flags, int chunkSize, int layers, int minChunkX, int minChunkY, int chunksWide, int chunksHigh,
+			long[] offsets, int[] lengths){
+		this.FILE = file;
+		this.RAF = raf;
+		this.CHANNEL = raf.getChannel();
+		this.FLAGS = flags;
+		this.CHUNK_SIZE = chunkSize;
+		this.LAYERS = layers;
+		this.MIN_CHUNK_X = minChunkX;
+		this.MIN_CHUNK_Y = minChunkY;
+		this.CHUNKS_WIDE = chunksWide;
+		this.CHUNKS_HIGH = chunksHigh;
+		this.OFFSETS = offsets;
+		this.LENGTHS = lengths;
+	}
+	
+	/**
+	 * Opens a ChunkFile for reading. Close it when you're done with it.
+	 * @param file the file to open. May not be null.
+	 * @return the opened file.
+	 * @throws IOException if the file can't be read, or isn't a ChunkFile.
+	 */
+	public static ChunkFile open(File file) throws IOException {
+		if(null == file){
+			throw new IllegalArgumentException("Argument \"file\" may not be null.");
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try{
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, header, 0);
+			header.flip();
+			if(header.getInt() != MAGIC){
+				throw new IOException(String.format("%s is not a ChunkFile", file));
+			}
+			int version = header.getInt();
+			if(version != VERSION){
+				throw new IOException(String.format("%s has version %d, only version %d can be read", file, version, VERSION));
+			}
+			int flags = header.getInt(), chunkSize = header.getInt(), layers = header.getInt();
+			int minChunkX = header.getInt(), minChunkY = header.getInt(), chunksWide = header.getInt(), chunksHigh = header.getInt();
+			long chunks = (long) chunksWide * chunksHigh;
+			if(chunkSize < 1 || layers < 1 || chunksWide < 1 || chunksHigh < 1 || chunks > Integer.MAX_VALUE / INDEX_ENTRY_BYTES
+					|| size < HEADER_BYTES + chunks * INDEX_ENTRY_BYTES){
+				throw new IOException(String.format("%s has a broken header", file));
+			}
+			
+			long[] offsets = new long[(int) chunks];
+			int[] lengths = new int[(int) chunks];
+			ByteBuffer index = ByteBuffer.allocate((int) chunks * INDEX_ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, index, HEADER_BYTES);
+			index.flip();
+			for(int i = 0; i < chunks; i++){
+				offsets[i] = index.getLong();
+				lengths[i] = index.getInt();
+				if(offsets[i] != 0 && (offsets[i] < 0 || lengths[i] < 0 || offsets[i] + lengths[i] > size)){
+					throw new IOException(String.format("%s has a broken index entry for chunk %d", file, i));
+				}
+			}
+			return new ChunkFile(file, raf, flags, chunkSize, layers, minChunkX, minChunkY, chunksWide, chunksHigh, offsets, lengths);
+		}
+		catch(IOException | RuntimeException e){
+			raf.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Writes a {@link TileMap} as a ChunkFile. The file covers every chunk the map touches.
+	 * The file is written to a temporary file of its own next to the real one and moved into place, so a half-written file is never read.
+	 * If anything goes wrong, the temporary file is deleted.
+	 * @param file the file to write. May not be null.
+	 * @param map the map to write. May not be null.
+	 * @param chunkSize how many tiles wide and tall a chunk is, must be positive. 32 is a good start.
+	 * @param compress if true, each chunk is compressed. Tile data usually shrinks a lot, at some cost in loading time.
+	 * @throws IOException if the file can't be written.
+	 */
+	public static void write(File file, TileMap map, int chunkSize, boolean compress) throws IOException {
+		if(null == file){
+			throw new IllegalArgumentException("Argument \"file\" may not be null.");
+		}
+		if(null == map){
+			throw new IllegalArgumentException("Argument \"map\" may not be null.");
+		}
+		if(chunkSize < 1){
+			throw new IllegalArgumentException(String.format("chunkSize must be a positive number! (was %d)", chunkSize));
+		}
+		int minChunkX = Math.floorDiv(map.getOriginX(), chunkSize);
+		int minChunkY = Math.floorDiv(map.getOriginY(), chunkSize);
+		int chunksWide = Math.floorDiv(map.getOriginX() + map.getWidth() - 1, chunkSize) - minChunkX + 1;
+		int chunksHigh = Math.floorDiv(map.getOriginY() + map.getHeight() - 1, chunkSize) - minChunkY + 1;
+		int layers = map.numLayers();
+		int cells = chunkSize * chunkSize;
+		
+		File temp = File.createTempFile("." + file.getName() + "-", ".tmp", file.getAbsoluteFile().getParentFile());
+		Deflater deflater = compress ? new Deflater() : null;
+		try{
+			try(RandomAccessFile raf = new RandomAccessFile(temp, "rw"); FileChannel channel = raf.getChannel()){
+				raf.setLength(0);
+				ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+				header.putInt(MAGIC).putInt(VERSION).putInt(compress ? COMPRESSED : 0).putInt(chunkSize).putInt(layers);
+				header.putInt(minChunkX).putInt(minChunkY).putInt(chunksWide).putInt(chunksHigh);
+				header.flip();
+				writeFully(channel, header, 0);
+				
+				ByteBuffer index = ByteBuffer.allocate(chunksWide * chunksHigh * INDEX_ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+				ByteBuffer raw = ByteBuffer.allocate(layers * cells * 2).order(ByteOrder.LITTLE_ENDIAN);
+				byte[] packed = compress ? new byte[raw.capacity() + 64] : null;
+				long position = HEADER_BYTES + (long) index.capacity();
+				
+				for(int cy = 0; cy < chunksHigh; cy++){
+					for(int cx = 0; cx < chunksWide; cx++){
+						raw.clear();
+						boolean empty = true;
+						int firstX = (minChunkX + cx) * chunkSize, firstY = (minChunkY + cy) * chunkSize;
+						for(int layer = 0; layer < layers; layer++){
+							for(int y = firstY; y < firstY + chunkSize; y++){
+								for(int x = firstX; x < firstX + chunkSize; x++){
+									short id = map.contains(x, y) ? map.getTile(layer, x, y) : TileMap.EMPTY;
+									empty &= id == TileMap.EMPTY;
+									raw.putShort(id);
+								}
+							}
+						}
+						if(empty){
+							index.putLong(0).putInt(0);
+							continue;
+						}
+						
+						ByteBuffer body = raw;
+						body.flip();
+						if(compress){
+							deflater.reset();
+							deflater.setInput(raw.array(), 0, raw.limit());
+							deflater.finish();
+							int packedLength = 0;
+							while(!deflater.finished()){
+								if(packedLength == packed.length){
+									packed = Arrays.copyOf(packed, packed.length * 2);
+								}
+								packedLength += deflater.deflate(packed, packedLength, packed.length - packedLength);
+							}
+							body = ByteBuffer.wrap(packed, 0, packedLength);
+						}
+						int length = body.remaining();
+						index.putLong(position).putInt(length);
+						writeFully(channel, body, position);
+						position += length;
+					}
+				}
+				index.flip();
+				writeFully(channel, index, HEADER_BYTES);
+			}
+			try{
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch(IOException ioe){
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally{
+			if(null != deflater){
+				deflater.end();
+			}
+			temp.delete();
+		}
+	}
+	
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()){
+			int read = channel.read(buffer, position);
+			if(read < 0){
+				throw new IOException("Unexpected end of file");
+			}
+			position += read;
+		}
+	}
+	
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()){
+			position += channel.write(buffer, position);
+		}
+	}
+	
+	/**
+	 * @param chunkX the chunk column.
+	 * @param chunkY the chunk row.
+	 * @return true if the chunk is inside the area this file covers.
+	 */
+	public boolean contains(int chunkX, int chunkY){
+		return chunkX >= MIN_CHUNK_X && chunkY >= MIN_CHUNK_Y && chunkX - MIN_CHUNK_X < CHUNKS_WIDE && chunkY - MIN_CHUNK_Y < CHUNKS_HIGH;
+	}
+	
+	/**
+	 * @param chunkX the chunk column.
+	 * @param chunkY the chunk row.
+	 * @return true if the chunk has no tiles in it, either because every cell is empty or because it is outside the file.
+	 */
+	public boolean isEmpty(int chunkX, int chunkY){
+		return !contains(chunkX, chunkY) || OFFSETS[slot(chunkX, chunkY)] == 0;
+	}
+	
+	private int slot(int chunkX, int chunkY){
+		return (chunkY - MIN_CHUNK_Y) * CHUNKS_WIDE + (chunkX - MIN_CHUNK_X);
+	}
+	
+	/**
+	 * Reads one chunk from the file. This is safe to call from several threads at once.
+	 * @param chunkX the chunk column.
+	 * @param chunkY the chunk row.
+	 * @return one array of chunkSize * chunkSize tile IDs per layer, row by row. Null if the chunk {@link #isEmpty(int, int) is empty}.
+	 * @throws IOException if the chunk can't be read, or is broken.
+	 */
+	public short[][] readChunk(int chunkX, int chunkY) throws IOException {
+		if(isEmpty(chunkX, chunkY)){
+			return null;
+		}
+		int slot = slot(chunkX, chunkY);
+		int cells = CHUNK_SIZE * CHUNK_SIZE;
+		ByteBuffer stored = ByteBuffer.allocate(LENGTHS[slot]);
+		readFully(CHANNEL, stored, OFFSETS[slot]);
+		
+		ByteBuffer raw = stored;
+		if((FLAGS & COMPRESSED) != 0){
+			byte[] unpacked = new byte[LAYERS * cells * 2];
+			Inflater inflater = new Inflater();
+			try{
+				inflater.setInput(stored.array());
+				int length = 0;
+				while(length < unpacked.length && !inflater.finished()){
+					int inflated = inflater.inflate(unpacked, length, unpacked.length - length);
+					if(inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())){
+						break;
+					}
+					length += inflated;
+				}
+				if(length != unpacked.length){
+					throw new IOException(String.format("Chunk (%d, %d) in %s is too short", chunkX, chunkY, FILE));
+				}
+			}
+			catch(DataFormatException dfe){
+				throw new IOException(String.format("Chunk (%d, %d) in %s is broken", chunkX, chunkY, FILE), dfe);
+			}
+			finally{
+				inflater.end();
+			}
+			raw = ByteBuffer.wrap(unpacked);
+		}
+		else if(LENGTHS[slot] != LAYERS * cells * 2){
+			throw new IOException(String.format("Chunk (%d, %d) in %s has the wrong length", chunkX, chunkY, FILE));
+		}
+		
+		raw.clear();
+		raw.order(ByteOrder.LITTLE_ENDIAN);
+		short[][] layers = new short[LAYERS][cells];
+		for(int layer = 0; layer < LAYERS; layer++){
+			raw.asShortBuffer().get(layers[layer]);
+			raw.position(raw.position() + cells * 2);
+		}
+		return layers;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		RAF.close();
+	}
+	
+	public File getFile(){
+		return FILE;
+	}
+	
+	public boolean isCompressed(){
+		return (FLAGS & COMPRESSED) != 0;
+	}
+	
+	public int chunkSize(){
+		return CHUNK_SIZE;
+	}
+	
+	public int numLayers(){
+		return LAYERS;
+	}
+	
+	public int minChunkX(){
+		return MIN_CHUNK_X;
+	}
+	
+	public int minChunkY(){
+		return MIN_CHUNK_Y;
+	}
+	
+	public int chunksWide(){
+		return CHUNKS_WIDE;
+	}
+	
+	public int chunksHigh(){
+		return CHUNKS_HIGH;
+	}
+}
@@ -0,0 +1,21 @@
+package no.uib.gameutils.map;
+
+/**
+ * A ChunkListener is told when a {@link ChunkStreamer} takes a chunk into memory, and when it lets go of one.
+ * Use it to keep things that belong to a chunk, like entities or passability, in step with the tiles.
+ * 
+ * Both methods are called on the thread that calls {@link ChunkStreamer#tick()}.
+ */
+public interface ChunkListener {
+	/**
+	 * @param chunkX the chunk column.
+	 * @param chunkY the chunk row.
+	 */
+	public void chunkLoaded(int chunkX, int chunkY);
+	
+	/**
+	 * @param chunkX the chunk column.
+	 * @param chunkY the chunk row.
+	 */
+	public void chunkEvicted(int chunkX, int chunkY);
+}
@@ -0,0 +1,425 @@
+package no.uib.gameutils.map;
+
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import no.uib.gameutils.entity.type.Paintable;
+import no.uib.gameutils.entity.type.Tickable;
+import no.uib.gameutils.position.Coordinate;
+import no.uib.gameutils.position.LongMap;
+import no.uib.gameutils.sprite.SpriteHandle;
+import no.uib.gameutils.sprite.SpriteLoader;
+import no.uib.gameutils.window.Camera;
+
+/**
+ * A ChunkStreamer paints a {@link ChunkFile} that is too large to keep in memory, by only keeping the chunks close to a focus point.
+ * 
+ * Move the focus with {@link #setFocus(int, int)} or {@link #setFocus(Camera)} as the player or camera moves.
+ * Every {@link #tick()}, chunks within prefetchRadius chunks of the focus that aren't in memory are queued for loading,
+ * closest first, and a background thread reads them from the file. Chunks further than evictRadius chunks away are thrown out.
+ * Distances are counted in whole chunks, along the longest axis, so the chunks in memory form a square around the focus,
+ * and at most (2 * evictRadius + 1)² of them are kept, however large the world is.
+ * 
+ * Loaded chunks are handed to the game thread through a lock-free queue and taken into use in the next tick,
+ * so neither painting nor ticking ever waits for the disk. Chunks that are not loaded yet are simply not painted.
+ * If the focus has moved far away by the time the loading thread gets to a chunk, the chunk is skipped.
+ * 
+ * Tile IDs mean the same as in {@link TileMap}. A chunk with a tile ID the {@link SpriteLoader} has no tile for counts as a chunk
+ * that could not be read, see {@link #lastError()}. The images are looked up in a table that is built once,
+ * or built again when the sheet arrives if the {@link SpriteLoader} is a {@link SpriteHandle} that is still loading.
+ * Painting only goes through the cells inside the clip of the {@link Graphics}.
+ * 
+ * Apart from {@link #close()}, this class is meant to be used from the game thread only.
+ * The thread is a daemon thread, so a streamer that's never closed won't keep the program running.
+ */
+public class ChunkStreamer implements Paintable, Tickable, Closeable {
+	private final ChunkFile FILE;
+	private volatile BufferedImage[] images;
+	private final int TILE_WIDTH, TILE_HEIGHT, TILES, CHUNK_SIZE, LAYERS, PREFETCH_RADIUS, EVICT_RADIUS;
+	private final ExecutorService LOADER;
+	private final ConcurrentLinkedQueue<MapChunk> READY = new ConcurrentLinkedQueue<>();
+	private final LongMap<MapChunk> RESIDENT = new LongMap<>();
+	private final ArrayList<MapChunk> RESIDENT_LIST = new ArrayList<>();
+	private final LongMap<MapChunk> REQUESTED = new LongMap<>();
+	private final CopyOnWriteArrayList<ChunkListener> LISTENERS = new CopyOnWriteArrayList<>();
+	
+	/** The focus chunk, packed with {@link Coordinate#pack(int, int)}, so the loading thread can see it. */
+	private volatile long focus;
+	private volatile boolean closed;
+	private int focusX, focusY;
+	private boolean scan = true;
+	private long loads, failures;
+	private IOException lastError;
+	
+	/**
+	 * Creates a streamer. Nothing is loaded until the first {@link #tick()}. The focus starts at tile (0, 0).
+	 * @param file the file to stream from. May not be null. It is not closed by {@link #close()}.
+	 * @param loader the {@link SpriteLoader} the tile IDs refer to. May not be null.
+	 * @param prefetchRadius how many chunks out from the focus chunk to load. May not be negative.
+	 * Make it large enough to cover the screen and then some, so chunks are loaded before they come into view.
+	 * @param evictRadius how many chunks out from the focus chunk to keep. Must be at least prefetchRadius.
+	 * A little more than prefetchRadius keeps chunks from being loaded again and again when the focus moves back and forth over a chunk border.
+	 */
+	public ChunkStreamer(ChunkFile file, final SpriteLoader loader, int prefetchRadius, int evictRadius){
+		if(null == file){
+			throw new IllegalArgumentException("Argument \"file\" may not be null.");
+		}
+		if(null == loader){
+			throw new IllegalArgumentException("Argument \"loader\" may not be null.");
+		}
+		if(prefetchRadius < 0){
+			throw new IllegalArgumentException(String.format("prefetchRadius may not be negative! (was %d)", prefetchRadius));
+		}
+		if(evictRadius < prefetchRadius){
+			throw new IllegalArgumentException(String.format("evictRadius must be at least prefetchRadius! (was %d, prefetchRadius is %d)", evictRadius, prefetchRadius));
+		}
+		int tiles = loader.numColumns() * loader.numRows();
+		if(tiles > Short.MAX_VALUE){
+			throw new IllegalArgumentException(String.format("The SpriteLoader has too many tiles for a ChunkStreamer (has %d, max is %d)", tiles, (int) Short.MAX_VALUE));
+		}
+		
+		this.FILE = file;
+		this.TILE_WIDTH = loader.tileWidth();
+		this.TILE_HEIGHT = loader.tileHeight();
+		this.TILES = tiles;
+		this.CHUNK_SIZE = file.chunkSize();
+		this.LAYERS = file.numLayers();
+		this.PREFETCH_RADIUS = prefetchRadius;
+		this.EVICT_RADIUS = evictRadius;
+		
+		/* Asked before building, so a sheet that finishes halfway through still has the thenRun below rebuild the table. */
+		boolean loading = SpriteHandle.isLoading(loader);
+		this.images = TileMap.imagesOf(loader);
+		if(loading){
+			((SpriteHandle) loader).future().thenRun(new Runnable(){
+				@Override
+				public void run() {
+					images = TileMap.imagesOf(loader);
+				}
+			});
+		}
+		
+		final AtomicInteger count = new AtomicInteger();
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory(){
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "ChunkLoader-" + count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		pool.allowCoreThreadTimeOut(true);
+		this.LOADER = pool;
+	}
+	
+	/**
+	 * Moves the focus, the point that chunks are loaded around.
+	 * @param tileX the column of the tile in focus.
+	 * @param tileY the row of the tile in focus.
+	 */
+	public void setFocus(int tileX, int tileY){
+		int chunkX = Math.floorDiv(tileX, CHUNK_SIZE), chunkY = Math.floorDiv(tileY, CHUNK_SIZE);
+		if(chunkX != focusX || chunkY != focusY){
+			focusX = chunkX;
+			focusY = chunkY;
+			focus = Coordinate.pack(chunkX, chunkY);
+			scan = true;
+		}
+	}
+	
+	/**
+	 * Moves the focus to the tile in the middle of what a {@link Camera} sees.
+	 * @param camera the camera. May not be null.
+	 */
+	public void setFocus(Camera camera){
+		if(null == camera){
+			throw new IllegalArgumentException("Argument \"camera\" may not be null.");
+		}
+		setFocus(Math.floorDiv(camera.getX() + camera.getWidth() / 2, TILE_WIDTH), Math.floorDiv(camera.getY() + camera.getHeight() / 2, TILE_HEIGHT));
+	}
+	
+	private static int distance(int chunkX, int chunkY, int otherX, int otherY){
+		return Math.max(Math.abs(chunkX - otherX), Math.abs(chunkY - otherY));
+	}
+	
+	/**
+	 * Takes loaded chunks into use, throws out chunks that are too far from the focus, and queues the chunks that are missing.
+	 */
+	@Override
+	public void tick() {
+		MapChunk chunk;
+		while(null != (chunk = READY.poll())){
+			REQUESTED.remove(chunk.KEY);
+			if(null != chunk.error){
+				failures++;
+				lastError = chunk.error;
+			}
+			else if(chunk.cancelled || distance(chunk.CHUNK_X, chunk.CHUNK_Y, focusX, focusY) > EVICT_RADIUS){
+				/* The focus may have come back after the loading thread skipped it. */
+				scan |= distance(chunk.CHUNK_X, chunk.CHUNK_Y, focusX, focusY) <= PREFETCH_RADIUS;
+			}
+			else{
+				RESIDENT.put(chunk.KEY, chunk);
+				RESIDENT_LIST.add(chunk);
+				loads++;
+				for(ChunkListener listener : LISTENERS){
+					listener.chunkLoaded(chunk.CHUNK_X, chunk.CHUNK_Y);
+				}
+			}
+		}
+		
+		for(int i = RESIDENT_LIST.size() - 1; i >= 0; i--){
+			chunk = RESIDENT_LIST.get(i);
+			if(distance(chunk.CHUNK_X, chunk.CHUNK_Y, focusX, focusY) > EVICT_RADIUS){
+				int last = RESIDENT_LIST.size() - 1;
+				RESIDENT_LIST.set(i, RESIDENT_LIST.get(last));
+				RESIDENT_LIST.remove(last);
+				RESIDENT.remove(chunk.KEY);
+				for(ChunkListener listener : LISTENERS){
+					listener.chunkEvicted(chunk.CHUNK_X, chunk.CHUNK_Y);
+				}
+			}
+		}
+		
+		if(scan && !closed){
+			scan = false;
+			/* Ring by ring, so the closest chunks are loaded first. */
+			for(int ring = 0; ring <= PREFETCH_RADIUS; ring++){
+				for(int chunkY = focusY - ring; chunkY <= focusY + ring; chunkY++){
+					boolean edgeRow = chunkY == focusY - ring || chunkY == focusY + ring;
+					int step = edgeRow ? 1 : Math.max(1, 2 * ring);
+					for(int chunkX = focusX - ring; chunkX <= focusX + ring; chunkX += step){
+						request(chunkX, chunkY);
+					}
+				}
+			}
+		}
+	}
+	
+	private void request(int chunkX, int chunkY){
+		if(FILE.isEmpty(chunkX, chunkY)){
+			return;
+		}
+		long key = Coordinate.pack(chunkX, chunkY);
+		if(RESIDENT.containsKey(key) || REQUESTED.containsKey(key)){
+			return;
+		}
+		final MapChunk chunk = new MapChunk(chunkX, chunkY);
+		try{
+			LOADER.execute(new Runnable(){
+				@Override
+				public void run() {
+					load(chunk);
+				}
+			});
+		}
+		catch(RejectedExecutionException ree){
+			/* Closed from another thread while this tick was queueing chunks. */
+			return;
+		}
+		REQUESTED.put(key, chunk);
+	}
+	
+	/**
+	 * Runs on the loading thread.
+	 */
+	private void load(MapChunk chunk){
+		long current = focus;
+		if(closed || distance(chunk.CHUNK_X, chunk.CHUNK_Y, Coordinate.x(current), Coordinate.y(current)) > EVICT_RADIUS){
+			chunk.cancelled = true;
+		}
+		else{
+			try{
+				chunk.layers = FILE.readChunk(chunk.CHUNK_X, chunk.CHUNK_Y);
+				validate(chunk);
+			}
+			catch(IOException ioe){
+				chunk.error = ioe;
+			}
+		}
+		READY.offer(chunk);
+	}
+	
+	/**
+	 * Checks that every tile ID in a chunk has an image, so painting never has to.
+	 * Runs on the loading thread.
+	 * @throws IOException if a tile ID is outside the {@link SpriteLoader}.
+	 */
+	private void validate(MapChunk chunk) throws IOException {
+		if(null == chunk.layers){
+			throw new IOException(String.format("Chunk (%d, %d) is empty in the file", chunk.CHUNK_X, chunk.CHUNK_Y));
+		}
+		for(int layer = 0; layer < chunk.layers.length; layer++){
+			short[] data = chunk.layers[layer];
+			for(int i = 0; i < data.length; i++){
+				if(data[i] < 0 || data[i] > TILES){
+					chunk.layers = null;
+					throw new IOException(String.format("Chunk (%d, %d) has tile ID %d in layer %d, legal IDs are 0 to %d",
+							chunk.CHUNK_X, chunk.CHUNK_Y, data[i], layer, TILES));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @param layer the layer to look in.
+	 * @param x the column of the cell.
+	 * @param y the row of the cell.
+	 * @return the tile ID of the cell, {@link TileMap#EMPTY} if it is empty or its chunk isn't in memory.
+	 */
+	public short getTile(int layer, int x, int y){
+		if(layer < 0 || layer >= LAYERS){
+			throw new IndexOutOfBoundsException(String.format("No layer %d, legal layers are 0 to %d", layer, LAYERS - 1));
+		}
+		int chunkX = Math.floorDiv(x, CHUNK_SIZE), chunkY = Math.floorDiv(y, CHUNK_SIZE);
+		MapChunk chunk = RESIDENT.get(Coordinate.pack(chunkX, chunkY));
+		if(null == chunk){
+			return TileMap.EMPTY;
+		}
+		return chunk.layers[layer][(y - chunkY * CHUNK_SIZE) * CHUNK_SIZE + (x - chunkX * CHUNK_SIZE)];
+	}
+	
+	/**
+	 * @param x the column of a tile.
+	 * @param y the row of a tile.
+	 * @return true if the chunk the tile is in can be painted as it is in the file,
+	 * either because it's in memory or because it has no tiles in it.
+	 */
+	public boolean isLoaded(int x, int y){
+		int chunkX = Math.floorDiv(x, CHUNK_SIZE), chunkY = Math.floorDiv(y, CHUNK_SIZE);
+		return FILE.isEmpty(chunkX, chunkY) || RESIDENT.containsKey(Coordinate.pack(chunkX, chunkY));
+	}
+	
+	/**
+	 * Gives you the image for a tile ID.
+	 * @param id the tile ID.
+	 * @return the image, or null for {@link TileMap#EMPTY}.
+	 */
+	public BufferedImage imageOf(short id){
+		return images[id];
+	}
+	
+	@Override
+	public void paint(Graphics gfx) {
+		for(int layer = 0; layer < LAYERS; layer++){
+			paintLayer(gfx, layer);
+		}
+	}
+	
+	/**
+	 * Paints a single layer of the chunks in memory, limited to the cells inside the clip of the {@link Graphics}.
+	 * @param gfx the {@link Graphics} to paint with.
+	 * @param layer the layer to paint.
+	 */
+	public void paintLayer(Graphics gfx, int layer){
+		Rectangle clip = gfx.getClipBounds();
+		int firstCol = Integer.MIN_VALUE, firstRow = Integer.MIN_VALUE, lastCol = Integer.MAX_VALUE, lastRow = Integer.MAX_VALUE;
+		if(null != clip){
+			firstCol = Math.floorDiv(clip.x, TILE_WIDTH);
+			firstRow = Math.floorDiv(clip.y, TILE_HEIGHT);
+			lastCol = Math.floorDiv(clip.x + clip.width - 1, TILE_WIDTH);
+			lastRow = Math.floorDiv(clip.y + clip.height - 1, TILE_HEIGHT);
+		}
+		
+		BufferedImage[] table = images;
+		for(int i = 0; i < RESIDENT_LIST.size(); i++){
+			MapChunk chunk = RESIDENT_LIST.get(i);
+			int chunkCol = chunk.CHUNK_X * CHUNK_SIZE, chunkRow = chunk.CHUNK_Y * CHUNK_SIZE;
+			int fromCol = Math.max(firstCol, chunkCol) - chunkCol, toCol = Math.min(lastCol, chunkCol + CHUNK_SIZE - 1) - chunkCol;
+			int fromRow = Math.max(firstRow, chunkRow) - chunkRow, toRow = Math.min(lastRow, chunkRow + CHUNK_SIZE - 1) - chunkRow;
+			
+			short[] data = chunk.layers[layer];
+			for(int row = fromRow; row <= toRow; row++){
+				int rowStart = row * CHUNK_SIZE;
+				int py = (row + chunkRow) * TILE_HEIGHT;
+				for(int col = fromCol; col <= toCol; col++){
+					short id = data[rowStart + col];
+					if(id != TileMap.EMPTY){
+						gfx.drawImage(table[id], (col + chunkCol) * TILE_WIDTH, py, null);
+					}
+				}
+			}
+		}
+	}
+	
+	public void addListener(ChunkListener listener){
+		if(null == listener){
+			throw new IllegalArgumentException("Argument \"listener\" may not be null.");
+		}
+		LISTENERS.add(listener);
+	}
+	
+	public void removeListener(ChunkListener listener){
+		LISTENERS.remove(listener);
+	}
+	
+	/**
+	 * @return the number of chunks in memory.
+	 */
+	public int residentChunks(){
+		return RESIDENT_LIST.size();
+	}
+	
+	/**
+	 * @return the number of chunks that are queued or being loaded.
+	 */
+	public int pendingChunks(){
+		return REQUESTED.size();
+	}
+	
+	/**
+	 * @return the number of chunks that have been loaded and taken into use since the streamer was made.
+	 */
+	public long loadedChunks(){
+		return loads;
+	}
+	
+	/**
+	 * @return the number of chunks that could not be read. They are tried again when the focus moves to another chunk.
+	 */
+	public long failedChunks(){
+		return failures;
+	}
+	
+	/**
+	 * @return the last error from reading a chunk, or null if there has been none.
+	 */
+	public IOException lastError(){
+		return lastError;
+	}
+	
+	public ChunkFile getFile(){
+		return FILE;
+	}
+	
+	public int getPrefetchRadius(){
+		return PREFETCH_RADIUS;
+	}
+	
+	public int getEvictRadius(){
+		return EVICT_RADIUS;
+	}
+	
+	/**
+	 * Stops the loading thread. Chunks already in memory can still be painted. The {@link ChunkFile} is left open.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		LOADER.shutdown();
+	}
+}
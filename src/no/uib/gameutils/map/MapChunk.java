@@ -0,0 +1,23 @@
+package no.uib.gameutils.map;
+
+import java.io.IOException;
+
+import no.uib.gameutils.position.Coordinate;
+
+/**
+ * One chunk of a {@link ChunkFile}, on its way from the loading thread to a {@link ChunkStreamer}, or resident in it.
+ * The loading thread fills in the result before handing the chunk over through a concurrent queue, so the game thread sees all of it.
+ */
+class MapChunk {
+	final int CHUNK_X, CHUNK_Y;
+	final long KEY;
+	short[][] layers;
+	IOException error;
+	boolean cancelled;
+	
+	MapChunk(int chunkX, int chunkY){
+		this.CHUNK_X = chunkX;
+		this.CHUNK_Y = chunkY;
+		this.KEY = Coordinate.pack(chunkX, chunkY);
+	}
+}
@@ -0,0 +1,336 @@
+package no.uib.gameutils.map;
+
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import no.uib.gameutils.entity.type.Paintable;
+import no.uib.gameutils.entity.type.Tile;
+import no.uib.gameutils.position.Position2D;
+import no.uib.gameutils.sprite.SpriteHandle;
+import no.uib.gameutils.sprite.SpriteLoader;
+
+/**
+ * A TileMap is a compact way of storing a level made out of tiles from one {@link SpriteLoader}.
+ * 
+ * Instead of one {@link no.uib.gameutils.entity.StaticImage StaticImage} per tile, each layer is a flat array of shorts,
+ * where each short is a tile ID. ID 0 is an empty cell, and ID n is tile n - 1 in the {@link SpriteLoader},
+ * counting from left to right, top to bottom. (So with 8 columns, ID 10 is column 1, row 1.)
+ * The images are looked up in a table that is built once, so every cell with the same ID shares the same image.
+ * If the {@link SpriteLoader} is a {@link SpriteHandle} that is still loading, the table holds placeholders,
+ * and is built again with the real tiles when the sheet arrives.
+ * 
+ * The map covers the tiles from (originX, originY) and width by height tiles out, so negative positions are allowed
+ * as long as the map is made with a negative origin.
+ * Layer 0 is painted first, and the layers with higher numbers are painted on top of it.
+ * 
+ * Painting only goes through the cells that are inside the clip of the {@link Graphics}, so set a clip
+ * (or use a camera that does) to keep large maps cheap.
+ */
+public class TileMap implements Paintable {
+	public static final short EMPTY = 0;
+	
+	private final SpriteLoader LOADER;
+	private volatile BufferedImage[] images;
+	private final short[][] LAYERS;
+	private final int WIDTH, HEIGHT, ORIGIN_X, ORIGIN_Y;
+	private final int TILE_WIDTH, TILE_HEIGHT;
+	
+	/**
+	 * Creates a new, empty TileMap.
+	 * @param loader the {@link SpriteLoader} the tile IDs refer to. May not be null.
+	 * @param layers the number of layers, must be positive.
+	 * @param originX the column of the leftmost tile in the map. Can be negative.
+	 * @param originY the row of the topmost tile in the map. Can be negative.
+	 * @param width the number of columns in the map, must be positive.
+	 * @param height the number of rows in the map, must be positive.
+	 */
+	public TileMap(SpriteLoader loader, int layers, int originX, int originY, int width, int height){
+		if(null == loader){
+			throw new IllegalArgumentException("Argument \"loader\" may not be null.");
+		}
+		if(layers < 1){
+			throw new IllegalArgumentException(String.format("layers must be a positive number! (was %d)", layers));
+		}
+		if(width < 1 || height < 1){
+			throw new IllegalArgumentException(String.format("width and height must be positive numbers! (was %dx%d)", width, height));
+		}
+		int tiles = loader.numColumns() * loader.numRows();
+		if(tiles > Short.MAX_VALUE){
+			throw new IllegalArgumentException(String.format("The SpriteLoader has too many tiles for a TileMap (has %d, max is %d)", tiles, (int) Short.MAX_VALUE));
+		}
+		
+		this.LOADER = loader;
+		this.WIDTH = width;
+		this.HEIGHT = height;
+		this.ORIGIN_X = originX;
+		this.ORIGIN_Y = originY;
+		this.TILE_WIDTH = loader.tileWidth();
+		this.TILE_HEIGHT = loader.tileHeight();
+		this.LAYERS = new short[layers][width * height];
+		
+		/* Checked before the table is built: a sheet that arrives while it's being built still gets it built again. */
+		boolean loading = SpriteHandle.isLoading(loader);
+		this.images = imagesOf(loader);
+		if(loading){
+			((SpriteHandle) loader).future().thenRun(new Runnable(){
+				@Override
+				public void run() {
+					images = imagesOf(LOADER);
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Builds the table of images, with ID n at index n and null at index 0.
+	 * @param loader the loader to take the images from.
+	 * @return the table.
+	 */
+	static BufferedImage[] imagesOf(SpriteLoader loader){
+		int columns = loader.numColumns();
+		int tiles = columns * loader.numRows();
+		BufferedImage[] table = new BufferedImage[tiles + 1];
+		for(int i = 0; i < tiles; i++){
+			table[i + 1] = loader.getImage(i % columns, i / columns);
+		}
+		return table;
+	}
+	
+	/**
+	 * Gives you the tile ID for a column and row in the {@link SpriteLoader} of this map.
+	 * @param imgCol the column in the {@link SpriteLoader}
+	 * @param imgRow the row in the {@link SpriteLoader}
+	 * @return the ID you can use with {@link #setTile(int, int, int, short)}
+	 */
+	public short idOf(int imgCol, int imgRow){
+		return (short) (imgRow * LOADER.numColumns() + imgCol + 1);
+	}
+	
+	/**
+	 * @param x the column of the cell.
+	 * @param y the row of the cell.
+	 * @return true if the cell is inside this map.
+	 */
+	public boolean contains(int x, int y){
+		return x >= ORIGIN_X && y >= ORIGIN_Y && x - ORIGIN_X < WIDTH && y - ORIGIN_Y < HEIGHT;
+	}
+	
+	private int index(int x, int y){
+		if(!contains(x, y)){
+			throw new IndexOutOfBoundsException(String.format("(%d, %d) is outside the map, which goes from (%d, %d) to (%d, %d)",
+					x, y, ORIGIN_X, ORIGIN_Y, ORIGIN_X + WIDTH - 1, ORIGIN_Y + HEIGHT - 1));
+		}
+		return (y - ORIGIN_Y) * WIDTH + (x - ORIGIN_X);
+	}
+	
+	/**
+	 * @param layer the layer to look in.
+	 * @param x the column of the cell.
+	 * @param y the row of the cell.
+	 * @return the tile ID of the cell, {@link #EMPTY} if there is nothing there.
+	 * @throws IndexOutOfBoundsException if the cell or layer is outside the map.
+	 */
+	public short getTile(int layer, int x, int y){
+		return LAYERS[layer][index(x, y)];
+	}
+	
+	/**
+	 * Sets the tile ID of a cell.
+	 * @param layer the layer to set it in.
+	 * @param x the column of the cell.
+	 * @param y the row of the cell.
+	 * @param id the tile ID, {@link #EMPTY} to clear the cell.
+	 * @throws IndexOutOfBoundsException if the cell or layer is outside the map.
+	 * @throws IllegalArgumentException if there is no tile with that ID.
+	 */
+	public void setTile(int layer, int x, int y, short id){
+		if(id < 0 || id >= images.length){
+			throw new IllegalArgumentException(String.format("No tile has ID %d, legal IDs are 0 to %d", id, images.length - 1));
+		}
+		LAYERS[layer][index(x, y)] = id;
+	}
+	
+	/**
+	 * Gives you the image for a tile ID. Every cell with the same ID shares this image.
+	 * @param id the tile ID.
+	 * @return the image, or null for {@link #EMPTY}.
+	 */
+	public BufferedImage imageOf(short id){
+		return images[id];
+	}
+	
+	/**
+	 * Gives you direct access to the IDs of one layer, row by row. Changes to the array change the map.
+	 * This is meant for loaders and other code that wants to fill or scan a layer in bulk.
+	 * @param layer the layer
+	 * @return the backing array of the layer.
+	 */
+	public short[] layerData(int layer){
+		return LAYERS[layer];
+	}
+	
+	@Override
+	public void paint(Graphics gfx) {
+		for(int layer = 0; layer < LAYERS.length; layer++){
+			paintLayer(gfx, layer);
+		}
+	}
+	
+	/**
+	 * Paints a single layer, limited to the cells inside the clip of the {@link Graphics}.
+	 * @param gfx the {@link Graphics} to paint with.
+	 * @param layer the layer to paint.
+	 */
+	public void paintLayer(Graphics gfx, int layer){
+		Rectangle clip = gfx.getClipBounds();
+		int firstCol = 0, firstRow = 0, lastCol = WIDTH - 1, lastRow = HEIGHT - 1;
+		if(null != clip){
+			firstCol = Math.max(firstCol, Math.floorDiv(clip.x, TILE_WIDTH) - ORIGIN_X);
+			firstRow = Math.max(firstRow, Math.floorDiv(clip.y, TILE_HEIGHT) - ORIGIN_Y);
+			lastCol = Math.min(lastCol, Math.floorDiv(clip.x + clip.width - 1, TILE_WIDTH) - ORIGIN_X);
+			lastRow = Math.min(lastRow, Math.floorDiv(clip.y + clip.height - 1, TILE_HEIGHT) - ORIGIN_Y);
+		}
+		
+		short[] data = LAYERS[layer];
+		BufferedImage[] table = images;
+		for(int row = firstRow; row <= lastRow; row++){
+			int rowStart = row * WIDTH;
+			int py = (row + ORIGIN_Y) * TILE_HEIGHT;
+			for(int col = firstCol; col <= lastCol; col++){
+				short id = data[rowStart + col];
+				if(id != EMPTY){
+					gfx.drawImage(table[id], (col + ORIGIN_X) * TILE_WIDTH, py, null);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Gives you a {@link Tile} that looks at one cell of one layer.
+	 * The cursor does not copy anything, so if you move it with {@link Tile#setX(int)} and friends,
+	 * it looks at another cell instead of moving the tile. Reuse one cursor to look at many cells without creating objects.
+	 * @param layer the layer the cursor looks at.
+	 * @param x the column the cursor starts at.
+	 * @param y the row the cursor starts at.
+	 * @return a new cursor.
+	 */
+	public Cursor cursor(int layer, int x, int y){
+		return new Cursor(layer, x, y);
+	}
+	
+	public SpriteLoader getLoader(){
+		return LOADER;
+	}
+	
+	public int numLayers(){
+		return LAYERS.length;
+	}
+	
+	public int getWidth(){
+		return WIDTH;
+	}
+	
+	public int getHeight(){
+		return HEIGHT;
+	}
+	
+	public int getOriginX(){
+		return ORIGIN_X;
+	}
+	
+	public int getOriginY(){
+		return ORIGIN_Y;
+	}
+	
+	public int tileWidth(){
+		return TILE_WIDTH;
+	}
+	
+	public int tileHeight(){
+		return TILE_HEIGHT;
+	}
+	
+	/**
+	 * A movable view of a single cell in a {@link TileMap}.
+	 * Moving it changes which cell it looks at, it does not move anything in the map.
+	 * Painting it paints the cell it's looking at, and paints nothing if the cell is empty or outside the map.
+	 */
+	public class Cursor implements Tile {
+		private int layer, x, y;
+		
+		private Cursor(int layer, int x, int y){
+			if(layer < 0 || layer >= LAYERS.length){
+				throw new IndexOutOfBoundsException(String.format("No layer %d, legal layers are 0 to %d", layer, LAYERS.length - 1));
+			}
+			this.layer = layer;
+			this.x = x;
+			this.y = y;
+		}
+		
+		/**
+		 * @return the tile ID of the cell, {@link TileMap#EMPTY} if it is empty or outside the map.
+		 */
+		public short id(){
+			return contains(x, y) ? LAYERS[layer][index(x, y)] : EMPTY;
+		}
+		
+		/**
+		 * Sets the tile ID of the cell the cursor is looking at.
+		 * @param id the tile ID, see {@link TileMap#setTile(int, int, int, short)}.
+		 */
+		public void setId(short id){
+			setTile(layer, x, y, id);
+		}
+		
+		public int layer(){
+			return layer;
+		}
+		
+		public void setLayer(int layer){
+			if(layer < 0 || layer >= LAYERS.length){
+				throw new IndexOutOfBoundsException(String.format("No layer %d, legal layers are 0 to %d", layer, LAYERS.length - 1));
+			}
+			this.layer = layer;
+		}
+		
+		@Override
+		public void paint(Graphics gfx) {
+			short id = id();
+			if(id != EMPTY){
+				gfx.drawImage(images[id], x * TILE_WIDTH, y * TILE_HEIGHT, null);
+			}
+		}
+
+		@Override
+		public int xPos() {
+			return x;
+		}
+
+		@Override
+		public int yPos() {
+			return y;
+		}
+
+		@Override
+		public Position2D position() {
+			return new Position2D(x, y);
+		}
+
+		@Override
+		public void setX(int x) {
+			this.x = x;
+		}
+
+		@Override
+		public void setY(int y) {
+			this.y = y;
+		}
+
+		@Override
+		public void setPosition(Position2D position) {
+			this.x = position.getX();
+			this.y = position.getY();
+		}
+	}
+}
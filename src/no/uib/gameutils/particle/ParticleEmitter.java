@@ -0,0 +1,580 @@
+package no.uib.gameutils.particle;
+
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import no.uib.gameutils.entity.type.Paintable;
+import no.uib.gameutils.entity.type.Tickable;
+import no.uib.gameutils.sprite.SpriteHandle;
+import no.uib.gameutils.sprite.SpriteLoader;
+
+/**
+ * A ParticleEmitter is a swarm of short-lived particles (sparks, smoke, debris) that all look the same, handled as one object.
+ * 
+ * Instead of one object per particle, the particles are kept in plain arrays, one per property, all made when the emitter is made.
+ * When a particle dies, the last particle is moved into its place, so the live particles are always the first {@link #size()} slots
+ * and nothing is created or thrown away while the emitter runs. If the emitter is full, new particles are dropped and counted.
+ * 
+ * Each {@link #tick()} moves every particle by its velocity, pulls it by gravity and slows it by drag.
+ * When there are more than batchSize particles, the work is split into batches and run on a {@link ForkJoinPool}.
+ * The batch tasks are made once and reused, so ticking allocates nothing either, apart from the small node the pool
+ * sometimes makes when the ticking thread has to wait for the others.
+ * 
+ * Every particle is painted with the same sprite from a {@link SpriteLoader}, centred on the particle, in one tight loop
+ * that skips the particles outside the clip. With fading turned on, particles fade out over their life, using a few copies of the
+ * sprite made up front with less and less alpha.
+ * 
+ * Positions are in pixels, velocities in pixels per tick, and lifetimes in ticks.
+ * The emitter is both {@link Tickable} and {@link Paintable}, so it can be put in a scene and a {@link no.uib.gameutils.threads.TickEngine TickEngine}
+ * like any other entity. Emit, tick and paint from the same thread, or make sure painting doesn't overlap ticking.
+ */
+public class ParticleEmitter implements Tickable, Paintable {
+	public static final int DEFAULT_CAPACITY = 4096;
+	public static final int DEFAULT_BATCH_SIZE = 4096;
+	public static final int FADE_STEPS = 8;
+	
+	private final float[] X, Y, VX, VY;
+	private final int[] AGE, LIFE;
+	private final BufferedImage[] IMAGES;
+	private final int HALF_WIDTH, HALF_HEIGHT;
+	private final float GRAVITY_X, GRAVITY_Y, DRAG;
+	private final float MIN_SPEED, MAX_SPEED, MIN_ANGLE, MAX_ANGLE;
+	private final int MIN_LIFE, MAX_LIFE;
+	private final ForkJoinPool POOL;
+	private final int BATCH_SIZE;
+	private final Batch[] BATCHES;
+	private final Step STEP = new Step();
+	
+	private int count;
+	private float x, y, rate, owed;
+	private long seed;
+	private long dropped, emitted;
+	
+	private ParticleEmitter(BufferedImage sprite, boolean fade, int capacity, int minLife, int maxLife, float minSpeed, float maxSpeed,
+			float minAngle, float maxAngle, float gravityX, float gravityY, float drag, float rate, long seed, ForkJoinPool pool, int batchSize){
+		this.X = new float[capacity];
+		this.Y = new float[capacity];
+		this.VX = new float[capacity];
+		this.VY = new float[capacity];
+		this.AGE = new int[capacity];
+		this.LIFE = new int[capacity];
+		this.IMAGES = fade ? fadedCopies(sprite) : new BufferedImage[]{ sprite };
+		this.HALF_WIDTH = sprite.getWidth() / 2;
+		this.HALF_HEIGHT = sprite.getHeight() / 2;
+		this.MIN_LIFE = minLife;
+		this.MAX_LIFE = maxLife;
+		this.MIN_SPEED = minSpeed;
+		this.MAX_SPEED = maxSpeed;
+		this.MIN_ANGLE = (float) Math.toRadians(minAngle);
+		this.MAX_ANGLE = (float) Math.toRadians(maxAngle);
+		this.GRAVITY_X = gravityX;
+		this.GRAVITY_Y = gravityY;
+		this.DRAG = drag;
+		this.rate = rate;
+		this.seed = 0 == seed ? 0x9E3779B97F4A7C15L : seed;
+		this.POOL = pool;
+		this.BATCH_SIZE = batchSize;
+		this.BATCHES = new Batch[(capacity + batchSize - 1) / batchSize];
+		for(int i = 0; i < BATCHES.length; i++){
+			BATCHES[i] = new Batch(i * batchSize);
+		}
+	}
+	
+	/**
+	 * Makes FADE_STEPS copies of the sprite, the first as it is and each of the others a little more see-through.
+	 */
+	private static BufferedImage[] fadedCopies(BufferedImage sprite){
+		int width = sprite.getWidth(), height = sprite.getHeight();
+		int[] pixels = sprite.getRGB(0, 0, width, height, null, 0, width);
+		int[] faded = new int[pixels.length];
+		BufferedImage[] images = new BufferedImage[FADE_STEPS];
+		for(int step = 0; step < FADE_STEPS; step++){
+			int keep = 256 * (FADE_STEPS - step) / FADE_STEPS;
+			for(int i = 0; i < pixels.length; i++){
+				int alpha = ((pixels[i] >>> 24) * keep) >> 8;
+				faded[i] = (alpha << 24) | (pixels[i] & 0xFFFFFF);
+			}
+			images[step] = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			images[step].setRGB(0, 0, width, height, faded, 0, width);
+		}
+		return images;
+	}
+	
+	/**
+	 * Moves the point new particles are emitted from.
+	 * @param x the x position, in pixels.
+	 * @param y the y position, in pixels.
+	 */
+	public void setPosition(float x, float y){
+		this.x = x;
+		this.y = y;
+	}
+	
+	/**
+	 * Sets how many particles are emitted every tick. Rates below 1 emit a particle every few ticks.
+	 * @param rate the number of particles per tick, 0 to stop emitting.
+	 */
+	public void setRate(float rate){
+		if(rate < 0 || Float.isNaN(rate)){
+			throw new IllegalArgumentException(String.format("rate may not be negative! (was %f)", rate));
+		}
+		this.rate = rate;
+		if(0 == rate){
+			owed = 0;
+		}
+	}
+	
+	/**
+	 * Emits a burst of particles from the emitter's position.
+	 * @param particles how many particles to emit.
+	 * @return how many particles there was room for.
+	 */
+	public int emit(int particles){
+		return emit(x, y, particles);
+	}
+	
+	/**
+	 * Emits a burst of particles from a point, without moving the emitter.
+	 * @param x the x position, in pixels.
+	 * @param y the y position, in pixels.
+	 * @param particles how many particles to emit.
+	 * @return how many particles there was room for.
+	 */
+	public int emit(float x, float y, int particles){
+		if(particles < 0){
+			throw new IllegalArgumentException(String.format("particles may not be negative! (was %d)", particles));
+		}
+		int room = Math.min(particles, X.length - count);
+		dropped += particles - room;
+		emitted += room;
+		for(int n = 0; n < room; n++){
+			int i = count++;
+			float speed = MIN_SPEED + (MAX_SPEED - MIN_SPEED) * nextFloat();
+			float angle = MIN_ANGLE + (MAX_ANGLE - MIN_ANGLE) * nextFloat();
+			X[i] = x;
+			Y[i] = y;
+			VX[i] = speed * (float) Math.cos(angle);
+			VY[i] = speed * (float) Math.sin(angle);
+			AGE[i] = 0;
+			LIFE[i] = MIN_LIFE + (int) ((MAX_LIFE - MIN_LIFE + 1) * nextFloat());
+		}
+		return room;
+	}
+	
+	/**
+	 * xorshift64*, so emitting doesn't share (or synchronize on) a {@link java.util.Random}, and the same seed gives the same particles.
+	 * @return a number from 0 (inclusive) to 1 (exclusive).
+	 */
+	private float nextFloat(){
+		seed ^= seed >>> 12;
+		seed ^= seed << 25;
+		seed ^= seed >>> 27;
+		return ((seed * 0x2545F4914F6CDD1DL) >>> 40) * 0x1.0p-24f;
+	}
+	
+	/**
+	 * Emits the particles owed by the rate, moves every particle, and removes the ones that have lived out their life.
+	 */
+	@Override
+	public void tick() {
+		owed += rate;
+		if(owed >= 1){
+			int whole = (int) owed;
+			owed -= whole;
+			emit(whole);
+		}
+		
+		if(count <= BATCH_SIZE){
+			move(0, count);
+		}
+		else{
+			STEP.reinitialize();
+			POOL.invoke(STEP);
+		}
+		
+		/* Swap-remove the dead: the last particle takes the place of a dead one, and is then checked itself. */
+		int i = 0;
+		while(i < count){
+			if(AGE[i] >= LIFE[i]){
+				int last = --count;
+				X[i] = X[last];
+				Y[i] = Y[last];
+				VX[i] = VX[last];
+				VY[i] = VY[last];
+				AGE[i] = AGE[last];
+				LIFE[i] = LIFE[last];
+			}
+			else{
+				i++;
+			}
+		}
+	}
+	
+	private void move(int first, int last){
+		float gravityX = GRAVITY_X, gravityY = GRAVITY_Y, drag = DRAG;
+		float[] xs = X, ys = Y, vxs = VX, vys = VY;
+		int[] ages = AGE;
+		for(int i = first; i < last; i++){
+			float vx = vxs[i] * drag + gravityX;
+			float vy = vys[i] * drag + gravityY;
+			vxs[i] = vx;
+			vys[i] = vy;
+			xs[i] += vx;
+			ys[i] += vy;
+			ages[i]++;
+		}
+	}
+	
+	@Override
+	public void paint(Graphics gfx) {
+		Rectangle clip = gfx.getClipBounds();
+		float minX = -Float.MAX_VALUE, minY = -Float.MAX_VALUE, maxX = Float.MAX_VALUE, maxY = Float.MAX_VALUE;
+		if(null != clip){
+			minX = clip.x - HALF_WIDTH * 2;
+			minY = clip.y - HALF_HEIGHT * 2;
+			maxX = clip.x + clip.width + HALF_WIDTH;
+			maxY = clip.y + clip.height + HALF_HEIGHT;
+		}
+		BufferedImage[] images = IMAGES;
+		int steps = images.length;
+		for(int i = 0; i < count; i++){
+			float px = X[i], py = Y[i];
+			if(px < minX || py < minY || px > maxX || py > maxY){
+				continue;
+			}
+			BufferedImage image = 1 == steps ? images[0] : images[AGE[i] * steps / LIFE[i]];
+			gfx.drawImage(image, (int) px - HALF_WIDTH, (int) py - HALF_HEIGHT, null);
+		}
+	}
+	
+	/**
+	 * Removes every particle.
+	 */
+	public void clear(){
+		count = 0;
+		owed = 0;
+	}
+	
+	/**
+	 * @return the number of live particles.
+	 */
+	public int size(){
+		return count;
+	}
+	
+	/**
+	 * @return the most particles the emitter can hold.
+	 */
+	public int capacity(){
+		return X.length;
+	}
+	
+	/**
+	 * @return how many particles have been emitted since the emitter was made.
+	 */
+	public long emittedParticles(){
+		return emitted;
+	}
+	
+	/**
+	 * @return how many particles weren't emitted because the emitter was full.
+	 */
+	public long droppedParticles(){
+		return dropped;
+	}
+	
+	/**
+	 * @param i the slot of a live particle, from 0 to {@link #size()}. Slots change when particles die.
+	 * @return the x position of the particle.
+	 */
+	public float xOf(int i){
+		return X[i];
+	}
+	
+	/**
+	 * @param i the slot of a live particle, from 0 to {@link #size()}. Slots change when particles die.
+	 * @return the y position of the particle.
+	 */
+	public float yOf(int i){
+		return Y[i];
+	}
+	
+	/**
+	 * @param i the slot of a live particle, from 0 to {@link #size()}. Slots change when particles die.
+	 * @return how many ticks the particle has lived.
+	 */
+	public int ageOf(int i){
+		return AGE[i];
+	}
+	
+	public float getX(){
+		return x;
+	}
+	
+	public float getY(){
+		return y;
+	}
+	
+	public float getRate(){
+		return rate;
+	}
+	
+	/**
+	 * Forks one batch per BATCH_SIZE live particles, runs the first itself, and waits for the rest.
+	 */
+	private class Step extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected void compute() {
+			int batches = (count + BATCH_SIZE - 1) / BATCH_SIZE;
+			for(int i = 1; i < batches; i++){
+				BATCHES[i].reinitialize();
+				BATCHES[i].fork();
+			}
+			BATCHES[0].move();
+			for(int i = batches - 1; i > 0; i--){
+				BATCHES[i].join();
+			}
+		}
+	}
+	
+	/**
+	 * One fixed range of slots. Made once, and reinitialized every tick it's needed.
+	 */
+	private class Batch extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int first;
+		
+		private Batch(int first){
+			this.first = first;
+		}
+		
+		private void move(){
+			ParticleEmitter.this.move(first, Math.min(first + BATCH_SIZE, count));
+		}
+		
+		@Override
+		protected void compute() {
+			move();
+		}
+	}
+	
+	public static ParticleEmitterBuilder build(){
+		return new ParticleEmitterBuilder();
+	}
+	
+	public static class ParticleEmitterBuilder {
+		private SpriteLoader loader;
+		private int col, row;
+		private boolean fade;
+		private int capacity;
+		private int minLife, maxLife;
+		private float minSpeed, maxSpeed, minAngle, maxAngle;
+		private float gravityX, gravityY, drag;
+		private float rate;
+		private long seed;
+		private ForkJoinPool pool;
+		private int batchSize;
+		
+		public ParticleEmitterBuilder(){
+			loader = null;
+			col = 0;
+			row = 0;
+			fade = false;
+			capacity = DEFAULT_CAPACITY;
+			minLife = 60;
+			maxLife = 60;
+			minSpeed = 1;
+			maxSpeed = 1;
+			minAngle = 0;
+			maxAngle = 360;
+			gravityX = 0;
+			gravityY = 0;
+			drag = 1;
+			rate = 0;
+			seed = System.nanoTime();
+			pool = ForkJoinPool.commonPool();
+			batchSize = DEFAULT_BATCH_SIZE;
+		}
+		
+		/**
+		 * Sets the sprite every particle is painted with. This must be set.
+		 * @param loader the {@link SpriteLoader} to take the sprite from, may not be null.
+		 * @param col the column of the sprite.
+		 * @param row the row of the sprite.
+		 * @return this {@link ParticleEmitterBuilder} so you can chain calls.
+		 */
+		public ParticleEmitterBuilder sprite(SpriteLoader loader, int col, int row){
+			if(null == loader){
+				throw new IllegalArgumentException("Argument \"loader\" may not be null.");
+			}
+			this.loader = loader;
+			this.col = col;
+			this.row = row;
+			return this;
+		}
+		
+		/**
+		 * Sets whether particles fade out over their life. Default is false.
+		 * @param fade true to fade.
+		 * @return this {@link ParticleEmitterBuilder} so you can chain calls.
+		 */
+		public ParticleEmitterBuilder fade(boolean fade){
+			this.fade = fade;
+			return this;
+		}
+		
+		/**
+		 * Sets the most particles the emitter can hold at once. Default is {@link ParticleEmitter#DEFAULT_CAPACITY}.
+		 * The arrays are made this large up front, at 24 bytes per particle.
+		 * @param capacity the number of particles, must be positive.
+		 * @return this {@link ParticleEmitterBuilder} so you can chain calls.
+		 */
+		public ParticleEmitterBuilder capacity(int capacity){
+			if(capacity < 1){
+				throw new IllegalArgumentException(String.format("capacity must be a positive number! (was %d)", capacity));
+			}
+			this.capacity = capacity;
+			return this;
+		}
+		
+		/**
+		 * Sets how long particles live. Each particle gets a life picked at random between the two. Default is 60 ticks.
+		 * @param minTicks the shortest life, must be positive.
+		 * @param maxTicks the longest life, at least minTicks.
+		 * @return this {@link ParticleEmitterBuilder} so you can chain calls.
+		 */
+		public ParticleEmitterBuilder lifetime(int minTicks, int maxTicks){
+			if(minTicks < 1 || maxTicks < minTicks){
+				throw new IllegalArgumentException(String.format("Illegal lifetime, minTicks must be positive and maxTicks at least minTicks (yours was %d, %d)", minTicks, maxTicks));
+			}
+			this.minLife = minTicks;
+			this.maxLife = maxTicks;
+			return this;
+		}
+		
+		/**
+		 * Sets how fast particles start out, in pixels per tick. Each particle gets a speed picked at random between the two. Default is 1.
+		 * @param min the lowest speed, may not be negative.
+		 * @param max the highest speed, at least min.
+		 * @return this {@link ParticleEmitterBuilder} so you can chain calls.
+		 */
+		public ParticleEmitterBuilder speed(float min, float max){
+			if(!(min >= 0) || !(max >= min)){
+				throw new IllegalArgumentException(String.format("Illegal speed, min may not be negative and max must be at least min (yours was %f, %f)", min, max));
+			}
+			this.minSpeed = min;
+			this.maxSpeed = max;
+			return this;
+		}
+		
+		/**
+		 * Sets which way particles start out, in degrees, where 0 is to the right and 90 is down the screen.
+		 * Each particle gets a direction picked at random between the two. Default is all the way round, 0 to 360.
+		 * @param min the first direction.
+		 * @param max the last direction, at least min.
+		 * @return this {@link ParticleEmitterBuilder} so you can chain calls.
+		 */
+		public ParticleEmitterBuilder angle(float min, float max){
+			if(!(max >= min)){
+				throw new IllegalArgumentException(String.format("Illegal angle, max must be at least min (yours was %f, %f)", min, max));
+			}
+			this.minAngle = min;
+			this.maxAngle = max;
+			return this;
+		}
+		
+		/**
+		 * Sets the pull on every particle, added to its velocity every tick. Default is none.
+		 * @param x the pull along x, in pixels per tick per tick.
+		 * @param y the pull along y, in pixels per tick per tick. Positive is down the screen.
+		 * @return this {@link ParticleEmitterBuilder} so you can chain calls.
+		 */
+		public ParticleEmitterBuilder gravity(float x, float y){
+			this.gravityX = x;
+			this.gravityY = y;
+			return this;
+		}
+		
+		/**
+		 * Sets how much of its velocity a particle keeps every tick. Default is 1, no drag at all.
+		 * @param drag the part of the velocity kept, from 0 to 1.
+		 * @return this {@link ParticleEmitterBuilder} so you can chain calls.
+		 */
+		public ParticleEmitterBuilder drag(float drag){
+			if(!(drag >= 0 && drag <= 1)){
+				throw new IllegalArgumentException(String.format("drag must be between 0 and 1! (was %f)", drag));
+			}
+			this.drag = drag;
+			return this;
+		}
+		
+		/**
+		 * Sets how many particles are emitted every tick to begin with. Default is 0, only bursts. See {@link ParticleEmitter#setRate(float)}.
+		 * @param rate the number of particles per tick, may not be negative.
+		 * @return this {@link ParticleEmitterBuilder} so you can chain calls.
+		 */
+		public ParticleEmitterBuilder rate(float rate){
+			if(!(rate >= 0)){
+				throw new IllegalArgumentException(String.format("rate may not be negative! (was %f)", rate));
+			}
+			this.rate = rate;
+			return this;
+		}
+		
+		/**
+		 * Sets the seed for the random speeds, angles and lifetimes, so a run can be repeated. Default is the time the builder was made.
+		 * @param seed the seed.
+		 * @return this {@link ParticleEmitterBuilder} so you can chain calls.
+		 */
+		public ParticleEmitterBuilder seed(long seed){
+			this.seed = seed;
+			return this;
+		}
+		
+		/**
+		 * Sets the pool large emitters are ticked on. Default is the common pool.
+		 * @param pool the pool, may not be null.
+		 * @return this {@link ParticleEmitterBuilder} so you can chain calls.
+		 */
+		public ParticleEmitterBuilder pool(ForkJoinPool pool){
+			if(null == pool){
+				throw new IllegalArgumentException("Argument \"pool\" may not be null.");
+			}
+			this.pool = pool;
+			return this;
+		}
+		
+		/**
+		 * Sets how many particles each task moves. Default is {@link ParticleEmitter#DEFAULT_BATCH_SIZE}.
+		 * Emitters with no more particles than this are ticked on the calling thread alone.
+		 * @param batchSize the number of particles, must be positive.
+		 * @return this {@link ParticleEmitterBuilder} so you can chain calls.
+		 */
+		public ParticleEmitterBuilder batchSize(int batchSize){
+			if(batchSize < 1){
+				throw new IllegalArgumentException(String.format("batchSize must be a positive number! (was %d)", batchSize));
+			}
+			this.batchSize = batchSize;
+			return this;
+		}
+		
+		/**
+		 * If the sprite comes from a {@link SpriteHandle} that is still loading, this waits for the sheet,
+		 * since the sprite is kept, and copied for fading, for as long as the emitter lives.
+		 * @return a new instance of {@link ParticleEmitter}
+		 * @throws IllegalStateException if no sprite is set, or the sheet of a {@link SpriteHandle} could not be loaded.
+		 */
+		public ParticleEmitter create(){
+			if(null == loader){
+				throw new IllegalStateException("No sprite set");
+			}
+			return new ParticleEmitter(SpriteHandle.await(loader).getImage(col, row), fade, capacity, minLife, maxLife, minSpeed, maxSpeed, minAngle, maxAngle,
+					gravityX, gravityY, drag, rate, seed, pool, batchSize);
+		}
+	}
+}
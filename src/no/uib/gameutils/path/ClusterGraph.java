@@ -0,0 +1,290 @@
+package no.uib.gameutils.path;
+
+import java.util.Arrays;
+
+/**
+ * The grid cut into square clusters, with the ways between them worked out ahead of time, for hierarchical pathfinding (HPA*).
+ * 
+ * Where two clusters touch, each run of open cells along the border gets an entrance: one in the middle of short runs,
+ * one at each end of long ones. Each entrance is a pair of nodes, one on each side, and inside each cluster
+ * the cost between every pair of its nodes is found with a flood fill that stays inside the cluster.
+ * A long search then runs over those nodes instead of the cells, and only the short legs between them are searched cell by cell.
+ * The paths found this way are usually a few percent longer than the best, in exchange for searching a lot less.
+ * 
+ * Node numbers are fixed: each cluster has room for {@link #SIZE} entrances on each of its four sides,
+ * and node (cluster, side, k) is cluster * 4 * SIZE + side * SIZE + k, so the node on the other side of an entrance
+ * can be worked out without looking anything up.
+ * 
+ * Changing a cell only marks its cluster dirty. Its borders, and the nodes of it and its neighbours, are worked out again
+ * in {@link #rebuild(SearchState)} before the next search.
+ */
+final class ClusterGraph {
+	static final int WEST = 0, NORTH = 1, EAST = 2, SOUTH = 3;
+	private static final int LONG_RUN = 6;
+	
+	final int SIZE;
+	private final PassabilityGrid GRID;
+	private final int COLS, ROWS, SLOTS;
+	// Entrances on the east and south border of each cluster: the cell on this side, the cell on the other side, and how many.
+	private final int[][] EAST_IN, EAST_OUT, SOUTH_IN, SOUTH_OUT;
+	private final int[] EAST_COUNT, SOUTH_COUNT;
+	// The nodes each cluster has, as slots (side * SIZE + k), where to find each slot in that list, and the costs between them.
+	private final int[][] NODES, INDEX, DIST;
+	private final boolean[] DIRTY;
+	private boolean anyDirty;
+	
+	ClusterGraph(PassabilityGrid grid, int size){
+		this.GRID = grid;
+		this.SIZE = size;
+		this.COLS = (grid.getWidth() + size - 1) / size;
+		this.ROWS = (grid.getHeight() + size - 1) / size;
+		this.SLOTS = 4 * size;
+		int clusters = COLS * ROWS;
+		EAST_IN = new int[clusters][size];
+		EAST_OUT = new int[clusters][size];
+		SOUTH_IN = new int[clusters][size];
+		SOUTH_OUT = new int[clusters][size];
+		EAST_COUNT = new int[clusters];
+		SOUTH_COUNT = new int[clusters];
+		NODES = new int[clusters][];
+		INDEX = new int[clusters][];
+		DIST = new int[clusters][];
+		DIRTY = new boolean[clusters];
+		Arrays.fill(DIRTY, true);
+		anyDirty = true;
+	}
+	
+	/**
+	 * @return the number of node numbers, one more than the highest.
+	 */
+	int numNodes(){
+		return COLS * ROWS * SLOTS;
+	}
+	
+	int clusterOf(int localX, int localY){
+		return (localY / SIZE) * COLS + localX / SIZE;
+	}
+	
+	/**
+	 * Marks the cluster of a cell as needing to be worked out again.
+	 */
+	void markDirty(int localX, int localY){
+		DIRTY[clusterOf(localX, localY)] = true;
+		anyDirty = true;
+	}
+	
+	/**
+	 * Works out the borders and nodes of the dirty clusters again.
+	 * @param s scratch space for the flood fills.
+	 */
+	void rebuild(SearchState s){
+		if(!anyDirty){
+			return;
+		}
+		int clusters = COLS * ROWS;
+		for(int k = 0; k < clusters; k++){
+			if(DIRTY[k]){
+				buildBorders(k);
+				if(k % COLS > 0){
+					buildBorders(k - 1);
+				}
+				if(k >= COLS){
+					buildBorders(k - COLS);
+				}
+			}
+		}
+		boolean[] affected = new boolean[clusters];
+		for(int k = 0; k < clusters; k++){
+			if(DIRTY[k]){
+				affected[k] = true;
+				if(k % COLS > 0){
+					affected[k - 1] = true;
+				}
+				if(k % COLS < COLS - 1){
+					affected[k + 1] = true;
+				}
+				if(k >= COLS){
+					affected[k - COLS] = true;
+				}
+				if(k + COLS < clusters){
+					affected[k + COLS] = true;
+				}
+			}
+		}
+		for(int k = 0; k < clusters; k++){
+			if(affected[k]){
+				buildNodes(k, s);
+			}
+		}
+		Arrays.fill(DIRTY, false);
+		anyDirty = false;
+	}
+	
+	private void buildBorders(int k){
+		int cx = k % COLS, cy = k / COLS;
+		int x0 = cx * SIZE, y0 = cy * SIZE;
+		int x1 = Math.min(x0 + SIZE, GRID.getWidth()) - 1;
+		int y1 = Math.min(y0 + SIZE, GRID.getHeight()) - 1;
+		EAST_COUNT[k] = 0;
+		if(cx < COLS - 1){
+			EAST_COUNT[k] = entrances(x1, y0, 0, 1, y1 - y0 + 1, 1, 0, EAST_IN[k], EAST_OUT[k]);
+		}
+		SOUTH_COUNT[k] = 0;
+		if(cy < ROWS - 1){
+			SOUTH_COUNT[k] = entrances(x0, y1, 1, 0, x1 - x0 + 1, 0, 1, SOUTH_IN[k], SOUTH_OUT[k]);
+		}
+	}
+	
+	/**
+	 * Finds the runs of open cell pairs along a border, and puts entrances on them.
+	 * @return the number of entrances.
+	 */
+	private int entrances(int x, int y, int stepX, int stepY, int length, int acrossX, int acrossY, int[] in, int[] out){
+		int width = GRID.getWidth();
+		int count = 0;
+		int runStart = -1;
+		for(int i = 0; i <= length; i++){
+			int cx = x + i * stepX, cy = y + i * stepY;
+			boolean open = i < length && GRID.open(cx, cy) && GRID.open(cx + acrossX, cy + acrossY);
+			if(open && runStart < 0){
+				runStart = i;
+			}
+			else if(!open && runStart >= 0){
+				int runEnd = i - 1;
+				if(runEnd - runStart + 1 < LONG_RUN){
+					count = entrance(x, y, stepX, stepY, (runStart + runEnd) / 2, acrossX, acrossY, width, in, out, count);
+				}
+				else {
+					count = entrance(x, y, stepX, stepY, runStart, acrossX, acrossY, width, in, out, count);
+					count = entrance(x, y, stepX, stepY, runEnd, acrossX, acrossY, width, in, out, count);
+				}
+				runStart = -1;
+			}
+		}
+		return count;
+	}
+	
+	private static int entrance(int x, int y, int stepX, int stepY, int i, int acrossX, int acrossY, int width, int[] in, int[] out, int count){
+		int cx = x + i * stepX, cy = y + i * stepY;
+		in[count] = cy * width + cx;
+		out[count] = (cy + acrossY) * width + cx + acrossX;
+		return count + 1;
+	}
+	
+	/**
+	 * Lists the nodes of a cluster, and floods from each of them to find the costs to the others.
+	 */
+	private void buildNodes(int k, SearchState s){
+		int n = 0;
+		int[] slots = new int[SLOTS];
+		for(int side = 0; side < 4; side++){
+			int count = sideCount(k, side);
+			for(int i = 0; i < count; i++){
+				slots[n++] = side * SIZE + i;
+			}
+		}
+		int[] nodes = Arrays.copyOf(slots, n);
+		int[] index = new int[SLOTS];
+		Arrays.fill(index, -1);
+		for(int i = 0; i < n; i++){
+			index[nodes[i]] = i;
+		}
+		int[] dist = new int[n * n];
+		for(int i = 0; i < n; i++){
+			flood(k, cellOf(k, nodes[i]), s);
+			for(int j = 0; j < n; j++){
+				int cell = cellOf(k, nodes[j]);
+				dist[i * n + j] = s.SEEN[cell] == s.generation() ? s.G[cell] : -1;
+			}
+		}
+		NODES[k] = nodes;
+		INDEX[k] = index;
+		DIST[k] = dist;
+	}
+	
+	/**
+	 * Floods a cluster from a cell, leaving the costs in the state.
+	 */
+	int flood(int k, int cell, SearchState s){
+		int cx = k % COLS, cy = k / COLS;
+		int x0 = cx * SIZE, y0 = cy * SIZE;
+		int x1 = Math.min(x0 + SIZE, GRID.getWidth()) - 1;
+		int y1 = Math.min(y0 + SIZE, GRID.getHeight()) - 1;
+		return GridSearch.astar(GRID, s, cell, -1, x0, y0, x1, y1);
+	}
+	
+	/**
+	 * A* from one cell to another, staying inside a cluster.
+	 */
+	int searchInside(int k, int from, int to, SearchState s){
+		int cx = k % COLS, cy = k / COLS;
+		int x0 = cx * SIZE, y0 = cy * SIZE;
+		int x1 = Math.min(x0 + SIZE, GRID.getWidth()) - 1;
+		int y1 = Math.min(y0 + SIZE, GRID.getHeight()) - 1;
+		return GridSearch.astar(GRID, s, from, to, x0, y0, x1, y1);
+	}
+	
+	private int sideCount(int k, int side){
+		switch(side){
+		case EAST:
+			return EAST_COUNT[k];
+		case SOUTH:
+			return SOUTH_COUNT[k];
+		case WEST:
+			return k % COLS > 0 ? EAST_COUNT[k - 1] : 0;
+		default:
+			return k >= COLS ? SOUTH_COUNT[k - COLS] : 0;
+		}
+	}
+	
+	/**
+	 * @return the cell a slot of a cluster sits on.
+	 */
+	int cellOf(int k, int slot){
+		int side = slot / SIZE, i = slot % SIZE;
+		switch(side){
+		case EAST:
+			return EAST_IN[k][i];
+		case SOUTH:
+			return SOUTH_IN[k][i];
+		case WEST:
+			return EAST_OUT[k - 1][i];
+		default:
+			return SOUTH_OUT[k - COLS][i];
+		}
+	}
+	
+	/**
+	 * @return the node on the other side of the entrance a node belongs to.
+	 */
+	int partnerOf(int node){
+		int k = node / SLOTS, slot = node % SLOTS;
+		int side = slot / SIZE, i = slot % SIZE;
+		switch(side){
+		case EAST:
+			return (k + 1) * SLOTS + WEST * SIZE + i;
+		case SOUTH:
+			return (k + COLS) * SLOTS + NORTH * SIZE + i;
+		case WEST:
+			return (k - 1) * SLOTS + EAST * SIZE + i;
+		default:
+			return (k - COLS) * SLOTS + SOUTH * SIZE + i;
+		}
+	}
+	
+	int slots(){
+		return SLOTS;
+	}
+	
+	int[] nodes(int k){
+		return NODES[k];
+	}
+	
+	int indexOf(int k, int slot){
+		return INDEX[k][slot];
+	}
+	
+	int[] distances(int k){
+		return DIST[k];
+	}
+}
@@ -0,0 +1,13 @@
+package no.uib.gameutils.path;
+
+/**
+ * A GridListener is told whenever a cell of a {@link PassabilityGrid} changes between passable and blocked.
+ */
+public interface GridListener {
+	/**
+	 * @param x the column of the cell, in tiles.
+	 * @param y the row of the cell, in tiles.
+	 * @param passable true if the cell was opened, false if it was blocked.
+	 */
+	public void cellChanged(int x, int y, boolean passable);
+}
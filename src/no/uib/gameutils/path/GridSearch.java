@@ -0,0 +1,322 @@
+package no.uib.gameutils.path;
+
+import java.util.Arrays;
+
+/**
+ * The searches themselves: A*, Jump Point Search and a bounded flood fill, over the cells of a {@link PassabilityGrid}.
+ * 
+ * Cells are numbered row by row from the origin of the grid, and every step may go to any of the eight neighbours,
+ * as long as it doesn't cut the corner of a blocked cell. Straight steps cost {@link #STRAIGHT}, diagonal ones {@link #DIAGONAL},
+ * and the heuristic is the octile distance, which never overestimates, so both searches find the cheapest path.
+ * 
+ * Everything lives in the {@link SearchState} passed in, so a search allocates nothing once the state is warm.
+ */
+final class GridSearch {
+	static final int STRAIGHT = 10;
+	static final int DIAGONAL = 14;
+	
+	private static final int[] DX = {1, 0, -1, 0, 1, -1, -1, 1};
+	private static final int[] DY = {0, 1, 0, -1, 1, 1, -1, -1};
+	
+	private GridSearch(){
+	}
+	
+	static int octile(int ax, int ay, int bx, int by){
+		int dx = Math.abs(ax - bx);
+		int dy = Math.abs(ay - by);
+		return STRAIGHT * Math.max(dx, dy) + (DIAGONAL - STRAIGHT) * Math.min(dx, dy);
+	}
+	
+	private static long key(int g, int h){
+		// Ties on f go to the node closest to the goal, which saves a lot of work on open ground.
+		return ((long) (g + h) << 32) | h;
+	}
+	
+	/**
+	 * A* from start to goal, never leaving the rectangle (inclusive, in cells counted from the origin).
+	 * If goal is -1 there is no goal and no heuristic, and every cell in the rectangle that can be reached gets its cost in {@link SearchState#G}.
+	 * @return the cost of the path, or -1 if the goal can't be reached.
+	 */
+	static int astar(PassabilityGrid grid, SearchState s, int start, int goal, int minX, int minY, int maxX, int maxY){
+		int width = grid.getWidth();
+		int gen = s.begin();
+		int goalX = goal < 0 ? 0 : goal % width;
+		int goalY = goal < 0 ? 0 : goal / width;
+		s.G[start] = 0;
+		s.PARENT[start] = -1;
+		s.SEEN[start] = gen;
+		s.OPEN.push(start, 0);
+		while(!s.OPEN.isEmpty()){
+			int cur = s.OPEN.pop();
+			if(cur == goal){
+				return s.G[cur];
+			}
+			s.CLOSED[cur] = gen;
+			int cx = cur % width;
+			int cy = cur / width;
+			for(int d = 0; d < 8; d++){
+				int nx = cx + DX[d];
+				int ny = cy + DY[d];
+				if(nx < minX || ny < minY || nx > maxX || ny > maxY || !grid.open(nx, ny)){
+					continue;
+				}
+				boolean diagonal = d >= 4;
+				if(diagonal && !(grid.open(nx, cy) && grid.open(cx, ny))){
+					continue;
+				}
+				int next = ny * width + nx;
+				if(s.CLOSED[next] == gen){
+					continue;
+				}
+				int g = s.G[cur] + (diagonal ? DIAGONAL : STRAIGHT);
+				if(s.SEEN[next] != gen || g < s.G[next]){
+					s.SEEN[next] = gen;
+					s.G[next] = g;
+					s.PARENT[next] = cur;
+					s.OPEN.push(next, goal < 0 ? g : key(g, octile(nx, ny, goalX, goalY)));
+				}
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Jump Point Search from start to goal over the whole grid.
+	 * Only the jump points are put in the open list, and {@link SearchState#PARENT} links jump points,
+	 * so the path has to be filled in with {@link #appendPath(PassabilityGrid, SearchState, int, boolean, Cells)}.
+	 * @return the cost of the path, or -1 if the goal can't be reached.
+	 */
+	static int jps(PassabilityGrid grid, SearchState s, int start, int goal){
+		int width = grid.getWidth();
+		int gen = s.begin();
+		int goalX = goal % width;
+		int goalY = goal / width;
+		int[] dirs = s.DIRS;
+		s.G[start] = 0;
+		s.PARENT[start] = -1;
+		s.SEEN[start] = gen;
+		s.OPEN.push(start, 0);
+		while(!s.OPEN.isEmpty()){
+			int cur = s.OPEN.pop();
+			if(cur == goal){
+				return s.G[cur];
+			}
+			s.CLOSED[cur] = gen;
+			int cx = cur % width;
+			int cy = cur / width;
+			int numDirs = prune(grid, s.PARENT[cur], width, cx, cy, dirs);
+			for(int d = 0; d < numDirs; d += 2){
+				int jump = jump(grid, cx + dirs[d], cy + dirs[d + 1], dirs[d], dirs[d + 1], goalX, goalY);
+				if(jump < 0 || s.CLOSED[jump] == gen){
+					continue;
+				}
+				int jx = jump % width;
+				int jy = jump / width;
+				int g = s.G[cur] + octile(cx, cy, jx, jy);
+				if(s.SEEN[jump] != gen || g < s.G[jump]){
+					s.SEEN[jump] = gen;
+					s.G[jump] = g;
+					s.PARENT[jump] = cur;
+					s.OPEN.push(jump, key(g, octile(jx, jy, goalX, goalY)));
+				}
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Works out which directions are worth jumping in from a cell, given where we came from.
+	 * @return the number of ints written to dirs, two (dx, dy) per direction.
+	 */
+	private static int prune(PassabilityGrid grid, int parent, int width, int x, int y, int[] dirs){
+		int n = 0;
+		if(parent < 0){
+			for(int d = 0; d < 8; d++){
+				int nx = x + DX[d];
+				int ny = y + DY[d];
+				if(grid.open(nx, ny) && (d < 4 || (grid.open(nx, y) && grid.open(x, ny)))){
+					dirs[n++] = DX[d];
+					dirs[n++] = DY[d];
+				}
+			}
+			return n;
+		}
+		int dx = Integer.signum(x - parent % width);
+		int dy = Integer.signum(y - parent / width);
+		if(dx != 0 && dy != 0){
+			boolean vertical = grid.open(x, y + dy);
+			boolean horizontal = grid.open(x + dx, y);
+			if(vertical){
+				dirs[n++] = 0;
+				dirs[n++] = dy;
+			}
+			if(horizontal){
+				dirs[n++] = dx;
+				dirs[n++] = 0;
+			}
+			if(vertical && horizontal && grid.open(x + dx, y + dy)){
+				dirs[n++] = dx;
+				dirs[n++] = dy;
+			}
+		}
+		else if(dx != 0){
+			boolean next = grid.open(x + dx, y);
+			boolean below = grid.open(x, y + 1);
+			boolean above = grid.open(x, y - 1);
+			if(next){
+				dirs[n++] = dx;
+				dirs[n++] = 0;
+				if(below && grid.open(x + dx, y + 1)){
+					dirs[n++] = dx;
+					dirs[n++] = 1;
+				}
+				if(above && grid.open(x + dx, y - 1)){
+					dirs[n++] = dx;
+					dirs[n++] = -1;
+				}
+			}
+			if(below){
+				dirs[n++] = 0;
+				dirs[n++] = 1;
+			}
+			if(above){
+				dirs[n++] = 0;
+				dirs[n++] = -1;
+			}
+		}
+		else {
+			boolean next = grid.open(x, y + dy);
+			boolean right = grid.open(x + 1, y);
+			boolean left = grid.open(x - 1, y);
+			if(next){
+				dirs[n++] = 0;
+				dirs[n++] = dy;
+				if(right && grid.open(x + 1, y + dy)){
+					dirs[n++] = 1;
+					dirs[n++] = dy;
+				}
+				if(left && grid.open(x - 1, y + dy)){
+					dirs[n++] = -1;
+					dirs[n++] = dy;
+				}
+			}
+			if(right){
+				dirs[n++] = 1;
+				dirs[n++] = 0;
+			}
+			if(left){
+				dirs[n++] = -1;
+				dirs[n++] = 0;
+			}
+		}
+		return n;
+	}
+	
+	/**
+	 * Walks from (x, y) in a direction until something interesting happens.
+	 * @return the cell it stopped at, or -1 if it ran into a wall first.
+	 */
+	private static int jump(PassabilityGrid grid, int x, int y, int dx, int dy, int goalX, int goalY){
+		if(dx == 0 || dy == 0){
+			return straight(grid, x, y, dx, dy, goalX, goalY);
+		}
+		while(true){
+			if(!grid.open(x, y)){
+				return -1;
+			}
+			if((x == goalX && y == goalY)
+					|| straight(grid, x + dx, y, dx, 0, goalX, goalY) >= 0
+					|| straight(grid, x, y + dy, 0, dy, goalX, goalY) >= 0){
+				return y * grid.getWidth() + x;
+			}
+			if(!(grid.open(x + dx, y) && grid.open(x, y + dy))){
+				return -1;
+			}
+			x += dx;
+			y += dy;
+		}
+	}
+	
+	private static int straight(PassabilityGrid grid, int x, int y, int dx, int dy, int goalX, int goalY){
+		while(true){
+			if(!grid.open(x, y)){
+				return -1;
+			}
+			if(x == goalX && y == goalY){
+				return y * grid.getWidth() + x;
+			}
+			// A forced neighbour: a cell beside us that we couldn't have reached from the cell behind us without turning here.
+			if(dx != 0){
+				if((grid.open(x, y - 1) && !grid.open(x - dx, y - 1)) || (grid.open(x, y + 1) && !grid.open(x - dx, y + 1))){
+					return y * grid.getWidth() + x;
+				}
+			}
+			else if((grid.open(x - 1, y) && !grid.open(x - 1, y - dy)) || (grid.open(x + 1, y) && !grid.open(x + 1, y - dy))){
+				return y * grid.getWidth() + x;
+			}
+			x += dx;
+			y += dy;
+		}
+	}
+	
+	/**
+	 * Follows the parents back from the goal, and appends the path from the start to the goal, one cell at a time.
+	 * Gaps between cells (as left by Jump Point Search) are filled in with straight or diagonal lines.
+	 * @param skipFirst true to leave out the start cell, for when the path continues another one.
+	 */
+	static void appendPath(PassabilityGrid grid, SearchState s, int goal, boolean skipFirst, Cells out){
+		int width = grid.getWidth();
+		Cells trace = s.TRACE;
+		trace.clear();
+		for(int cell = goal; cell >= 0; cell = s.PARENT[cell]){
+			trace.add(cell);
+		}
+		int from = trace.get(trace.size() - 1);
+		if(!skipFirst){
+			out.add(from);
+		}
+		for(int i = trace.size() - 2; i >= 0; i--){
+			int to = trace.get(i);
+			int x = from % width, y = from / width;
+			int tx = to % width, ty = to / width;
+			int dx = Integer.signum(tx - x), dy = Integer.signum(ty - y);
+			while(x != tx || y != ty){
+				if(x != tx){
+					x += dx;
+				}
+				if(y != ty){
+					y += dy;
+				}
+				out.add(y * width + x);
+			}
+			from = to;
+		}
+	}
+	
+	/**
+	 * A growing list of cell numbers.
+	 */
+	static final class Cells {
+		private int[] cells = new int[64];
+		private int size;
+		
+		void add(int cell){
+			if(size == cells.length){
+				cells = Arrays.copyOf(cells, size * 2);
+			}
+			cells[size++] = cell;
+		}
+		
+		int get(int i){
+			return cells[i];
+		}
+		
+		int size(){
+			return size;
+		}
+		
+		void clear(){
+			size = 0;
+		}
+	}
+}
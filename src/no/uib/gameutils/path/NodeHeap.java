@@ -0,0 +1,103 @@
+package no.uib.gameutils.path;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of node numbers, ordered by a long key, with decrease-key.
+ * 
+ * Nodes are plain ints and keys plain longs, kept in two parallel arrays, so pushing and popping allocate nothing once the arrays have grown.
+ * Where each node sits in the heap is kept in a table indexed by node number, which is what makes decrease-key cheap.
+ */
+final class NodeHeap {
+	private int[] nodes = new int[256];
+	private long[] keys = new long[256];
+	// One more than the place of each node in the heap, 0 if it's not in the heap.
+	private final int[] POS;
+	private int size;
+	
+	/**
+	 * @param numNodes node numbers go from 0 to numNodes - 1.
+	 */
+	NodeHeap(int numNodes){
+		this.POS = new int[numNodes];
+	}
+	
+	boolean isEmpty(){
+		return size == 0;
+	}
+	
+	/**
+	 * Adds a node, or lowers its key if it's already in the heap with a higher one.
+	 */
+	void push(int node, long key){
+		int at = POS[node] - 1;
+		if(at < 0){
+			if(size == nodes.length){
+				nodes = Arrays.copyOf(nodes, size * 2);
+				keys = Arrays.copyOf(keys, size * 2);
+			}
+			at = size++;
+		}
+		else if(key >= keys[at]){
+			return;
+		}
+		siftUp(at, node, key);
+	}
+	
+	/**
+	 * Removes and returns the node with the lowest key.
+	 */
+	int pop(){
+		int top = nodes[0];
+		POS[top] = 0;
+		size--;
+		if(size > 0){
+			siftDown(0, nodes[size], keys[size]);
+		}
+		return top;
+	}
+	
+	/**
+	 * Empties the heap.
+	 */
+	void clear(){
+		for(int i = 0; i < size; i++){
+			POS[nodes[i]] = 0;
+		}
+		size = 0;
+	}
+	
+	private void siftUp(int at, int node, long key){
+		while(at > 0){
+			int parent = (at - 1) >>> 1;
+			if(keys[parent] <= key){
+				break;
+			}
+			place(at, nodes[parent], keys[parent]);
+			at = parent;
+		}
+		place(at, node, key);
+	}
+	
+	private void siftDown(int at, int node, long key){
+		int half = size >>> 1;
+		while(at < half){
+			int child = 2 * at + 1;
+			if(child + 1 < size && keys[child + 1] < keys[child]){
+				child++;
+			}
+			if(key <= keys[child]){
+				break;
+			}
+			place(at, nodes[child], keys[child]);
+			at = child;
+		}
+		place(at, node, key);
+	}
+	
+	private void place(int at, int node, long key){
+		nodes[at] = node;
+		keys[at] = key;
+		POS[node] = at + 1;
+	}
+}
@@ -0,0 +1,163 @@
+package no.uib.gameutils.path;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import no.uib.gameutils.map.TileMap;
+
+/**
+ * A PassabilityGrid says which tiles in a rectangle can be walked on. It's what a {@link Pathfinder} searches.
+ * 
+ * The cells are stored as one bit each, so even a large map is small, and the search reads them without touching any objects.
+ * Like {@link TileMap}, the grid has an origin, so the coordinates can be negative. Everything outside the grid is blocked.
+ * 
+ * The grid can be made from a layer of a {@link TileMap}, or from any array of tile IDs laid out row by row,
+ * by saying which IDs are blocked. After that it doesn't follow the map; call {@link #setPassable(int, int, boolean)} when a cell changes,
+ * and the pathfinders listening are told.
+ */
+public class PassabilityGrid {
+	private final int ORIGIN_X, ORIGIN_Y, WIDTH, HEIGHT;
+	private final long[] BLOCKED;
+	private final CopyOnWriteArrayList<GridListener> LISTENERS = new CopyOnWriteArrayList<>();
+	
+	/**
+	 * Creates a grid where every cell is passable.
+	 * @param originX the column of the leftmost cell.
+	 * @param originY the row of the topmost cell.
+	 * @param width the number of columns, must be positive.
+	 * @param height the number of rows, must be positive.
+	 */
+	public PassabilityGrid(int originX, int originY, int width, int height){
+		if(width < 1 || height < 1){
+			throw new IllegalArgumentException(String.format("Illegal size specified, width and height must be positive (yours was %d, %d)", width, height));
+		}
+		this.ORIGIN_X = originX;
+		this.ORIGIN_Y = originY;
+		this.WIDTH = width;
+		this.HEIGHT = height;
+		this.BLOCKED = new long[(int) (((long) width * height + 63) >>> 6)];
+	}
+	
+	/**
+	 * Creates a grid from a layer of a map.
+	 * @param map the map, may not be null.
+	 * @param layer the layer that decides what's passable.
+	 * @param blockedIds the tile IDs that can't be walked on.
+	 * @return a new grid covering the same tiles as the map.
+	 */
+	public static PassabilityGrid fromLayer(TileMap map, int layer, short... blockedIds){
+		if(null == map){
+			throw new IllegalArgumentException("Argument \"map\" may not be null.");
+		}
+		return fromIds(map.layerData(layer), map.getOriginX(), map.getOriginY(), map.getWidth(), map.getHeight(), blockedIds);
+	}
+	
+	/**
+	 * Creates a grid from tile IDs laid out row by row, the way {@link TileMap#layerData(int)} has them.
+	 * @param ids the tile IDs, at least width * height of them.
+	 * @param originX the column of the leftmost cell.
+	 * @param originY the row of the topmost cell.
+	 * @param width the number of columns, must be positive.
+	 * @param height the number of rows, must be positive.
+	 * @param blockedIds the tile IDs that can't be walked on.
+	 * @return a new grid.
+	 */
+	public static PassabilityGrid fromIds(short[] ids, int originX, int originY, int width, int height, short... blockedIds){
+		if(null == ids){
+			throw new IllegalArgumentException("Argument \"ids\" may not be null.");
+		}
+		if((long) width * height > ids.length){
+			throw new IllegalArgumentException(String.format("ids holds %d tiles, but the grid needs %d", ids.length, (long) width * height));
+		}
+		boolean[] blocked = new boolean[1 << 16];
+		for(short id : blockedIds){
+			blocked[id & 0xFFFF] = true;
+		}
+		PassabilityGrid grid = new PassabilityGrid(originX, originY, width, height);
+		for(int i = 0; i < width * height; i++){
+			if(blocked[ids[i] & 0xFFFF]){
+				grid.BLOCKED[i >>> 6] |= 1L << i;
+			}
+		}
+		return grid;
+	}
+	
+	/**
+	 * @return true if the cell is inside the grid.
+	 */
+	public boolean contains(int x, int y){
+		return x >= ORIGIN_X && y >= ORIGIN_Y && x - ORIGIN_X < WIDTH && y - ORIGIN_Y < HEIGHT;
+	}
+	
+	/**
+	 * @return true if the cell can be walked on. Cells outside the grid can't.
+	 */
+	public boolean isPassable(int x, int y){
+		return open(x - ORIGIN_X, y - ORIGIN_Y);
+	}
+	
+	/**
+	 * Opens or blocks a cell, and tells the listeners if that changed anything.
+	 * Don't call this while a pathfinder is searching the grid.
+	 * @param x the column of the cell, must be inside the grid.
+	 * @param y the row of the cell, must be inside the grid.
+	 * @param passable true if the cell can be walked on.
+	 */
+	public void setPassable(int x, int y, boolean passable){
+		if(!contains(x, y)){
+			throw new IllegalArgumentException(String.format("(%d, %d) is outside the grid", x, y));
+		}
+		int i = (y - ORIGIN_Y) * WIDTH + (x - ORIGIN_X);
+		long bit = 1L << i;
+		boolean was = (BLOCKED[i >>> 6] & bit) == 0;
+		if(was == passable){
+			return;
+		}
+		if(passable){
+			BLOCKED[i >>> 6] &= ~bit;
+		}
+		else {
+			BLOCKED[i >>> 6] |= bit;
+		}
+		for(GridListener listener : LISTENERS){
+			listener.cellChanged(x, y, passable);
+		}
+	}
+	
+	/**
+	 * The same as {@link #isPassable(int, int)}, but the coordinates are counted from the origin.
+	 */
+	boolean open(int localX, int localY){
+		if(localX < 0 || localY < 0 || localX >= WIDTH || localY >= HEIGHT){
+			return false;
+		}
+		int i = localY * WIDTH + localX;
+		return (BLOCKED[i >>> 6] & (1L << i)) == 0;
+	}
+	
+	public void addListener(GridListener listener){
+		if(null == listener){
+			throw new IllegalArgumentException("Argument \"listener\" may not be null.");
+		}
+		LISTENERS.add(listener);
+	}
+	
+	public void removeListener(GridListener listener){
+		LISTENERS.remove(listener);
+	}
+	
+	public int getOriginX(){
+		return ORIGIN_X;
+	}
+	
+	public int getOriginY(){
+		return ORIGIN_Y;
+	}
+	
+	public int getWidth(){
+		return WIDTH;
+	}
+	
+	public int getHeight(){
+		return HEIGHT;
+	}
+}
@@ -0,0 +1,122 @@
+package no.uib.gameutils.path;
+
+import no.uib.gameutils.position.Position2D;
+
+/**
+ * A Path is the list of tiles to walk through to get from one tile to another, both ends included.
+ * 
+ * Each step goes to one of the eight neighbouring tiles, and never cuts the corner of a blocked tile.
+ * The cost counts 10 for each straight step and 14 for each diagonal one.
+ * Paths are immutable, so they can be shared, and are what the {@link Pathfinder} caches.
+ */
+public final class Path {
+	/** Stands for "no path" in the cache. */
+	static final Path NONE = new Path(new int[0], new int[0], -1);
+	
+	private final int[] XS, YS;
+	private final int COST;
+	private final int MIN_X, MIN_Y, MAX_X, MAX_Y;
+	
+	Path(int[] xs, int[] ys, int cost){
+		this.XS = xs;
+		this.YS = ys;
+		this.COST = cost;
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for(int i = 0; i < xs.length; i++){
+			minX = Math.min(minX, xs[i]);
+			minY = Math.min(minY, ys[i]);
+			maxX = Math.max(maxX, xs[i]);
+			maxY = Math.max(maxY, ys[i]);
+		}
+		this.MIN_X = minX;
+		this.MIN_Y = minY;
+		this.MAX_X = maxX;
+		this.MAX_Y = maxY;
+	}
+	
+	/**
+	 * @return the number of tiles on the path, both ends included.
+	 */
+	public int length(){
+		return XS.length;
+	}
+	
+	/**
+	 * @param i from 0 (the start) to {@link #length()} - 1 (the goal).
+	 * @return the column of the i'th tile.
+	 */
+	public int x(int i){
+		return XS[i];
+	}
+	
+	/**
+	 * @param i from 0 (the start) to {@link #length()} - 1 (the goal).
+	 * @return the row of the i'th tile.
+	 */
+	public int y(int i){
+		return YS[i];
+	}
+	
+	/**
+	 * Writes the i'th tile into a position you already have.
+	 * @return into, so you can chain calls.
+	 */
+	public Position2D position(int i, Position2D into){
+		into.x = XS[i];
+		into.y = YS[i];
+		return into;
+	}
+	
+	/**
+	 * @return the cost of walking the path, 10 per straight step and 14 per diagonal one.
+	 */
+	public int cost(){
+		return COST;
+	}
+	
+	/**
+	 * @return true if the path goes through the tile.
+	 */
+	public boolean contains(int x, int y){
+		if(x < MIN_X || x > MAX_X || y < MIN_Y || y > MAX_Y){
+			return false;
+		}
+		for(int i = 0; i < XS.length; i++){
+			if(XS[i] == x && YS[i] == y){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return true if the path goes through the tile, or takes a diagonal step past one of its corners,
+	 * so the path is no good if the tile is blocked.
+	 */
+	boolean dependsOn(int x, int y){
+		if(x < MIN_X || x > MAX_X || y < MIN_Y || y > MAX_Y){
+			return false;
+		}
+		for(int i = 0; i < XS.length; i++){
+			if(XS[i] == x && YS[i] == y){
+				return true;
+			}
+			if(i > 0 && XS[i] != XS[i - 1] && YS[i] != YS[i - 1]){
+				// A diagonal step needs both tiles it passes between to be open.
+				if((XS[i - 1] == x && YS[i] == y) || (XS[i] == x && YS[i - 1] == y)){
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	@Override
+	public String toString(){
+		StringBuilder sb = new StringBuilder("Path[cost=").append(COST).append(':');
+		for(int i = 0; i < XS.length; i++){
+			sb.append(" (").append(XS[i]).append(", ").append(YS[i]).append(')');
+		}
+		return sb.append(']').toString();
+	}
+}
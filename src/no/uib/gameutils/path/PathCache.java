@@ -0,0 +1,110 @@
+package no.uib.gameutils.path;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of paths, keyed on start and goal, that throws out the least recently used path when it's full.
+ * 
+ * When a cell is blocked, the paths through it, or that step diagonally past its corner, are thrown out;
+ * paths elsewhere are still the best ones, and "no path" is still true.
+ * When a cell is opened any path might have a shortcut through it, so everything is thrown out.
+ * 
+ * Lookups use one reused key, so a hit allocates nothing; only putting a new path in makes a key (and the map's entry for it).
+ */
+final class PathCache {
+	private final LinkedHashMap<Key, Path> PATHS;
+	private final Key PROBE = new Key();
+	private long hits, misses;
+	
+	PathCache(final int capacity){
+		this.PATHS = new LinkedHashMap<Key, Path>(capacity * 4 / 3 + 1, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Path> eldest){
+				return size() > capacity;
+			}
+		};
+	}
+	
+	/**
+	 * @return the path, {@link Path#NONE} if there is known to be none, or null if it's not in the cache.
+	 */
+	synchronized Path get(int fromX, int fromY, int toX, int toY){
+		PROBE.set(fromX, fromY, toX, toY);
+		Path path = PATHS.get(PROBE);
+		if(null == path){
+			misses++;
+		}
+		else {
+			hits++;
+		}
+		return path;
+	}
+	
+	synchronized void put(int fromX, int fromY, int toX, int toY, Path path){
+		Key key = new Key();
+		key.set(fromX, fromY, toX, toY);
+		PATHS.put(key, path);
+	}
+	
+	synchronized void cellChanged(int x, int y, boolean passable){
+		if(passable){
+			PATHS.clear();
+			return;
+		}
+		Iterator<Path> paths = PATHS.values().iterator();
+		while(paths.hasNext()){
+			if(paths.next().dependsOn(x, y)){
+				paths.remove();
+			}
+		}
+	}
+	
+	synchronized void clear(){
+		PATHS.clear();
+	}
+	
+	synchronized int size(){
+		return PATHS.size();
+	}
+	
+	synchronized long hits(){
+		return hits;
+	}
+	
+	synchronized long misses(){
+		return misses;
+	}
+	
+	private static final class Key {
+		private int fromX, fromY, toX, toY;
+		
+		private void set(int fromX, int fromY, int toX, int toY){
+			this.fromX = fromX;
+			this.fromY = fromY;
+			this.toX = toX;
+			this.toY = toY;
+		}
+		
+		@Override
+		public boolean equals(Object other){
+			if(!(other instanceof Key)){
+				return false;
+			}
+			Key that = (Key) other;
+			return fromX == that.fromX && fromY == that.fromY && toX == that.toX && toY == that.toY;
+		}
+		
+		@Override
+		public int hashCode(){
+			int h = fromX;
+			h = h * 31 + fromY;
+			h = h * 31 + toX;
+			h = h * 31 + toY;
+			return h ^ (h >>> 16);
+		}
+	}
+}
@@ -0,0 +1,537 @@
+package no.uib.gameutils.path;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import no.uib.gameutils.entity.type.Geographic;
+import no.uib.gameutils.position.Coordinate;
+
+/**
+ * A Pathfinder finds paths between tiles of a {@link PassabilityGrid}.
+ * 
+ * There are three ways to search, see {@link Algorithm}. All of them work on plain int arrays, five per cell of the grid,
+ * which are made once and reused, so once they're made, searching allocates nothing but the {@link Path} it returns
+ * and, with the cache on, the cache entry it's kept in. A path found in the cache costs no allocation at all.
+ * That's 20 bytes per cell for each search running at the same time, 20 MB on a 1024x1024 grid.
+ * The pathfinder keeps at most one set per thread of its {@link ForkJoinPool}, plus one, and {@link #dispose()} lets go of them.
+ * 
+ * Paths found are kept in a bounded cache, so asking for the same path again the next tick is free.
+ * The pathfinder listens to its grid, and throws out cached paths (and reworks the clusters of the hierarchical search)
+ * when cells change.
+ * 
+ * Many paths can be found at once with {@link #findPaths(long[], long[])}, which splits them over a {@link ForkJoinPool}.
+ * Searching is thread-safe, but the grid must not change while a search runs; change it from the game thread, between searches.
+ */
+public class Pathfinder implements GridListener {
+	public static final int DEFAULT_CLUSTER_SIZE = 16;
+	public static final int DEFAULT_CACHE_SIZE = 1024;
+	public static final int DEFAULT_BATCH_SIZE = 8;
+	
+	/**
+	 * How the pathfinder searches.
+	 */
+	public enum Algorithm {
+		/** Plain A*. Finds the best path, and is the fastest on small maps or short paths. */
+		ASTAR,
+		/** Jump Point Search. Finds the same paths as A*, but skips over open ground, so it's much faster on large open maps. */
+		JPS,
+		/**
+		 * Hierarchical A* over clusters of the map (HPA*). Long paths cost a lot less to find,
+		 * but are usually a few percent longer than the best. Short paths are found with plain A*.
+		 */
+		HIERARCHICAL
+	}
+	
+	private final PassabilityGrid GRID;
+	private final Algorithm ALGORITHM;
+	private final ClusterGraph CLUSTERS;
+	private final PathCache CACHE;
+	private final ForkJoinPool POOL;
+	private final int BATCH_SIZE;
+	private final int CELLS;
+	/** Search states that aren't in use. Searches borrow one and give it back, so there are never more than there were searches at once. */
+	private final SearchState[] FREE;
+	private int free;
+	private boolean disposed;
+	
+	private Pathfinder(PassabilityGrid grid, Algorithm algorithm, int clusterSize, int cacheSize, ForkJoinPool pool, int batchSize){
+		this.GRID = grid;
+		this.ALGORITHM = algorithm;
+		this.CLUSTERS = algorithm == Algorithm.HIERARCHICAL ? new ClusterGraph(grid, clusterSize) : null;
+		this.CACHE = cacheSize > 0 ? new PathCache(cacheSize) : null;
+		this.POOL = pool;
+		this.BATCH_SIZE = batchSize;
+		this.CELLS = grid.getWidth() * grid.getHeight();
+		this.FREE = new SearchState[pool.getParallelism() + 1];
+		grid.addListener(this);
+	}
+	
+	/**
+	 * Finds a path between two tiles.
+	 * @return the path, or null if there is none, or either end is blocked or outside the grid.
+	 */
+	public Path findPath(int fromX, int fromY, int toX, int toY){
+		SearchState s = borrow();
+		try{
+			prepare(s);
+			return find(s, fromX, fromY, toX, toY);
+		}
+		finally{
+			giveBack(s);
+		}
+	}
+	
+	/**
+	 * Finds a path between the tiles two entities stand on.
+	 * @return the path, or null if there is none, or either end is blocked or outside the grid.
+	 */
+	public Path findPath(Geographic from, Geographic to){
+		if(null == from || null == to){
+			throw new IllegalArgumentException("Arguments \"from\" and \"to\" may not be null.");
+		}
+		return findPath(from.xPos(), from.yPos(), to.xPos(), to.yPos());
+	}
+	
+	/**
+	 * Finds many paths at once, in parallel.
+	 * @param from where each path starts, packed with {@link Coordinate#pack(int, int)} or {@link Geographic#packedPosition()}.
+	 * @param to where each path ends, packed the same way. Must be as long as from.
+	 * @return the paths, in the same order, with null where there is no path.
+	 */
+	public Path[] findPaths(long[] from, long[] to){
+		if(null == from || null == to){
+			throw new IllegalArgumentException("Arguments \"from\" and \"to\" may not be null.");
+		}
+		if(from.length != to.length){
+			throw new IllegalArgumentException(String.format("from and to must be as long as each other (were %d and %d)", from.length, to.length));
+		}
+		Path[] paths = new Path[from.length];
+		SearchState s = borrow();
+		try{
+			prepare(s);
+			if(from.length <= BATCH_SIZE){
+				for(int i = 0; i < from.length; i++){
+					paths[i] = find(s, Coordinate.x(from[i]), Coordinate.y(from[i]), Coordinate.x(to[i]), Coordinate.y(to[i]));
+				}
+			}
+		}
+		finally{
+			giveBack(s);
+		}
+		if(from.length > BATCH_SIZE){
+			POOL.invoke(new SearchBatch(from, to, paths, 0, from.length));
+		}
+		return paths;
+	}
+	
+	/**
+	 * Takes a free search state, or makes one if there are none.
+	 */
+	private SearchState borrow(){
+		synchronized(FREE){
+			if(free > 0){
+				SearchState s = FREE[--free];
+				FREE[free] = null;
+				return s;
+			}
+		}
+		return new SearchState(CELLS);
+	}
+	
+	/**
+	 * Puts a search state back for the next search. If the pool is full or the pathfinder has been disposed of, it's let go.
+	 */
+	private void giveBack(SearchState s){
+		synchronized(FREE){
+			if(!disposed && free < FREE.length){
+				FREE[free++] = s;
+			}
+		}
+	}
+	
+	/**
+	 * Gets the cluster graph up to date before searching. Searches never change it, so after this they can run in parallel.
+	 */
+	private synchronized void prepare(SearchState s){
+		if(null != CLUSTERS){
+			CLUSTERS.rebuild(s);
+		}
+	}
+	
+	private Path find(SearchState s, int fromX, int fromY, int toX, int toY){
+		if(!GRID.isPassable(fromX, fromY) || !GRID.isPassable(toX, toY)){
+			return null;
+		}
+		if(null != CACHE){
+			Path cached = CACHE.get(fromX, fromY, toX, toY);
+			if(null != cached){
+				return cached == Path.NONE ? null : cached;
+			}
+		}
+		int width = GRID.getWidth();
+		int start = (fromY - GRID.getOriginY()) * width + (fromX - GRID.getOriginX());
+		int goal = (toY - GRID.getOriginY()) * width + (toX - GRID.getOriginX());
+		GridSearch.Cells cells = s.CELLS;
+		cells.clear();
+		int cost;
+		switch(ALGORITHM){
+		case JPS:
+			cost = GridSearch.jps(GRID, s, start, goal);
+			if(cost >= 0){
+				GridSearch.appendPath(GRID, s, goal, false, cells);
+			}
+			break;
+		case HIERARCHICAL:
+			cost = hierarchical(s, start, goal, cells);
+			break;
+		default:
+			cost = GridSearch.astar(GRID, s, start, goal, 0, 0, width - 1, GRID.getHeight() - 1);
+			if(cost >= 0){
+				GridSearch.appendPath(GRID, s, goal, false, cells);
+			}
+			break;
+		}
+		Path path = null;
+		if(cost >= 0){
+			int[] xs = new int[cells.size()];
+			int[] ys = new int[cells.size()];
+			for(int i = 0; i < xs.length; i++){
+				xs[i] = cells.get(i) % width + GRID.getOriginX();
+				ys[i] = cells.get(i) / width + GRID.getOriginY();
+			}
+			path = new Path(xs, ys, cost);
+		}
+		if(null != CACHE){
+			CACHE.put(fromX, fromY, toX, toY, null == path ? Path.NONE : path);
+		}
+		return path;
+	}
+	
+	/**
+	 * Searches the cluster graph, then fills in the legs between its nodes cell by cell.
+	 * @return the cost of the path, or -1 if there is none.
+	 */
+	private int hierarchical(SearchState s, int start, int goal, GridSearch.Cells out){
+		ClusterGraph graph = CLUSTERS;
+		int width = GRID.getWidth();
+		int sx = start % width, sy = start / width;
+		int gx = goal % width, gy = goal / width;
+		if(Math.max(Math.abs(sx - gx), Math.abs(sy - gy)) <= 2 * graph.SIZE){
+			int cost = GridSearch.astar(GRID, s, start, goal, 0, 0, width - 1, GRID.getHeight() - 1);
+			if(cost >= 0){
+				GridSearch.appendPath(GRID, s, goal, false, out);
+			}
+			return cost;
+		}
+		int slots = graph.slots();
+		int startCluster = graph.clusterOf(sx, sy);
+		int goalCluster = graph.clusterOf(gx, gy);
+		int[] startNodes = graph.nodes(startCluster);
+		int[] goalNodes = graph.nodes(goalCluster);
+		if(s.startCosts.length < slots){
+			s.startCosts = new int[slots];
+			s.goalCosts = new int[slots];
+		}
+		int[] startCosts = costsTo(graph, startCluster, start, startNodes, s, s.startCosts);
+		int[] goalCosts = costsTo(graph, goalCluster, goal, goalNodes, s, s.goalCosts);
+		
+		int target = graph.numNodes();
+		SearchState a = s.abstractState(target + 1);
+		int gen = a.begin();
+		for(int i = 0; i < startNodes.length; i++){
+			if(startCosts[i] >= 0){
+				int node = startCluster * slots + startNodes[i];
+				relax(a, gen, node, -1, startCosts[i], heuristic(graph, node, gx, gy, width));
+			}
+		}
+		boolean found = false;
+		while(!a.OPEN.isEmpty()){
+			int node = a.OPEN.pop();
+			if(node == target){
+				found = true;
+				break;
+			}
+			a.CLOSED[node] = gen;
+			int k = node / slots;
+			int index = graph.indexOf(k, node % slots);
+			int[] nodes = graph.nodes(k);
+			int[] dist = graph.distances(k);
+			int n = nodes.length;
+			int g = a.G[node];
+			for(int j = 0; j < n; j++){
+				int d = dist[index * n + j];
+				if(j != index && d >= 0){
+					int next = k * slots + nodes[j];
+					if(a.CLOSED[next] != gen){
+						relax(a, gen, next, node, g + d, heuristic(graph, next, gx, gy, width));
+					}
+				}
+			}
+			int partner = graph.partnerOf(node);
+			if(a.CLOSED[partner] != gen){
+				relax(a, gen, partner, node, g + GridSearch.STRAIGHT, heuristic(graph, partner, gx, gy, width));
+			}
+			if(k == goalCluster && goalCosts[index] >= 0){
+				relax(a, gen, target, node, g + goalCosts[index], 0);
+			}
+		}
+		if(!found){
+			return -1;
+		}
+		
+		GridSearch.Cells chain = s.CHAIN;
+		chain.clear();
+		for(int node = a.PARENT[target]; node >= 0; node = a.PARENT[node]){
+			chain.add(node);
+		}
+		int previous = start;
+		out.add(start);
+		for(int i = chain.size() - 1; i >= -1; i--){
+			int cell = i < 0 ? goal : graph.cellOf(chain.get(i) / slots, chain.get(i) % slots);
+			if(cell == previous){
+				continue;
+			}
+			int px = previous % width, py = previous / width;
+			int k = graph.clusterOf(px, py);
+			if(k != graph.clusterOf(cell % width, cell / width)){
+				// Stepping through an entrance, into the next cluster.
+				out.add(cell);
+			}
+			else {
+				graph.searchInside(k, previous, cell, s);
+				GridSearch.appendPath(GRID, s, cell, true, out);
+			}
+			previous = cell;
+		}
+		return a.G[target];
+	}
+	
+	/**
+	 * Floods a cluster from a cell, and copies out the costs to its nodes, -1 where a node can't be reached.
+	 */
+	private static int[] costsTo(ClusterGraph graph, int k, int cell, int[] nodes, SearchState s, int[] costs){
+		graph.flood(k, cell, s);
+		int gen = s.generation();
+		for(int i = 0; i < nodes.length; i++){
+			int at = graph.cellOf(k, nodes[i]);
+			costs[i] = s.SEEN[at] == gen ? s.G[at] : -1;
+		}
+		return costs;
+	}
+	
+	private static int heuristic(ClusterGraph graph, int node, int gx, int gy, int width){
+		int slots = graph.slots();
+		int cell = graph.cellOf(node / slots, node % slots);
+		return GridSearch.octile(cell % width, cell / width, gx, gy);
+	}
+	
+	private static void relax(SearchState a, int gen, int node, int parent, int g, int h){
+		if(a.SEEN[node] != gen || g < a.G[node]){
+			a.SEEN[node] = gen;
+			a.G[node] = g;
+			a.PARENT[node] = parent;
+			a.OPEN.push(node, ((long) (g + h) << 32) | h);
+		}
+	}
+	
+	@Override
+	public synchronized void cellChanged(int x, int y, boolean passable) {
+		if(null != CACHE){
+			CACHE.cellChanged(x, y, passable);
+		}
+		if(null != CLUSTERS){
+			CLUSTERS.markDirty(x - GRID.getOriginX(), y - GRID.getOriginY());
+		}
+	}
+	
+	/**
+	 * Stops listening to the grid and lets go of the search states. Call this when you're done with the pathfinder,
+	 * or the grid will keep it, and its memory, alive. Searching still works afterwards, but makes new search states every time.
+	 */
+	public void dispose(){
+		GRID.removeListener(this);
+		synchronized(FREE){
+			disposed = true;
+			Arrays.fill(FREE, null);
+			free = 0;
+		}
+	}
+	
+	/**
+	 * Empties the path cache.
+	 */
+	public void clearCache(){
+		if(null != CACHE){
+			CACHE.clear();
+		}
+	}
+	
+	/**
+	 * @return how many searches were answered from the cache.
+	 */
+	public long cacheHits(){
+		return null == CACHE ? 0 : CACHE.hits();
+	}
+	
+	/**
+	 * @return how many searches weren't in the cache and had to be done.
+	 */
+	public long cacheMisses(){
+		return null == CACHE ? 0 : CACHE.misses();
+	}
+	
+	public PassabilityGrid getGrid(){
+		return GRID;
+	}
+	
+	public Algorithm getAlgorithm(){
+		return ALGORITHM;
+	}
+	
+	private class SearchBatch extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final long[] from, to;
+		private final Path[] paths;
+		private final int first, last;
+		
+		private SearchBatch(long[] from, long[] to, Path[] paths, int first, int last){
+			this.from = from;
+			this.to = to;
+			this.paths = paths;
+			this.first = first;
+			this.last = last;
+		}
+		
+		@Override
+		protected void compute() {
+			if(last - first <= BATCH_SIZE){
+				SearchState s = borrow();
+				try{
+					for(int i = first; i < last; i++){
+						paths[i] = find(s, Coordinate.x(from[i]), Coordinate.y(from[i]), Coordinate.x(to[i]), Coordinate.y(to[i]));
+					}
+				}
+				finally{
+					giveBack(s);
+				}
+				return;
+			}
+			int middle = (first + last) >>> 1;
+			invokeAll(new SearchBatch(from, to, paths, first, middle), new SearchBatch(from, to, paths, middle, last));
+		}
+	}
+	
+	public static PathfinderBuilder build(){
+		return new PathfinderBuilder();
+	}
+	
+	public static class PathfinderBuilder {
+		private PassabilityGrid grid;
+		private Algorithm algorithm;
+		private int clusterSize;
+		private int cacheSize;
+		private ForkJoinPool pool;
+		private int batchSize;
+		
+		public PathfinderBuilder(){
+			grid = null;
+			algorithm = Algorithm.JPS;
+			clusterSize = DEFAULT_CLUSTER_SIZE;
+			cacheSize = DEFAULT_CACHE_SIZE;
+			pool = ForkJoinPool.commonPool();
+			batchSize = DEFAULT_BATCH_SIZE;
+		}
+		
+		/**
+		 * Sets the grid to search. This must be set.
+		 * @param grid the grid, may not be null.
+		 * @return this {@link PathfinderBuilder} so you can chain calls.
+		 */
+		public PathfinderBuilder grid(PassabilityGrid grid){
+			if(null == grid){
+				throw new IllegalArgumentException("Argument \"grid\" may not be null.");
+			}
+			this.grid = grid;
+			return this;
+		}
+		
+		/**
+		 * Sets how to search. Default is {@link Algorithm#JPS}.
+		 * @param algorithm the algorithm, may not be null.
+		 * @return this {@link PathfinderBuilder} so you can chain calls.
+		 */
+		public PathfinderBuilder algorithm(Algorithm algorithm){
+			if(null == algorithm){
+				throw new IllegalArgumentException("Argument \"algorithm\" may not be null.");
+			}
+			this.algorithm = algorithm;
+			return this;
+		}
+		
+		/**
+		 * Sets the width and height of the clusters, in tiles, for {@link Algorithm#HIERARCHICAL}. Default is {@link #DEFAULT_CLUSTER_SIZE}.
+		 * Larger clusters mean fewer nodes to search, but more work filling in each leg.
+		 * @param clusterSize the size, at least 4.
+		 * @return this {@link PathfinderBuilder} so you can chain calls.
+		 */
+		public PathfinderBuilder clusterSize(int clusterSize){
+			if(clusterSize < 4){
+				throw new IllegalArgumentException(String.format("clusterSize must be at least 4! (was %d)", clusterSize));
+			}
+			this.clusterSize = clusterSize;
+			return this;
+		}
+		
+		/**
+		 * Sets how many paths are cached. Default is {@link #DEFAULT_CACHE_SIZE}.
+		 * @param cacheSize the number of paths, or 0 for no cache.
+		 * @return this {@link PathfinderBuilder} so you can chain calls.
+		 */
+		public PathfinderBuilder cacheSize(int cacheSize){
+			if(cacheSize < 0){
+				throw new IllegalArgumentException(String.format("cacheSize may not be negative! (was %d)", cacheSize));
+			}
+			this.cacheSize = cacheSize;
+			return this;
+		}
+		
+		/**
+		 * Sets the pool {@link Pathfinder#findPaths(long[], long[])} runs on. Default is the common pool.
+		 * @param pool the pool, may not be null.
+		 * @return this {@link PathfinderBuilder} so you can chain calls.
+		 */
+		public PathfinderBuilder pool(ForkJoinPool pool){
+			if(null == pool){
+				throw new IllegalArgumentException("Argument \"pool\" may not be null.");
+			}
+			this.pool = pool;
+			return this;
+		}
+		
+		/**
+		 * Sets how many searches each task does on its own before the work is split no further. Default is {@link #DEFAULT_BATCH_SIZE}.
+		 * @param batchSize the number of searches, must be positive.
+		 * @return this {@link PathfinderBuilder} so you can chain calls.
+		 */
+		public PathfinderBuilder batchSize(int batchSize){
+			if(batchSize < 1){
+				throw new IllegalArgumentException(String.format("batchSize must be a positive number! (was %d)", batchSize));
+			}
+			this.batchSize = batchSize;
+			return this;
+		}
+		
+		/**
+		 * Creates the pathfinder, and starts it listening to the grid.
+		 * @return a new instance of {@link Pathfinder}
+		 * @throws IllegalStateException if no grid is set.
+		 */
+		public Pathfinder create(){
+			if(null == grid){
+				throw new IllegalStateException("No grid set");
+			}
+			return new Pathfinder(grid, algorithm, clusterSize, cacheSize, pool, batchSize);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package no.uib.gameutils.path;
+
+import java.util.Arrays;
+
+/**
+ * The scratch space of one search: cost so far, parent and open/closed marks for every node, and the open list.
+ * 
+ * Each search bumps a generation number instead of clearing the arrays, and a node's entries only count
+ * if its mark matches the current generation. That way starting a search costs nothing, however large the grid is.
+ * A state is only ever used by one thread at a time; the {@link Pathfinder} lends them out from a small pool.
+ */
+final class SearchState {
+	final int[] G;
+	final int[] PARENT;
+	final int[] SEEN;
+	final int[] CLOSED;
+	final NodeHeap OPEN;
+	final int[] DIRS = new int[16];
+	final GridSearch.Cells TRACE = new GridSearch.Cells();
+	final GridSearch.Cells CELLS = new GridSearch.Cells();
+	final GridSearch.Cells CHAIN = new GridSearch.Cells();
+	// Costs from the start and goal to the nodes of their clusters, for the hierarchical search. Grown as needed.
+	int[] startCosts = new int[0];
+	int[] goalCosts = new int[0];
+	private int generation;
+	private SearchState abstractState;
+	
+	SearchState(int numNodes){
+		this.G = new int[numNodes];
+		this.PARENT = new int[numNodes];
+		this.SEEN = new int[numNodes];
+		this.CLOSED = new int[numNodes];
+		this.OPEN = new NodeHeap(numNodes);
+	}
+	
+	/**
+	 * Gets ready for a new search.
+	 * @return the generation of the new search.
+	 */
+	int begin(){
+		OPEN.clear();
+		if(++generation == Integer.MAX_VALUE){
+			Arrays.fill(SEEN, 0);
+			Arrays.fill(CLOSED, 0);
+			generation = 1;
+		}
+		return generation;
+	}
+	
+	/**
+	 * @return the generation of the search that ran last. A node was reached by it if its {@link #SEEN} mark is this.
+	 */
+	int generation(){
+		return generation;
+	}
+	
+	int size(){
+		return G.length;
+	}
+	
+	/**
+	 * A second state for searching the cluster graph, made the first time it's needed.
+	 */
+	SearchState abstractState(int numNodes){
+		if(null == abstractState || abstractState.size() != numNodes){
+			abstractState = new SearchState(numNodes);
+		}
+		return abstractState;
+	}
+}
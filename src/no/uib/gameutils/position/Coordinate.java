@@ -0,0 +1,97 @@
+package no.uib.gameutils.position;
+
+/**
+ * An immutable pair of tile coordinates, meant for use as a map key.
+ * 
+ * {@link Position2D} is mutable, so it makes a poor key: move it and the map loses track of it.
+ * A Coordinate can't change, and its equals and hashCode are cheap.
+ * 
+ * When you don't want to allocate at all, the same coordinates can be packed into a single long with {@link #pack(int, int)},
+ * and unpacked with {@link #x(long)} and {@link #y(long)}. The packing keeps both coordinates whole, negative numbers included.
+ */
+public final class Coordinate {
+	private final int X, Y;
+	
+	private Coordinate(int x, int y){
+		this.X = x;
+		this.Y = y;
+	}
+	
+	public static Coordinate of(int x, int y){
+		return new Coordinate(x, y);
+	}
+	
+	/**
+	 * @param packed coordinates packed with {@link #pack(int, int)}.
+	 * @return the same coordinates as a Coordinate.
+	 */
+	public static Coordinate of(long packed){
+		return new Coordinate(x(packed), y(packed));
+	}
+	
+	/**
+	 * Packs two coordinates into one long, x in the high 32 bits and y in the low.
+	 */
+	public static long pack(int x, int y){
+		return ((long) x << 32) | (y & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * @return the horizontal component of coordinates packed with {@link #pack(int, int)}.
+	 */
+	public static int x(long packed){
+		return (int) (packed >> 32);
+	}
+	
+	/**
+	 * @return the vertical component of coordinates packed with {@link #pack(int, int)}.
+	 */
+	public static int y(long packed){
+		return (int) packed;
+	}
+	
+	public int getX(){
+		return X;
+	}
+	
+	public int getY(){
+		return Y;
+	}
+	
+	/**
+	 * @return these coordinates packed into a long.
+	 */
+	public long pack(){
+		return pack(X, Y);
+	}
+	
+	/**
+	 * @return a new mutable {@link Position2D} with the same coordinates.
+	 */
+	public Position2D toPosition(){
+		return new Position2D(X, Y);
+	}
+	
+	@Override
+	public boolean equals(Object other){
+		if(this == other){
+			return true;
+		}
+		if(!(other instanceof Coordinate)){
+			return false;
+		}
+		Coordinate that = (Coordinate) other;
+		return X == that.X && Y == that.Y;
+	}
+	
+	@Override
+	public int hashCode(){
+		long h = pack() * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+	
+	@Override
+	public String toString(){
+		return String.format("(%d, %d)", X, Y);
+	}
+}
@@ -0,0 +1,165 @@
+package no.uib.gameutils.position;
+
+import java.util.Arrays;
+
+/**
+ * A small open-addressing hash map from longs, like coordinates packed with {@link Coordinate#pack(int, int)}, to values.
+ * It exists so looking something up by its coordinates doesn't box a Long on every call, which a HashMap would.
+ * 
+ * Deletion shifts entries back instead of leaving tombstones, so the table never needs cleaning.
+ * Null values can't be stored, since an empty slot is one with no value.
+ * The slots can be walked with {@link #capacity()}, {@link #keyAt(int)} and {@link #valueAt(int)} without making an iterator.
+ * This class is not thread safe.
+ * 
+ * @param <V> the type of values.
+ */
+public class LongMap<V> {
+	private long[] keys;
+	private Object[] values;
+	private int size, mask;
+	
+	public LongMap(){
+		keys = new long[64];
+		values = new Object[64];
+		mask = 63;
+	}
+	
+	private static int hash(long key){
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+	
+	/**
+	 * @return the value stored under key, or null if there is none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key){
+		int i = hash(key) & mask;
+		while(null != values[i]){
+			if(keys[i] == key){
+				return (V) values[i];
+			}
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+	
+	public boolean containsKey(long key){
+		return null != get(key);
+	}
+	
+	/**
+	 * Stores a value, replacing the one already stored under key, if any.
+	 * @param value the value, may not be null.
+	 * @return the value that was stored under key before, or null if there was none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value){
+		if(null == value){
+			throw new IllegalArgumentException("Argument \"value\" may not be null.");
+		}
+		if((size + 1) * 2 > keys.length){
+			grow();
+		}
+		int i = hash(key) & mask;
+		while(null != values[i]){
+			if(keys[i] == key){
+				V old = (V) values[i];
+				values[i] = value;
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		return null;
+	}
+	
+	/**
+	 * @return the value that was stored under key, or null if there was none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key){
+		int i = hash(key) & mask;
+		while(null != values[i]){
+			if(keys[i] == key){
+				V old = (V) values[i];
+				values[i] = null;
+				size--;
+				shiftBack(i);
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+	
+	private void shiftBack(int hole){
+		int i = (hole + 1) & mask;
+		while(null != values[i]){
+			int home = hash(keys[i]) & mask;
+			/* Move the entry into the hole if the hole lies between its home slot and where it is now. */
+			if(((i - home) & mask) >= ((i - hole) & mask)){
+				keys[hole] = keys[i];
+				values[hole] = values[i];
+				values[i] = null;
+				hole = i;
+			}
+			i = (i + 1) & mask;
+		}
+	}
+	
+	private void grow(){
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new long[oldKeys.length * 2];
+		values = new Object[oldValues.length * 2];
+		mask = keys.length - 1;
+		for(int i = 0; i < oldKeys.length; i++){
+			if(null != oldValues[i]){
+				int j = hash(oldKeys[i]) & mask;
+				while(null != values[j]){
+					j = (j + 1) & mask;
+				}
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+	
+	public int size(){
+		return size;
+	}
+	
+	public boolean isEmpty(){
+		return 0 == size;
+	}
+	
+	public void clear(){
+		Arrays.fill(values, null);
+		size = 0;
+	}
+	
+	/**
+	 * @return the number of slots in the table, for use with {@link #keyAt(int)} and {@link #valueAt(int)}.
+	 */
+	public int capacity(){
+		return values.length;
+	}
+	
+	/**
+	 * @return the key in a slot of the table. Only meaningful if {@link #valueAt(int)} isn't null for the same slot.
+	 */
+	public long keyAt(int slot){
+		return keys[slot];
+	}
+	
+	/**
+	 * @return the value in a slot of the table, which is null for empty slots.
+	 */
+	@SuppressWarnings("unchecked")
+	public V valueAt(int slot){
+		return (V) values[slot];
+	}
+}
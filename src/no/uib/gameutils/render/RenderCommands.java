@@ -0,0 +1,114 @@
+package no.uib.gameutils.render;
+
+import java.util.Arrays;
+
+/**
+ * One frame's worth of draw commands, stored in parallel primitive arrays.
+ * 
+ * You get one of these from {@link RenderQueue#begin()}, fill it with {@link #draw(int, int, int, int, int, int, int)},
+ * and hand it over with {@link RenderQueue#publish()}. Nothing is allocated while recording,
+ * unless the buffer runs out of room and has to grow.
+ */
+public class RenderCommands {
+	/** Mirror the sprite left to right. */
+	public static final int FLIP_HORIZONTAL = 1;
+	/** Mirror the sprite top to bottom. */
+	public static final int FLIP_VERTICAL = 2;
+	/** Rotate the sprite a quarter turn clockwise around its center. */
+	public static final int ROTATE_90 = 4;
+	/** Rotate the sprite half a turn around its center. */
+	public static final int ROTATE_180 = 8;
+	/** Rotate the sprite three quarter turns clockwise around its center. */
+	public static final int ROTATE_270 = 12;
+	
+	static final int ROTATION_MASK = 12;
+	static final int MAX_COMMANDS = 1 << 24;
+	static final int MIN_LAYER = Short.MIN_VALUE, MAX_LAYER = Short.MAX_VALUE;
+	
+	int size;
+	boolean sorted;
+	int[] sheet, tile, x, y, layer, flags;
+	long[] order;
+	
+	RenderCommands(int capacity){
+		sheet = new int[capacity];
+		tile = new int[capacity];
+		x = new int[capacity];
+		y = new int[capacity];
+		layer = new int[capacity];
+		flags = new int[capacity];
+		order = new long[capacity];
+	}
+	
+	/**
+	 * Records a sprite to be drawn.
+	 * Commands are drawn by layer, lowest first. Commands in the same layer are drawn in the order they were recorded,
+	 * except that commands from the same sheet may be grouped together, so don't rely on order inside a layer for overlapping sprites
+	 * from different sheets.
+	 * @param sheet the sheet ID you got from {@link RenderQueue#registerSheet(no.uib.gameutils.sprite.SpriteLoader)}.
+	 * @param column the column of the sprite in the sheet.
+	 * @param row the row of the sprite in the sheet.
+	 * @param x the pixel position of the left edge.
+	 * @param y the pixel position of the top edge.
+	 * @param layer the layer, from {@link Short#MIN_VALUE} to {@link Short#MAX_VALUE}.
+	 * @param flags any of the flip constants, or'ed with at most one of the rotation constants. 0 for a plain draw.
+	 */
+	public void draw(int sheet, int column, int row, int x, int y, int layer, int flags){
+		if(layer < MIN_LAYER || layer > MAX_LAYER){
+			throw new IllegalArgumentException(String.format("layer must be between %d and %d (was %d)", MIN_LAYER, MAX_LAYER, layer));
+		}
+		if(size == this.sheet.length){
+			grow();
+		}
+		sorted = false;
+		int i = size++;
+		this.sheet[i] = sheet;
+		/* Columns and rows are packed, they're resolved against the sheet's table when painting. */
+		this.tile[i] = (row << 16) | (column & 0xFFFF);
+		this.x[i] = x;
+		this.y[i] = y;
+		this.layer[i] = layer;
+		this.flags[i] = flags;
+	}
+	
+	/**
+	 * @return the number of commands recorded.
+	 */
+	public int size(){
+		return size;
+	}
+	
+	void clear(){
+		size = 0;
+		sorted = false;
+	}
+	
+	private void grow(){
+		if(sheet.length >= MAX_COMMANDS){
+			throw new IllegalStateException(String.format("Too many draw commands in one frame (max is %d)", MAX_COMMANDS));
+		}
+		int capacity = Math.min(MAX_COMMANDS, Math.max(16, sheet.length * 2));
+		sheet = Arrays.copyOf(sheet, capacity);
+		tile = Arrays.copyOf(tile, capacity);
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		layer = Arrays.copyOf(layer, capacity);
+		flags = Arrays.copyOf(flags, capacity);
+		order = new long[capacity];
+	}
+	
+	/**
+	 * Sorts the commands by layer, then sheet, then recording order, into {@link #order}.
+	 * The low 24 bits of every entry is the index of the command.
+	 */
+	void sort(){
+		if(sorted){
+			return;
+		}
+		for(int i = 0; i < size; i++){
+			order[i] = ((long) (layer[i] - MIN_LAYER) << 40) | ((long) (sheet[i] & 0xFFFF) << 24) | i;
+		}
+		Arrays.sort(order, 0, size);
+		sorted = true;
+	}
+}
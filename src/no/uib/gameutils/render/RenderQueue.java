@@ -0,0 +1,197 @@
+package no.uib.gameutils.render;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import no.uib.gameutils.entity.type.Paintable;
+import no.uib.gameutils.sprite.SpriteHandle;
+import no.uib.gameutils.sprite.SpriteLoader;
+import no.uib.gameutils.sprite.TextureAtlas;
+
+/**
+ * A RenderQueue hands draw commands from the thread that runs the game to the thread that paints, without locks.
+ * 
+ * The game thread records a frame into a {@link RenderCommands} with {@link #begin()}, and hands it over with {@link #publish()}.
+ * The painting thread paints the newest frame that has been handed over, sorted by layer and sheet so sprites from the same
+ * sheet are drawn together. If no new frame has arrived, the last one is painted again.
+ * 
+ * There are three buffers: one being recorded, one being painted, and the newest finished one in between.
+ * Handing over a frame and picking one up is a single atomic swap each, so neither thread ever waits for the other,
+ * and the game thread never touches the buffer that's being painted.
+ * 
+ * Only one thread may record, and only one thread may paint.
+ * Register every sheet before the first frame that uses it is published.
+ */
+public class RenderQueue implements Paintable {
+	private static final int FRESH = 4;
+	private static final int INDEX = 3;
+	
+	private final RenderCommands[] BUFFERS = new RenderCommands[3];
+	/** The index of the buffer in the middle, plus {@link #FRESH} if it hasn't been painted yet. */
+	private final AtomicInteger MIDDLE = new AtomicInteger(1);
+	private int back = 0, front = 2;
+	private volatile BufferedImage[][] sheets = new BufferedImage[0][];
+	private volatile int[] sheetColumns = new int[0];
+	private volatile TextureAtlas.View[] atlasViews = new TextureAtlas.View[0];
+	
+	/**
+	 * @param capacity how many commands each buffer has room for before it has to grow. Must be positive.
+	 */
+	public RenderQueue(int capacity){
+		if(capacity < 1 || capacity > RenderCommands.MAX_COMMANDS){
+			throw new IllegalArgumentException(String.format("capacity must be between 1 and %d (was %d)", RenderCommands.MAX_COMMANDS, capacity));
+		}
+		for(int i = 0; i < BUFFERS.length; i++){
+			BUFFERS[i] = new RenderCommands(capacity);
+		}
+	}
+	
+	/**
+	 * Registers a sheet so commands can refer to it. Every tile of the sheet is looked up once, right now,
+	 * so painting a command is just an array lookup. Use a {@link no.uib.gameutils.sprite.CachedSpriteLoader CachedSpriteLoader}
+	 * to get images Java2D can accelerate.
+	 * If the loader is a {@link SpriteHandle} that is still loading, the placeholder tiles are looked up now,
+	 * and the real tiles are looked up again when the sheet arrives.
+	 * If the loader is a {@link TextureAtlas.View}, plain draws are made straight from the atlas page with
+	 * {@link TextureAtlas.View#drawTile(Graphics, int, int, int, int)}, so sheets on the same page are drawn from one image.
+	 * @param loader the sheet, may not be null.
+	 * @return the ID to use in {@link RenderCommands#draw(int, int, int, int, int, int, int)}.
+	 */
+	public synchronized int registerSheet(final SpriteLoader loader){
+		if(null == loader){
+			throw new IllegalArgumentException("Argument \"loader\" may not be null.");
+		}
+		int columns = loader.numColumns(), rows = loader.numRows();
+		if(columns > 0xFFFF || rows > 0x7FFF){
+			throw new IllegalArgumentException(String.format("The sheet has too many tiles to be registered (%dx%d)", columns, rows));
+		}
+		/* Asked first: if the sheet lands while the table is built, the table may hold placeholders and must be replaced. */
+		boolean loading = SpriteHandle.isLoading(loader);
+		BufferedImage[] table = tableOf(loader);
+		final int id = sheets.length;
+		if(id > 0xFFFF){
+			throw new IllegalStateException("Too many sheets registered");
+		}
+		BufferedImage[][] newSheets = Arrays.copyOf(sheets, id + 1);
+		newSheets[id] = table;
+		int[] newColumns = Arrays.copyOf(sheetColumns, id + 1);
+		newColumns[id] = columns;
+		TextureAtlas.View[] newViews = Arrays.copyOf(atlasViews, id + 1);
+		newViews[id] = loader instanceof TextureAtlas.View ? (TextureAtlas.View) loader : null;
+		atlasViews = newViews;
+		sheetColumns = newColumns;
+		sheets = newSheets;
+		
+		if(loading){
+			((SpriteHandle) loader).future().thenRun(new Runnable(){
+				@Override
+				public void run() {
+					replaceSheet(id, tableOf(loader));
+				}
+			});
+		}
+		return id;
+	}
+	
+	/**
+	 * Swaps the table of a registered sheet for a new one, without touching the array the painting thread may be reading.
+	 */
+	private synchronized void replaceSheet(int id, BufferedImage[] table){
+		BufferedImage[][] newSheets = sheets.clone();
+		newSheets[id] = table;
+		sheets = newSheets;
+	}
+	
+	/**
+	 * Looks up every tile of a sheet, row by row.
+	 */
+	private static BufferedImage[] tableOf(SpriteLoader loader){
+		int columns = loader.numColumns(), rows = loader.numRows();
+		BufferedImage[] table = new BufferedImage[columns * rows];
+		for(int row = 0; row < rows; row++){
+			for(int col = 0; col < columns; col++){
+				table[row * columns + col] = loader.getImage(col, row);
+			}
+		}
+		return table;
+	}
+	
+	/**
+	 * Starts recording a new frame. Call this from the game thread.
+	 * @return an empty buffer to record the frame into.
+	 */
+	public RenderCommands begin(){
+		RenderCommands commands = BUFFERS[back];
+		commands.clear();
+		return commands;
+	}
+	
+	/**
+	 * Hands the frame recorded since {@link #begin()} over to the painting thread.
+	 * If the last frame handed over hasn't been painted yet, it is dropped in favour of this one.
+	 */
+	public void publish(){
+		back = MIDDLE.getAndSet(back | FRESH) & INDEX;
+	}
+	
+	/**
+	 * Paints the newest frame that has been published. Call this from the painting thread.
+	 */
+	@Override
+	public void paint(Graphics gfx) {
+		if((MIDDLE.get() & FRESH) != 0){
+			front = MIDDLE.getAndSet(front) & INDEX;
+		}
+		RenderCommands commands = BUFFERS[front];
+		commands.sort();
+		
+		BufferedImage[][] sheets = this.sheets;
+		int[] sheetColumns = this.sheetColumns;
+		TextureAtlas.View[] atlasViews = this.atlasViews;
+		long[] order = commands.order;
+		for(int n = 0; n < commands.size; n++){
+			int i = (int) (order[n] & 0xFFFFFF);
+			int sheet = commands.sheet[i];
+			int tile = commands.tile[i];
+			int flags = commands.flags[i];
+			if(flags == 0 && null != atlasViews[sheet]){
+				atlasViews[sheet].drawTile(gfx, tile & 0xFFFF, tile >>> 16, commands.x[i], commands.y[i]);
+				continue;
+			}
+			BufferedImage image = sheets[sheet][(tile >>> 16) * sheetColumns[sheet] + (tile & 0xFFFF)];
+			if(flags == 0){
+				gfx.drawImage(image, commands.x[i], commands.y[i], null);
+			}
+			else{
+				drawTransformed(gfx, image, commands.x[i], commands.y[i], flags);
+			}
+		}
+	}
+	
+	private static void drawTransformed(Graphics gfx, BufferedImage image, int x, int y, int flags){
+		int w = image.getWidth(), h = image.getHeight();
+		int dx1 = x, dy1 = y, dx2 = x + w, dy2 = y + h;
+		if((flags & RenderCommands.FLIP_HORIZONTAL) != 0){
+			dx1 = x + w;
+			dx2 = x;
+		}
+		if((flags & RenderCommands.FLIP_VERTICAL) != 0){
+			dy1 = y + h;
+			dy2 = y;
+		}
+		int rotation = flags & RenderCommands.ROTATION_MASK;
+		if(rotation == 0 || !(gfx instanceof Graphics2D)){
+			gfx.drawImage(image, dx1, dy1, dx2, dy2, 0, 0, w, h, null);
+			return;
+		}
+		Graphics2D g = (Graphics2D) gfx;
+		double theta = Math.PI / 2 * (rotation >> 2);
+		double cx = x + w / 2.0, cy = y + h / 2.0;
+		g.rotate(theta, cx, cy);
+		g.drawImage(image, dx1, dy1, dx2, dy2, 0, 0, w, h, null);
+		g.rotate(-theta, cx, cy);
+	}
+}
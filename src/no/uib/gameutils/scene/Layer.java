@@ -0,0 +1,481 @@
+package no.uib.gameutils.scene;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import no.uib.gameutils.entity.AnimatedTile;
+import no.uib.gameutils.entity.FrameSnapshot;
+import no.uib.gameutils.entity.StaticImage;
+import no.uib.gameutils.entity.type.Geographic;
+import no.uib.gameutils.entity.type.MoveListener;
+import no.uib.gameutils.entity.type.Paintable;
+import no.uib.gameutils.position.Coordinate;
+import no.uib.gameutils.position.LongMap;
+
+/**
+ * A Layer is one named level of a {@link Scene}, holding {@link Paintable}s that are painted in order of their depth, lowest first.
+ * 
+ * Depths are kept sorted with an insertion sort that only runs when something has changed. When only a few things
+ * change depth between frames, which is the normal case, that is close to linear instead of a full sort every frame.
+ * If the layer is row sorted, the depth of every {@link Geographic} in it is its row, refreshed every frame,
+ * so things further down the screen are painted on top.
+ * 
+ * A {@link CachePolicy#STATIC STATIC} layer is baked into offscreen images, and those images are drawn from then on.
+ * The images are square pieces of the world at fixed positions, baked the first time they come into view.
+ * They don't depend on the clip, so scrolling only bakes the pieces that come into view, and only the first time.
+ * When more pieces than the limit have been baked, the least recently drawn are thrown away and baked again if they come back into view.
+ * The size and number of pieces are set on the {@link Scene} with {@link Scene#build()}; by default they're
+ * {@value #DEFAULT_CHUNK_PIXELS} pixels on a side, and {@value #DEFAULT_MAX_CHUNKS} of them are kept, which covers a 1920x1200 screen with room to spare.
+ * Pieces are found by their packed coordinates in a {@link LongMap}, and the least recently drawn are tracked in a list
+ * threaded through the pieces, so drawing them allocates nothing.
+ * 
+ * Every piece is baked again if the layer is invalidated. Adding, removing or changing the depth of something invalidates the layer on its own,
+ * and so does a {@link StaticImage} or {@link AnimatedTile} in it moving, or a StaticImage that was baked while its sheet was loading becoming ready.
+ * A piece that an {@link AnimatedTile} is on is baked again, on its own, when the animation moves on to another frame.
+ * Anything else that changes how the layer looks needs {@link #invalidate()}.
+ * 
+ * A layer that's no longer used should be {@link #dispose() disposed} of, which {@link Scene#removeLayer(String)} does for you.
+ */
+public class Layer implements Paintable, MoveListener {
+	/** How many pixels wide and tall the pieces of a static layer are, unless the scene says otherwise. */
+	public static final int DEFAULT_CHUNK_PIXELS = 256;
+	/** How many baked pieces a static layer keeps, unless the scene says otherwise. */
+	public static final int DEFAULT_MAX_CHUNKS = 64;
+	
+	/**
+	 * How a layer is painted.
+	 */
+	public enum CachePolicy {
+		/** Painted every frame. */
+		DYNAMIC,
+		/** Painted once into an image, which is drawn until the layer changes. */
+		STATIC
+	}
+	
+	private final String NAME;
+	private final Scene SCENE;
+	private int z;
+	private boolean visible = true;
+	private boolean rowSorted;
+	private CachePolicy policy;
+	
+	private Paintable[] items = new Paintable[16];
+	private int[] depths = new int[16];
+	private int size;
+	private boolean unsorted;
+	
+	private final int CHUNK_PIXELS, MAX_CHUNKS;
+	private final LongMap<Chunk> CHUNKS = new LongMap<>();
+	/* The baked pieces, least recently drawn first. */
+	private Chunk eldest, newest;
+	private boolean stale = true;
+	/** True if something was still waiting for its sheet when a piece was baked. */
+	private boolean provisional;
+	
+	Layer(Scene scene, String name, int z, CachePolicy policy, int chunkPixels, int maxChunks){
+		this.SCENE = scene;
+		this.NAME = name;
+		this.z = z;
+		this.policy = policy;
+		this.CHUNK_PIXELS = chunkPixels;
+		this.MAX_CHUNKS = maxChunks;
+	}
+	
+	public String getName(){
+		return NAME;
+	}
+	
+	public int getZ(){
+		return z;
+	}
+	
+	/**
+	 * Moves the layer in front of or behind other layers. Layers with higher z are painted on top.
+	 */
+	public void setZ(int z){
+		this.z = z;
+		SCENE.reorder();
+	}
+	
+	public boolean isVisible(){
+		return visible;
+	}
+	
+	public void setVisible(boolean visible){
+		this.visible = visible;
+	}
+	
+	/**
+	 * @return how many pixels wide and tall the baked pieces are, if the layer is static.
+	 */
+	public int getChunkPixels(){
+		return CHUNK_PIXELS;
+	}
+	
+	/**
+	 * @return how many baked pieces are kept, if the layer is static.
+	 */
+	public int getMaxChunks(){
+		return MAX_CHUNKS;
+	}
+	
+	public CachePolicy getCachePolicy(){
+		return policy;
+	}
+	
+	public void setCachePolicy(CachePolicy policy){
+		if(null == policy){
+			throw new IllegalArgumentException("Argument \"policy\" may not be null.");
+		}
+		this.policy = policy;
+		if(policy == CachePolicy.DYNAMIC){
+			flush();
+		}
+		stale = true;
+	}
+	
+	/**
+	 * @param rowSorted if true, the depth of every {@link Geographic} in the layer is its row, refreshed every frame.
+	 */
+	public void setRowSorted(boolean rowSorted){
+		this.rowSorted = rowSorted;
+		unsorted = true;
+		stale = true;
+	}
+	
+	/**
+	 * Adds something to the layer.
+	 * @param item what to add, may not be null.
+	 * @param depth where in the layer it goes. Things with the same depth are painted in the order they were added.
+	 */
+	public void add(Paintable item, int depth){
+		if(null == item){
+			throw new IllegalArgumentException("Argument \"item\" may not be null.");
+		}
+		if(size == items.length){
+			items = Arrays.copyOf(items, size * 2);
+			depths = Arrays.copyOf(depths, size * 2);
+		}
+		items[size] = item;
+		depths[size] = depth;
+		size++;
+		unsorted = true;
+		stale = true;
+		if(item instanceof StaticImage){
+			((StaticImage) item).addMoveListener(this);
+		}
+		else if(item instanceof AnimatedTile){
+			((AnimatedTile) item).addMoveListener(this);
+		}
+	}
+	
+	private int indexOf(Paintable item){
+		for(int i = 0; i < size; i++){
+			if(items[i] == item){
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Removes something from the layer.
+	 * @return true if it was in the layer.
+	 */
+	public boolean remove(Paintable item){
+		int i = indexOf(item);
+		if(i < 0){
+			return false;
+		}
+		System.arraycopy(items, i + 1, items, i, size - i - 1);
+		System.arraycopy(depths, i + 1, depths, i, size - i - 1);
+		items[--size] = null;
+		stale = true;
+		if(item instanceof StaticImage){
+			((StaticImage) item).removeMoveListener(this);
+		}
+		else if(item instanceof AnimatedTile){
+			((AnimatedTile) item).removeMoveListener(this);
+		}
+		return true;
+	}
+	
+	/**
+	 * Changes the depth of something in the layer.
+	 * @throws IllegalArgumentException if it isn't in the layer.
+	 */
+	public void setDepth(Paintable item, int depth){
+		int i = indexOf(item);
+		if(i < 0){
+			throw new IllegalArgumentException("The item is not in this layer");
+		}
+		if(depths[i] != depth){
+			depths[i] = depth;
+			unsorted = true;
+			stale = true;
+		}
+	}
+	
+	/**
+	 * @return the number of things in the layer.
+	 */
+	public int size(){
+		return size;
+	}
+	
+	/**
+	 * Marks a static layer as changed, so it's painted again the next frame. Does nothing much for dynamic layers.
+	 */
+	public void invalidate(){
+		stale = true;
+	}
+	
+	/**
+	 * Empties the layer, stops listening for moves of the {@link StaticImage}s and {@link AnimatedTile}s that were in it, and throws away the baked images.
+	 * The layer can still be used after this.
+	 */
+	public void dispose(){
+		for(int i = 0; i < size; i++){
+			if(items[i] instanceof StaticImage){
+				((StaticImage) items[i]).removeMoveListener(this);
+			}
+			else if(items[i] instanceof AnimatedTile){
+				((AnimatedTile) items[i]).removeMoveListener(this);
+			}
+			items[i] = null;
+		}
+		size = 0;
+		flush();
+		provisional = false;
+		stale = true;
+	}
+	
+	private void flush(){
+		for(Chunk chunk = eldest; null != chunk; chunk = chunk.newer){
+			chunk.discard();
+		}
+		CHUNKS.clear();
+		eldest = newest = null;
+	}
+	
+	/**
+	 * Invalidates the layer when something in it moves.
+	 */
+	@Override
+	public void moved(Geographic entity, int oldX, int oldY) {
+		stale = true;
+		if(rowSorted){
+			unsorted = true;
+		}
+	}
+	
+	/**
+	 * Sorts by depth with an insertion sort, which is stable and close to linear when the order has barely changed.
+	 */
+	private void sort(){
+		if(rowSorted){
+			for(int i = 0; i < size; i++){
+				if(items[i] instanceof Geographic){
+					int row = ((Geographic) items[i]).yPos();
+					if(row != depths[i]){
+						depths[i] = row;
+						unsorted = true;
+						stale = true;
+					}
+				}
+			}
+		}
+		if(!unsorted){
+			return;
+		}
+		for(int i = 1; i < size; i++){
+			int depth = depths[i];
+			if(depths[i - 1] <= depth){
+				continue;
+			}
+			Paintable item = items[i];
+			int j = i - 1;
+			while(j >= 0 && depths[j] > depth){
+				depths[j + 1] = depths[j];
+				items[j + 1] = items[j];
+				j--;
+			}
+			depths[j + 1] = depth;
+			items[j + 1] = item;
+		}
+		unsorted = false;
+	}
+	
+	private void paintItems(Graphics gfx){
+		for(int i = 0; i < size; i++){
+			items[i].paint(gfx);
+		}
+	}
+
+	@Override
+	public void paint(Graphics gfx) {
+		sort();
+		if(policy == CachePolicy.DYNAMIC){
+			paintItems(gfx);
+			return;
+		}
+		
+		Rectangle clip = gfx.getClipBounds();
+		if(null == clip){
+			/* There's no way to know which pieces are needed, so don't cache. */
+			paintItems(gfx);
+			return;
+		}
+		if(provisional && !hasPending()){
+			stale = true;
+		}
+		if(stale){
+			for(Chunk chunk = eldest; null != chunk; chunk = chunk.newer){
+				chunk.dirty = true;
+			}
+			provisional = false;
+			stale = false;
+		}
+		
+		int firstX = Math.floorDiv(clip.x, CHUNK_PIXELS), firstY = Math.floorDiv(clip.y, CHUNK_PIXELS);
+		int lastX = Math.floorDiv(clip.x + clip.width - 1, CHUNK_PIXELS), lastY = Math.floorDiv(clip.y + clip.height - 1, CHUNK_PIXELS);
+		for(int cy = firstY; cy <= lastY; cy++){
+			for(int cx = firstX; cx <= lastX; cx++){
+				long key = Coordinate.pack(cx, cy);
+				Chunk chunk = CHUNKS.get(key);
+				if(null == chunk){
+					chunk = new Chunk(cx, cy, key);
+					CHUNKS.put(key, chunk);
+				}
+				touch(chunk);
+				if(chunk.dirty || chunk.frames.changed()){
+					bake(chunk);
+				}
+				gfx.drawImage(chunk.image, cx * CHUNK_PIXELS, cy * CHUNK_PIXELS, null);
+			}
+		}
+	}
+	
+	/**
+	 * Moves a piece to the newest end of the list, and throws out the eldest pieces while there are too many.
+	 */
+	private void touch(Chunk chunk){
+		if(chunk == newest){
+			return;
+		}
+		if(null != chunk.older || chunk == eldest){
+			unlink(chunk);
+		}
+		chunk.older = newest;
+		if(null != newest){
+			newest.newer = chunk;
+		}
+		newest = chunk;
+		if(null == eldest){
+			eldest = chunk;
+		}
+		while(CHUNKS.size() > MAX_CHUNKS){
+			Chunk drop = eldest;
+			unlink(drop);
+			CHUNKS.remove(drop.key);
+			drop.discard();
+		}
+	}
+	
+	private void unlink(Chunk chunk){
+		if(null != chunk.older){
+			chunk.older.newer = chunk.newer;
+		}
+		else{
+			eldest = chunk.newer;
+		}
+		if(null != chunk.newer){
+			chunk.newer.older = chunk.older;
+		}
+		else{
+			newest = chunk.older;
+		}
+		chunk.older = chunk.newer = null;
+	}
+	
+	private void bake(Chunk chunk){
+		if(null == chunk.image){
+			if(GraphicsEnvironment.isHeadless()){
+				chunk.image = new BufferedImage(CHUNK_PIXELS, CHUNK_PIXELS, BufferedImage.TYPE_INT_ARGB);
+			}
+			else{
+				GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+				chunk.image = gc.createCompatibleImage(CHUNK_PIXELS, CHUNK_PIXELS, Transparency.TRANSLUCENT);
+			}
+		}
+		int x = chunk.x * CHUNK_PIXELS, y = chunk.y * CHUNK_PIXELS;
+		Graphics2D g = chunk.image.createGraphics();
+		g.setComposite(AlphaComposite.Clear);
+		g.fillRect(0, 0, CHUNK_PIXELS, CHUNK_PIXELS);
+		g.setComposite(AlphaComposite.SrcOver);
+		g.translate(-x, -y);
+		g.setClip(x, y, CHUNK_PIXELS, CHUNK_PIXELS);
+		chunk.frames.clear();
+		for(int i = 0; i < size; i++){
+			Paintable item = items[i];
+			provisional |= item instanceof StaticImage && ((StaticImage) item).isPending();
+			if(item instanceof AnimatedTile && overlaps((AnimatedTile) item, x, y)){
+				chunk.frames.record(((AnimatedTile) item).getAnimation());
+			}
+			item.paint(g);
+		}
+		g.dispose();
+		chunk.dirty = false;
+	}
+	
+	/**
+	 * @return true if the cell of the tile is on the piece with its top left corner at (x, y).
+	 */
+	private boolean overlaps(AnimatedTile tile, int x, int y){
+		long left = (long) tile.xPos() * tile.tileWidth(), top = (long) tile.yPos() * tile.tileHeight();
+		return left < x + CHUNK_PIXELS && x < left + tile.tileWidth() && top < y + CHUNK_PIXELS && y < top + tile.tileHeight();
+	}
+	
+	private boolean hasPending(){
+		for(int i = 0; i < size; i++){
+			if(items[i] instanceof StaticImage && ((StaticImage) items[i]).isPending()){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * One baked piece of a static layer.
+	 */
+	private static class Chunk {
+		private final int x, y;
+		private final long key;
+		/** The neighbours in the list of pieces, from least to most recently drawn. */
+		private Chunk older, newer;
+		private BufferedImage image;
+		private boolean dirty = true;
+		/** The frames of the animations on this piece when it was baked. */
+		private final FrameSnapshot frames = new FrameSnapshot();
+		
+		private Chunk(int x, int y, long key){
+			this.x = x;
+			this.y = y;
+			this.key = key;
+		}
+		
+		private void discard(){
+			if(null != image){
+				image.flush();
+				image = null;
+			}
+		}
+	}
+}
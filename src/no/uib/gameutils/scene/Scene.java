@@ -0,0 +1,167 @@
+package no.uib.gameutils.scene;
+
+import java.awt.Graphics;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import no.uib.gameutils.entity.type.Paintable;
+import no.uib.gameutils.scene.Layer.CachePolicy;
+
+/**
+ * A Scene is a stack of named {@link Layer}s, painted from the lowest z to the highest.
+ * 
+ * Use it as the scene of a {@link no.uib.gameutils.window.SimpleWindow SimpleWindow} instead of working out the painting order yourself.
+ * Each layer can be hidden, and can be marked as static so it's painted once and drawn from an image after that.
+ * Layers with the same z are painted in the order they were added.
+ * 
+ * A scene made with {@code new Scene()} bakes its static layers in pieces of {@link Layer#DEFAULT_CHUNK_PIXELS} pixels,
+ * and keeps {@link Layer#DEFAULT_MAX_CHUNKS} of them per layer. Use {@link #build()} to choose other sizes.
+ */
+public class Scene implements Paintable {
+	private final List<Layer> LAYERS = new ArrayList<>();
+	private final int CHUNK_PIXELS, MAX_CHUNKS;
+	
+	/**
+	 * Creates an empty scene, with the default sizes for static layers.
+	 */
+	public Scene(){
+		this(Layer.DEFAULT_CHUNK_PIXELS, Layer.DEFAULT_MAX_CHUNKS);
+	}
+	
+	private Scene(int chunkPixels, int maxChunks){
+		this.CHUNK_PIXELS = chunkPixels;
+		this.MAX_CHUNKS = maxChunks;
+	}
+	
+	/**
+	 * Adds a new, empty layer.
+	 * @param name the name of the layer, may not be null and must be unique.
+	 * @param z where the layer goes. Layers with higher z are painted on top.
+	 * @param policy whether the layer is painted every frame or cached, may not be null.
+	 * @return the new layer.
+	 */
+	public Layer addLayer(String name, int z, CachePolicy policy){
+		if(null == name){
+			throw new IllegalArgumentException("Argument \"name\" may not be null.");
+		}
+		if(null == policy){
+			throw new IllegalArgumentException("Argument \"policy\" may not be null.");
+		}
+		if(null != getLayer(name)){
+			throw new IllegalArgumentException(String.format("There is already a layer called \"%s\"", name));
+		}
+		Layer layer = new Layer(this, name, z, policy, CHUNK_PIXELS, MAX_CHUNKS);
+		LAYERS.add(layer);
+		reorder();
+		return layer;
+	}
+	
+	/**
+	 * @param name the name of the layer.
+	 * @return the layer, or null if there is no layer with that name.
+	 */
+	public Layer getLayer(String name){
+		for(Layer layer : LAYERS){
+			if(layer.getName().equals(name)){
+				return layer;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Removes a layer, and {@link Layer#dispose() disposes} of it, so it lets go of what was in it and its baked images.
+	 * @param name the name of the layer.
+	 * @return true if there was such a layer.
+	 */
+	public boolean removeLayer(String name){
+		Layer layer = getLayer(name);
+		if(null == layer){
+			return false;
+		}
+		LAYERS.remove(layer);
+		layer.dispose();
+		return true;
+	}
+	
+	/**
+	 * @return every layer, from the bottom to the top.
+	 */
+	public List<Layer> getLayers(){
+		return Collections.unmodifiableList(LAYERS);
+	}
+	
+	/**
+	 * Puts the layers back in z order. There are few layers, so an insertion sort does fine, and keeps layers with the same z in order.
+	 */
+	void reorder(){
+		for(int i = 1; i < LAYERS.size(); i++){
+			Layer layer = LAYERS.get(i);
+			int j = i - 1;
+			while(j >= 0 && LAYERS.get(j).getZ() > layer.getZ()){
+				LAYERS.set(j + 1, LAYERS.get(j));
+				j--;
+			}
+			LAYERS.set(j + 1, layer);
+		}
+	}
+
+	@Override
+	public void paint(Graphics gfx) {
+		for(int i = 0; i < LAYERS.size(); i++){
+			Layer layer = LAYERS.get(i);
+			if(layer.isVisible()){
+				layer.paint(gfx);
+			}
+		}
+	}
+	
+	public static SceneBuilder build(){
+		return new SceneBuilder();
+	}
+	
+	public static class SceneBuilder {
+		private int chunkPixels, maxChunks;
+		
+		public SceneBuilder(){
+			chunkPixels = Layer.DEFAULT_CHUNK_PIXELS;
+			maxChunks = Layer.DEFAULT_MAX_CHUNKS;
+		}
+		
+		/**
+		 * Sets how many pixels wide and tall the baked pieces of static layers are. Default is {@link Layer#DEFAULT_CHUNK_PIXELS}.
+		 * Larger pieces mean fewer drawImage calls, but more baking when a piece changes.
+		 * @param chunkPixels must be positive.
+		 * @return this {@link SceneBuilder} so you can chain calls.
+		 */
+		public SceneBuilder chunkPixels(int chunkPixels){
+			if(chunkPixels < 1){
+				throw new IllegalArgumentException(String.format("chunkPixels must be a positive number! (was %d)", chunkPixels));
+			}
+			this.chunkPixels = chunkPixels;
+			return this;
+		}
+		
+		/**
+		 * Sets how many baked pieces each static layer keeps. Default is {@link Layer#DEFAULT_MAX_CHUNKS}.
+		 * Make it at least as many pieces as cover the screen, or pieces will be baked every frame.
+		 * @param maxChunks must be positive.
+		 * @return this {@link SceneBuilder} so you can chain calls.
+		 */
+		public SceneBuilder maxChunks(int maxChunks){
+			if(maxChunks < 1){
+				throw new IllegalArgumentException(String.format("maxChunks must be a positive number! (was %d)", maxChunks));
+			}
+			this.maxChunks = maxChunks;
+			return this;
+		}
+		
+		/**
+		 * @return a new, empty {@link Scene}
+		 */
+		public Scene create(){
+			return new Scene(chunkPixels, maxChunks);
+		}
+	}
+}
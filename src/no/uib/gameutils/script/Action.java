@@ -0,0 +1,22 @@
+package no.uib.gameutils.script;
+
+/**
+ * An Action is one step of a {@link Behavior}, like "walk to (4, 7)", "wait 2 seconds" or "attack".
+ * 
+ * An action is run every time its {@link Script} is resumed, until it says it's done. Returning true moves the script on
+ * to the next action in the same tick, so quick actions can follow each other without losing ticks. Returning false ends
+ * the script's turn, and the same action is run again the next time the script is resumed.
+ * 
+ * Actions are shared by every script running the same behavior, so keep anything that belongs to one entity in the entity,
+ * or in the script with {@link Script#setState(Object)}, and use {@link Script#ticksInStep()} and {@link Script#sleep(int)} to keep track of time.
+ * 
+ * @param <T> the type of entity the action works on.
+ */
+public interface Action<T> {
+	/**
+	 * @param entity the entity the script belongs to.
+	 * @param script the script that is running the action.
+	 * @return true if the action is done, false to be run again on the next resume.
+	 */
+	public boolean run(T entity, Script<?> script);
+}
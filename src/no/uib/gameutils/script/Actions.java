@@ -0,0 +1,80 @@
+package no.uib.gameutils.script;
+
+import no.uib.gameutils.entity.type.Geographic;
+
+/**
+ * Ready-made {@link Action}s for use in {@link Behavior}s.
+ */
+public class Actions {
+	private Actions(){
+	}
+	
+	/**
+	 * Waits a number of ticks, sleeping in the meantime so the runner doesn't resume the script until it's over.
+	 * @param ticks how many ticks to wait. 0 doesn't wait at all.
+	 * @return the action.
+	 */
+	public static <T> Action<T> waitTicks(final int ticks){
+		if(ticks < 0){
+			throw new IllegalArgumentException(String.format("ticks may not be negative! (was %d)", ticks));
+		}
+		return new Action<T>(){
+			@Override
+			public boolean run(T entity, Script<?> script) {
+				if(0 == ticks || script.ticksInStep() >= ticks){
+					return true;
+				}
+				script.sleep((int) (ticks - script.ticksInStep()));
+				return false;
+			}
+		};
+	}
+	
+	/**
+	 * Waits until a condition holds. The condition is checked every time the script is resumed, starting at once.
+	 * @param condition the condition, may not be null.
+	 * @return the action.
+	 */
+	public static <T> Action<T> waitUntil(final Condition<? super T> condition){
+		if(null == condition){
+			throw new IllegalArgumentException("Argument \"condition\" may not be null.");
+		}
+		return new Action<T>(){
+			@Override
+			public boolean run(T entity, Script<?> script) {
+				return condition.test(entity);
+			}
+		};
+	}
+	
+	/**
+	 * Walks an entity to a tile, one tile at a time, diagonally where it can. It does not look for a way around anything,
+	 * use a {@link no.uib.gameutils.path.Pathfinder Pathfinder} in an action of your own for that.
+	 * @param x the column to walk to.
+	 * @param y the row to walk to.
+	 * @param ticksPerTile how many ticks each step takes, must be positive.
+	 * @return the action.
+	 */
+	public static <T extends Geographic> Action<T> walkTo(final int x, final int y, final int ticksPerTile){
+		if(ticksPerTile < 1){
+			throw new IllegalArgumentException(String.format("ticksPerTile must be a positive number! (was %d)", ticksPerTile));
+		}
+		return new Action<T>(){
+			@Override
+			public boolean run(T entity, Script<?> script) {
+				int atX = entity.xPos(), atY = entity.yPos();
+				if(atX == x && atY == y){
+					return true;
+				}
+				if(atX != x){
+					entity.setX(atX + Integer.signum(x - atX));
+				}
+				if(atY != y){
+					entity.setY(atY + Integer.signum(y - atY));
+				}
+				script.sleep(ticksPerTile);
+				return false;
+			}
+		};
+	}
+}
@@ -0,0 +1,115 @@
+package no.uib.gameutils.script;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Behavior is a script for an entity, written as a list of {@link Action}s run one after the other,
+ * like "walk to (4, 7), wait 2 seconds, attack". Start it for an entity with {@link ScriptRunner#start(Behavior, Object)}.
+ * 
+ * A behavior holds no state of its own, so one behavior can be run for any number of entities at once.
+ * Each running copy is a {@link Script}, which only remembers where it is in the list.
+ * 
+ * Build one with {@link #build()}, for instance:
+ * <pre>
+ * Behavior&lt;Guard&gt; patrol = Behavior.&lt;Guard&gt;build()
+ *     .then(Actions.&lt;Guard&gt;walkTo(10, 4, 8)).waitTicks(120)
+ *     .then(Actions.&lt;Guard&gt;walkTo(2, 4, 8)).waitTicks(120)
+ *     .loop().create();
+ * </pre>
+ * {@link Actions#walkTo(int, int, int)} only takes entities that are {@link no.uib.gameutils.entity.type.Geographic Geographic},
+ * so a behavior that walks an entity that can't move doesn't compile.
+ * 
+ * @param <T> the type of entity the behavior is for.
+ */
+public class Behavior<T> {
+	final Action<? super T>[] ACTIONS;
+	final boolean LOOPS;
+	
+	private Behavior(Action<? super T>[] actions, boolean loops){
+		this.ACTIONS = actions;
+		this.LOOPS = loops;
+	}
+	
+	/**
+	 * @return the number of actions in the behavior.
+	 */
+	public int numSteps(){
+		return ACTIONS.length;
+	}
+	
+	/**
+	 * @return true if the behavior starts over when it reaches the end.
+	 */
+	public boolean loops(){
+		return LOOPS;
+	}
+	
+	public static <T> BehaviorBuilder<T> build(){
+		return new BehaviorBuilder<T>();
+	}
+	
+	public static class BehaviorBuilder<T> {
+		private final List<Action<? super T>> actions;
+		private boolean loops;
+		
+		public BehaviorBuilder(){
+			actions = new ArrayList<>();
+			loops = false;
+		}
+		
+		/**
+		 * Adds an action to the end of the behavior.
+		 * @param action the action, may not be null.
+		 * @return this {@link BehaviorBuilder} so you can chain calls.
+		 */
+		public BehaviorBuilder<T> then(Action<? super T> action){
+			if(null == action){
+				throw new IllegalArgumentException("Argument \"action\" may not be null.");
+			}
+			actions.add(action);
+			return this;
+		}
+		
+		/**
+		 * Adds a wait. See {@link Actions#waitTicks(int)}.
+		 * @param ticks how many ticks to wait, may not be negative.
+		 * @return this {@link BehaviorBuilder} so you can chain calls.
+		 */
+		public BehaviorBuilder<T> waitTicks(int ticks){
+			return then(Actions.<T>waitTicks(ticks));
+		}
+		
+		/**
+		 * Adds a wait for a condition. See {@link Actions#waitUntil(Condition)}.
+		 * @param condition the condition, may not be null.
+		 * @return this {@link BehaviorBuilder} so you can chain calls.
+		 */
+		public BehaviorBuilder<T> waitUntil(Condition<? super T> condition){
+			return then(Actions.<T>waitUntil(condition));
+		}
+		
+		/**
+		 * Makes the behavior start over from the first action when it reaches the end, instead of finishing.
+		 * The script always gives up its turn when it starts over, so it runs through the list at most once per tick.
+		 * @return this {@link BehaviorBuilder} so you can chain calls.
+		 */
+		public BehaviorBuilder<T> loop(){
+			this.loops = true;
+			return this;
+		}
+		
+		/**
+		 * @return a new instance of {@link Behavior}
+		 * @throws IllegalStateException if no actions were added.
+		 */
+		public Behavior<T> create(){
+			if(actions.isEmpty()){
+				throw new IllegalStateException("No actions added");
+			}
+			@SuppressWarnings("unchecked")
+			Action<? super T>[] array = (Action<? super T>[]) actions.toArray(new Action<?>[actions.size()]);
+			return new Behavior<T>(array, loops);
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package no.uib.gameutils.script;
+
+/**
+ * A Condition is something a {@link Behavior} can wait for, like "the player is within 5 tiles".
+ * 
+ * @param <T> the type of entity the condition looks at.
+ */
+public interface Condition<T> {
+	/**
+	 * @param entity the entity the script belongs to.
+	 * @return true when the wait is over.
+	 */
+	public boolean test(T entity);
+}
@@ -0,0 +1,126 @@
+package no.uib.gameutils.script;
+
+/**
+ * A Script is one {@link Behavior} running for one entity, started with {@link ScriptRunner#start(Behavior, Object)}.
+ * 
+ * It remembers which action it is at and when that action started, which is all it needs to pick up where it left off.
+ * That keeps it down to a few dozen bytes, so a runner can hold a hundred thousand of them.
+ * Actions that need to remember more, like the path they are following, can keep it in the script's {@link #setState(Object) state}.
+ * 
+ * The methods meant for {@link Action}s ({@link #sleep(int)} and {@link #ticksInStep()}) should only be called while the script is being resumed.
+ * 
+ * @param <T> the type of entity the script belongs to.
+ */
+public class Script<T> {
+	private final Behavior<T> BEHAVIOR;
+	private final T ENTITY;
+	private Object state;
+	private int step;
+	private long tick, stepStart = -1, wake;
+	private boolean done;
+	
+	Script(Behavior<T> behavior, T entity){
+		this.BEHAVIOR = behavior;
+		this.ENTITY = entity;
+	}
+	
+	/**
+	 * Runs actions until one of them isn't done, the behavior ends, or a looping behavior comes back round to its first action.
+	 * @param now the tick of the runner.
+	 */
+	void resume(long now){
+		tick = now;
+		if(stepStart < 0){
+			stepStart = now;
+		}
+		Action<? super T>[] actions = BEHAVIOR.ACTIONS;
+		while(!done){
+			if(!actions[step].run(ENTITY, this)){
+				return;
+			}
+			stepStart = now;
+			if(++step == actions.length){
+				step = 0;
+				if(!BEHAVIOR.LOOPS){
+					done = true;
+				}
+				/* A loop always gives up its turn here, so a loop of quick actions can't hang the tick. */
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * @param now the tick of the runner.
+	 * @return true if the script should be resumed this tick.
+	 */
+	boolean isAwake(long now){
+		return wake <= now;
+	}
+	
+	/**
+	 * Keeps the runner from resuming this script for a number of ticks.
+	 * Sleeping scripts cost the runner almost nothing, so prefer this to an action that checks the time every tick.
+	 * @param ticks how many ticks from now the script is resumed again. 1 is the next tick, as usual.
+	 */
+	public void sleep(int ticks){
+		if(ticks < 1){
+			throw new IllegalArgumentException(String.format("ticks must be a positive number! (was %d)", ticks));
+		}
+		wake = tick + ticks;
+	}
+	
+	/**
+	 * @return how many ticks ago the current action was first run. 0 the first time it's run.
+	 */
+	public long ticksInStep(){
+		return stepStart < 0 ? 0 : tick - stepStart;
+	}
+	
+	/**
+	 * @return the index of the current action in the behavior.
+	 */
+	public int currentStep(){
+		return step;
+	}
+	
+	/**
+	 * Stops the script. It is not resumed again, and the runner lets go of it at the end of its next tick, or the current one if it's ticking.
+	 * An action may stop its own script, which ends the script's turn once the action returns.
+	 */
+	public void stop(){
+		done = true;
+	}
+	
+	/**
+	 * @return true if the script has run to the end of its behavior or been stopped.
+	 */
+	public boolean isDone(){
+		return done;
+	}
+	
+	/**
+	 * Keeps something for the actions of this one script, since the actions themselves are shared by every script running the behavior.
+	 * The script never changes or clears it, so it lives on from one action to the next and round a loop;
+	 * an action that keeps something here should set it back to null when it's done.
+	 * @param state whatever the actions need, or null.
+	 */
+	public void setState(Object state){
+		this.state = state;
+	}
+	
+	/**
+	 * @return what was last given to {@link #setState(Object)}, null to begin with.
+	 */
+	public Object getState(){
+		return state;
+	}
+	
+	public T getEntity(){
+		return ENTITY;
+	}
+	
+	public Behavior<T> getBehavior(){
+		return BEHAVIOR;
+	}
+}
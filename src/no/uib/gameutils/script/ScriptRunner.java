@@ -0,0 +1,160 @@
+package no.uib.gameutils.script;
+
+import java.util.Arrays;
+
+import no.uib.gameutils.entity.type.Tickable;
+
+/**
+ * A ScriptRunner runs the {@link Script}s of many entities, resuming each of them once per tick.
+ * 
+ * Scripts are written as a {@link Behavior}, a plain list of steps like "walk to (4, 7), wait 2 seconds, attack",
+ * instead of as a state machine inside {@link Tickable#tick()}. Each script only remembers which step it is at,
+ * so there is no thread or stack per script, and a hundred thousand scripts take a few megabytes.
+ * 
+ * Every tick, the scripts are resumed one at a time, in the order they were started, on the thread that ticks the runner.
+ * The same start order and the same world give the same result every time, and every script sees the world as the
+ * scripts before it in the same tick left it. Scripts that are asleep ({@link Script#sleep(int)}) are skipped without running anything.
+ * Scripts started during a tick are first resumed in the next one, and scripts that finish or are stopped are let go of
+ * at the end of the tick they finish in (or the next tick, if stopped between ticks). If an action throws, the exception goes straight out of {@link #tick()}.
+ * 
+ * The runner counts how many scripts it resumed in the last tick, and how long the tick took, so you can see what the scripts cost.
+ * Start and stop scripts from the thread that ticks the runner.
+ */
+public class ScriptRunner implements Tickable {
+	private Script<?>[] scripts = new Script<?>[64];
+	private Script<?>[] started = new Script<?>[16];
+	private int size, startedCount;
+	private boolean ticking;
+	private long ticks, totalResumed;
+	private int resumedLastTick, finishedLastTick;
+	private long lastNanos;
+	
+	/**
+	 * Starts a behavior for an entity. It is first resumed in the next tick.
+	 * @param behavior the behavior, may not be null.
+	 * @param entity the entity, may not be null.
+	 * @return the script, which you can use to stop it or see how far it has come.
+	 */
+	public <T> Script<T> start(Behavior<T> behavior, T entity){
+		if(null == behavior){
+			throw new IllegalArgumentException("Argument \"behavior\" may not be null.");
+		}
+		if(null == entity){
+			throw new IllegalArgumentException("Argument \"entity\" may not be null.");
+		}
+		Script<T> script = new Script<T>(behavior, entity);
+		if(ticking){
+			if(startedCount == started.length){
+				started = Arrays.copyOf(started, startedCount * 2);
+			}
+			started[startedCount++] = script;
+		}
+		else{
+			add(script);
+		}
+		return script;
+	}
+	
+	private void add(Script<?> script){
+		if(size == scripts.length){
+			scripts = Arrays.copyOf(scripts, size * 2);
+		}
+		scripts[size++] = script;
+	}
+	
+	/**
+	 * Resumes every script that is awake, once, in the order they were started.
+	 */
+	@Override
+	public void tick() {
+		long start = System.nanoTime();
+		long now = ++ticks;
+		int resumed = 0, kept = 0;
+		ticking = true;
+		try{
+			for(int i = 0; i < size; i++){
+				Script<?> script = scripts[i];
+				if(!script.isDone() && script.isAwake(now)){
+					script.resume(now);
+					resumed++;
+				}
+			}
+		}
+		finally{
+			ticking = false;
+		}
+		
+		/* Let go of finished scripts without changing the order of the others. */
+		for(int i = 0; i < size; i++){
+			if(!scripts[i].isDone()){
+				scripts[kept++] = scripts[i];
+			}
+		}
+		finishedLastTick = size - kept;
+		Arrays.fill(scripts, kept, size, null);
+		size = kept;
+		for(int i = 0; i < startedCount; i++){
+			add(started[i]);
+			started[i] = null;
+		}
+		startedCount = 0;
+		
+		resumedLastTick = resumed;
+		totalResumed += resumed;
+		lastNanos = System.nanoTime() - start;
+	}
+	
+	/**
+	 * Stops every script.
+	 */
+	public void stopAll(){
+		for(int i = 0; i < size; i++){
+			scripts[i].stop();
+		}
+		for(int i = 0; i < startedCount; i++){
+			started[i].stop();
+		}
+	}
+	
+	/**
+	 * @return the number of scripts the runner holds, including those that will start in the next tick.
+	 */
+	public int size(){
+		return size + startedCount;
+	}
+	
+	/**
+	 * @return how many times the runner has been ticked.
+	 */
+	public long ticks(){
+		return ticks;
+	}
+	
+	/**
+	 * @return how many scripts were resumed in the last tick. Sleeping scripts are not counted.
+	 */
+	public int resumedLastTick(){
+		return resumedLastTick;
+	}
+	
+	/**
+	 * @return how many scripts finished or were stopped, and were let go of, in the last tick.
+	 */
+	public int finishedLastTick(){
+		return finishedLastTick;
+	}
+	
+	/**
+	 * @return how many times scripts have been resumed, in all.
+	 */
+	public long totalResumed(){
+		return totalResumed;
+	}
+	
+	/**
+	 * @return how long the last tick took, in nanoseconds.
+	 */
+	public long lastTickNanos(){
+		return lastNanos;
+	}
+}
@@ -0,0 +1,20 @@
+package no.uib.gameutils.spatial;
+
+/**
+ * Bounds works out the axis-aligned box an entity takes up, for {@link SweepAndPrune}.
+ * 
+ * The box can be in tiles or in pixels, or any other unit, as long as every entity in the same {@link SweepAndPrune} uses the same one.
+ * {@link SweepAndPrune#tileBounds(int, int)} and {@link SweepAndPrune#pixelBounds(int, int)} cover entities that take up whole tiles.
+ * For anything else, like a sprite with a hitbox smaller than its tile, write your own.
+ * 
+ * @param <T> the type of entities.
+ */
+public interface Bounds<T> {
+	/**
+	 * Writes the box of an entity into an array. Both corners are inside the box.
+	 * @param entity the entity.
+	 * @param box the array to write to: box[offset] is the leftmost x, then the topmost y, the rightmost x and the bottommost y.
+	 * @param offset where in the array to start writing.
+	 */
+	public void bounds(T entity, int[] box, int offset);
+}
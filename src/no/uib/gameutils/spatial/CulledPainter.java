@@ -0,0 +1,82 @@
+package no.uib.gameutils.spatial;
+
+import java.awt.Graphics;
+import java.awt.Rectangle;
+
+import no.uib.gameutils.entity.type.Geographic;
+import no.uib.gameutils.entity.type.Paintable;
+
+/**
+ * A {@link Paintable} that only paints the entities in a {@link SpatialIndex} that are inside the clip of the {@link Graphics}.
+ * 
+ * Use it as the scene (or part of the scene) of a {@link no.uib.gameutils.window.SimpleWindow SimpleWindow},
+ * and set the clip to the part of the world that's on screen. The cost of a frame then depends on what's visible,
+ * not on how big the world is. If there is no clip, nothing is culled and every entity is painted.
+ * 
+ * The index does not keep any order, so entities that overlap should be in separate painters (one per layer).
+ * Entities that paint outside their own tile can be caught by giving a margin, in tiles, that is added around the clip.
+ * 
+ * @param <T> the type of entities painted.
+ */
+public class CulledPainter<T extends Geographic & Paintable> implements Paintable, SpatialVisitor<T> {
+	private final SpatialIndex<T> INDEX;
+	private final int TILE_WIDTH, TILE_HEIGHT, MARGIN;
+	private Graphics gfx;
+	private int lastPainted;
+	
+	/**
+	 * @param index the index the entities are kept in, may not be null.
+	 * @param tileWidth the width of a tile in pixels, must be positive.
+	 * @param tileHeight the height of a tile in pixels, must be positive.
+	 * @param margin how many tiles outside the clip to include, may not be negative.
+	 */
+	public CulledPainter(SpatialIndex<T> index, int tileWidth, int tileHeight, int margin){
+		if(null == index){
+			throw new IllegalArgumentException("Argument \"index\" may not be null.");
+		}
+		if(tileWidth < 1 || tileHeight < 1){
+			throw new IllegalArgumentException(String.format("tileWidth and tileHeight must be positive numbers! (was %dx%d)", tileWidth, tileHeight));
+		}
+		if(margin < 0){
+			throw new IllegalArgumentException(String.format("margin may not be negative! (was %d)", margin));
+		}
+		this.INDEX = index;
+		this.TILE_WIDTH = tileWidth;
+		this.TILE_HEIGHT = tileHeight;
+		this.MARGIN = margin;
+	}
+
+	@Override
+	public void paint(Graphics gfx) {
+		Rectangle clip = gfx.getClipBounds();
+		int minX = Integer.MIN_VALUE, minY = Integer.MIN_VALUE, maxX = Integer.MAX_VALUE, maxY = Integer.MAX_VALUE;
+		if(null != clip){
+			minX = Math.floorDiv(clip.x, TILE_WIDTH) - MARGIN;
+			minY = Math.floorDiv(clip.y, TILE_HEIGHT) - MARGIN;
+			maxX = Math.floorDiv(clip.x + clip.width - 1, TILE_WIDTH) + MARGIN;
+			maxY = Math.floorDiv(clip.y + clip.height - 1, TILE_HEIGHT) + MARGIN;
+		}
+		this.gfx = gfx;
+		try{
+			lastPainted = INDEX.queryRect(minX, minY, maxX, maxY, this);
+		}
+		finally{
+			this.gfx = null;
+		}
+	}
+	
+	/**
+	 * Paints one entity. This is called by the index during {@link #paint(Graphics)}.
+	 */
+	@Override
+	public void visit(T entity) {
+		entity.paint(gfx);
+	}
+	
+	/**
+	 * @return how many entities were painted the last time this was painted.
+	 */
+	public int lastPainted(){
+		return lastPainted;
+	}
+}
@@ -0,0 +1,264 @@
+package no.uib.gameutils.spatial;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import no.uib.gameutils.entity.StaticImage;
+import no.uib.gameutils.entity.type.Geographic;
+import no.uib.gameutils.position.Coordinate;
+import no.uib.gameutils.position.LongMap;
+
+/**
+ * A {@link SpatialIndex} that sorts entities into a grid of square cells, cellSize tiles wide.
+ * 
+ * Only cells that have entities in them exist, so the world can be as big as an int allows in every direction,
+ * negative coordinates included. Inserting, moving and removing are all O(1).
+ * A query looks at every cell the area touches, unless there are fewer cells in use than that,
+ * in which case it looks at the cells in use instead. That keeps big queries over sparse worlds cheap.
+ * 
+ * Pick a cell size close to the size of your typical query. Something around a quarter of the screen is a good start.
+ * 
+ * Entities are compared by identity, not by equals. {@link StaticImage}s are kept up to date automatically,
+ * any other entity must be reported to {@link #moved(Geographic, int, int)} when it moves.
+ * This class is not thread safe.
+ * 
+ * @param <T> the type of entities in the index.
+ */
+public class GridIndex<T extends Geographic> implements SpatialIndex<T> {
+	private final int CELL_SIZE;
+	private final LongMap<Cell> CELLS = new LongMap<>();
+	private final IdentityHashMap<T, Slot> SLOTS = new IdentityHashMap<>();
+	private final ArrayDeque<Cell> SPARE_CELLS = new ArrayDeque<>();
+	
+	/**
+	 * Creates a new, empty GridIndex.
+	 * @param cellSize how many tiles wide and tall a cell is. Must be positive.
+	 */
+	public GridIndex(int cellSize){
+		if(cellSize < 1){
+			throw new IllegalArgumentException(String.format("cellSize must be a positive number! (was %d)", cellSize));
+		}
+		this.CELL_SIZE = cellSize;
+	}
+	
+	private Cell cellFor(int x, int y){
+		long key = Coordinate.pack(Math.floorDiv(x, CELL_SIZE), Math.floorDiv(y, CELL_SIZE));
+		Cell cell = CELLS.get(key);
+		if(null == cell){
+			cell = SPARE_CELLS.poll();
+			if(null == cell){
+				cell = new Cell();
+			}
+			cell.key = key;
+			CELLS.put(key, cell);
+		}
+		return cell;
+	}
+	
+	private void release(Cell cell){
+		if(cell.size == 0){
+			CELLS.remove(cell.key);
+			SPARE_CELLS.push(cell);
+		}
+	}
+
+	@Override
+	public void insert(T entity) {
+		if(null == entity){
+			throw new IllegalArgumentException("Argument \"entity\" may not be null.");
+		}
+		if(SLOTS.containsKey(entity)){
+			throw new IllegalArgumentException("The entity is already in the index");
+		}
+		Slot slot = new Slot(entity);
+		slot.x = entity.xPos();
+		slot.y = entity.yPos();
+		SLOTS.put(entity, slot);
+		cellFor(slot.x, slot.y).add(slot);
+		if(entity instanceof StaticImage){
+			((StaticImage) entity).addMoveListener(this);
+		}
+	}
+
+	@Override
+	public boolean remove(T entity) {
+		Slot slot = SLOTS.remove(entity);
+		if(null == slot){
+			return false;
+		}
+		Cell cell = slot.cell;
+		cell.remove(slot);
+		release(cell);
+		if(entity instanceof StaticImage){
+			((StaticImage) entity).removeMoveListener(this);
+		}
+		return true;
+	}
+
+	@Override
+	public void moved(Geographic entity, int oldX, int oldY) {
+		Slot slot = SLOTS.get(entity);
+		if(null == slot){
+			return;
+		}
+		slot.x = entity.xPos();
+		slot.y = entity.yPos();
+		long key = Coordinate.pack(Math.floorDiv(slot.x, CELL_SIZE), Math.floorDiv(slot.y, CELL_SIZE));
+		if(key == slot.cell.key){
+			return;
+		}
+		Cell old = slot.cell;
+		old.remove(slot);
+		cellFor(slot.x, slot.y).add(slot);
+		release(old);
+	}
+
+	@Override
+	public int size() {
+		return SLOTS.size();
+	}
+
+	@Override
+	public void clear() {
+		for(T entity : SLOTS.keySet()){
+			if(entity instanceof StaticImage){
+				((StaticImage) entity).removeMoveListener(this);
+			}
+		}
+		SLOTS.clear();
+		CELLS.clear();
+		SPARE_CELLS.clear();
+	}
+
+	@Override
+	public int queryRect(int minX, int minY, int maxX, int maxY, SpatialVisitor<? super T> visitor) {
+		return query(minX, minY, maxX, maxY, 0, 0, -1L, visitor, null);
+	}
+
+	@Override
+	public int queryRect(int minX, int minY, int maxX, int maxY, List<? super T> result) {
+		result.clear();
+		return query(minX, minY, maxX, maxY, 0, 0, -1L, null, result);
+	}
+
+	@Override
+	public int queryRadius(int x, int y, int radius, SpatialVisitor<? super T> visitor) {
+		checkRadius(radius);
+		return query(x - radius, y - radius, x + radius, y + radius, x, y, (long) radius * radius, visitor, null);
+	}
+
+	@Override
+	public int queryRadius(int x, int y, int radius, List<? super T> result) {
+		checkRadius(radius);
+		result.clear();
+		return query(x - radius, y - radius, x + radius, y + radius, x, y, (long) radius * radius, null, result);
+	}
+	
+	private static void checkRadius(int radius){
+		if(radius < 0){
+			throw new IllegalArgumentException(String.format("radius may not be negative! (was %d)", radius));
+		}
+	}
+	
+	/**
+	 * Does the work for all the queries. radiusSquared is negative for rectangle queries.
+	 * Exactly one of visitor and result is non-null.
+	 */
+	private int query(int minX, int minY, int maxX, int maxY, int centerX, int centerY, long radiusSquared,
+			SpatialVisitor<? super T> visitor, List<? super T> result){
+		if(minX > maxX || minY > maxY){
+			return 0;
+		}
+		int minCellX = Math.floorDiv(minX, CELL_SIZE), maxCellX = Math.floorDiv(maxX, CELL_SIZE);
+		int minCellY = Math.floorDiv(minY, CELL_SIZE), maxCellY = Math.floorDiv(maxY, CELL_SIZE);
+		long cellsCovered = ((long) maxCellX - minCellX + 1) * ((long) maxCellY - minCellY + 1);
+		
+		int found = 0;
+		if(cellsCovered > CELLS.size()){
+			for(int i = 0; i < CELLS.capacity(); i++){
+				Cell cell = CELLS.valueAt(i);
+				if(null == cell){
+					continue;
+				}
+				int cx = Coordinate.x(cell.key), cy = Coordinate.y(cell.key);
+				if(cx >= minCellX && cx <= maxCellX && cy >= minCellY && cy <= maxCellY){
+					found += scan(cell, minX, minY, maxX, maxY, centerX, centerY, radiusSquared, visitor, result);
+				}
+			}
+		}
+		else{
+			for(int cy = minCellY; cy <= maxCellY; cy++){
+				for(int cx = minCellX; cx <= maxCellX; cx++){
+					Cell cell = CELLS.get(Coordinate.pack(cx, cy));
+					if(null != cell){
+						found += scan(cell, minX, minY, maxX, maxY, centerX, centerY, radiusSquared, visitor, result);
+					}
+				}
+			}
+		}
+		return found;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private int scan(Cell cell, int minX, int minY, int maxX, int maxY, int centerX, int centerY, long radiusSquared,
+			SpatialVisitor<? super T> visitor, List<? super T> result){
+		int found = 0;
+		for(int i = 0; i < cell.size; i++){
+			Slot slot = cell.slots[i];
+			if(slot.x < minX || slot.x > maxX || slot.y < minY || slot.y > maxY){
+				continue;
+			}
+			if(radiusSquared >= 0){
+				long dx = (long) slot.x - centerX, dy = (long) slot.y - centerY;
+				if(dx * dx + dy * dy > radiusSquared){
+					continue;
+				}
+			}
+			found++;
+			if(null != visitor){
+				visitor.visit((T) slot.entity);
+			}
+			else{
+				result.add((T) slot.entity);
+			}
+		}
+		return found;
+	}
+	
+	private static class Slot {
+		private final Object entity;
+		private int x, y, index;
+		private Cell cell;
+		
+		private Slot(Object entity){
+			this.entity = entity;
+		}
+	}
+	
+	private static class Cell {
+		private long key;
+		private int size;
+		private Slot[] slots = new Slot[4];
+		
+		private void add(Slot slot){
+			if(size == slots.length){
+				slots = Arrays.copyOf(slots, size * 2);
+			}
+			slot.cell = this;
+			slot.index = size;
+			slots[size++] = slot;
+		}
+		
+		/** Swap-remove, order inside a cell doesn't matter. */
+		private void remove(Slot slot){
+			int last = --size;
+			Slot moved = slots[last];
+			slots[slot.index] = moved;
+			moved.index = slot.index;
+			slots[last] = null;
+			slot.cell = null;
+		}
+	}
+}
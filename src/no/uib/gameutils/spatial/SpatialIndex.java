@@ -0,0 +1,88 @@
+package no.uib.gameutils.spatial;
+
+import java.util.List;
+
+import no.uib.gameutils.entity.type.Geographic;
+import no.uib.gameutils.entity.type.MoveListener;
+
+/**
+ * A SpatialIndex keeps track of where {@link Geographic} entities are, so you can ask which entities are inside some area
+ * without looking at all of them.
+ * 
+ * Positions are in tiles, like everywhere else in {@link Geographic}, and may be negative.
+ * When an entity moves, the index must be told with {@link MoveListener#moved(Geographic, int, int)},
+ * unless the entity does that on its own (like {@link no.uib.gameutils.entity.StaticImage StaticImage}).
+ * 
+ * Queries come in two flavours: one that hands each entity to a {@link SpatialVisitor}, and one that fills a list you provide.
+ * Neither creates any objects as long as the list is big enough.
+ * 
+ * @param <T> the type of entities in the index.
+ */
+public interface SpatialIndex<T extends Geographic> extends MoveListener {
+	
+	/**
+	 * Adds an entity to the index at its current position.
+	 * @param entity the entity, may not be null. Adding the same entity twice is not allowed.
+	 */
+	public void insert(T entity);
+	
+	/**
+	 * Removes an entity from the index.
+	 * @param entity the entity to remove.
+	 * @return true if the entity was in the index.
+	 */
+	public boolean remove(T entity);
+	
+	/**
+	 * @return the number of entities in the index.
+	 */
+	public int size();
+	
+	/**
+	 * Removes every entity from the index.
+	 */
+	public void clear();
+	
+	/**
+	 * Finds every entity inside a rectangle of tiles. Both corners are included.
+	 * @param minX the leftmost column.
+	 * @param minY the topmost row.
+	 * @param maxX the rightmost column.
+	 * @param maxY the bottommost row.
+	 * @param visitor is given every entity that was found.
+	 * @return the number of entities found.
+	 */
+	public int queryRect(int minX, int minY, int maxX, int maxY, SpatialVisitor<? super T> visitor);
+	
+	/**
+	 * Finds every entity inside a rectangle of tiles and adds them to a list. Both corners are included.
+	 * The list is cleared first, so you can reuse the same list every frame.
+	 * @param minX the leftmost column.
+	 * @param minY the topmost row.
+	 * @param maxX the rightmost column.
+	 * @param maxY the bottommost row.
+	 * @param result the list the entities are put in.
+	 * @return the number of entities found.
+	 */
+	public int queryRect(int minX, int minY, int maxX, int maxY, List<? super T> result);
+	
+	/**
+	 * Finds every entity no further than radius tiles away from a tile, measured from the center of the tiles.
+	 * @param x the column of the center.
+	 * @param y the row of the center.
+	 * @param radius the radius in tiles, may not be negative.
+	 * @param visitor is given every entity that was found.
+	 * @return the number of entities found.
+	 */
+	public int queryRadius(int x, int y, int radius, SpatialVisitor<? super T> visitor);
+	
+	/**
+	 * Same as {@link #queryRadius(int, int, int, SpatialVisitor)}, but clears and fills a list instead.
+	 * @param x the column of the center.
+	 * @param y the row of the center.
+	 * @param radius the radius in tiles, may not be negative.
+	 * @param result the list the entities are put in.
+	 * @return the number of entities found.
+	 */
+	public int queryRadius(int x, int y, int radius, List<? super T> result);
+}
@@ -0,0 +1,19 @@
+package no.uib.gameutils.spatial;
+
+import no.uib.gameutils.entity.type.Geographic;
+
+/**
+ * A SpatialVisitor is handed every entity a {@link SpatialIndex} query finds, one at a time.
+ * Using a visitor instead of getting a list back means a query doesn't have to create any objects.
+ * 
+ * @param <T> the type of entities in the index.
+ */
+public interface SpatialVisitor<T extends Geographic> {
+	
+	/**
+	 * Called once for every entity the query finds. The order is not specified.
+	 * Don't add, move or remove entities in the index from inside this method.
+	 * @param entity an entity that matched the query.
+	 */
+	public void visit(T entity);
+}
@@ -0,0 +1,377 @@
+package no.uib.gameutils.spatial;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import no.uib.gameutils.entity.type.Geographic;
+import no.uib.gameutils.position.LongMap;
+
+/**
+ * SweepAndPrune finds which entities overlap, without testing every entity against every other one.
+ * 
+ * Each entity has an axis-aligned box, worked out by a {@link Bounds}. The left and right edges of all the boxes are kept
+ * in one array, sorted along the x axis. Every {@link #update()} the boxes are worked out again and the array is sorted
+ * with insertion sort. Things don't move far between two frames, so the array is nearly sorted already,
+ * and that sort costs little more than a pass over it. A sweep along the sorted edges then finds the boxes overlapping on x,
+ * and those are checked on y. With small motion the whole update grows close to linearly with the number of entities,
+ * as long as they aren't piled up in a few columns; a crowd lined up along the y axis all overlaps on x, and costs more.
+ * 
+ * Every update fills an event buffer: {@link #BEGIN} for pairs that started overlapping, {@link #STAY} for pairs that still do,
+ * and {@link #END} for pairs that stopped (including pairs where one was removed). The buffer is reused, so read it before the next update.
+ * 
+ * Boxes can be in tiles ({@link #tileBounds(int, int)}), in pixels ({@link #pixelBounds(int, int)}), or anything your own {@link Bounds} likes.
+ * Use this from one thread.
+ * 
+ * @param <T> the type of entities.
+ */
+public class SweepAndPrune<T> {
+	public static final int BEGIN = 0;
+	public static final int STAY = 1;
+	public static final int END = 2;
+	
+	private static final long SLOT_MASK = 0x7FFFFFFFL;
+	private static final long MAX_BIT = 0x80000000L;
+	
+	private final Bounds<? super T> BOUNDS;
+	private final IdentityHashMap<T, Integer> SLOTS = new IdentityHashMap<>();
+	// The overlapping pairs, keyed by pairKey, with the update each was last seen in. Stamps of ended pairs are reused.
+	private final LongMap<Stamp> PAIRS = new LongMap<>();
+	private Stamp[] spareStamps = new Stamp[16];
+	private int spareCount;
+	
+	private Object[] entities = new Object[64];
+	private int[] boxes = new int[64 * 4];
+	private boolean[] dead = new boolean[64];
+	private int slotCount;
+	private int[] free = new int[16];
+	private int freeCount;
+	private boolean anyDead;
+	
+	// Sorted edges: the x value in the high 32 bits, then a bit that is set for right edges, then the slot.
+	private long[] edges = new long[128];
+	private int edgeCount;
+	private int[] active = new int[64], activeTop = new int[64], activeBottom = new int[64];
+	
+	private long[] pairs = new long[64], lastPairs = new long[64];
+	private int pairCount, lastPairCount;
+	private int generation;
+	
+	private int[] eventTypes = new int[64];
+	private Object[] eventFirst = new Object[64], eventSecond = new Object[64];
+	private int eventCount;
+	
+	/**
+	 * @param bounds works out the box of each entity, may not be null.
+	 */
+	public SweepAndPrune(Bounds<? super T> bounds){
+		if(null == bounds){
+			throw new IllegalArgumentException("Argument \"bounds\" may not be null.");
+		}
+		this.BOUNDS = bounds;
+	}
+	
+	/**
+	 * Boxes in tiles, for entities that take up a rectangle of tiles with their position in the top left corner.
+	 * Entities on neighbouring tiles don't overlap; entities on the same tile do.
+	 * @param width the width of the entities, in tiles.
+	 * @param height the height of the entities, in tiles.
+	 */
+	public static <T extends Geographic> Bounds<T> tileBounds(final int width, final int height){
+		if(width < 1 || height < 1){
+			throw new IllegalArgumentException(String.format("Illegal size specified, width and height must be positive (yours was %d, %d)", width, height));
+		}
+		return new Bounds<T>(){
+			@Override
+			public void bounds(T entity, int[] box, int offset) {
+				box[offset] = entity.xPos();
+				box[offset + 1] = entity.yPos();
+				box[offset + 2] = entity.xPos() + width - 1;
+				box[offset + 3] = entity.yPos() + height - 1;
+			}
+		};
+	}
+	
+	/**
+	 * Boxes in pixels, covering the single tile each entity stands on.
+	 * @param tileWidth the width of a tile in pixels.
+	 * @param tileHeight the height of a tile in pixels.
+	 */
+	public static <T extends Geographic> Bounds<T> pixelBounds(final int tileWidth, final int tileHeight){
+		if(tileWidth < 1 || tileHeight < 1){
+			throw new IllegalArgumentException(String.format("Illegal tile size specified, width and height must be positive (yours was %d, %d)", tileWidth, tileHeight));
+		}
+		return new Bounds<T>(){
+			@Override
+			public void bounds(T entity, int[] box, int offset) {
+				box[offset] = entity.xPos() * tileWidth;
+				box[offset + 1] = entity.yPos() * tileHeight;
+				box[offset + 2] = entity.xPos() * tileWidth + tileWidth - 1;
+				box[offset + 3] = entity.yPos() * tileHeight + tileHeight - 1;
+			}
+		};
+	}
+	
+	/**
+	 * Adds an entity. It takes part in the next {@link #update()}.
+	 * @param entity the entity, may not be null. Adding the same entity twice is not allowed.
+	 */
+	public void insert(T entity){
+		if(null == entity){
+			throw new IllegalArgumentException("Argument \"entity\" may not be null.");
+		}
+		if(SLOTS.containsKey(entity)){
+			throw new IllegalArgumentException("The entity has already been added");
+		}
+		int slot;
+		if(freeCount > 0){
+			slot = free[--freeCount];
+		}
+		else {
+			if(slotCount == entities.length){
+				entities = Arrays.copyOf(entities, slotCount * 2);
+				boxes = Arrays.copyOf(boxes, slotCount * 2 * 4);
+				dead = Arrays.copyOf(dead, slotCount * 2);
+			}
+			slot = slotCount++;
+		}
+		SLOTS.put(entity, slot);
+		entities[slot] = entity;
+		BOUNDS.bounds(entity, boxes, slot * 4);
+		if(edgeCount + 2 > edges.length){
+			edges = Arrays.copyOf(edges, edges.length * 2);
+		}
+		edges[edgeCount++] = edge(boxes[slot * 4], slot, false);
+		edges[edgeCount++] = edge(boxes[slot * 4 + 2], slot, true);
+	}
+	
+	/**
+	 * Removes an entity. The pairs it was in get an {@link #END} event in the next {@link #update()}.
+	 * @return true if the entity was there.
+	 */
+	public boolean remove(T entity){
+		Integer slot = SLOTS.remove(entity);
+		if(null == slot){
+			return false;
+		}
+		dead[slot] = true;
+		anyDead = true;
+		return true;
+	}
+	
+	/**
+	 * Removes every entity, without any {@link #END} events.
+	 */
+	public void clear(){
+		PAIRS.clear();
+		SLOTS.clear();
+		Arrays.fill(entities, null);
+		Arrays.fill(dead, false);
+		slotCount = freeCount = edgeCount = lastPairCount = pairCount = eventCount = 0;
+		anyDead = false;
+	}
+	
+	/**
+	 * @return the number of entities.
+	 */
+	public int size(){
+		return SLOTS.size();
+	}
+	
+	private static long edge(int x, int slot, boolean right){
+		return ((long) x << 32) | (right ? MAX_BIT : 0) | slot;
+	}
+	
+	/**
+	 * Works out the boxes again, finds the overlapping pairs and fills the event buffer.
+	 * Call this once per tick, after everything has moved.
+	 */
+	@SuppressWarnings("unchecked")
+	public void update(){
+		for(int slot = 0; slot < slotCount; slot++){
+			if(null != entities[slot] && !dead[slot]){
+				BOUNDS.bounds((T) entities[slot], boxes, slot * 4);
+			}
+		}
+		int n = 0;
+		for(int i = 0; i < edgeCount; i++){
+			int slot = (int) (edges[i] & SLOT_MASK);
+			if(dead[slot]){
+				continue;
+			}
+			boolean right = (edges[i] & MAX_BIT) != 0;
+			edges[n++] = edge(boxes[slot * 4 + (right ? 2 : 0)], slot, right);
+		}
+		edgeCount = n;
+		sortEdges();
+		
+		if(++generation == Integer.MAX_VALUE){
+			generation = 1;
+		}
+		eventCount = 0;
+		pairCount = 0;
+		sweep();
+		
+		for(int i = 0; i < lastPairCount; i++){
+			long pair = lastPairs[i];
+			if(PAIRS.get(pair).generation != generation){
+				recycle(PAIRS.remove(pair));
+				event(END, (int) (pair >>> 32), (int) pair);
+			}
+		}
+		long[] swap = lastPairs;
+		lastPairs = pairs;
+		pairs = swap;
+		lastPairCount = pairCount;
+		
+		if(anyDead){
+			for(int slot = 0; slot < slotCount; slot++){
+				if(dead[slot]){
+					dead[slot] = false;
+					entities[slot] = null;
+					if(freeCount == free.length){
+						free = Arrays.copyOf(free, freeCount * 2);
+					}
+					free[freeCount++] = slot;
+				}
+			}
+			anyDead = false;
+		}
+	}
+	
+	/**
+	 * Insertion sort. The edges are nearly sorted from last time, so this is close to one pass.
+	 */
+	private void sortEdges(){
+		long[] e = edges;
+		for(int i = 1; i < edgeCount; i++){
+			long edge = e[i];
+			int j = i - 1;
+			while(j >= 0 && e[j] > edge){
+				e[j + 1] = e[j];
+				j--;
+			}
+			e[j + 1] = edge;
+		}
+	}
+	
+	private void sweep(){
+		int activeCount = 0;
+		for(int i = 0; i < edgeCount; i++){
+			int slot = (int) (edges[i] & SLOT_MASK);
+			if((edges[i] & MAX_BIT) != 0){
+				for(int j = activeCount - 1; j >= 0; j--){
+					if(active[j] == slot){
+						activeCount--;
+						active[j] = active[activeCount];
+						activeTop[j] = activeTop[activeCount];
+						activeBottom[j] = activeBottom[activeCount];
+						break;
+					}
+				}
+				continue;
+			}
+			int top = boxes[slot * 4 + 1], bottom = boxes[slot * 4 + 3];
+			// The y extents of the active boxes are kept next to them, so this loop reads memory in order.
+			for(int j = 0; j < activeCount; j++){
+				if(top <= activeBottom[j] && activeTop[j] <= bottom){
+					overlap(slot, active[j]);
+				}
+			}
+			if(activeCount == active.length){
+				active = Arrays.copyOf(active, activeCount * 2);
+				activeTop = Arrays.copyOf(activeTop, activeCount * 2);
+				activeBottom = Arrays.copyOf(activeBottom, activeCount * 2);
+			}
+			active[activeCount] = slot;
+			activeTop[activeCount] = top;
+			activeBottom[activeCount] = bottom;
+			activeCount++;
+		}
+	}
+	
+	/**
+	 * Packs two slots into one key, the lower slot in the high 32 bits, so a pair has the same key whichever way round it's found.
+	 */
+	private static long pairKey(int slotA, int slotB){
+		return slotA < slotB ? ((long) slotA << 32) | slotB : ((long) slotB << 32) | slotA;
+	}
+	
+	private void recycle(Stamp stamp){
+		if(spareCount == spareStamps.length){
+			spareStamps = Arrays.copyOf(spareStamps, spareCount * 2);
+		}
+		spareStamps[spareCount++] = stamp;
+	}
+	
+	private void overlap(int slotA, int slotB){
+		long pair = pairKey(slotA, slotB);
+		Stamp stamp = PAIRS.get(pair);
+		boolean began = null == stamp;
+		if(began){
+			stamp = 0 == spareCount ? new Stamp() : spareStamps[--spareCount];
+			PAIRS.put(pair, stamp);
+		}
+		stamp.generation = generation;
+		if(pairCount == pairs.length){
+			pairs = Arrays.copyOf(pairs, pairCount * 2);
+		}
+		pairs[pairCount++] = pair;
+		event(began ? BEGIN : STAY, (int) (pair >>> 32), (int) pair);
+	}
+	
+	private void event(int type, int slotA, int slotB){
+		if(eventCount == eventTypes.length){
+			eventTypes = Arrays.copyOf(eventTypes, eventCount * 2);
+			eventFirst = Arrays.copyOf(eventFirst, eventCount * 2);
+			eventSecond = Arrays.copyOf(eventSecond, eventCount * 2);
+		}
+		eventTypes[eventCount] = type;
+		eventFirst[eventCount] = entities[slotA];
+		eventSecond[eventCount] = entities[slotB];
+		eventCount++;
+	}
+	
+	/**
+	 * @return the number of events from the last {@link #update()}.
+	 */
+	public int eventCount(){
+		return eventCount;
+	}
+	
+	/**
+	 * @param i from 0 to {@link #eventCount()} - 1.
+	 * @return {@link #BEGIN}, {@link #STAY} or {@link #END}.
+	 */
+	public int eventType(int i){
+		return eventTypes[i];
+	}
+	
+	/**
+	 * @param i from 0 to {@link #eventCount()} - 1.
+	 * @return one of the entities in the pair.
+	 */
+	@SuppressWarnings("unchecked")
+	public T eventFirst(int i){
+		return (T) eventFirst[i];
+	}
+	
+	/**
+	 * @param i from 0 to {@link #eventCount()} - 1.
+	 * @return the other entity in the pair.
+	 */
+	@SuppressWarnings("unchecked")
+	public T eventSecond(int i){
+		return (T) eventSecond[i];
+	}
+	
+	/**
+	 * @return the number of pairs that overlapped in the last {@link #update()}.
+	 */
+	public int pairCount(){
+		return lastPairCount;
+	}
+	
+	private static final class Stamp {
+		private int generation;
+	}
+}
@@ -0,0 +1,237 @@
+package no.uib.gameutils.sprite;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Loads sprite sheets in the background, several at a time.
+ * 
+ * {@link #load(File, int, int)} returns a {@link SpriteHandle} at once, and the sheet is decoded on one of the loader's threads.
+ * The handle can be used right away: it gives you a placeholder until the sheet is ready. See {@link SpriteHandle} for details.
+ * Asking for the same file with the same tile size more than once gives you the same handle, so each sheet is only decoded once,
+ * no matter how many parts of the game ask for it at the same time.
+ * 
+ * If the loader is given a {@link SheetCache}, sheets are loaded through it, so they are only decoded the first time.
+ * 
+ * The threads are daemon threads, so a loader that's never shut down won't keep the program running.
+ */
+public class AsyncSpriteLoader {
+	private final ExecutorService POOL;
+	private final SheetCache CACHE;
+	private final ConcurrentHashMap<String, SpriteHandle> HANDLES = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Dimension, BufferedImage> PLACEHOLDERS = new ConcurrentHashMap<>();
+	
+	/**
+	 * Creates a loader with one thread per processor.
+	 */
+	public AsyncSpriteLoader(){
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * @param threads the most sheets to decode at the same time. Must be positive.
+	 */
+	public AsyncSpriteLoader(int threads){
+		this(threads, null);
+	}
+	
+	/**
+	 * @param threads the most sheets to decode at the same time. Must be positive.
+	 * @param cache the cache of decoded sheets to load through, or null to always decode.
+	 */
+	public AsyncSpriteLoader(int threads, SheetCache cache){
+		if(threads < 1){
+			throw new IllegalArgumentException(String.format("threads must be a positive number! (was %d)", threads));
+		}
+		final AtomicInteger count = new AtomicInteger();
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory(){
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "SpriteLoader-" + count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		pool.allowCoreThreadTimeOut(true);
+		this.POOL = pool;
+		this.CACHE = cache;
+	}
+	
+	/**
+	 * Starts loading a sheet with square tiles.
+	 * @param imagePath the path to the image file.
+	 * @param tileSize the height and width (in pixels) of a tile.
+	 * @return the handle for the sheet.
+	 * @throws IllegalArgumentException if tileSize is below 1, or imagePath is a null value.
+	 * @throws IllegalStateException if the loader has been shut down and the sheet wasn't already asked for.
+	 */
+	public SpriteHandle load(String imagePath, int tileSize){
+		if(null == imagePath){
+			throw new IllegalArgumentException("Imagepath cannot be a null-value");
+		}
+		return load(new File(imagePath), tileSize, tileSize, false);
+	}
+	
+	/**
+	 * Starts loading a sheet.
+	 * @param imageFile the image file.
+	 * @param tileWidth the width (in pixels) of a tile.
+	 * @param tileHeight the height (in pixels) of a tile.
+	 * @return the handle for the sheet.
+	 * @throws IllegalArgumentException if either tileWidth or tileHeight are below 1, or imageFile is a null value.
+	 * @throws IllegalStateException if the loader has been shut down and the sheet wasn't already asked for.
+	 */
+	public SpriteHandle load(File imageFile, int tileWidth, int tileHeight){
+		return load(imageFile, tileWidth, tileHeight, false);
+	}
+	
+	/**
+	 * Starts loading a sheet.
+	 * @param imageFile the image file.
+	 * @param tileWidth the width (in pixels) of a tile.
+	 * @param tileHeight the height (in pixels) of a tile.
+	 * @param cached if true, the sheet is also cut up into a {@link CachedSpriteLoader} on the loading thread.
+	 * @return the handle for the sheet. The same handle is returned for the same file, tile size and caching.
+	 * @throws IllegalArgumentException if either tileWidth or tileHeight are below 1, or imageFile is a null value.
+	 * @throws IllegalStateException if the loader has been shut down and the sheet wasn't already asked for.
+	 */
+	public SpriteHandle load(File imageFile, int tileWidth, int tileHeight, final boolean cached){
+		if(null == imageFile){
+			throw new IllegalArgumentException("imageFile cannot be a null value!");
+		}
+		if(tileWidth < 1 || tileHeight < 1){
+			throw new IllegalArgumentException(String.format("tileWidth and tileHeight must be positive numbers! (was %dx%d)", tileWidth, tileHeight));
+		}
+		File file = imageFile.getAbsoluteFile();
+		String key = String.format("%s:%dx%d:%b", file.getPath(), tileWidth, tileHeight, cached);
+		SpriteHandle handle = HANDLES.get(key);
+		if(null != handle){
+			return handle;
+		}
+		if(POOL.isShutdown()){
+			throw new IllegalStateException("The AsyncSpriteLoader has been shut down");
+		}
+		
+		final SpriteHandle created = new SpriteHandle(file, tileWidth, tileHeight, placeholder(tileWidth, tileHeight));
+		handle = HANDLES.putIfAbsent(key, created);
+		if(null != handle){
+			/* Someone else got there first. */
+			return handle;
+		}
+		try{
+			POOL.execute(new Runnable(){
+				@Override
+				public void run() {
+					decode(created, cached);
+				}
+			});
+		}
+		catch(RejectedExecutionException ree){
+			/* Don't leave a handle behind that will never finish, for this caller or the next. */
+			HANDLES.remove(key, created);
+			created.fail(ree);
+			throw new IllegalStateException("The AsyncSpriteLoader has been shut down", ree);
+		}
+		return created;
+	}
+	
+	private BufferedImage placeholder(int tileWidth, int tileHeight){
+		Dimension size = new Dimension(tileWidth, tileHeight);
+		BufferedImage placeholder = PLACEHOLDERS.get(size);
+		if(null == placeholder){
+			/* A transparent tile, so nothing shows up where a sheet is missing. */
+			placeholder = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_ARGB);
+			BufferedImage other = PLACEHOLDERS.putIfAbsent(size, placeholder);
+			if(null != other){
+				placeholder = other;
+			}
+		}
+		return placeholder;
+	}
+	
+	private void decode(SpriteHandle handle, boolean cached){
+		if(null != CACHE){
+			try{
+				SpriteLoader loader = CACHE.load(handle.getFile(), handle.tileWidth(), handle.tileHeight());
+				BufferedImage sheet = loader.getSheet();
+				handle.HEADER.complete(new Dimension(sheet.getWidth(), sheet.getHeight()));
+				handle.complete(cached ? CachedSpriteLoader.create(loader) : loader);
+			}
+			catch(Throwable t){
+				failAndRethrowErrors(handle, t);
+			}
+			return;
+		}
+		try{
+			ImageInputStream in = ImageIO.createImageInputStream(handle.getFile());
+			if(null == in){
+				throw new IOException(String.format("Could not open %s", handle.getFile()));
+			}
+			try{
+				Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+				if(!readers.hasNext()){
+					throw new IOException("Could not read imagefile. Is a correct ImageReader registered? check ImageIO's docs for details.");
+				}
+				ImageReader reader = readers.next();
+				try{
+					reader.setInput(in, true, true);
+					handle.HEADER.complete(new Dimension(reader.getWidth(0), reader.getHeight(0)));
+					BufferedImage sheet = reader.read(0);
+					SpriteLoader loader = GenericSpriteLoader.create(sheet, handle.tileWidth(), handle.tileHeight());
+					handle.complete(cached ? CachedSpriteLoader.create(loader) : loader);
+				}
+				finally{
+					reader.dispose();
+				}
+			}
+			finally{
+				in.close();
+			}
+		}
+		catch(Throwable t){
+			failAndRethrowErrors(handle, t);
+		}
+	}
+	
+	/**
+	 * Fails the handle so nobody waits on it forever. Errors (like running out of memory on a huge sheet) are thrown on afterwards.
+	 */
+	private static void failAndRethrowErrors(SpriteHandle handle, Throwable t){
+		handle.fail(t);
+		if(t instanceof Error){
+			throw (Error) t;
+		}
+	}
+	
+	/**
+	 * Forgets a sheet, so the next request for it loads it again. Handles that are already out keep working.
+	 * @param handle the handle of the sheet.
+	 */
+	public void forget(SpriteHandle handle){
+		HANDLES.values().remove(handle);
+	}
+	
+	/**
+	 * Stops the loading threads once the sheets that have been asked for are loaded.
+	 * No more sheets can be loaded afterwards, and {@link #load(File, int, int, boolean)} throws an IllegalStateException.
+	 */
+	public void shutdown(){
+		POOL.shutdown();
+	}
+}
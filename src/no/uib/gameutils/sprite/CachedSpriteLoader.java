@@ -0,0 +1,192 @@
+package no.uib.gameutils.sprite;
+
+import java.awt.AlphaComposite;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+
+/**
+ * A {@link SpriteLoader} that cuts the sheet of another {@link SpriteLoader} into separate tiles once, when it is created.
+ * 
+ * {@link GenericSpriteLoader#getImage(int, int)} creates a new sub-image every time it is called,
+ * and sub-images of a big sheet are hard for Java2D to accelerate.
+ * The tiles in this loader are copied into images of the screen's own format, which Java2D can keep in video memory,
+ * and the same instance is returned every time you ask for a tile.
+ * 
+ * If you ask for it, each tile can also be kept in a {@link VolatileImage}. Use {@link #drawTile(Graphics, int, int, int, int)}
+ * to draw those, since it takes care of restoring the contents if the graphics card throws them away.
+ * 
+ * Free-size requests made through {@link #getImage(int, int, Dimension)} are not cached, and are handed to the wrapped loader.
+ */
+public class CachedSpriteLoader implements SpriteLoader {
+	private final SpriteLoader SOURCE;
+	private final BufferedImage[] TILES;
+	private final VolatileImage[] VOLATILE_TILES;
+	private final int COLUMNS, ROWS;
+	
+	/**
+	 * Static factory method for CachedSpriteLoaders that don't use {@link VolatileImage}s.
+	 * @param source the {@link SpriteLoader} to cut the tiles from. May not be null.
+	 * @return a new (every time) CachedSpriteLoader
+	 * @throws IllegalArgumentException if source is a null value.
+	 */
+	public static CachedSpriteLoader create(SpriteLoader source){
+		return create(source, false);
+	}
+	
+	/**
+	 * Static factory method for CachedSpriteLoaders.
+	 * If the source is a {@link SpriteHandle} that is still loading, this waits for it, since the tiles are copied.
+	 * @param source the {@link SpriteLoader} to cut the tiles from. May not be null.
+	 * @param useVolatileImages whether {@link #drawTile(Graphics, int, int, int, int)} should draw from {@link VolatileImage}s.
+	 * This is ignored in headless environments.
+	 * @return a new (every time) CachedSpriteLoader
+	 * @throws IllegalArgumentException if source is a null value.
+	 * @throws IllegalStateException if source is a {@link SpriteHandle} whose sheet could not be loaded.
+	 */
+	public static CachedSpriteLoader create(SpriteLoader source, boolean useVolatileImages){
+		if(null == source){
+			throw new IllegalArgumentException("Argument \"source\" may not be null.");
+		}
+		return new CachedSpriteLoader(SpriteHandle.await(source), useVolatileImages && !GraphicsEnvironment.isHeadless());
+	}
+	
+	private CachedSpriteLoader(SpriteLoader source, boolean useVolatileImages){
+		this.SOURCE = source;
+		this.COLUMNS = source.numColumns();
+		this.ROWS = source.numRows();
+		this.TILES = new BufferedImage[COLUMNS * ROWS];
+		this.VOLATILE_TILES = useVolatileImages ? new VolatileImage[TILES.length] : null;
+		
+		GraphicsConfiguration gc = screenConfiguration();
+		for(int row = 0; row < ROWS; row++){
+			for(int col = 0; col < COLUMNS; col++){
+				TILES[row * COLUMNS + col] = copyOf(source.getImage(col, row), gc);
+			}
+		}
+	}
+	
+	/**
+	 * @return the configuration of the default screen, or null if we're running headless.
+	 */
+	static GraphicsConfiguration screenConfiguration(){
+		if(GraphicsEnvironment.isHeadless()){
+			return null;
+		}
+		return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+	}
+	
+	/**
+	 * Copies the image into a new image that is compatible with the screen, or into a TYPE_INT_ARGB image if there is no screen.
+	 */
+	static BufferedImage copyOf(BufferedImage image, GraphicsConfiguration gc){
+		BufferedImage copy;
+		if(null == gc){
+			copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+		}
+		else{
+			copy = gc.createCompatibleImage(image.getWidth(), image.getHeight(), image.getTransparency());
+		}
+		Graphics2D g = copy.createGraphics();
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+		return copy;
+	}
+	
+	/**
+	 * Draws a tile, using the {@link VolatileImage} version of it if this loader was created with those.
+	 * If the contents of the {@link VolatileImage} have been lost, they are restored from the cached copy before drawing.
+	 * @param gfx the {@link Graphics} to draw with.
+	 * @param column the column of the tile, same rules as {@link #getImage(int, int)}.
+	 * @param row the row of the tile, same rules as {@link #getImage(int, int)}.
+	 * @param x the pixel position to draw the left edge of the tile at.
+	 * @param y the pixel position to draw the top edge of the tile at.
+	 */
+	public void drawTile(Graphics gfx, int column, int row, int x, int y){
+		int index = row * COLUMNS + column;
+		if(null == VOLATILE_TILES){
+			gfx.drawImage(TILES[index], x, y, null);
+			return;
+		}
+		
+		VolatileImage vi = VOLATILE_TILES[index];
+		do{
+			GraphicsConfiguration gc = screenConfiguration();
+			int state = null == vi ? VolatileImage.IMAGE_INCOMPATIBLE : vi.validate(gc);
+			if(state == VolatileImage.IMAGE_INCOMPATIBLE){
+				if(null != vi){
+					vi.flush();
+				}
+				BufferedImage tile = TILES[index];
+				vi = gc.createCompatibleVolatileImage(tile.getWidth(), tile.getHeight(), Transparency.TRANSLUCENT);
+				VOLATILE_TILES[index] = vi;
+				state = VolatileImage.IMAGE_RESTORED;
+			}
+			if(state == VolatileImage.IMAGE_RESTORED){
+				Graphics2D g = vi.createGraphics();
+				g.setComposite(AlphaComposite.Src);
+				g.drawImage(TILES[index], 0, 0, null);
+				g.dispose();
+			}
+			gfx.drawImage(vi, x, y, null);
+		}
+		while(vi.contentsLost());
+	}
+
+	/**
+	 * Gives you the cached tile. The same instance is returned every time.
+	 * This method does not check its input, just like the interface allows.
+	 */
+	@Override
+	public BufferedImage getImage(int column, int row) {
+		return TILES[row * COLUMNS + column];
+	}
+
+	@Override
+	public BufferedImage getImage(int xPos, int yPos, Dimension size) {
+		return SOURCE.getImage(xPos, yPos, size);
+	}
+
+	@Override
+	public int numColumns() {
+		return COLUMNS;
+	}
+
+	@Override
+	public int numRows() {
+		return ROWS;
+	}
+
+	@Override
+	public int tileWidth() {
+		return SOURCE.tileWidth();
+	}
+
+	@Override
+	public int tileHeight() {
+		return SOURCE.tileHeight();
+	}
+
+	@Override
+	public int horizontalPixels() {
+		return SOURCE.horizontalPixels();
+	}
+
+	@Override
+	public int verticalPixels() {
+		return SOURCE.verticalPixels();
+	}
+
+	/**
+	 * This is the sheet of the wrapped {@link SpriteLoader}. Changes to it will not show up in the cached tiles.
+	 */
+	@Override
+	public BufferedImage getSheet() {
+		return SOURCE.getSheet();
+	}
+}
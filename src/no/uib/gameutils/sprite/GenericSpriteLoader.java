@@ -94,6 +94,26 @@ public class GenericSpriteLoader implements SpriteLoader {
 		
 		return new GenericSpriteLoader(sheet, tileWidth, tileHeight);
 	}
+	
+	/**
+	 * Static factory method for GenericSpriteLoaders, for sheets that are already in memory.
+	 * The sheet is used as it is, not copied.
+	 * @param sheet the sprite sheet.
+	 * @param tileWidth the width (in pixels) of a tile.
+	 * @param tileHeight the height (in pixels) of a tile.
+	 * @return a new (every time) GenericSpriteLoader
+	 * @throws IllegalArgumentException if either tileWidth or tileHeight are below 1, or sheet is a null value.
+	 */
+	public static GenericSpriteLoader create(BufferedImage sheet, int tileWidth, int tileHeight){
+		if(null == sheet){
+			throw new IllegalArgumentException("sheet cannot be a null value!");
+		}
+		if(tileWidth < 1 || tileHeight < 1){
+			throw new IllegalArgumentException(String.format("tileWidth and tileHeight must be positive numbers! (was %dx%d)", tileWidth, tileHeight));
+		}
+		return new GenericSpriteLoader(sheet, tileWidth, tileHeight);
+	}
+	
 	private GenericSpriteLoader(BufferedImage spriteSheet, int tileWidth, int tileHeight){
 		this.SHEET = spriteSheet;
 		this.TILE_HEIGHT = tileHeight;
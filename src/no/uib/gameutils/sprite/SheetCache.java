@@ -0,0 +1,233 @@
+package no.uib.gameutils.sprite;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+import javax.imageio.ImageIO;
+
+/**
+ * A SheetCache keeps already decoded sprite sheets on disk, so they don't have to be decoded again the next time the game starts.
+ * 
+ * The first time a sheet is loaded, it's decoded with {@link ImageIO} as usual, and the raw ARGB pixels are written to a cache file,
+ * along with the size of the sheet and its tiles and a fingerprint of the image file.
+ * The next time, the cache file is memory-mapped and the pixels copied straight into a {@link BufferedImage}, with no decoding at all.
+ * 
+ * A cache file is used as long as the image file has the same length and timestamp as when it was written.
+ * If the timestamp has changed but the length hasn't, the contents are checked against a CRC32, so touching a file doesn't throw the cache away.
+ * When the CRC32 matches, the new timestamp is written into the cache file, so the image file is only read through once.
+ * Anything else means the sheet is decoded and cached again.
+ * 
+ * The format is, in little-endian order: the magic number {@link #MAGIC}, a version, the width and height of the sheet,
+ * the width and height of a tile, the length, timestamp and CRC32 of the image file, and then width * height ARGB ints, row by row.
+ */
+public class SheetCache {
+	public static final int MAGIC = 0x47553244; /* "GU2D" */
+	public static final int VERSION = 1;
+	private static final int HEADER_BYTES = 4 * 6 + 8 * 3;
+	private static final int MODIFIED_OFFSET = 4 * 6 + 8;
+	
+	private final File DIRECTORY;
+	
+	/**
+	 * @param directory where the cache files are kept. It is created if it doesn't exist. May not be null.
+	 * @throws IOException if the directory doesn't exist and can't be created.
+	 */
+	public SheetCache(File directory) throws IOException {
+		if(null == directory){
+			throw new IllegalArgumentException("Argument \"directory\" may not be null.");
+		}
+		Files.createDirectories(directory.toPath());
+		this.DIRECTORY = directory;
+	}
+	
+	/**
+	 * Loads a sheet, from the cache if there is a valid cache file for it, and by decoding it (and caching it) if there isn't.
+	 * @param imageFile the image file.
+	 * @param tileWidth the width (in pixels) of a tile.
+	 * @param tileHeight the height (in pixels) of a tile.
+	 * @return a new (every time) GenericSpriteLoader for the sheet.
+	 * @throws IOException if the image file can't be read. Problems with the cache itself only cause the sheet to be decoded.
+	 */
+	public GenericSpriteLoader load(File imageFile, int tileWidth, int tileHeight) throws IOException {
+		if(null == imageFile){
+			throw new IllegalArgumentException("imageFile cannot be a null value!");
+		}
+		File cacheFile = cacheFileFor(imageFile);
+		BufferedImage sheet = null;
+		try{
+			sheet = read(cacheFile, imageFile);
+		}
+		catch(IOException ioe){
+			/* A broken cache file is no worse than a missing one. */
+			sheet = null;
+		}
+		if(null == sheet){
+			BufferedImage decoded = ImageIO.read(imageFile);
+			if(null == decoded){
+				throw new IOException("Could not read imagefile. Is a correct ImageReader registered? check ImageIO's docs for details.");
+			}
+			sheet = toIntArgb(decoded);
+			try{
+				write(cacheFile, imageFile, sheet, tileWidth, tileHeight);
+			}
+			catch(IOException ioe){
+				/* We have the sheet, failing to cache it only costs us time on the next start. */
+			}
+		}
+		return GenericSpriteLoader.create(sheet, tileWidth, tileHeight);
+	}
+	
+	/**
+	 * @param imageFile the image file.
+	 * @return the cache file that is used for the image file.
+	 */
+	public File cacheFileFor(File imageFile){
+		File absolute = imageFile.getAbsoluteFile();
+		String name = absolute.getName().replaceAll("[^A-Za-z0-9._-]", "_");
+		return new File(DIRECTORY, String.format("%s-%08x.gu2d", name, absolute.getPath().hashCode()));
+	}
+	
+	private static BufferedImage toIntArgb(BufferedImage image){
+		if(image.getType() == BufferedImage.TYPE_INT_ARGB){
+			return image;
+		}
+		BufferedImage argb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+		int[] pixels = ((DataBufferInt) argb.getRaster().getDataBuffer()).getData();
+		image.getRGB(0, 0, image.getWidth(), image.getHeight(), pixels, 0, image.getWidth());
+		return argb;
+	}
+	
+	private static long crcOf(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[64 * 1024];
+		try(InputStream in = Files.newInputStream(file.toPath())){
+			int read;
+			while((read = in.read(buffer)) > 0){
+				crc.update(buffer, 0, read);
+			}
+		}
+		return crc.getValue();
+	}
+	
+	/**
+	 * Reads a cache file.
+	 * @return the sheet, or null if the cache file is missing or doesn't match the image file.
+	 */
+	static BufferedImage read(File cacheFile, File imageFile) throws IOException {
+		if(!cacheFile.isFile()){
+			return null;
+		}
+		long imageModified = imageFile.lastModified();
+		boolean touched;
+		BufferedImage sheet;
+		try(RandomAccessFile raf = new RandomAccessFile(cacheFile, "r"); FileChannel channel = raf.getChannel()){
+			long size = channel.size();
+			if(size < HEADER_BYTES){
+				return null;
+			}
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			map.order(ByteOrder.LITTLE_ENDIAN);
+			if(map.getInt() != MAGIC || map.getInt() != VERSION){
+				return null;
+			}
+			int width = map.getInt(), height = map.getInt();
+			map.getInt(); /* tile width, informational */
+			map.getInt(); /* tile height, informational */
+			long length = map.getLong(), modified = map.getLong(), crc = map.getLong();
+			
+			if(width < 1 || height < 1 || size != HEADER_BYTES + 4L * width * height){
+				return null;
+			}
+			if(length != imageFile.length()){
+				return null;
+			}
+			touched = modified != imageModified;
+			if(touched && crc != crcOf(imageFile)){
+				return null;
+			}
+			
+			sheet = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			int[] pixels = ((DataBufferInt) sheet.getRaster().getDataBuffer()).getData();
+			IntBuffer ints = map.asIntBuffer();
+			ints.get(pixels);
+		}
+		if(touched){
+			try{
+				writeModified(cacheFile, imageModified);
+			}
+			catch(IOException ioe){
+				/* The sheet is fine, we'll just check the CRC again next time. */
+			}
+		}
+		return sheet;
+	}
+	
+	/**
+	 * Writes a new image file timestamp into the header of a cache file whose CRC32 still matches.
+	 * A reader that sees a half-written timestamp just checks the CRC32 again.
+	 */
+	private static void writeModified(File cacheFile, long modified) throws IOException {
+		try(RandomAccessFile raf = new RandomAccessFile(cacheFile, "rw"); FileChannel channel = raf.getChannel()){
+			ByteBuffer stamp = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+			stamp.putLong(modified);
+			stamp.flip();
+			long position = MODIFIED_OFFSET;
+			while(stamp.hasRemaining()){
+				position += channel.write(stamp, position);
+			}
+		}
+	}
+	
+	/**
+	 * Writes a cache file. The file is written to a temporary file of its own next to the real one and moved into place,
+	 * so a half-written cache is never read, and two writers never share a temporary file. If anything goes wrong, the temporary file is deleted.
+	 */
+	static void write(File cacheFile, File imageFile, BufferedImage sheet, int tileWidth, int tileHeight) throws IOException {
+		int width = sheet.getWidth(), height = sheet.getHeight();
+		int[] pixels = ((DataBufferInt) sheet.getRaster().getDataBuffer()).getData();
+		File temp = File.createTempFile("." + cacheFile.getName() + "-", ".tmp", cacheFile.getAbsoluteFile().getParentFile());
+		try{
+			try(RandomAccessFile raf = new RandomAccessFile(temp, "rw"); FileChannel channel = raf.getChannel()){
+				ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+				header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(tileWidth).putInt(tileHeight);
+				header.putLong(imageFile.length()).putLong(imageFile.lastModified()).putLong(crcOf(imageFile));
+				header.flip();
+				while(header.hasRemaining()){
+					channel.write(header);
+				}
+				
+				ByteBuffer body = ByteBuffer.allocate(4 * width).order(ByteOrder.LITTLE_ENDIAN);
+				for(int row = 0; row < height; row++){
+					body.clear();
+					body.asIntBuffer().put(pixels, row * width, width);
+					body.limit(4 * width);
+					while(body.hasRemaining()){
+						channel.write(body);
+					}
+				}
+				raf.setLength(HEADER_BYTES + 4L * width * height);
+			}
+			try{
+				Files.move(temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch(IOException ioe){
+				Files.move(temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally{
+			temp.delete();
+		}
+	}
+}
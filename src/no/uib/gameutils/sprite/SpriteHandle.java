@@ -0,0 +1,225 @@
+package no.uib.gameutils.sprite;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A SpriteHandle is a {@link SpriteLoader} for a sheet that is still being loaded in the background by an {@link AsyncSpriteLoader}.
+ * 
+ * Until the sheet is ready, {@link #getImage(int, int)} gives you a placeholder the size of a tile, and never waits.
+ * Once the sheet is ready, it gives you the real tiles.
+ * 
+ * The classes in this library that hold on to tiles know about handles, and do one of two things:
+ * <ul>
+ * <li>Those that only keep references to tiles paint the placeholder while the sheet loads, and switch to the real tiles
+ * on their own when it arrives: {@link no.uib.gameutils.entity.StaticImage StaticImage},
+ * {@link no.uib.gameutils.entity.Animation Animation}, {@link no.uib.gameutils.map.TileMap TileMap},
+ * {@link no.uib.gameutils.map.ChunkStreamer ChunkStreamer}, {@link no.uib.gameutils.render.RenderQueue RenderQueue},
+ * and {@link TransformCache}, which doesn't cache what it makes from a placeholder. {@link no.uib.gameutils.map.ChunkCache ChunkCache}
+ * and static {@link no.uib.gameutils.scene.Layer Layer}s bake again once the sheets of their {@link no.uib.gameutils.entity.StaticImage StaticImage}s arrive.</li>
+ * <li>Those that copy the pixels, {@link CachedSpriteLoader#create(SpriteLoader)}, {@link TextureAtlas} and
+ * {@link no.uib.gameutils.particle.ParticleEmitter.ParticleEmitterBuilder#create() ParticleEmitter}, wait for the sheet.</li>
+ * </ul>
+ * Code of your own that copies tiles once can use {@link #isLoading(SpriteLoader)}, {@link #future()} and {@link #await(SpriteLoader)} to do the same.
+ * 
+ * The size of the sheet is read from the header of the file before the pixels are decoded,
+ * so {@link #numColumns()}, {@link #numRows()} and the pixel counts wait only for the header, which is quick.
+ * {@link #getImage(int, int, Dimension)} and {@link #getSheet()} wait for the whole sheet.
+ * 
+ * If loading fails, the placeholder is used forever, and {@link #get()} throws the reason.
+ */
+public class SpriteHandle implements SpriteLoader {
+	private final File FILE;
+	private final int TILE_WIDTH, TILE_HEIGHT;
+	private final BufferedImage PLACEHOLDER;
+	final CompletableFuture<Dimension> HEADER = new CompletableFuture<>();
+	final CompletableFuture<SpriteLoader> SHEET = new CompletableFuture<>();
+	private volatile SpriteLoader loaded;
+	
+	SpriteHandle(File file, int tileWidth, int tileHeight, BufferedImage placeholder){
+		this.FILE = file;
+		this.TILE_WIDTH = tileWidth;
+		this.TILE_HEIGHT = tileHeight;
+		this.PLACEHOLDER = placeholder;
+	}
+	
+	void complete(SpriteLoader loader){
+		loaded = loader;
+		SHEET.complete(loader);
+	}
+	
+	void fail(Throwable cause){
+		HEADER.completeExceptionally(cause);
+		SHEET.completeExceptionally(cause);
+	}
+	
+	/**
+	 * @param loader any loader, may be null.
+	 * @return true if the loader is a handle whose sheet is still being loaded.
+	 */
+	public static boolean isLoading(SpriteLoader loader){
+		return loader instanceof SpriteHandle && !((SpriteHandle) loader).isDone();
+	}
+	
+	/**
+	 * Waits for a handle to finish loading, and gives you the loaded sheet. Any other loader is given back as it is.
+	 * @param loader the loader, may not be null.
+	 * @return the loaded sheet if loader is a handle, otherwise loader.
+	 * @throws IllegalStateException if the sheet could not be loaded, or the thread was interrupted while waiting.
+	 */
+	public static SpriteLoader await(SpriteLoader loader){
+		if(null == loader){
+			throw new IllegalArgumentException("Argument \"loader\" may not be null.");
+		}
+		return loader instanceof SpriteHandle ? ((SpriteHandle) loader).waitForSheet() : loader;
+	}
+	
+	/**
+	 * @return the file this handle loads.
+	 */
+	public File getFile(){
+		return FILE;
+	}
+	
+	/**
+	 * @return true if the sheet has been loaded. False while loading, and if loading failed.
+	 */
+	public boolean isReady(){
+		return null != loaded;
+	}
+	
+	/**
+	 * @return true if loading is over, whether it worked or not.
+	 */
+	public boolean isDone(){
+		return SHEET.isDone();
+	}
+	
+	/**
+	 * Waits until the sheet is loaded.
+	 * @return the loaded sheet.
+	 * @throws IOException if the sheet could not be loaded.
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 */
+	public SpriteLoader get() throws IOException, InterruptedException {
+		try{
+			return SHEET.get();
+		}
+		catch(ExecutionException ee){
+			if(ee.getCause() instanceof IOException){
+				throw (IOException) ee.getCause();
+			}
+			throw new IOException(String.format("Could not load %s", FILE), ee.getCause());
+		}
+	}
+	
+	/**
+	 * @return a future that completes with the loaded sheet, or exceptionally if loading fails.
+	 * Use it to run code (on the loading thread) once the sheet is ready.
+	 */
+	public CompletableFuture<SpriteLoader> future(){
+		return SHEET;
+	}
+	
+	private SpriteLoader waitForSheet(){
+		try{
+			return get();
+		}
+		catch(IOException | InterruptedException e){
+			if(e instanceof InterruptedException){
+				Thread.currentThread().interrupt();
+			}
+			throw new IllegalStateException(String.format("Sheet %s is not available", FILE), e);
+		}
+	}
+	
+	private Dimension waitForHeader(){
+		try{
+			return HEADER.get();
+		}
+		catch(ExecutionException ee){
+			throw new IllegalStateException(String.format("Sheet %s is not available", FILE), ee.getCause());
+		}
+		catch(InterruptedException ie){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(String.format("Interrupted while waiting for %s", FILE), ie);
+		}
+	}
+	
+	/**
+	 * @return the placeholder used until the sheet is loaded.
+	 */
+	public BufferedImage getPlaceholder(){
+		return PLACEHOLDER;
+	}
+
+	/**
+	 * Gives you the tile if the sheet is loaded, and the placeholder if it isn't. Never waits.
+	 */
+	@Override
+	public BufferedImage getImage(int column, int row) {
+		SpriteLoader ldr = loaded;
+		return null == ldr ? PLACEHOLDER : ldr.getImage(column, row);
+	}
+
+	/**
+	 * Waits for the sheet to be loaded.
+	 * @throws IllegalStateException if the sheet could not be loaded.
+	 */
+	@Override
+	public BufferedImage getImage(int xPos, int yPos, Dimension size) {
+		return waitForSheet().getImage(xPos, yPos, size);
+	}
+
+	@Override
+	public int numColumns() {
+		return verticalPixels() / TILE_WIDTH;
+	}
+
+	@Override
+	public int numRows() {
+		return horizontalPixels() / TILE_HEIGHT;
+	}
+
+	@Override
+	public int tileWidth() {
+		return TILE_WIDTH;
+	}
+
+	@Override
+	public int tileHeight() {
+		return TILE_HEIGHT;
+	}
+
+	/**
+	 * Waits for the header of the sheet to be read.
+	 * @throws IllegalStateException if the sheet could not be read.
+	 */
+	@Override
+	public int horizontalPixels() {
+		/* Same naming as GenericSpriteLoader: horizontalPixels is the height of the sheet. */
+		return waitForHeader().height;
+	}
+
+	/**
+	 * Waits for the header of the sheet to be read.
+	 * @throws IllegalStateException if the sheet could not be read.
+	 */
+	@Override
+	public int verticalPixels() {
+		return waitForHeader().width;
+	}
+
+	/**
+	 * Waits for the sheet to be loaded.
+	 * @throws IllegalStateException if the sheet could not be loaded.
+	 */
+	@Override
+	public BufferedImage getSheet() {
+		return waitForSheet().getSheet();
+	}
+}
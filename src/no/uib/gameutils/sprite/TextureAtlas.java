@@ -0,0 +1,409 @@
+package no.uib.gameutils.sprite;
+
+import java.awt.AlphaComposite;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A TextureAtlas packs the tiles of many {@link SpriteLoader}s (and any free-size regions you want) into a few large pages.
+ * 
+ * Drawing from a few big images instead of dozens of small sheets means fewer images for Java2D to keep in video memory,
+ * and a frame that draws everything from the same page can be drawn in one go.
+ * 
+ * The original sheets are still how you find a tile: {@link #view(SpriteLoader)} gives you a {@link SpriteLoader} with the same
+ * columns and rows as the original, but with its tiles coming from the atlas.
+ * Only drawing straight from a page gets the benefit: {@link View#drawTile(Graphics, int, int, int, int)},
+ * {@link #drawRegion(Graphics, int, int, int)}, or a {@link no.uib.gameutils.render.RenderQueue RenderQueue} the view is registered with.
+ * The images {@link View#getImage(int, int)} gives you share the pixels of the page, but Java2D treats each of them as an image of its own,
+ * so code that draws those is no better off than with the original sheets. {@link View#pageOf(int, int)} and
+ * {@link View#boundsOf(int, int)} tell you where a tile is, if you want to draw from the pages yourself.
+ * Free-size regions are given an ID when you add them, see {@link AtlasBuilder#addRegion(SpriteLoader, int, int, Dimension)}.
+ * 
+ * Packing is done on shelves: the pieces are sorted by height, and laid out left to right in rows as tall as the tallest piece in them.
+ * For grids of equally sized tiles, which is what most sheets are, this wastes almost nothing.
+ */
+public class TextureAtlas {
+	private final BufferedImage[] PAGES;
+	private final Map<SpriteLoader, View> VIEWS;
+	private final Piece[] REGIONS;
+	
+	private TextureAtlas(BufferedImage[] pages, Map<SpriteLoader, View> views, Piece[] regions){
+		this.PAGES = pages;
+		this.VIEWS = views;
+		this.REGIONS = regions;
+	}
+	
+	/**
+	 * Gives you a {@link SpriteLoader} that maps the columns and rows of an original sheet to the atlas.
+	 * @param original a sheet that was added to the atlas.
+	 * @return the view of that sheet.
+	 * @throws IllegalArgumentException if the sheet was never added.
+	 */
+	public View view(SpriteLoader original){
+		View view = VIEWS.get(original);
+		if(null == view){
+			throw new IllegalArgumentException("That SpriteLoader was not added to the atlas");
+		}
+		return view;
+	}
+	
+	/**
+	 * @return the number of pages in the atlas.
+	 */
+	public int numPages(){
+		return PAGES.length;
+	}
+	
+	/**
+	 * @param page the page number, starting at 0.
+	 * @return the image of a page.
+	 */
+	public BufferedImage getPage(int page){
+		return PAGES[page];
+	}
+	
+	/**
+	 * @param region the ID you got when adding the region.
+	 * @return the image of the region. The same instance every time.
+	 */
+	public BufferedImage getRegion(int region){
+		return REGIONS[region].image;
+	}
+	
+	/**
+	 * @param region the ID you got when adding the region.
+	 * @return the page the region was put on.
+	 */
+	public int pageOf(int region){
+		return REGIONS[region].page;
+	}
+	
+	/**
+	 * @param region the ID you got when adding the region.
+	 * @return where on its page the region was put.
+	 */
+	public Rectangle boundsOf(int region){
+		Piece piece = REGIONS[region];
+		return new Rectangle(piece.x, piece.y, piece.width, piece.height);
+	}
+	
+	/**
+	 * Draws a region straight from its page.
+	 * @param gfx the {@link Graphics} to draw with.
+	 * @param region the ID you got when adding the region.
+	 * @param x the pixel position of the left edge.
+	 * @param y the pixel position of the top edge.
+	 */
+	public void drawRegion(Graphics gfx, int region, int x, int y){
+		REGIONS[region].draw(gfx, PAGES, x, y);
+	}
+	
+	public static AtlasBuilder build(){
+		return new AtlasBuilder();
+	}
+	
+	/**
+	 * One rectangle of pixels that's been copied from a source into a page.
+	 */
+	private static class Piece {
+		private final SpriteLoader source;
+		private final int sourceX, sourceY, width, height;
+		private int page, x, y;
+		private BufferedImage image;
+		
+		private Piece(SpriteLoader source, int sourceX, int sourceY, int width, int height){
+			this.source = source;
+			this.sourceX = sourceX;
+			this.sourceY = sourceY;
+			this.width = width;
+			this.height = height;
+		}
+		
+		private void draw(Graphics gfx, BufferedImage[] pages, int dx, int dy){
+			gfx.drawImage(pages[page], dx, dy, dx + width, dy + height, x, y, x + width, y + height, null);
+		}
+	}
+	
+	/**
+	 * A {@link SpriteLoader} for one of the original sheets, with its tiles coming from the atlas.
+	 * Tiles are looked up in an array, and the same image instance is returned every time.
+	 */
+	public static class View implements SpriteLoader {
+		private final SpriteLoader ORIGINAL;
+		private final Piece[] TILES;
+		private final BufferedImage[] PAGES;
+		private final int COLUMNS;
+		
+		private View(SpriteLoader original, Piece[] tiles, BufferedImage[] pages){
+			this.ORIGINAL = original;
+			this.TILES = tiles;
+			this.PAGES = pages;
+			this.COLUMNS = original.numColumns();
+		}
+		
+		/**
+		 * Draws a tile straight from the atlas page it's on.
+		 * @param gfx the {@link Graphics} to draw with.
+		 * @param column the column of the tile in the original sheet.
+		 * @param row the row of the tile in the original sheet.
+		 * @param x the pixel position of the left edge.
+		 * @param y the pixel position of the top edge.
+		 */
+		public void drawTile(Graphics gfx, int column, int row, int x, int y){
+			TILES[row * COLUMNS + column].draw(gfx, PAGES, x, y);
+		}
+		
+		/**
+		 * @param column the column of the tile in the original sheet.
+		 * @param row the row of the tile in the original sheet.
+		 * @return the atlas page the tile is on.
+		 */
+		public int pageOf(int column, int row){
+			return TILES[row * COLUMNS + column].page;
+		}
+		
+		/**
+		 * @param column the column of the tile in the original sheet.
+		 * @param row the row of the tile in the original sheet.
+		 * @return where on its page the tile is.
+		 */
+		public Rectangle boundsOf(int column, int row){
+			Piece piece = TILES[row * COLUMNS + column];
+			return new Rectangle(piece.x, piece.y, piece.width, piece.height);
+		}
+
+		/**
+		 * Gives you the tile as a subimage of its page. Drawing it doesn't batch with the rest of the page,
+		 * use {@link #drawTile(Graphics, int, int, int, int)} for that.
+		 */
+		@Override
+		public BufferedImage getImage(int column, int row) {
+			return TILES[row * COLUMNS + column].image;
+		}
+
+		/**
+		 * Free-size images are not in the atlas unless they were added as regions, so this asks the original sheet.
+		 */
+		@Override
+		public BufferedImage getImage(int xPos, int yPos, Dimension size) {
+			return ORIGINAL.getImage(xPos, yPos, size);
+		}
+
+		@Override
+		public int numColumns() {
+			return COLUMNS;
+		}
+
+		@Override
+		public int numRows() {
+			return ORIGINAL.numRows();
+		}
+
+		@Override
+		public int tileWidth() {
+			return ORIGINAL.tileWidth();
+		}
+
+		@Override
+		public int tileHeight() {
+			return ORIGINAL.tileHeight();
+		}
+
+		@Override
+		public int horizontalPixels() {
+			return ORIGINAL.horizontalPixels();
+		}
+
+		@Override
+		public int verticalPixels() {
+			return ORIGINAL.verticalPixels();
+		}
+
+		/**
+		 * The tiles are spread over the atlas, so this is the sheet of the original.
+		 */
+		@Override
+		public BufferedImage getSheet() {
+			return ORIGINAL.getSheet();
+		}
+	}
+	
+	public static class AtlasBuilder {
+		private int pageWidth, pageHeight, padding;
+		private final List<SpriteLoader> sheets = new ArrayList<>();
+		private final List<Piece> regions = new ArrayList<>();
+		
+		public AtlasBuilder(){
+			pageWidth = pageHeight = 2048;
+			padding = 1;
+		}
+		
+		/**
+		 * Sets the size of the atlas pages. Default is 2048x2048. The last page may come out shorter than this.
+		 * @param width the width in pixels, must be positive.
+		 * @param height the height in pixels, must be positive.
+		 * @return this {@link AtlasBuilder} so you can chain calls.
+		 */
+		public AtlasBuilder pageSize(int width, int height){
+			if(width < 1 || height < 1){
+				throw new IllegalArgumentException(String.format("width and height must be positive numbers! (was %dx%d)", width, height));
+			}
+			this.pageWidth = width;
+			this.pageHeight = height;
+			return this;
+		}
+		
+		/**
+		 * Sets how many empty pixels are left between pieces, so scaled drawing doesn't bleed into the neighbours. Default is 1.
+		 * @param padding the padding in pixels, may not be negative.
+		 * @return this {@link AtlasBuilder} so you can chain calls.
+		 */
+		public AtlasBuilder padding(int padding){
+			if(padding < 0){
+				throw new IllegalArgumentException(String.format("padding may not be negative! (was %d)", padding));
+			}
+			this.padding = padding;
+			return this;
+		}
+		
+		/**
+		 * Adds every tile of a sheet to the atlas. Adding the same sheet twice does nothing.
+		 * @param sheet the sheet, may not be null.
+		 * @return this {@link AtlasBuilder} so you can chain calls.
+		 */
+		public AtlasBuilder add(SpriteLoader sheet){
+			if(null == sheet){
+				throw new IllegalArgumentException("Argument \"sheet\" may not be null.");
+			}
+			for(SpriteLoader added : sheets){
+				if(added == sheet){
+					return this;
+				}
+			}
+			sheets.add(sheet);
+			return this;
+		}
+		
+		/**
+		 * Adds a free-size region of a sheet to the atlas.
+		 * @param sheet the sheet the region is in, may not be null.
+		 * @param xPos the leftmost pixel of the region.
+		 * @param yPos the topmost pixel of the region.
+		 * @param size the size of the region.
+		 * @return the ID of the region, for use with {@link TextureAtlas#getRegion(int)} and friends. IDs count up from 0.
+		 */
+		public int addRegion(SpriteLoader sheet, int xPos, int yPos, Dimension size){
+			if(null == sheet){
+				throw new IllegalArgumentException("Argument \"sheet\" may not be null.");
+			}
+			if(null == size || size.width < 1 || size.height < 1){
+				throw new IllegalArgumentException("Argument \"size\" must be a positive size.");
+			}
+			regions.add(new Piece(sheet, xPos, yPos, size.width, size.height));
+			return regions.size() - 1;
+		}
+		
+		/**
+		 * Packs everything that's been added into pages.
+		 * Sheets that are {@link SpriteHandle}s still being loaded are waited for, since their pixels are copied.
+		 * @return a new {@link TextureAtlas}
+		 * @throws IllegalStateException if a piece is bigger than a page, or a sheet could not be loaded.
+		 */
+		public TextureAtlas create(){
+			Map<SpriteLoader, Piece[]> tilesOf = new IdentityHashMap<>();
+			List<Piece> all = new ArrayList<>(regions);
+			for(SpriteLoader sheet : sheets){
+				int columns = sheet.numColumns(), rows = sheet.numRows();
+				Piece[] tiles = new Piece[columns * rows];
+				for(int row = 0; row < rows; row++){
+					for(int col = 0; col < columns; col++){
+						Piece piece = new Piece(sheet, col, row, sheet.tileWidth(), sheet.tileHeight());
+						tiles[row * columns + col] = piece;
+						all.add(piece);
+					}
+				}
+				tilesOf.put(sheet, tiles);
+			}
+			
+			List<Piece> sorted = new ArrayList<>(all);
+			Collections.sort(sorted, new Comparator<Piece>(){
+				@Override
+				public int compare(Piece a, Piece b) {
+					if(a.height != b.height){
+						return b.height - a.height;
+					}
+					return b.width - a.width;
+				}
+			});
+			
+			List<Integer> pageHeights = new ArrayList<>();
+			int page = 0, x = 0, y = 0, shelfHeight = 0;
+			for(Piece piece : sorted){
+				if(piece.width > pageWidth || piece.height > pageHeight){
+					throw new IllegalStateException(String.format("A %dx%d piece doesn't fit on a %dx%d page", piece.width, piece.height, pageWidth, pageHeight));
+				}
+				if(x + piece.width > pageWidth){
+					x = 0;
+					y += shelfHeight + padding;
+					shelfHeight = 0;
+				}
+				if(y + piece.height > pageHeight){
+					pageHeights.add(y - padding);
+					page++;
+					x = y = shelfHeight = 0;
+				}
+				piece.page = page;
+				piece.x = x;
+				piece.y = y;
+				x += piece.width + padding;
+				shelfHeight = Math.max(shelfHeight, piece.height);
+			}
+			pageHeights.add(y + shelfHeight);
+			
+			GraphicsConfiguration gc = CachedSpriteLoader.screenConfiguration();
+			BufferedImage[] pages = new BufferedImage[sorted.isEmpty() ? 0 : pageHeights.size()];
+			Graphics2D[] graphics = new Graphics2D[pages.length];
+			for(int i = 0; i < pages.length; i++){
+				int height = Math.max(1, pageHeights.get(i));
+				pages[i] = null == gc ? new BufferedImage(pageWidth, height, BufferedImage.TYPE_INT_ARGB)
+						: gc.createCompatibleImage(pageWidth, height, Transparency.TRANSLUCENT);
+				graphics[i] = pages[i].createGraphics();
+				graphics[i].setComposite(AlphaComposite.Src);
+			}
+			
+			for(Map.Entry<SpriteLoader, Piece[]> entry : tilesOf.entrySet()){
+				for(Piece piece : entry.getValue()){
+					copy(piece, SpriteHandle.await(piece.source).getImage(piece.sourceX, piece.sourceY), graphics, pages);
+				}
+			}
+			for(Piece piece : regions){
+				copy(piece, piece.source.getImage(piece.sourceX, piece.sourceY, new Dimension(piece.width, piece.height)), graphics, pages);
+			}
+			for(Graphics2D g : graphics){
+				g.dispose();
+			}
+			
+			Map<SpriteLoader, View> views = new IdentityHashMap<>();
+			for(Map.Entry<SpriteLoader, Piece[]> entry : tilesOf.entrySet()){
+				views.put(entry.getKey(), new View(entry.getKey(), entry.getValue(), pages));
+			}
+			return new TextureAtlas(pages, views, regions.toArray(new Piece[regions.size()]));
+		}
+		
+		private static void copy(Piece piece, BufferedImage from, Graphics2D[] graphics, BufferedImage[] pages){
+			graphics[piece.page].drawImage(from, piece.x, piece.y, null);
+			piece.image = pages[piece.page].getSubimage(piece.x, piece.y, piece.width, piece.height);
+		}
+	}
+}
@@ -0,0 +1,364 @@
+package no.uib.gameutils.sprite;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A TransformCache keeps scaled, rotated, flipped and tinted copies of tiles, so they're drawn with a plain blit instead of
+ * a transform on every paint.
+ * 
+ * A copy is made the first time a tile is asked for with some transform, in an image the screen can draw quickly,
+ * and handed out from then on. Rotations are rounded to one of a fixed number of angles (see {@link #DEFAULT_ROTATION_STEPS}),
+ * so a sprite turning smoothly doesn't fill the cache with copies that look the same.
+ * 
+ * The transformed tile is drawn into an image just large enough to hold the scaled tile turned around its centre,
+ * so a quarter turn swaps its width and height, and other angles make it larger than the tile.
+ * A tint paints a colour over the opaque parts of the tile, as strong as the alpha of the colour; 0 means no tint.
+ * 
+ * The copies are kept within a budget of bytes, and the least recently used ones are thrown out when it's exceeded.
+ * 
+ * To use transformed tiles without touching the code that draws them, get a {@link View} with {@link #view(SpriteLoader, double, double, int, int)}
+ * and hand it to a {@link no.uib.gameutils.entity.StaticImage StaticImage} or anything else that takes a {@link SpriteLoader}.
+ * The cache is thread-safe. A missing tile is made without holding the lock, so painting threads aren't held up by each other's misses;
+ * if two threads make the same tile at once, the first one to finish is kept.
+ */
+public class TransformCache {
+	public static final int FLIP_H = 1;
+	public static final int FLIP_V = 2;
+	public static final int DEFAULT_ROTATION_STEPS = 64;
+	
+	private final long MAX_BYTES;
+	private final int ROTATION_STEPS;
+	private final GraphicsConfiguration GC;
+	private final LinkedHashMap<Key, BufferedImage> IMAGES = new LinkedHashMap<>(64, 0.75f, true);
+	// Looking up a tile reuses this key, so a hit allocates nothing. Only touched while holding the lock.
+	private final Key PROBE = new Key();
+	private long bytes, hits, misses, evictions;
+	
+	/**
+	 * Creates a cache that rounds rotations to {@link #DEFAULT_ROTATION_STEPS} angles.
+	 * @param maxBytes how much memory the cached images may use, in bytes. Must be positive.
+	 */
+	public TransformCache(long maxBytes){
+		this(maxBytes, DEFAULT_ROTATION_STEPS);
+	}
+	
+	/**
+	 * @param maxBytes how much memory the cached images may use, in bytes. Must be positive.
+	 * @param rotationSteps how many angles a full turn is rounded to. Must be positive, and should be a multiple of 4 so quarter turns are exact.
+	 */
+	public TransformCache(long maxBytes, int rotationSteps){
+		if(maxBytes < 1){
+			throw new IllegalArgumentException(String.format("maxBytes must be a positive number! (was %d)", maxBytes));
+		}
+		if(rotationSteps < 1){
+			throw new IllegalArgumentException(String.format("rotationSteps must be a positive number! (was %d)", rotationSteps));
+		}
+		this.MAX_BYTES = maxBytes;
+		this.ROTATION_STEPS = rotationSteps;
+		this.GC = CachedSpriteLoader.screenConfiguration();
+	}
+	
+	/**
+	 * Gets a transformed tile, making it if it's not in the cache.
+	 * @param source the sheet, may not be null.
+	 * @param column the column of the tile.
+	 * @param row the row of the tile.
+	 * @param scale how much larger to make the tile. Must be positive.
+	 * @param degrees how far to turn the tile clockwise, in degrees. Rounded to the nearest of the rotation steps.
+	 * @param flip {@link #FLIP_H}, {@link #FLIP_V}, both or 0. The tile is flipped before it's turned.
+	 * @param tint an ARGB colour to paint over the tile, or 0 for none.
+	 * @return the transformed tile, the size of the scaled and turned tile. Don't change it, it's shared.
+	 * If source is a {@link SpriteHandle} that is still loading, it's made from the placeholder, and not kept.
+	 */
+	public BufferedImage getImage(SpriteLoader source, int column, int row, double scale, double degrees, int flip, int tint){
+		if(null == source){
+			throw new IllegalArgumentException("Argument \"source\" may not be null.");
+		}
+		if(!(scale > 0)){
+			throw new IllegalArgumentException(String.format("scale must be a positive number! (was %f)", scale));
+		}
+		int step = stepOf(degrees);
+		int scaleBits = Float.floatToIntBits((float) scale);
+		flip &= FLIP_H | FLIP_V;
+		synchronized(this){
+			PROBE.set(source, column, row, scaleBits, step, flip, tint);
+			BufferedImage image = IMAGES.get(PROBE);
+			if(null != image){
+				hits++;
+				return image;
+			}
+			misses++;
+		}
+		boolean placeholder = SpriteHandle.isLoading(source);
+		BufferedImage image = render(source.getImage(column, row), scale, step, flip, tint);
+		if(placeholder){
+			return image;
+		}
+		Key key = new Key();
+		key.set(source, column, row, scaleBits, step, flip, tint);
+		synchronized(this){
+			BufferedImage made = IMAGES.get(key);
+			if(null != made){
+				return made;
+			}
+			IMAGES.put(key, image);
+			bytes += bytesOf(image);
+			evict();
+		}
+		return image;
+	}
+	
+	/**
+	 * Draws a transformed tile centred where the untransformed tile would be.
+	 * @param gfx the {@link Graphics} to draw with.
+	 * @param x the pixel position of the left edge of the untransformed tile.
+	 * @param y the pixel position of the top edge of the untransformed tile.
+	 * @see #getImage(SpriteLoader, int, int, double, double, int, int)
+	 */
+	public void drawTile(Graphics gfx, SpriteLoader source, int column, int row, int x, int y, double scale, double degrees, int flip, int tint){
+		BufferedImage image = getImage(source, column, row, scale, degrees, flip, tint);
+		gfx.drawImage(image, x + (source.tileWidth() - image.getWidth()) / 2, y + (source.tileHeight() - image.getHeight()) / 2, null);
+	}
+	
+	/**
+	 * Gives you a {@link SpriteLoader} whose tiles are the tiles of another one, all transformed the same way, and kept in this cache.
+	 * Its tiles are spaced as the tiles of the source are, so a {@link no.uib.gameutils.entity.StaticImage StaticImage} stays in its cell;
+	 * the images are the size of the transformed tiles, and are painted centred on the cell, like {@link #drawTile drawTile} does.
+	 * @param source the sheet, may not be null.
+	 * @param scale how much larger to make the tiles. Must be positive.
+	 * @param degrees how far to turn the tiles clockwise, in degrees.
+	 * @param flip {@link #FLIP_H}, {@link #FLIP_V}, both or 0.
+	 * @param tint an ARGB colour to paint over the tiles, or 0 for none.
+	 * @return a new view.
+	 */
+	public View view(SpriteLoader source, double scale, double degrees, int flip, int tint){
+		if(null == source){
+			throw new IllegalArgumentException("Argument \"source\" may not be null.");
+		}
+		if(!(scale > 0)){
+			throw new IllegalArgumentException(String.format("scale must be a positive number! (was %f)", scale));
+		}
+		return new View(source, scale, degrees, flip, tint);
+	}
+	
+	private int stepOf(double degrees){
+		return Math.floorMod((int) Math.round(degrees / 360.0 * ROTATION_STEPS), ROTATION_STEPS);
+	}
+	
+	private static long bytesOf(BufferedImage image){
+		return 4L * image.getWidth() * image.getHeight();
+	}
+	
+	private void evict(){
+		Iterator<Map.Entry<Key, BufferedImage>> eldest = IMAGES.entrySet().iterator();
+		// The newest image stays, even on its own over budget, or it would be made again on every call.
+		while(bytes > MAX_BYTES && IMAGES.size() > 1){
+			bytes -= bytesOf(eldest.next().getValue());
+			eldest.remove();
+			evictions++;
+		}
+	}
+	
+	private BufferedImage render(BufferedImage tile, double scale, int step, int flip, int tint){
+		double angle = 2 * Math.PI * step / ROTATION_STEPS;
+		double cos = Math.abs(Math.cos(angle)), sin = Math.abs(Math.sin(angle));
+		double scaledWidth = tile.getWidth() * scale, scaledHeight = tile.getHeight() * scale;
+		// The bounds of the turned tile. The slack keeps rounding errors in sin and cos from adding a pixel to quarter turns.
+		int width = Math.max(1, (int) Math.ceil(scaledWidth * cos + scaledHeight * sin - 1e-6));
+		int height = Math.max(1, (int) Math.ceil(scaledWidth * sin + scaledHeight * cos - 1e-6));
+		BufferedImage image;
+		if(null == GC){
+			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		}
+		else {
+			image = GC.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+		}
+		Graphics2D g = image.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		AffineTransform transform = new AffineTransform();
+		transform.translate(width / 2.0, height / 2.0);
+		transform.rotate(angle);
+		transform.scale((flip & FLIP_H) != 0 ? -scale : scale, (flip & FLIP_V) != 0 ? -scale : scale);
+		transform.translate(-tile.getWidth() / 2.0, -tile.getHeight() / 2.0);
+		g.drawImage(tile, transform, null);
+		if(0 != tint){
+			g.setTransform(new AffineTransform());
+			g.setComposite(AlphaComposite.SrcAtop);
+			g.setColor(new Color(tint, true));
+			g.fillRect(0, 0, width, height);
+		}
+		g.dispose();
+		return image;
+	}
+	
+	/**
+	 * Empties the cache. The counters are kept.
+	 */
+	public synchronized void clear(){
+		IMAGES.clear();
+		bytes = 0;
+	}
+	
+	/**
+	 * @return the number of transformed tiles in the cache.
+	 */
+	public synchronized int size(){
+		return IMAGES.size();
+	}
+	
+	/**
+	 * @return the memory used by the cached images, in bytes, counting four bytes a pixel.
+	 */
+	public synchronized long bytes(){
+		return bytes;
+	}
+	
+	public long maxBytes(){
+		return MAX_BYTES;
+	}
+	
+	/**
+	 * @return how many times a tile was found in the cache.
+	 */
+	public synchronized long hits(){
+		return hits;
+	}
+	
+	/**
+	 * @return how many times a tile had to be made.
+	 */
+	public synchronized long misses(){
+		return misses;
+	}
+	
+	/**
+	 * @return how many tiles have been thrown out to stay within the budget.
+	 */
+	public synchronized long evictions(){
+		return evictions;
+	}
+	
+	private static final class Key {
+		private SpriteLoader source;
+		private int column, row, scaleBits, step, flip, tint;
+		
+		private void set(SpriteLoader source, int column, int row, int scaleBits, int step, int flip, int tint){
+			this.source = source;
+			this.column = column;
+			this.row = row;
+			this.scaleBits = scaleBits;
+			this.step = step;
+			this.flip = flip;
+			this.tint = tint;
+		}
+		
+		@Override
+		public boolean equals(Object other){
+			if(!(other instanceof Key)){
+				return false;
+			}
+			Key that = (Key) other;
+			return source == that.source && column == that.column && row == that.row && scaleBits == that.scaleBits
+					&& step == that.step && flip == that.flip && tint == that.tint;
+		}
+		
+		@Override
+		public int hashCode(){
+			int h = System.identityHashCode(source);
+			h = h * 31 + column;
+			h = h * 31 + row;
+			h = h * 31 + scaleBits;
+			h = h * 31 + step;
+			h = h * 31 + flip;
+			h = h * 31 + tint;
+			return h ^ (h >>> 16);
+		}
+	}
+	
+	/**
+	 * A {@link SpriteLoader} with the tiles of another one, all transformed the same way. Made by {@link TransformCache#view(SpriteLoader, double, double, int, int)}.
+	 */
+	public class View implements SpriteLoader {
+		private final SpriteLoader ORIGINAL;
+		private final double SCALE, DEGREES;
+		private final int FLIP, TINT;
+		
+		private View(SpriteLoader original, double scale, double degrees, int flip, int tint){
+			this.ORIGINAL = original;
+			this.SCALE = scale;
+			this.DEGREES = degrees;
+			this.FLIP = flip;
+			this.TINT = tint;
+		}
+		
+		@Override
+		public BufferedImage getImage(int column, int row) {
+			return TransformCache.this.getImage(ORIGINAL, column, row, SCALE, DEGREES, FLIP, TINT);
+		}
+		
+		/**
+		 * Free-size images aren't cached, so this transforms them every time.
+		 */
+		@Override
+		public BufferedImage getImage(int xPos, int yPos, Dimension size) {
+			return render(ORIGINAL.getImage(xPos, yPos, size), SCALE, stepOf(DEGREES), FLIP, TINT);
+		}
+		
+		@Override
+		public int numColumns() {
+			return ORIGINAL.numColumns();
+		}
+		
+		@Override
+		public int numRows() {
+			return ORIGINAL.numRows();
+		}
+		
+		/**
+		 * @return the width of a tile of the original loader. The transformed images may be larger or smaller.
+		 */
+		@Override
+		public int tileWidth() {
+			return ORIGINAL.tileWidth();
+		}
+		
+		/**
+		 * @return the height of a tile of the original loader. The transformed images may be larger or smaller.
+		 */
+		@Override
+		public int tileHeight() {
+			return ORIGINAL.tileHeight();
+		}
+		
+		@Override
+		public int horizontalPixels() {
+			return ORIGINAL.horizontalPixels();
+		}
+		
+		@Override
+		public int verticalPixels() {
+			return ORIGINAL.verticalPixels();
+		}
+		
+		/**
+		 * @return the sheet of the original loader, untransformed.
+		 */
+		@Override
+		public BufferedImage getSheet() {
+			return ORIGINAL.getSheet();
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package no.uib.gameutils.stats;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * FrameStats collects timings from the render loop: how long frames take, how long painting the scene
+ * and showing the buffer takes, how long ticks take and how long the loop waits.
+ * 
+ * Each of those goes into its own {@link LatencyHistogram}, so the memory used is fixed and recording is lock-free.
+ * A frame is late if it came more than the budget (plus half a budget of slack) after the frame before it.
+ * Frames the loop skipped to catch up are counted as dropped.
+ * 
+ * Recording the frame and tick times costs a couple of atomic adds, which is cheap enough to leave on in production.
+ * The detailed timings (scene paint, show and wait) cost a few more clock reads per frame, and can be turned off
+ * with {@link #setDetailed(boolean)}.
+ * 
+ * Hand the same FrameStats to the {@link no.uib.gameutils.window.GameCanvas GameCanvas} and the
+ * {@link no.uib.gameutils.threads.GameLoop GameLoop} to get all of the numbers.
+ */
+public class FrameStats implements FrameStatsMXBean {
+	
+	/**
+	 * The things FrameStats keeps timings for.
+	 */
+	public enum Metric {
+		/** The time from the start of one frame to the start of the next. */
+		FRAME,
+		/** The time spent painting the scene into the back buffer. */
+		SCENE_PAINT,
+		/** The time spent in {@link java.awt.image.BufferStrategy#show()}. */
+		SHOW,
+		/** The time spent ticking. */
+		TICK,
+		/** The time the loop spent waiting for the next deadline. */
+		WAIT;
+		
+		private boolean isDetail(){
+			return this == SCENE_PAINT || this == SHOW || this == WAIT;
+		}
+	}
+	
+	private final LatencyHistogram[] HISTOGRAMS;
+	private final long BUDGET_NANOS;
+	private final long LATE_NANOS;
+	private final AtomicLong LATE = new AtomicLong();
+	private final AtomicLong DROPPED = new AtomicLong();
+	private final CopyOnWriteArrayList<FrameStatsListener> LISTENERS = new CopyOnWriteArrayList<>();
+	private volatile boolean detailed = true;
+	private long lastFrameStart = -1;
+	
+	/**
+	 * @param targetFramesPerSecond the frame rate you're aiming for. Used to decide which frames are late. Must be positive.
+	 */
+	public FrameStats(int targetFramesPerSecond){
+		if(targetFramesPerSecond < 1){
+			throw new IllegalArgumentException(String.format("targetFramesPerSecond must be positive! (was %d)", targetFramesPerSecond));
+		}
+		this.BUDGET_NANOS = 1_000_000_000L / targetFramesPerSecond;
+		this.LATE_NANOS = BUDGET_NANOS + BUDGET_NANOS / 2;
+		this.HISTOGRAMS = new LatencyHistogram[Metric.values().length];
+		for(int i = 0; i < HISTOGRAMS.length; i++){
+			HISTOGRAMS[i] = new LatencyHistogram();
+		}
+	}
+	
+	/**
+	 * Records a timing.
+	 * @param metric what was timed.
+	 * @param nanos how long it took.
+	 */
+	public void record(Metric metric, long nanos){
+		if(!detailed && metric.isDetail()){
+			return;
+		}
+		HISTOGRAMS[metric.ordinal()].record(nanos);
+	}
+	
+	/**
+	 * Marks the start of a frame. The time since the last call is recorded as a {@link Metric#FRAME},
+	 * and the listeners are told. Call this from the thread that paints, once per frame.
+	 * @param now the current {@link System#nanoTime()}.
+	 */
+	public void frameStarted(long now){
+		long last = lastFrameStart;
+		lastFrameStart = now;
+		if(last < 0){
+			return;
+		}
+		long frameNanos = now - last;
+		HISTOGRAMS[Metric.FRAME.ordinal()].record(frameNanos);
+		boolean late = frameNanos > LATE_NANOS;
+		if(late){
+			LATE.incrementAndGet();
+		}
+		for(FrameStatsListener listener : LISTENERS){
+			listener.frameCompleted(this, frameNanos, late);
+		}
+	}
+	
+	/**
+	 * Counts frames that were skipped.
+	 * @param frames how many frames were skipped.
+	 */
+	public void framesDropped(long frames){
+		DROPPED.addAndGet(frames);
+	}
+	
+	/**
+	 * @param metric the metric you want.
+	 * @return the histogram of timings for that metric.
+	 */
+	public LatencyHistogram histogram(Metric metric){
+		return HISTOGRAMS[metric.ordinal()];
+	}
+	
+	/**
+	 * @return the time a frame can take at the target frame rate, in nanoseconds.
+	 */
+	public long budgetNanos(){
+		return BUDGET_NANOS;
+	}
+	
+	public void addListener(FrameStatsListener listener){
+		if(null == listener){
+			throw new IllegalArgumentException("Argument \"listener\" may not be null.");
+		}
+		LISTENERS.add(listener);
+	}
+	
+	public void removeListener(FrameStatsListener listener){
+		LISTENERS.remove(listener);
+	}
+	
+	/**
+	 * Registers these stats with the platform MBean server, so they can be read over JMX.
+	 * @param name a name to tell these stats apart from others, for instance the title of the window.
+	 * @return the name the stats were registered under.
+	 * @throws JMException if the stats could not be registered, for instance because the name is taken.
+	 */
+	public ObjectName registerMBean(String name) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = new ObjectName("no.uib.gameutils:type=FrameStats,name=" + ObjectName.quote(name));
+		server.registerMBean(this, objectName);
+		return objectName;
+	}
+	
+	private static double millis(long nanos){
+		return nanos / 1e6;
+	}
+
+	@Override
+	public long getFrameCount() {
+		return histogram(Metric.FRAME).count();
+	}
+
+	@Override
+	public long getLateFrames() {
+		return LATE.get();
+	}
+
+	@Override
+	public long getDroppedFrames() {
+		return DROPPED.get();
+	}
+
+	@Override
+	public double getFrameMeanMillis() {
+		return histogram(Metric.FRAME).mean() / 1e6;
+	}
+
+	@Override
+	public double getFrameP50Millis() {
+		return millis(histogram(Metric.FRAME).percentile(50));
+	}
+
+	@Override
+	public double getFrameP99Millis() {
+		return millis(histogram(Metric.FRAME).percentile(99));
+	}
+
+	@Override
+	public double getFrameMaxMillis() {
+		return millis(histogram(Metric.FRAME).max());
+	}
+
+	@Override
+	public double getScenePaintP99Millis() {
+		return millis(histogram(Metric.SCENE_PAINT).percentile(99));
+	}
+
+	@Override
+	public double getShowP99Millis() {
+		return millis(histogram(Metric.SHOW).percentile(99));
+	}
+
+	@Override
+	public double getTickP99Millis() {
+		return millis(histogram(Metric.TICK).percentile(99));
+	}
+
+	@Override
+	public double getWaitP99Millis() {
+		return millis(histogram(Metric.WAIT).percentile(99));
+	}
+
+	@Override
+	public boolean isDetailed() {
+		return detailed;
+	}
+
+	/**
+	 * Turns the detailed timings (scene paint, show and wait) on or off. They are on by default.
+	 */
+	@Override
+	public void setDetailed(boolean detailed) {
+		this.detailed = detailed;
+	}
+
+	/**
+	 * Forgets everything recorded so far.
+	 */
+	@Override
+	public void reset() {
+		for(LatencyHistogram histogram : HISTOGRAMS){
+			histogram.reset();
+		}
+		LATE.set(0);
+		DROPPED.set(0);
+	}
+}
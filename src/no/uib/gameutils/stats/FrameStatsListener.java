@@ -0,0 +1,16 @@
+package no.uib.gameutils.stats;
+
+/**
+ * A FrameStatsListener is told every time a {@link FrameStats} has recorded a whole frame.
+ * It is called on the thread that paints, so keep it short.
+ */
+public interface FrameStatsListener {
+	
+	/**
+	 * Called after a frame has been recorded.
+	 * @param stats the stats the frame was recorded in.
+	 * @param frameNanos the time since the frame before it started, in nanoseconds.
+	 * @param late true if the frame took longer than the budget allows.
+	 */
+	public void frameCompleted(FrameStats stats, long frameNanos, boolean late);
+}
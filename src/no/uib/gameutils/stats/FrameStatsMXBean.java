@@ -0,0 +1,22 @@
+package no.uib.gameutils.stats;
+
+/**
+ * The management interface of {@link FrameStats}, so the numbers can be read with JConsole, VisualVM or any other JMX client.
+ * Times are given in milliseconds.
+ */
+public interface FrameStatsMXBean {
+	public long getFrameCount();
+	public long getLateFrames();
+	public long getDroppedFrames();
+	public double getFrameMeanMillis();
+	public double getFrameP50Millis();
+	public double getFrameP99Millis();
+	public double getFrameMaxMillis();
+	public double getScenePaintP99Millis();
+	public double getShowP99Millis();
+	public double getTickP99Millis();
+	public double getWaitP99Millis();
+	public boolean isDetailed();
+	public void setDetailed(boolean detailed);
+	public void reset();
+}
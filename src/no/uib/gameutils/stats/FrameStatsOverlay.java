@@ -0,0 +1,75 @@
+package no.uib.gameutils.stats;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+
+import no.uib.gameutils.entity.type.Paintable;
+import no.uib.gameutils.stats.FrameStats.Metric;
+
+/**
+ * Paints the numbers from a {@link FrameStats} in the corner of the screen.
+ * The text is only rebuilt a few times per second, so it doesn't add much garbage of its own.
+ * Use it with {@link no.uib.gameutils.window.GameCanvas#setOverlay(Paintable) GameCanvas.setOverlay(Paintable)}.
+ * With dirty rectangle rendering, pass an area that fits the text to
+ * {@link no.uib.gameutils.window.GameCanvas#setOverlay(Paintable, java.awt.Rectangle) GameCanvas.setOverlay(Paintable, Rectangle)}
+ * so only that is painted every frame.
+ */
+public class FrameStatsOverlay implements Paintable {
+	private static final long REFRESH_NANOS = 250_000_000L;
+	private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+	private static final Color BACKGROUND = new Color(0, 0, 0, 160);
+	
+	private final FrameStats STATS;
+	private final int X, Y;
+	private String[] lines = new String[0];
+	private long lastRefresh = Long.MIN_VALUE;
+	
+	/**
+	 * @param stats the stats to show, may not be null.
+	 * @param x the pixel position of the left edge of the overlay.
+	 * @param y the pixel position of the top edge of the overlay.
+	 */
+	public FrameStatsOverlay(FrameStats stats, int x, int y){
+		if(null == stats){
+			throw new IllegalArgumentException("Argument \"stats\" may not be null.");
+		}
+		this.STATS = stats;
+		this.X = x;
+		this.Y = y;
+	}
+	
+	private void refresh(){
+		lines = new String[]{
+				String.format("frame  %s", STATS.histogram(Metric.FRAME)),
+				String.format("paint  %s", STATS.histogram(Metric.SCENE_PAINT)),
+				String.format("show   %s", STATS.histogram(Metric.SHOW)),
+				String.format("tick   %s", STATS.histogram(Metric.TICK)),
+				String.format("wait   %s", STATS.histogram(Metric.WAIT)),
+				String.format("late %d, dropped %d", STATS.getLateFrames(), STATS.getDroppedFrames())
+		};
+	}
+
+	@Override
+	public void paint(Graphics gfx) {
+		long now = System.nanoTime();
+		if(now - lastRefresh > REFRESH_NANOS || lastRefresh == Long.MIN_VALUE){
+			refresh();
+			lastRefresh = now;
+		}
+		gfx.setFont(FONT);
+		FontMetrics fm = gfx.getFontMetrics();
+		int width = 0;
+		for(String line : lines){
+			width = Math.max(width, fm.stringWidth(line));
+		}
+		int lineHeight = fm.getHeight();
+		gfx.setColor(BACKGROUND);
+		gfx.fillRect(X, Y, width + 8, lineHeight * lines.length + 8);
+		gfx.setColor(Color.WHITE);
+		for(int i = 0; i < lines.length; i++){
+			gfx.drawString(lines[i], X + 4, Y + 4 + fm.getAscent() + i * lineHeight);
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package no.uib.gameutils.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds that uses a fixed amount of memory and no locks.
+ * 
+ * Values are sorted into buckets that grow with the value: every power of two is split into 16 buckets,
+ * so any value read back (for instance a percentile) is within about 6% of the real one.
+ * Values up to about 18 minutes are kept apart, anything above that ends up in the last bucket.
+ * 
+ * Any number of threads may record and read at the same time. Reads taken while values are being recorded
+ * may be slightly behind, but are never corrupt.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int MAX_EXPONENT = 40;
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+	
+	private final AtomicLongArray COUNTS = new AtomicLongArray(BUCKETS);
+	private final AtomicLong TOTAL = new AtomicLong();
+	private final AtomicLong SUM = new AtomicLong();
+	private final AtomicLong MAX = new AtomicLong();
+	
+	static int bucketOf(long value){
+		if(value < SUB_BUCKETS){
+			return value < 0 ? 0 : (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if(exponent > MAX_EXPONENT){
+			return BUCKETS - 1;
+		}
+		int shift = exponent - SUB_BITS;
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+	
+	/**
+	 * @return the highest value that ends up in a bucket.
+	 */
+	static long highestValueOf(int bucket){
+		if(bucket < SUB_BUCKETS){
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		int shift = exponent - SUB_BITS;
+		long lowest = ((long) (SUB_BUCKETS + bucket % SUB_BUCKETS)) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+	
+	/**
+	 * Records one value.
+	 * @param nanos the duration, in nanoseconds. Negative values are counted as 0.
+	 */
+	public void record(long nanos){
+		if(nanos < 0){
+			nanos = 0;
+		}
+		COUNTS.incrementAndGet(bucketOf(nanos));
+		TOTAL.incrementAndGet();
+		SUM.addAndGet(nanos);
+		long max = MAX.get();
+		while(nanos > max && !MAX.compareAndSet(max, nanos)){
+			max = MAX.get();
+		}
+	}
+	
+	/**
+	 * @return the number of values recorded.
+	 */
+	public long count(){
+		return TOTAL.get();
+	}
+	
+	/**
+	 * @return the largest value recorded, exactly, in nanoseconds.
+	 */
+	public long max(){
+		return MAX.get();
+	}
+	
+	/**
+	 * @return the average of the values recorded, exactly, in nanoseconds. 0 if nothing has been recorded.
+	 */
+	public double mean(){
+		long count = TOTAL.get();
+		return count == 0 ? 0.0 : (double) SUM.get() / count;
+	}
+	
+	/**
+	 * Gives you the value that the given percentage of the recorded values are at or below.
+	 * @param percentile from 0 to 100. 50 is the median, 99 is the value only 1% of the values are above.
+	 * @return the value in nanoseconds, within about 6%. 0 if nothing has been recorded.
+	 */
+	public long percentile(double percentile){
+		if(percentile < 0 || percentile > 100){
+			throw new IllegalArgumentException(String.format("percentile must be between 0 and 100 (was %f)", percentile));
+		}
+		long count = TOTAL.get();
+		if(count == 0){
+			return 0;
+		}
+		long wanted = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++){
+			seen += COUNTS.get(i);
+			if(seen >= wanted){
+				return Math.min(highestValueOf(i), MAX.get());
+			}
+		}
+		return MAX.get();
+	}
+	
+	/**
+	 * Forgets every value recorded. Values recorded while this runs may or may not be forgotten.
+	 */
+	public void reset(){
+		for(int i = 0; i < BUCKETS; i++){
+			COUNTS.set(i, 0);
+		}
+		TOTAL.set(0);
+		SUM.set(0);
+		MAX.set(0);
+	}
+	
+	@Override
+	public String toString(){
+		return String.format("count %d, mean %.3f ms, p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+				count(), mean() / 1e6, percentile(50) / 1e6, percentile(99) / 1e6, max() / 1e6);
+	}
+}
@@ -0,0 +1,350 @@
+package no.uib.gameutils.threads;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import no.uib.gameutils.entity.type.InterpolatedPaintable;
+import no.uib.gameutils.entity.type.Tickable;
+import no.uib.gameutils.entity.type.TopLevelPaintable;
+import no.uib.gameutils.stats.FrameStats;
+import no.uib.gameutils.stats.FrameStats.Metric;
+
+/**
+ * A fixed-timestep game loop that ticks the simulation and paints the canvas at two separate rates.
+ * 
+ * Unlike {@link PainterThread} this does not start itself when it is constructed, and it does not busy-wait.
+ * The loop sleeps until it is close to the next deadline, and only spins (yielding) for the last short stretch,
+ * so the deadlines are hit without eating an entire core.
+ * 
+ * If the simulation falls behind, at most {@code maxCatchUpTicks} ticks are run back to back before painting.
+ * Any time beyond that is dropped and counted by {@link #skippedTicks()}, so a slow machine slows the game down instead of
+ * spiralling into never painting again.
+ * If painting falls behind, the frames that were missed are skipped and counted by {@link #skippedFrames()}.
+ * 
+ * If the canvas is an {@link InterpolatedPaintable} it is given the interpolation alpha when painting.
+ * The current alpha is also available from {@link #interpolationAlpha()}.
+ * 
+ * If the loop is given a {@link FrameStats}, it records frame times, tick times, time spent waiting and skipped frames into it.
+ */
+public class GameLoop {
+	/** How long before a deadline we stop sleeping and start spinning. Sleeps on most OSes overshoot by about a millisecond. */
+	public static final long DEFAULT_SPIN_NANOS = 1_500_000L;
+	
+	private final Tickable SIMULATION;
+	private final TopLevelPaintable CANVAS;
+	private final long TICK_NANOS;
+	private final long FRAME_NANOS;
+	private final int MAX_CATCH_UP_TICKS;
+	private final long SPIN_NANOS;
+	private final FrameStats STATS;
+	
+	private final AtomicBoolean RUNNING = new AtomicBoolean();
+	private volatile Thread thread;
+	private volatile double alpha;
+	private volatile long ticks, frames, skippedTicks, skippedFrames;
+	
+	private GameLoop(Tickable simulation, TopLevelPaintable canvas, int ticksPerSecond, int framesPerSecond, int maxCatchUpTicks, long spinNanos, FrameStats stats){
+		this.SIMULATION = simulation;
+		this.CANVAS = canvas;
+		this.TICK_NANOS = 1_000_000_000L / ticksPerSecond;
+		this.FRAME_NANOS = 1_000_000_000L / framesPerSecond;
+		this.MAX_CATCH_UP_TICKS = maxCatchUpTicks;
+		this.SPIN_NANOS = spinNanos;
+		this.STATS = stats;
+	}
+	
+	/**
+	 * Starts the loop on a new thread.
+	 * @throws IllegalStateException if the loop is already running.
+	 */
+	public synchronized void start(){
+		if(!RUNNING.compareAndSet(false, true)){
+			throw new IllegalStateException("GameLoop is already running");
+		}
+		Thread t = new Thread(new Runnable(){
+			@Override
+			public void run() {
+				loop();
+			}
+		}, "GameLoop");
+		thread = t;
+		t.start();
+	}
+	
+	/**
+	 * Stops the loop and waits for the thread to finish the tick or frame it's in the middle of.
+	 * Calling this on a loop that isn't running does nothing.
+	 * The loop can be started again afterwards.
+	 * @throws InterruptedException if the calling thread is interrupted while waiting.
+	 */
+	public synchronized void stop() throws InterruptedException {
+		if(!RUNNING.compareAndSet(true, false)){
+			return;
+		}
+		Thread old = thread;
+		thread = null;
+		if(old != Thread.currentThread()){
+			LockSupport.unpark(old);
+			old.join();
+		}
+	}
+	
+	/**
+	 * @return true if the loop has been started and not yet stopped.
+	 */
+	public boolean isRunning(){
+		return RUNNING.get();
+	}
+
+	/**
+	 * The loop itself. This is run by the thread created in {@link #start()}, and runs until {@link #stop()} is called
+	 * or that thread is interrupted. A thread left over from an earlier start stops as soon as it sees it has been replaced.
+	 */
+	private void loop(){
+		Thread self = Thread.currentThread();
+		long now = System.nanoTime();
+		long nextTick = now;
+		long nextFrame = now;
+		
+		while(RUNNING.get() && thread == self && !self.isInterrupted()){
+			now = System.nanoTime();
+			
+			int ticked = 0;
+			while(now - nextTick >= 0 && ticked < MAX_CATCH_UP_TICKS){
+				if(null != SIMULATION){
+					SIMULATION.tick();
+				}
+				ticks++;
+				ticked++;
+				nextTick += TICK_NANOS;
+				long before = now;
+				now = System.nanoTime();
+				if(null != STATS){
+					STATS.record(Metric.TICK, now - before);
+				}
+			}
+			if(now - nextTick >= 0){
+				/* We're too far behind, drop the backlog rather than trying to catch up forever. */
+				long behind = (now - nextTick) / TICK_NANOS + 1;
+				skippedTicks += behind;
+				nextTick += behind * TICK_NANOS;
+			}
+			
+			if(now - nextFrame >= 0){
+				double a = 1.0 - (double)(nextTick - now) / TICK_NANOS;
+				alpha = a < 0.0 ? 0.0 : (a >= 1.0 ? 0.0 : a);
+				if(null != STATS){
+					STATS.frameStarted(now);
+				}
+				paint();
+				frames++;
+				nextFrame += FRAME_NANOS;
+				now = System.nanoTime();
+				if(now - nextFrame >= 0){
+					long behind = (now - nextFrame) / FRAME_NANOS + 1;
+					skippedFrames += behind;
+					nextFrame += behind * FRAME_NANOS;
+					if(null != STATS){
+						STATS.framesDropped(behind);
+					}
+				}
+			}
+			
+			long deadline = nextTick - nextFrame < 0 ? nextTick : nextFrame;
+			if(null != STATS && STATS.isDetailed()){
+				long before = System.nanoTime();
+				waitUntil(deadline);
+				STATS.record(Metric.WAIT, System.nanoTime() - before);
+			}
+			else{
+				waitUntil(deadline);
+			}
+		}
+		if(thread == self){
+			/* Interrupted rather than stopped, so nobody else has marked the loop as stopped. */
+			thread = null;
+			RUNNING.compareAndSet(true, false);
+		}
+	}
+	
+	private void paint(){
+		if(CANVAS instanceof InterpolatedPaintable){
+			((InterpolatedPaintable) CANVAS).paint(alpha);
+		}
+		else{
+			CANVAS.paint();
+		}
+	}
+	
+	/**
+	 * Parks until we're {@link #SPIN_NANOS} away from the deadline, then yields until it's passed.
+	 */
+	private void waitUntil(long deadline){
+		long remaining = deadline - System.nanoTime();
+		while(remaining > SPIN_NANOS && RUNNING.get()){
+			LockSupport.parkNanos(this, remaining - SPIN_NANOS);
+			if(Thread.currentThread().isInterrupted()){
+				return;
+			}
+			remaining = deadline - System.nanoTime();
+		}
+		while(deadline - System.nanoTime() > 0 && RUNNING.get()){
+			Thread.yield();
+		}
+	}
+	
+	/**
+	 * @return how far we are between the last tick and the next one when the last frame was painted, in the range [0, 1).
+	 */
+	public double interpolationAlpha(){
+		return alpha;
+	}
+	
+	/**
+	 * @return the number of ticks run since the loop was created.
+	 */
+	public long ticks(){
+		return ticks;
+	}
+	
+	/**
+	 * @return the number of frames painted since the loop was created.
+	 */
+	public long frames(){
+		return frames;
+	}
+	
+	/**
+	 * @return the number of ticks that were dropped because the simulation fell too far behind.
+	 */
+	public long skippedTicks(){
+		return skippedTicks;
+	}
+	
+	/**
+	 * @return the number of frames that were skipped because painting fell behind.
+	 */
+	public long skippedFrames(){
+		return skippedFrames;
+	}
+	
+	public static GameLoopBuilder build(){
+		return new GameLoopBuilder();
+	}
+	
+	public static class GameLoopBuilder {
+		private Tickable simulation;
+		private TopLevelPaintable canvas;
+		private int ticksPerSecond, framesPerSecond, maxCatchUpTicks;
+		private long spinNanos;
+		private FrameStats stats;
+		
+		public GameLoopBuilder(){
+			simulation = null;
+			canvas = null;
+			ticksPerSecond = 60;
+			framesPerSecond = 60;
+			maxCatchUpTicks = 5;
+			spinNanos = DEFAULT_SPIN_NANOS;
+		}
+		
+		/**
+		 * Sets the {@link Tickable} that gets ticked at a fixed rate.
+		 * @param simulation the {@link Tickable}, may be null if you only want to paint.
+		 * @return this {@link GameLoopBuilder} so you can chain calls.
+		 */
+		public GameLoopBuilder tickable(Tickable simulation){
+			this.simulation = simulation;
+			return this;
+		}
+		
+		/**
+		 * Sets the {@link TopLevelPaintable} that gets painted.
+		 * If it is an {@link InterpolatedPaintable} it will be given the interpolation alpha as well.
+		 * @param canvas the {@link TopLevelPaintable}, may not be null.
+		 * @return this {@link GameLoopBuilder} so you can chain calls.
+		 */
+		public GameLoopBuilder canvas(TopLevelPaintable canvas){
+			if(null == canvas){
+				throw new IllegalArgumentException("Argument \"canvas\" may not be null.");
+			}
+			this.canvas = canvas;
+			return this;
+		}
+		
+		/**
+		 * Sets how many times per second the simulation is ticked. Default is 60.
+		 * @param ticksPerSecond must be positive.
+		 * @return this {@link GameLoopBuilder} so you can chain calls.
+		 */
+		public GameLoopBuilder ticksPerSecond(int ticksPerSecond){
+			if(ticksPerSecond < 1){
+				throw new IllegalArgumentException(String.format("ticksPerSecond must be positive! (was %d)", ticksPerSecond));
+			}
+			this.ticksPerSecond = ticksPerSecond;
+			return this;
+		}
+		
+		/**
+		 * Sets the maximum number of frames painted per second. Default is 60.
+		 * @param framesPerSecond must be positive.
+		 * @return this {@link GameLoopBuilder} so you can chain calls.
+		 */
+		public GameLoopBuilder framesPerSecond(int framesPerSecond){
+			if(framesPerSecond < 1){
+				throw new IllegalArgumentException(String.format("framesPerSecond must be positive! (was %d)", framesPerSecond));
+			}
+			this.framesPerSecond = framesPerSecond;
+			return this;
+		}
+		
+		/**
+		 * Sets how many ticks may be run back to back to catch up before a frame is painted. Default is 5.
+		 * @param maxCatchUpTicks must be positive. 1 means the simulation never catches up, it just slows down.
+		 * @return this {@link GameLoopBuilder} so you can chain calls.
+		 */
+		public GameLoopBuilder maxCatchUpTicks(int maxCatchUpTicks){
+			if(maxCatchUpTicks < 1){
+				throw new IllegalArgumentException(String.format("maxCatchUpTicks must be positive! (was %d)", maxCatchUpTicks));
+			}
+			this.maxCatchUpTicks = maxCatchUpTicks;
+			return this;
+		}
+		
+		/**
+		 * Sets how close to a deadline the loop stops sleeping and starts spinning. Default is {@link GameLoop#DEFAULT_SPIN_NANOS}.
+		 * Larger values give more precise timing and use more CPU. 0 never spins.
+		 * @param spinNanos the spin window in nanoseconds, may not be negative.
+		 * @return this {@link GameLoopBuilder} so you can chain calls.
+		 */
+		public GameLoopBuilder spinNanos(long spinNanos){
+			if(spinNanos < 0){
+				throw new IllegalArgumentException(String.format("spinNanos may not be negative! (was %d)", spinNanos));
+			}
+			this.spinNanos = spinNanos;
+			return this;
+		}
+		
+		/**
+		 * Sets the {@link FrameStats} the loop records its timings into.
+		 * @param stats the stats, may be null to record nothing (which is the default).
+		 * @return this {@link GameLoopBuilder} so you can chain calls.
+		 */
+		public GameLoopBuilder frameStats(FrameStats stats){
+			this.stats = stats;
+			return this;
+		}
+		
+		/**
+		 * Creates a new {@link GameLoop}. It is not started.
+		 * @return a new instance of {@link GameLoop}
+		 * @throws IllegalStateException if no canvas is set.
+		 */
+		public GameLoop create(){
+			if(null == canvas){
+				throw new IllegalStateException("No canvas set");
+			}
+			return new GameLoop(simulation, canvas, ticksPerSecond, framesPerSecond, maxCatchUpTicks, spinNanos, stats);
+		}
+	}
+}
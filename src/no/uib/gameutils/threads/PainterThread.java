@@ -2,6 +2,11 @@ package no.uib.gameutils.threads;
 
 import no.uib.gameutils.entity.type.TopLevelPaintable;
 
+/**
+ * A thread that paints a {@link TopLevelPaintable} at a fixed rate, starting as soon as it is constructed.
+ * It busy-waits between frames, so it will keep one core busy. See {@link GameLoop} for a loop that sleeps between frames
+ * and ticks the game as well.
+ */
 public class PainterThread extends Thread {
 	private final TopLevelPaintable CANVAS;
 	private final int FPS;
@@ -0,0 +1,253 @@
+package no.uib.gameutils.threads;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import no.uib.gameutils.entity.type.Tickable;
+
+/**
+ * A TickEngine ticks a large number of {@link Tickable}s, spread out over the cores of the machine.
+ * 
+ * The tickables are sorted into phases (say "input", "ai", "physics" and "post") that are run in the order they were added.
+ * A phase does not start before every tickable in the previous phase is done, so physics always sees the AI of this tick.
+ * 
+ * Inside a phase, tickables registered as independent are split into batches and run in parallel on a {@link ForkJoinPool}.
+ * Independent means the tick only touches the tickable's own state (and reads state that nothing changes during the phase),
+ * and for those the result is the same no matter how the batches are scheduled.
+ * Tickables that aren't independent are run one at a time, in the order they were registered, after the independent ones.
+ * 
+ * The engine is itself a {@link Tickable}, so you can hand it to a {@link GameLoop}.
+ * Register and unregister from the thread that ticks, between ticks.
+ */
+public class TickEngine implements Tickable {
+	public static final int DEFAULT_BATCH_SIZE = 256;
+	
+	private final ForkJoinPool POOL;
+	private final int BATCH_SIZE;
+	private final List<Phase> PHASES = new ArrayList<>();
+	
+	/**
+	 * Creates a TickEngine that uses the common {@link ForkJoinPool} and batches of {@link #DEFAULT_BATCH_SIZE}.
+	 */
+	public TickEngine(){
+		this(ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE);
+	}
+	
+	/**
+	 * @param pool the pool independent tickables are run on, may not be null.
+	 * @param batchSize the number of tickables each task ticks on its own before the work is split no further. Must be positive.
+	 * Smaller batches spread the work better, larger batches have less overhead.
+	 */
+	public TickEngine(ForkJoinPool pool, int batchSize){
+		if(null == pool){
+			throw new IllegalArgumentException("Argument \"pool\" may not be null.");
+		}
+		if(batchSize < 1){
+			throw new IllegalArgumentException(String.format("batchSize must be a positive number! (was %d)", batchSize));
+		}
+		this.POOL = pool;
+		this.BATCH_SIZE = batchSize;
+	}
+	
+	/**
+	 * Adds a phase after the ones that are already there.
+	 * @param name the name of the phase, may not be null and must be unique.
+	 * @return the new phase.
+	 */
+	public Phase addPhase(String name){
+		if(null == name){
+			throw new IllegalArgumentException("Argument \"name\" may not be null.");
+		}
+		if(null != getPhase(name)){
+			throw new IllegalArgumentException(String.format("There is already a phase called \"%s\"", name));
+		}
+		Phase phase = new Phase(name);
+		PHASES.add(phase);
+		return phase;
+	}
+	
+	/**
+	 * @param name the name of the phase.
+	 * @return the phase with that name, or null if there is none.
+	 */
+	public Phase getPhase(String name){
+		for(Phase phase : PHASES){
+			if(phase.NAME.equals(name)){
+				return phase;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return every phase, in the order they're run.
+	 */
+	public List<Phase> getPhases(){
+		return Collections.unmodifiableList(PHASES);
+	}
+	
+	/**
+	 * Registers a tickable in a phase.
+	 * @param phase the name of the phase.
+	 * @param tickable the tickable, may not be null.
+	 * @param independent true if the tickable can be ticked at the same time as the others in the phase. See the class documentation.
+	 * @throws IllegalArgumentException if there is no such phase.
+	 */
+	public void register(String phase, Tickable tickable, boolean independent){
+		Phase p = getPhase(phase);
+		if(null == p){
+			throw new IllegalArgumentException(String.format("There is no phase called \"%s\"", phase));
+		}
+		p.register(tickable, independent);
+	}
+	
+	/**
+	 * Removes a tickable from every phase it's in.
+	 * @param tickable the tickable to remove.
+	 * @return true if it was registered anywhere.
+	 */
+	public boolean unregister(Tickable tickable){
+		boolean found = false;
+		for(Phase phase : PHASES){
+			found |= phase.unregister(tickable);
+		}
+		return found;
+	}
+
+	/**
+	 * Runs every phase once, in order.
+	 */
+	@Override
+	public void tick() {
+		for(Phase phase : PHASES){
+			phase.run();
+		}
+	}
+	
+	/**
+	 * One phase of a tick. Also keeps track of how long it takes.
+	 */
+	public class Phase {
+		private final String NAME;
+		private final List<Tickable> INDEPENDENT = new ArrayList<>();
+		private final List<Tickable> SEQUENTIAL = new ArrayList<>();
+		private Tickable[] independentSnapshot = new Tickable[0];
+		private boolean changed;
+		private volatile long lastNanos, totalNanos, runs;
+		
+		private Phase(String name){
+			this.NAME = name;
+		}
+		
+		public void register(Tickable tickable, boolean independent){
+			if(null == tickable){
+				throw new IllegalArgumentException("Argument \"tickable\" may not be null.");
+			}
+			if(independent){
+				INDEPENDENT.add(tickable);
+				changed = true;
+			}
+			else{
+				SEQUENTIAL.add(tickable);
+			}
+		}
+		
+		public boolean unregister(Tickable tickable){
+			if(INDEPENDENT.remove(tickable)){
+				changed = true;
+				return true;
+			}
+			return SEQUENTIAL.remove(tickable);
+		}
+		
+		private void run(){
+			long start = System.nanoTime();
+			if(changed){
+				independentSnapshot = INDEPENDENT.toArray(new Tickable[INDEPENDENT.size()]);
+				changed = false;
+			}
+			Tickable[] batch = independentSnapshot;
+			if(batch.length <= BATCH_SIZE){
+				for(Tickable t : batch){
+					t.tick();
+				}
+			}
+			else{
+				/* invoke() returns when every batch is done, which is the barrier before the sequential ones. */
+				POOL.invoke(new TickBatch(batch, 0, batch.length));
+			}
+			for(int i = 0; i < SEQUENTIAL.size(); i++){
+				SEQUENTIAL.get(i).tick();
+			}
+			long spent = System.nanoTime() - start;
+			lastNanos = spent;
+			totalNanos += spent;
+			runs++;
+		}
+		
+		public String name(){
+			return NAME;
+		}
+		
+		/**
+		 * @return the number of tickables in this phase.
+		 */
+		public int size(){
+			return INDEPENDENT.size() + SEQUENTIAL.size();
+		}
+		
+		/**
+		 * @return how long the phase took the last time it ran, in nanoseconds.
+		 */
+		public long lastNanos(){
+			return lastNanos;
+		}
+		
+		/**
+		 * @return how long the phase has taken in total, in nanoseconds.
+		 */
+		public long totalNanos(){
+			return totalNanos;
+		}
+		
+		/**
+		 * @return how many times the phase has run.
+		 */
+		public long runs(){
+			return runs;
+		}
+		
+		@Override
+		public String toString(){
+			return String.format("%s: %d tickables, last %.3f ms, average %.3f ms", NAME, size(),
+					lastNanos / 1e6, runs == 0 ? 0.0 : totalNanos / 1e6 / runs);
+		}
+	}
+	
+	private class TickBatch extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Tickable[] tickables;
+		private final int from, to;
+		
+		private TickBatch(Tickable[] tickables, int from, int to){
+			this.tickables = tickables;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from <= BATCH_SIZE){
+				for(int i = from; i < to; i++){
+					tickables[i].tick();
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new TickBatch(tickables, from, middle), new TickBatch(tickables, middle, to));
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package no.uib.gameutils.window;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+import no.uib.gameutils.entity.type.Geographic;
+import no.uib.gameutils.entity.type.MoveListener;
+import no.uib.gameutils.entity.type.Paintable;
+
+/**
+ * A Camera shows a part of a large scene, and keeps what it showed last frame so scrolling is cheap.
+ * 
+ * The scene paints itself in world pixels, as usual. The camera keeps an offscreen copy of the view.
+ * When the camera moves, the pixels that are still visible are shifted with {@link Graphics#copyArea(int, int, int, int, int, int)},
+ * and only the strips that scrolled into view are painted, with the clip set to the strip.
+ * Scrolling a few pixels per frame then costs a few rows of pixels, not the whole screen.
+ * The scene should use the clip to skip what's outside it (as {@link no.uib.gameutils.map.TileMap TileMap} and
+ * {@link no.uib.gameutils.spatial.CulledPainter CulledPainter} do).
+ * 
+ * Anything in the scene that changes must be marked with {@link #invalidate(int, int, int, int)},
+ * or by adding the camera as a {@link MoveListener} to things that move, which marks their old and new tiles.
+ * Things that move every frame are better off in the foreground, which is painted on top of the view every frame and not kept.
+ * 
+ * The position is the world pixel at the top left corner of the view, and may be negative.
+ * This class is not thread safe, use it from the thread that paints.
+ */
+public class Camera implements Paintable, MoveListener {
+	private final Paintable SCENE;
+	private final DirtyRegion DIRTY;
+	private final Rectangle SCRATCH = new Rectangle();
+	private Paintable foreground;
+	private Color background = Color.BLACK;
+	private int width, height;
+	private int x, y, shownX, shownY;
+	private BufferedImage view;
+	private boolean full = true;
+	private long paintedPixels;
+	
+	/**
+	 * @param scene the scene, painted in world pixels. May not be null.
+	 * @param width the width of the view in pixels, must be positive.
+	 * @param height the height of the view in pixels, must be positive.
+	 * @param tileWidth the width of a tile in pixels, used when listening for moves. Must be positive.
+	 * @param tileHeight the height of a tile in pixels, used when listening for moves. Must be positive.
+	 */
+	public Camera(Paintable scene, int width, int height, int tileWidth, int tileHeight){
+		if(null == scene){
+			throw new IllegalArgumentException("Argument \"scene\" may not be null.");
+		}
+		if(tileWidth < 1 || tileHeight < 1){
+			throw new IllegalArgumentException(String.format("tileWidth and tileHeight must be positive numbers! (was %dx%d)", tileWidth, tileHeight));
+		}
+		this.SCENE = scene;
+		this.DIRTY = new DirtyRegion(tileWidth, tileHeight, DirtyRegion.DEFAULT_MAX_RECTANGLES);
+		setSize(width, height);
+	}
+	
+	/**
+	 * Changes the size of the view. The whole view is painted again on the next frame.
+	 * @param width the width of the view in pixels, must be positive.
+	 * @param height the height of the view in pixels, must be positive.
+	 */
+	public void setSize(int width, int height){
+		if(width < 1 || height < 1){
+			throw new IllegalArgumentException(String.format("width and height must be positive numbers! (was %dx%d)", width, height));
+		}
+		this.width = width;
+		this.height = height;
+		if(null != view){
+			view.flush();
+			view = null;
+		}
+		full = true;
+	}
+	
+	/**
+	 * Moves the camera so the top left corner of the view is at a world pixel.
+	 */
+	public void moveTo(int x, int y){
+		this.x = x;
+		this.y = y;
+	}
+	
+	/**
+	 * Moves the camera by some number of pixels.
+	 */
+	public void moveBy(int dx, int dy){
+		this.x += dx;
+		this.y += dy;
+	}
+	
+	/**
+	 * Moves the camera so a world pixel is in the middle of the view.
+	 */
+	public void centerOn(int worldX, int worldY){
+		moveTo(worldX - width / 2, worldY - height / 2);
+	}
+	
+	public int getX(){
+		return x;
+	}
+	
+	public int getY(){
+		return y;
+	}
+	
+	public int getWidth(){
+		return width;
+	}
+	
+	public int getHeight(){
+		return height;
+	}
+	
+	/**
+	 * Marks a rectangle of world pixels as changed, so it is painted again on the next frame.
+	 */
+	public void invalidate(int worldX, int worldY, int width, int height){
+		DIRTY.add(worldX, worldY, width, height);
+	}
+	
+	/**
+	 * Marks the whole view as changed.
+	 */
+	public void invalidateAll(){
+		full = true;
+	}
+	
+	/**
+	 * Marks the old and new tile of something that moved as changed.
+	 */
+	@Override
+	public void moved(Geographic entity, int oldX, int oldY) {
+		DIRTY.moved(entity, oldX, oldY);
+	}
+	
+	/**
+	 * Sets what's painted on top of the view every frame, in world pixels. It is not kept between frames.
+	 * @param foreground the foreground, or null for none.
+	 */
+	public void setForeground(Paintable foreground){
+		this.foreground = foreground;
+	}
+	
+	/**
+	 * Sets the colour the view is cleared to before the scene is painted. Default is black.
+	 */
+	public void setBackground(Color background){
+		if(null == background){
+			throw new IllegalArgumentException("Argument \"background\" may not be null.");
+		}
+		this.background = background;
+		full = true;
+	}
+	
+	/**
+	 * @return how many pixels of the scene were painted the last frame. Handy for seeing that scrolling is as cheap as it should be.
+	 */
+	public long lastPaintedPixels(){
+		return paintedPixels;
+	}
+
+	/**
+	 * Brings the view up to date, and draws it with its top left corner at (0, 0).
+	 */
+	@Override
+	public void paint(Graphics gfx) {
+		if(null == view){
+			view = createView();
+			full = true;
+		}
+		Graphics2D g = view.createGraphics();
+		paintedPixels = 0;
+		int dx = x - shownX, dy = y - shownY;
+		
+		if(full || DIRTY.isAll() || Math.abs(dx) >= width || Math.abs(dy) >= height){
+			paintStrip(g, 0, 0, width, height);
+			full = false;
+		}
+		else{
+			if(dx != 0 || dy != 0){
+				/* What was at view pixel (px, py) is now at (px - dx, py - dy). */
+				g.copyArea(0, 0, width, height, -dx, -dy);
+				if(dx > 0){
+					paintStrip(g, width - dx, 0, dx, height);
+				}
+				else if(dx < 0){
+					paintStrip(g, 0, 0, -dx, height);
+				}
+				/* The corner shared by both strips was painted with the vertical strip, so leave it out here. */
+				int stripX = dx > 0 ? 0 : -dx;
+				int stripWidth = width - Math.abs(dx);
+				if(dy > 0){
+					paintStrip(g, stripX, height - dy, stripWidth, dy);
+				}
+				else if(dy < 0){
+					paintStrip(g, stripX, 0, stripWidth, -dy);
+				}
+			}
+			for(int i = 0; i < DIRTY.size(); i++){
+				DIRTY.get(i, SCRATCH);
+				int left = Math.max(0, SCRATCH.x - x), top = Math.max(0, SCRATCH.y - y);
+				int right = Math.min(width, SCRATCH.x - x + SCRATCH.width), bottom = Math.min(height, SCRATCH.y - y + SCRATCH.height);
+				if(left < right && top < bottom){
+					paintStrip(g, left, top, right - left, bottom - top);
+				}
+			}
+		}
+		g.dispose();
+		DIRTY.clear();
+		shownX = x;
+		shownY = y;
+		
+		gfx.drawImage(view, 0, 0, null);
+		if(null != foreground){
+			Graphics fg = gfx.create(0, 0, width, height);
+			fg.translate(-x, -y);
+			foreground.paint(fg);
+			fg.dispose();
+		}
+	}
+	
+	/**
+	 * Clears and paints a rectangle of the view, given in view pixels.
+	 */
+	private void paintStrip(Graphics2D g, int viewX, int viewY, int stripWidth, int stripHeight){
+		g.setClip(viewX, viewY, stripWidth, stripHeight);
+		g.setColor(background);
+		g.fillRect(viewX, viewY, stripWidth, stripHeight);
+		g.translate(-x, -y);
+		SCENE.paint(g);
+		g.translate(x, y);
+		g.setClip(null);
+		paintedPixels += (long) stripWidth * stripHeight;
+	}
+	
+	private BufferedImage createView(){
+		if(GraphicsEnvironment.isHeadless()){
+			return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		}
+		GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+		return gc.createCompatibleImage(width, height, Transparency.OPAQUE);
+	}
+}
@@ -0,0 +1,225 @@
+package no.uib.gameutils.window;
+
+import java.awt.Rectangle;
+
+import no.uib.gameutils.entity.type.Geographic;
+import no.uib.gameutils.entity.type.MoveListener;
+
+/**
+ * A DirtyRegion collects the parts of the screen that have changed since the last frame, as a small set of rectangles.
+ * 
+ * When a rectangle is added, it's merged with any rectangle it overlaps, or that it would cost little to merge with
+ * (when the merged rectangle isn't much bigger than the two put together). If there get to be too many rectangles,
+ * they're all merged into one. That keeps painting cheap: a few tight rectangles instead of many tiny ones or one huge one.
+ * 
+ * Entities that move report the bounds they had and the bounds they have with {@link #moved(int, int, int, int, int, int, int, int)}.
+ * If the region is made with a tile size, it is also a {@link MoveListener}, and marks the old and new tile of anything that moves,
+ * so it can be added straight to a {@link no.uib.gameutils.entity.StaticImage StaticImage}.
+ * 
+ * All coordinates are in pixels. Every method locks the region, so things can be marked dirty from the game thread
+ * while the thread that paints reads it. To read the rectangles as one set, with nothing added halfway through, synchronize on the region.
+ */
+public class DirtyRegion implements MoveListener {
+	public static final int DEFAULT_MAX_RECTANGLES = 32;
+	
+	private final int MAX_RECTANGLES;
+	private final int TILE_WIDTH, TILE_HEIGHT;
+	private final int[] X, Y, W, H;
+	private int count;
+	private boolean all;
+	
+	/**
+	 * Creates a region that can't be used as a {@link MoveListener}, with room for {@link #DEFAULT_MAX_RECTANGLES}.
+	 */
+	public DirtyRegion(){
+		this(0, 0, DEFAULT_MAX_RECTANGLES);
+	}
+	
+	/**
+	 * @param tileWidth the width of a tile in pixels, used when listening for moves. 0 if the region won't be used as a listener.
+	 * @param tileHeight the height of a tile in pixels, used when listening for moves. 0 if the region won't be used as a listener.
+	 * @param maxRectangles how many rectangles to keep apart before merging everything, must be positive.
+	 */
+	public DirtyRegion(int tileWidth, int tileHeight, int maxRectangles){
+		if(tileWidth < 0 || tileHeight < 0){
+			throw new IllegalArgumentException(String.format("tileWidth and tileHeight may not be negative! (was %dx%d)", tileWidth, tileHeight));
+		}
+		if(maxRectangles < 1){
+			throw new IllegalArgumentException(String.format("maxRectangles must be a positive number! (was %d)", maxRectangles));
+		}
+		this.TILE_WIDTH = tileWidth;
+		this.TILE_HEIGHT = tileHeight;
+		this.MAX_RECTANGLES = maxRectangles;
+		this.X = new int[maxRectangles + 1];
+		this.Y = new int[maxRectangles + 1];
+		this.W = new int[maxRectangles + 1];
+		this.H = new int[maxRectangles + 1];
+	}
+	
+	/**
+	 * Marks a rectangle as dirty. Empty rectangles are ignored.
+	 */
+	public synchronized void add(int x, int y, int width, int height){
+		if(all || width <= 0 || height <= 0){
+			return;
+		}
+		int i = count++;
+		X[i] = x;
+		Y[i] = y;
+		W[i] = width;
+		H[i] = height;
+		coalesce(i);
+		if(count > MAX_RECTANGLES){
+			collapse();
+		}
+	}
+	
+	public synchronized void add(Rectangle r){
+		add(r.x, r.y, r.width, r.height);
+	}
+	
+	/**
+	 * Marks both where something was and where it is now as dirty.
+	 */
+	public synchronized void moved(int oldX, int oldY, int oldWidth, int oldHeight, int newX, int newY, int newWidth, int newHeight){
+		add(oldX, oldY, oldWidth, oldHeight);
+		add(newX, newY, newWidth, newHeight);
+	}
+	
+	/**
+	 * Marks the old and new tile of an entity as dirty.
+	 * @throws IllegalStateException if the region was made without a tile size.
+	 */
+	@Override
+	public synchronized void moved(Geographic entity, int oldX, int oldY) {
+		if(TILE_WIDTH == 0 || TILE_HEIGHT == 0){
+			throw new IllegalStateException("This DirtyRegion has no tile size, so it can't listen for moves");
+		}
+		add(oldX * TILE_WIDTH, oldY * TILE_HEIGHT, TILE_WIDTH, TILE_HEIGHT);
+		add(entity.xPos() * TILE_WIDTH, entity.yPos() * TILE_HEIGHT, TILE_WIDTH, TILE_HEIGHT);
+	}
+	
+	/**
+	 * Marks everything as dirty, so the next frame is painted in full.
+	 */
+	public synchronized void markAll(){
+		all = true;
+		count = 0;
+	}
+	
+	/**
+	 * @return true if everything is dirty.
+	 */
+	public synchronized boolean isAll(){
+		return all;
+	}
+	
+	/**
+	 * @return true if nothing is dirty.
+	 */
+	public synchronized boolean isEmpty(){
+		return !all && count == 0;
+	}
+	
+	/**
+	 * @return the number of rectangles. 0 if everything is dirty, check {@link #isAll()} for that.
+	 */
+	public synchronized int size(){
+		return count;
+	}
+	
+	/**
+	 * Copies a rectangle into r.
+	 * @param i which rectangle, from 0 to {@link #size()} - 1.
+	 * @param r the rectangle to fill in.
+	 * @return r, so you can chain calls.
+	 */
+	public synchronized Rectangle get(int i, Rectangle r){
+		r.setBounds(X[i], Y[i], W[i], H[i]);
+		return r;
+	}
+	
+	/**
+	 * Adds everything that is dirty in another region to this one.
+	 */
+	public synchronized void addAll(DirtyRegion other){
+		synchronized(other){
+			if(other.all){
+				markAll();
+				return;
+			}
+			for(int i = 0; i < other.count; i++){
+				add(other.X[i], other.Y[i], other.W[i], other.H[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Makes the region clean again.
+	 */
+	public synchronized void clear(){
+		all = false;
+		count = 0;
+	}
+	
+	/**
+	 * Merges rectangle i with every rectangle it should be merged with, over and over until it has grown as much as it will.
+	 */
+	private void coalesce(int i){
+		boolean merged = true;
+		while(merged){
+			merged = false;
+			for(int j = 0; j < count; j++){
+				if(j == i || !shouldMerge(i, j)){
+					continue;
+				}
+				int x = Math.min(X[i], X[j]), y = Math.min(Y[i], Y[j]);
+				W[i] = Math.max(X[i] + W[i], X[j] + W[j]) - x;
+				H[i] = Math.max(Y[i] + H[i], Y[j] + H[j]) - y;
+				X[i] = x;
+				Y[i] = y;
+				/* j is merged into i, so move the last rectangle into j's place. */
+				int last = count - 1;
+				if(j != last){
+					X[j] = X[last];
+					Y[j] = Y[last];
+					W[j] = W[last];
+					H[j] = H[last];
+					if(i == last){
+						i = j;
+					}
+				}
+				count--;
+				merged = true;
+				break;
+			}
+		}
+	}
+	
+	private boolean shouldMerge(int i, int j){
+		long x = Math.min(X[i], X[j]), y = Math.min(Y[i], Y[j]);
+		long w = Math.max((long) X[i] + W[i], (long) X[j] + W[j]) - x;
+		long h = Math.max((long) Y[i] + H[i], (long) Y[j] + H[j]) - y;
+		long union = w * h;
+		long separate = (long) W[i] * H[i] + (long) W[j] * H[j];
+		/* Overlapping rectangles always merge, since the overlap would be painted twice otherwise. */
+		boolean overlap = X[i] < X[j] + W[j] && X[j] < X[i] + W[i] && Y[i] < Y[j] + H[j] && Y[j] < Y[i] + H[i];
+		return overlap || union * 4 <= separate * 5;
+	}
+	
+	private void collapse(){
+		int minX = X[0], minY = Y[0];
+		long maxX = (long) X[0] + W[0], maxY = (long) Y[0] + H[0];
+		for(int i = 1; i < count; i++){
+			minX = Math.min(minX, X[i]);
+			minY = Math.min(minY, Y[i]);
+			maxX = Math.max(maxX, (long) X[i] + W[i]);
+			maxY = Math.max(maxY, (long) Y[i] + H[i]);
+		}
+		count = 1;
+		X[0] = minX;
+		Y[0] = minY;
+		W[0] = (int) Math.min(Integer.MAX_VALUE, maxX - minX);
+		H[0] = (int) Math.min(Integer.MAX_VALUE, maxY - minY);
+	}
+}
@@ -1,32 +1,221 @@
 package no.uib.gameutils.window;
 
+import java.awt.BufferCapabilities;
 import java.awt.Canvas;
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.Rectangle;
 import java.awt.image.BufferStrategy;
 
 import no.uib.gameutils.entity.type.Paintable;
+import no.uib.gameutils.stats.FrameStats;
 
 public class GameCanvas extends Canvas {
+	private FrameStats stats;
+	private Paintable overlay;
+	private Rectangle overlayArea;
+	private DirtyRegion dirty;
+	private final DirtyRegion frame = new DirtyRegion();
+	private final DirtyRegion lastFrame = new DirtyRegion();
+	private final DirtyRegion combined = new DirtyRegion();
+	private final Rectangle scratch = new Rectangle();
+	private int lastWidth = -1, lastHeight = -1;
+	
 	public GameCanvas(){
 		super();
 		this.setBackground(new Color(40, 80, 80));
 	}
 
+	/**
+	 * Renders one frame of topLevel, and shows it.
+	 * 
+	 * Normally the whole frame is painted. If a {@link DirtyRegion} has been set with {@link #setDirtyRegion(DirtyRegion)},
+	 * only the dirty rectangles are cleared to the background colour and painted, with the clip set to each in turn,
+	 * and nothing at all is done if nothing is dirty. The overlay's area is dirty every frame, so it is cleared before the overlay is painted again.
+	 * A full frame is still painted the first time, when the canvas changes size,
+	 * when the buffers lose their contents, and when the buffer strategy doesn't keep the contents of the back buffer between frames.
+	 * @param topLevel what to paint.
+	 */
 	public void render(Paintable topLevel){
 		BufferStrategy bs = this.getBufferStrategy();
 		if(bs == null){
 			this.createBufferStrategy(2);
 			return;
 		}
-
-		Graphics g = bs.getDrawGraphics();
 		
-		topLevel.paint(g);
+		DirtyRegion region = null;
+		boolean full = true;
+		DirtyRegion marks = this.dirty;
+		if(null != marks){
+			region = dirtyRegionFor(bs, marks);
+			full = region.isAll();
+			if(region.isEmpty()){
+				return;
+			}
+		}
+
+		FrameStats stats = this.stats;
+		boolean timed = null != stats && stats.isDetailed();
+		long paintNanos = 0, showNanos = 0;
+		boolean restored, lost;
 		
-		g.dispose();
+		do{
+			do{
+				long start = timed ? System.nanoTime() : 0;
+				Graphics g = bs.getDrawGraphics();
+				
+				if(full && null == region){
+					topLevel.paint(g);
+				}
+				else if(full){
+					paintClipped(g, topLevel, 0, 0, getWidth(), getHeight());
+				}
+				else{
+					for(int i = 0; i < region.size(); i++){
+						region.get(i, scratch);
+						paintClipped(g, topLevel, scratch.x, scratch.y, scratch.width, scratch.height);
+					}
+					g.setClip(null);
+				}
+				if(null != overlay){
+					overlay.paint(g);
+				}
+				
+				g.dispose();
+				if(timed){
+					paintNanos += System.nanoTime() - start;
+				}
+				restored = bs.contentsRestored();
+				if(restored){
+					full = true;
+				}
+			}
+			while(restored);
+			
+			long start = timed ? System.nanoTime() : 0;
+			bs.show();
+			if(timed){
+				showNanos += System.nanoTime() - start;
+			}
+			lost = bs.contentsLost();
+			if(lost){
+				full = true;
+			}
+		}
+		while(lost);
 		
-		bs.show();
+		if(null != region && full){
+			/* We don't know what the other buffer holds any more. */
+			lastFrame.markAll();
+		}
+		if(timed){
+			stats.record(FrameStats.Metric.SCENE_PAINT, paintNanos);
+			stats.record(FrameStats.Metric.SHOW, showNanos);
+		}
+	}
+	
+	private void paintClipped(Graphics g, Paintable topLevel, int x, int y, int width, int height){
+		g.setClip(x, y, width, height);
+		g.setColor(getBackground());
+		g.fillRect(x, y, width, height);
+		topLevel.paint(g);
+	}
+	
+	/**
+	 * Works out what needs painting this frame. With page flipping where the back buffer holds the frame before last,
+	 * that's what's dirty now plus what was dirty last frame.
+	 * 
+	 * What's been marked is moved out of the region in one go, under its lock, so whatever the game thread marks
+	 * while this frame is painted is kept for the next one.
+	 */
+	private DirtyRegion dirtyRegionFor(BufferStrategy bs, DirtyRegion marks){
+		BufferCapabilities caps = bs.getCapabilities();
+		BufferCapabilities.FlipContents contents = caps.getFlipContents();
+		boolean keepsLast = !caps.isPageFlipping() || BufferCapabilities.FlipContents.COPIED.equals(contents);
+		boolean keepsPrior = caps.isPageFlipping() && BufferCapabilities.FlipContents.PRIOR.equals(contents);
 		
+		frame.clear();
+		synchronized(marks){
+			frame.addAll(marks);
+			marks.clear();
+		}
+		if(getWidth() != lastWidth || getHeight() != lastHeight){
+			lastWidth = getWidth();
+			lastHeight = getHeight();
+			frame.markAll();
+		}
+		if(null != overlay){
+			/* The overlay may be translucent, so what's under it must be painted fresh before it goes on top again. */
+			if(null == overlayArea){
+				frame.markAll();
+			}
+			else{
+				frame.add(overlayArea);
+			}
+		}
+		if(!keepsLast && !keepsPrior){
+			frame.markAll();
+		}
+		if(!keepsPrior){
+			return frame;
+		}
+		combined.clear();
+		combined.addAll(frame);
+		combined.addAll(lastFrame);
+		lastFrame.clear();
+		lastFrame.addAll(frame);
+		return combined;
+	}
+	
+	/**
+	 * Turns dirty rectangle rendering on or off. See {@link #render(Paintable)}.
+	 * Mark what changes in the region, from any thread, and it is emptied each frame as the frame is worked out.
+	 * The overlay, if there is one, is painted on top every frame without clipping, and its area is marked dirty every frame for you.
+	 * Give its area with {@link #setOverlay(Paintable, Rectangle)}, or the whole canvas is painted every frame.
+	 * @param region the region to paint, or null to paint every frame in full.
+	 */
+	public void setDirtyRegion(DirtyRegion region){
+		this.dirty = region;
+		if(null != region){
+			region.markAll();
+			lastFrame.markAll();
+		}
+	}
+	
+	public DirtyRegion getDirtyRegion(){
+		return dirty;
+	}
+	
+	/**
+	 * Sets the {@link FrameStats} that painting and showing the buffer is timed into.
+	 * @param stats the stats, or null to stop timing.
+	 */
+	public void setFrameStats(FrameStats stats){
+		this.stats = stats;
+	}
+	
+	public FrameStats getFrameStats(){
+		return stats;
+	}
+	
+	/**
+	 * Sets a {@link Paintable} that is painted on top of every frame, after the scene.
+	 * This is meant for things like {@link no.uib.gameutils.stats.FrameStatsOverlay FrameStatsOverlay}.
+	 * With dirty rectangle rendering the whole canvas is painted every frame, since the overlay could be anywhere.
+	 * @param overlay the overlay, or null for none.
+	 */
+	public void setOverlay(Paintable overlay){
+		setOverlay(overlay, null);
+	}
+	
+	/**
+	 * Sets a {@link Paintable} that is painted on top of every frame, after the scene, and the area it paints within.
+	 * With dirty rectangle rendering that area is cleared and painted every frame, so the overlay doesn't pile up on top of itself.
+	 * @param overlay the overlay, or null for none.
+	 * @param area the area the overlay paints within, or null for the whole canvas. It is copied.
+	 */
+	public void setOverlay(Paintable overlay, Rectangle area){
+		this.overlayArea = null == area ? null : new Rectangle(area);
+		this.overlay = overlay;
 	}
 }
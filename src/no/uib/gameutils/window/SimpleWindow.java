@@ -4,18 +4,22 @@ import java.awt.Canvas;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Rectangle;
 import java.awt.image.BufferStrategy;
 
 import javax.swing.JFrame;
 
 import no.uib.gameutils.entity.type.Paintable;
 import no.uib.gameutils.entity.type.TopLevelPaintable;
+import no.uib.gameutils.input.Input;
+import no.uib.gameutils.stats.FrameStats;
 
 public class SimpleWindow implements TopLevelPaintable {
 	private JFrame window;
 	private GameCanvas canvas;
 	private Dimension size;
 	private Paintable scene;
+	private Input input;
 	
 	public SimpleWindow(String title, Dimension size){
 		this.window = new JFrame(title);
@@ -40,9 +44,27 @@ public class SimpleWindow implements TopLevelPaintable {
 		System.out.println(canvas.isDisplayable());
 	}
 	
-	/*
-	 * TODO: Add methods to add listeners and such, after I know which ones are needed and useful.
+	/**
+	 * Sends the keyboard and mouse events of this window to an {@link Input}, and gives the canvas focus.
+	 * Tick the Input from the game loop to read them.
+	 * @param input the input, or null to stop sending events.
+	 * @return this same SimpleWindow so you can chain calls.
 	 */
+	public SimpleWindow setInput(Input input){
+		if(null != this.input){
+			this.input.detach(canvas);
+		}
+		this.input = input;
+		if(null != input){
+			input.attach(canvas);
+			canvas.requestFocus();
+		}
+		return this;
+	}
+	
+	public Input getInput(){
+		return input;
+	}
 	
 	public SimpleWindow setScene(Paintable scene){
 		this.scene = scene;
@@ -60,6 +82,48 @@ public class SimpleWindow implements TopLevelPaintable {
 		return canvas;
 	}
 	
+	/**
+	 * Times painting and showing the frames of this window into a {@link FrameStats}.
+	 * @param stats the stats, or null to stop timing.
+	 * @return this same SimpleWindow so you can chain calls.
+	 */
+	public SimpleWindow setFrameStats(FrameStats stats){
+		canvas.setFrameStats(stats);
+		return this;
+	}
+	
+	/**
+	 * Turns dirty rectangle rendering on or off, see {@link GameCanvas#setDirtyRegion(DirtyRegion)}.
+	 * @param region the region to paint, or null to paint every frame in full.
+	 * @return this same SimpleWindow so you can chain calls.
+	 */
+	public SimpleWindow setDirtyRegion(DirtyRegion region){
+		canvas.setDirtyRegion(region);
+		return this;
+	}
+	
+	/**
+	 * Sets a {@link Paintable} that is painted on top of the scene every frame.
+	 * @param overlay the overlay, or null for none.
+	 * @return this same SimpleWindow so you can chain calls.
+	 */
+	public SimpleWindow setOverlay(Paintable overlay){
+		canvas.setOverlay(overlay);
+		return this;
+	}
+	
+	/**
+	 * Sets a {@link Paintable} that is painted on top of the scene every frame, within the given area,
+	 * see {@link GameCanvas#setOverlay(Paintable, Rectangle)}.
+	 * @param overlay the overlay, or null for none.
+	 * @param area the area the overlay paints within, or null for the whole canvas.
+	 * @return this same SimpleWindow so you can chain calls.
+	 */
+	public SimpleWindow setOverlay(Paintable overlay, Rectangle area){
+		canvas.setOverlay(overlay, area);
+		return this;
+	}
+	
 	/**
 	 * This paint method allows you to paint the scene.
 	 * The scene itself must know what to paint and in what order.